@@ -182,7 +182,7 @@ public interface CreditBasedFlowControl extends FlowControl {
      * @param numberOfBytes the amount to increment by
      * @return the new (incremented) number of transferred bytes
      */
-    long incrementTransferred( int numberOfBytes );
+    long incrementTransferred( long numberOfBytes );
 
     /**
      * Increments the internal counter for limit of transferable bytes.
@@ -194,7 +194,7 @@ public interface CreditBasedFlowControl extends FlowControl {
      * @param numberOfBytes the amount to increment by
      * @return the new (incremented) limit of transferable bytes
      */
-    long incrementLimit( int numberOfBytes );
+    long incrementLimit( long numberOfBytes );
 
     /**
      * @param numberOfBytes the amount the caller tries to send
@@ -205,6 +205,39 @@ default boolean canSend( int numberOfBytes ) {
         return getTransferred() + numberOfBytes <= getLimit();
     }
 
+    /**
+     * Increments the number of transferred bytes if and only if that does not exceed the limit.
+     * Unlike a {@link #canSend(int) check} followed by an {@link #incrementTransferred(long) increment},
+     * implementations that are shared between threads SHOULD perform this atomically, so that
+     * concurrent senders never acquire more credit than available in total.
+     *
+     * @param numberOfBytes the non-negative amount the caller tries to send
+     * @return true if the credit was acquired, false if it was not available and nothing changed
+     */
+    default boolean tryAcquire( long numberOfBytes ) {
+        if ( getTransferred() + numberOfBytes > getLimit() ) {
+            return false;
+        }
+        incrementTransferred( numberOfBytes );
+        return true;
+    }
+
+    /**
+     * Acquires as much of the requested credit as available, like {@link #tryAcquire(long)} atomically
+     * if the implementation is shared between threads.
+     *
+     * @param maxNumberOfBytes the non-negative amount the caller would like to send
+     * @return the acquired amount between 0 and maxNumberOfBytes
+     */
+    default long acquireUpTo( long maxNumberOfBytes ) {
+        long acquired = Math.min( maxNumberOfBytes, getCredit() );
+        if ( acquired <= 0 ) {
+            return 0;
+        }
+        incrementTransferred( acquired );
+        return acquired;
+    }
+
     /**
      * @return the remaining number of bytes that can be transferred before exceeding the limit
      */
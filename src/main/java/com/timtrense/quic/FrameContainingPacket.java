@@ -63,7 +63,7 @@ default long getLongPayloadLength() {
      * @throws IllegalArgumentException if the computed length cannot be expressed as a {@link VariableLengthInteger}
      */
     default VariableLengthInteger getPayloadLength() {
-        return new VariableLengthInteger( getLongPayloadLength() );
+        return VariableLengthInteger.valueOf( getLongPayloadLength() );
     }
 
     /**
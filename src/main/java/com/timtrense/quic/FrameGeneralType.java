@@ -28,5 +28,11 @@ public enum FrameGeneralType {
     PATH_CHALLENGE,
     PATH_RESPONSE,
     CONNECTION_CLOSE,
-    HANDSHAKE_DONE
+    HANDSHAKE_DONE,
+    /**
+     * unreliable datagrams, an extension of QUIC
+     *
+     * @see <a href="https://tools.ietf.org/html/rfc9221#section-4">RFC 9221/Section 4</a>
+     */
+    DATAGRAM
 }
@@ -43,7 +43,9 @@ public enum FrameType {
     PATH_RESPONSE( 0x1b, FrameGeneralType.PATH_RESPONSE ),
     CONNECTION_CLOSE( 0x1c, FrameGeneralType.CONNECTION_CLOSE ),
     CONNECTION_CLOSE_ON_FRAME_TYPE( 0x1d, FrameGeneralType.CONNECTION_CLOSE ),
-    HANDSHAKE_DONE( 0x1e, FrameGeneralType.HANDSHAKE_DONE );
+    HANDSHAKE_DONE( 0x1e, FrameGeneralType.HANDSHAKE_DONE ),
+    DATAGRAM( 0x30, FrameGeneralType.DATAGRAM ),
+    DATAGRAM_LEN( 0x31, FrameGeneralType.DATAGRAM );
 
     @Getter
     private final VariableLengthInteger value;
@@ -51,7 +53,7 @@ public enum FrameType {
     private final FrameGeneralType generalType;
 
     FrameType( int value, FrameGeneralType generalType ) {
-        this.value = new VariableLengthInteger( value );
+        this.value = VariableLengthInteger.valueOf( value );
         this.generalType = generalType;
     }
 
@@ -62,21 +64,48 @@ public long getLongValue() {
         return value.longValue();
     }
 
-    public static FrameType findByValue( int value ) {
+    /**
+     * all frame types indexed by their value. frame type values are dense and small, so a plain array
+     * is a perfect hash table. {@link #values()} clones its array on every call, thus is too expensive
+     * to be iterated for every parsed frame
+     */
+    private static final FrameType[] BY_VALUE;
+
+    static {
+        int maxValue = 0;
+        for ( FrameType f : values() ) {
+            maxValue = Math.max( maxValue, (int)f.getLongValue() );
+        }
+        BY_VALUE = new FrameType[maxValue + 1];
         for ( FrameType f : values() ) {
-            if ( f.value.longValue() == value ) {
-                return f;
-            }
+            BY_VALUE[(int)f.getLongValue()] = f;
         }
-        return null;
     }
 
-    public static FrameType findByValue( VariableLengthInteger value ) {
-        for ( FrameType f : values() ) {
-            if ( f.value.equals( value ) ) {
-                return f;
-            }
+    /**
+     * @param value the raw value of the frame type
+     * @return the frame type with the given value or null if there is none
+     */
+    public static FrameType findByValue( long value ) {
+        if ( value < 0 || value >= BY_VALUE.length ) {
+            return null;
         }
-        return null;
+        return BY_VALUE[(int)value];
+    }
+
+    /**
+     * @param value the raw value of the frame type
+     * @return the frame type with the given value or null if there is none
+     */
+    public static FrameType findByValue( int value ) {
+        return findByValue( (long)value );
+    }
+
+    /**
+     * @param value the raw value of the frame type
+     * @return the frame type with the given value or null if there is none
+     */
+    public static FrameType findByValue( VariableLengthInteger value ) {
+        return findByValue( value.longValue() );
     }
 }
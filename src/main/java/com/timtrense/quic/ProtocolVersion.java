@@ -61,13 +61,48 @@ public enum ProtocolVersion {
         this.value = value;
     }
 
-    public static ProtocolVersion findByValue( int value ) {
+    /**
+     * all known IETF draft versions indexed by their draft number
+     */
+    private static final ProtocolVersion[] IETF_DRAFTS_BY_NUMBER;
+
+    static {
+        int maxDraft = 0;
         for ( ProtocolVersion f : values() ) {
-            if ( f.value == value ) {
-                return f;
+            maxDraft = Math.max( maxDraft, f.getIetfDraftVersion() );
+        }
+        IETF_DRAFTS_BY_NUMBER = new ProtocolVersion[maxDraft + 1];
+        for ( ProtocolVersion f : values() ) {
+            if ( f.isIetfDraft() ) {
+                IETF_DRAFTS_BY_NUMBER[f.getIetfDraftVersion()] = f;
             }
         }
-        return null;
+    }
+
+    /**
+     * Finds the version without iterating all versions, because this is called for every received long header
+     * packet. Draft versions are looked up by their draft number, the few remaining ones are switched over.
+     *
+     * @param value the serialized form of the version
+     * @return the version with the given value or null if it is unknown
+     */
+    public static ProtocolVersion findByValue( int value ) {
+        if ( ( value & 0xffffff00 ) == 0xff000000 ) {
+            int draft = value & 0xff;
+            return draft < IETF_DRAFTS_BY_NUMBER.length ? IETF_DRAFTS_BY_NUMBER[draft] : null;
+        }
+        switch ( value ) {
+            case 0x00000001:
+                return ONE;
+            case 0x00000000:
+                return RESERVED_FOR_VERSION_NEGOTIATION;
+            case 0x51303434:
+                return GOOGLE_QUIC_44;
+            case 0x51303435:
+                return GOOGLE_QUIC_45;
+            default:
+                return null;
+        }
     }
 
     /**
@@ -125,7 +125,8 @@ default boolean isKeyPhase() {
      */
     @Override
     default int getPacketNumberLength() {
-        return ( getFlags() & 0b00000011 );
+        // "pn_length = (packet[0] & 0x03) + 1" QUIC Spec-TLS/Section 5.4.1
+        return ( getFlags() & 0b00000011 ) + 1;
     }
 
     /**
@@ -67,6 +67,12 @@ public class VariableLengthInteger extends Number
     public static final VariableLengthInteger MIN_VALUE_4BYTE = new VariableLengthInteger( 16384L );
     public static final VariableLengthInteger MIN_VALUE_8BYTE = new VariableLengthInteger( 1073741824L );
 
+    /**
+     * The name of the system property to configure the largest {@link #valueOf(long) cached} value.
+     * It defaults to 1023 and is clamped to the 2-byte range, so at least all 1-byte values are cached.
+     */
+    public static final String CACHE_HIGH_PROPERTY = "com.timtrense.quic.VariableLengthInteger.cacheHigh";
+
     /**
      * the actual value
      */
@@ -101,6 +107,22 @@ private VariableLengthInteger( long value, byte encodedLengthInBytes ) {
         this.encodedLengthInBytes = encodedLengthInBytes;
     }
 
+    /**
+     * Returns an instance having that value. Unlike the constructor, this returns cached instances for
+     * all values of the 1-byte range and the lower part of the 2-byte range (see {@link #CACHE_HIGH_PROPERTY}),
+     * which cover most stream ids, frame types, lengths and ACK gaps.
+     *
+     * @param value the actual value
+     * @return an instance having that value
+     * @throws IllegalArgumentException if the value cannot be encoded
+     */
+    public static VariableLengthInteger valueOf( long value ) {
+        if ( value >= 0 && value < Cache.VALUES.length ) {
+            return Cache.VALUES[(int)value];
+        }
+        return new VariableLengthInteger( value );
+    }
+
     @Override
     public int intValue() {
         return (int)value;
@@ -146,6 +168,9 @@ public static VariableLengthInteger decode( @NonNull ByteBuffer buffer ) {
             // out of bounds to encode
             return null;
         }
+        else if ( value < Cache.VALUES.length ) {
+            return Cache.VALUES[(int)value];
+        }
         else {
             return new VariableLengthInteger( value, encodedLengthInBytes );
         }
@@ -174,7 +199,7 @@ public int encode( @NonNull ByteBuffer buffer ) {
      * @throws IllegalArgumentException if this is already the largest possible variable length integer
      */
     public VariableLengthInteger increment() {
-        return new VariableLengthInteger( value + 1 );
+        return valueOf( value + 1 );
     }
 
     /**
@@ -186,7 +211,7 @@ public VariableLengthInteger increment() {
      * @throws IllegalArgumentException if this is already the largest possible variable length integer
      */
     public VariableLengthInteger increment( long incrementStep ) {
-        return new VariableLengthInteger( value + incrementStep );
+        return valueOf( value + incrementStep );
     }
 
     /**
@@ -196,7 +221,7 @@ public VariableLengthInteger increment( long incrementStep ) {
      * @throws IllegalArgumentException if this is already the smallest possible variable length integer
      */
     public VariableLengthInteger decrement() {
-        return new VariableLengthInteger( value - 1 );
+        return valueOf( value - 1 );
     }
 
     /**
@@ -208,6 +233,33 @@ public VariableLengthInteger decrement() {
      * @throws IllegalArgumentException if this is already the largest possible variable length integer
      */
     public VariableLengthInteger decrement( long decrementStep ) {
-        return new VariableLengthInteger( value - decrementStep );
+        return valueOf( value - decrementStep );
+    }
+
+    /**
+     * holds the instances returned by {@link #valueOf(long)}, created when first used
+     */
+    private static final class Cache {
+
+        private static final VariableLengthInteger[] VALUES;
+
+        static {
+            int high = 1023;
+            String configured = System.getProperty( CACHE_HIGH_PROPERTY );
+            if ( configured != null ) {
+                try {
+                    high = Integer.parseInt( configured.trim() );
+                }
+                catch ( NumberFormatException ignored ) {
+                    // keep the default
+                }
+            }
+            high = (int)Math.max( VariableLengthIntegerEncoder.MAX_VALUE_1_BYTE,
+                    Math.min( VariableLengthIntegerEncoder.MAX_VALUE_2_BYTE, high ) );
+            VALUES = new VariableLengthInteger[high + 1];
+            for ( int i = 0; i < VALUES.length; i++ ) {
+                VALUES[i] = new VariableLengthInteger( i, VariableLengthIntegerEncoder.getLengthInBytes( i ) );
+            }
+        }
     }
 }
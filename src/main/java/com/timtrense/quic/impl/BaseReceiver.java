@@ -0,0 +1,161 @@
+package com.timtrense.quic.impl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.channels.AsynchronousCloseException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Base class for the datagram receiving threads.
+ * Subclasses implement the actual receiving from their respective source, while this class
+ * implements offering the {@link ReceivedDatagram received datagrams} to the target queue
+ * and notifying {@link ReceiverStateListener listeners}.
+ *
+ * @author Tim Trense
+ */
+@EqualsAndHashCode( callSuper = true )
+public abstract class BaseReceiver extends Thread {
+
+    /**
+     * The queue to write received datagrams to
+     */
+    @Getter
+    private final @NonNull BlockingQueue<ReceivedDatagram> receivedQueue;
+    /**
+     * all registered listeners to notify about state changes
+     */
+    private final Set<ReceiverStateListener> stateListenerSet = new HashSet<>();
+    /**
+     * The number of milliseconds the {@link #getReceivedQueue() target received queue} may block before allowing
+     * the receiver to offer a new, received datagram. If this timeout elapses before the receiver can put
+     * the new datagram to the queue, the receiver will go to {@link ReceiverState#ERROR} and will be stopped
+     */
+    @Getter
+    private int receivedQueueBlockTimeout;
+    /**
+     * the current state
+     */
+    @Getter
+    private ReceiverState receiverState;
+
+    /**
+     * Creates a new receiver, writing to the given target queue
+     *
+     * @param receivedQueue the queue to offer all received datagrams to
+     * @param configuration the initial configuration to apply
+     * @param threadName    the name of the receiving thread
+     */
+    protected BaseReceiver(
+            @NonNull BlockingQueue<ReceivedDatagram> receivedQueue,
+            @NonNull EndpointConfiguration configuration,
+            @NonNull String threadName
+    ) {
+        this.receivedQueue = receivedQueue;
+        setReceivedQueueBlockTimeout( configuration.getReceiverReceivedQueueBlockTimeout() );
+        this.receiverState = ReceiverState.NEW;
+
+        setDaemon( true );
+        setName( threadName );
+    }
+
+    /**
+     * Blocks until the next datagram is received from the source
+     *
+     * @param number the counter to give to the received datagram
+     * @return the received datagram, never null
+     * @throws IOException if receiving fails
+     */
+    protected abstract ReceivedDatagram receive( long number ) throws IOException;
+
+    @Override
+    public void run() {
+        setReceiverState( ReceiverState.ACTIVE );
+        long counter = 0;
+        boolean offered;
+        try {
+            while ( !isInterrupted() ) {
+                try {
+                    ReceivedDatagram receivedDatagram = receive( counter++ );
+                    offered = receivedQueue.offer(
+                            receivedDatagram,
+                            receivedQueueBlockTimeout,
+                            TimeUnit.MILLISECONDS
+                    );
+                    if ( !offered ) {
+                        throw new IOException( "Timeout on offering a ReceivedDatagram to the target queue" );
+                    }
+                }
+                catch ( InterruptedIOException | AsynchronousCloseException | InterruptedException ignored ) {
+                    Thread.currentThread().interrupt();
+                    break;
+                }
+            }
+            setReceiverState( ReceiverState.STOP );
+        }
+        catch ( IOException e ) {
+            e.printStackTrace();
+            setReceiverState( ReceiverState.ERROR );
+        }
+    }
+
+    /**
+     * adds a listener to this receiver
+     *
+     * @param listener the listener to add
+     */
+    public void addListener( @NonNull ReceiverStateListener listener ) {
+        synchronized( stateListenerSet ) {
+            stateListenerSet.add( listener );
+        }
+    }
+
+    /**
+     * removes the listener from this receiver
+     *
+     * @param listener the listener to remove
+     */
+    public void removeListener( @NonNull ReceiverStateListener listener ) {
+        synchronized( stateListenerSet ) {
+            stateListenerSet.remove( listener );
+        }
+    }
+
+    /**
+     * sets the value corresponding to {@link #getReceivedQueueBlockTimeout()}
+     *
+     * @param receivedQueueBlockTimeout the positive timeout in milliseconds to set
+     */
+    public void setReceivedQueueBlockTimeout( int receivedQueueBlockTimeout ) {
+        if ( receivedQueueBlockTimeout <= 0 ) {
+            throw new IllegalArgumentException( "Cannot set a non-positive" +
+                    " receiveTargetBlockingTimeout for a Receiver" );
+        }
+        this.receivedQueueBlockTimeout = receivedQueueBlockTimeout;
+    }
+
+    /**
+     * calls all listeners and then updates the current state.
+     * does no state transition allowance checks, thus is private
+     *
+     * @param newState the new state to transition to
+     */
+    private void setReceiverState( @NonNull ReceiverState newState ) {
+        synchronized( stateListenerSet ) {
+            stateListenerSet.forEach( l -> {
+                try {
+                    l.beforeStateChange( BaseReceiver.this, newState );
+                }
+                catch ( Exception e ) {
+                    e.printStackTrace();
+                }
+            } );
+        }
+        receiverState = newState;
+    }
+}
@@ -0,0 +1,133 @@
+package com.timtrense.quic.impl;
+
+import java.net.DatagramPacket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
+
+/**
+ * A pool of {@link ByteBuffer byte buffers} to receive datagrams into, that holds buffers that are yet to be used
+ * while accepting to {@link #giveBack(ByteBuffer) give back} buffers that were used.
+ * Like the {@link DatagramPool}, this pool is lock-free and keeps counters of its hits, misses and allocations.
+ *
+ * @author Tim Trense
+ * @see DatagramPool
+ */
+public class ByteBufferPool implements DatagramRecycler {
+
+    /**
+     * The INTERNAL slots to poll free buffers from
+     */
+    private final SlotPool<ByteBuffer> pool;
+
+    /**
+     * number of buffers allocated by {@link #take()}
+     */
+    private final LongAdder allocations = new LongAdder();
+
+    /**
+     * The number of bytes that each buffer can hold
+     */
+    @Getter
+    private final int maxDatagramSize;
+
+    /**
+     * Whether the pool allocates direct buffers
+     */
+    @Getter
+    private final boolean direct;
+
+    /**
+     * Creates a new pool that holds buffers that all have a capacity of exactly maxDatagramSize bytes
+     *
+     * @param poolSizeLimit   the maximum number of simultaneously hold buffers in the pool.
+     *                        Any more given back buffers will be discarded.
+     * @param maxDatagramSize {@link #maxDatagramSize}
+     * @param direct          {@link #direct}
+     */
+    public ByteBufferPool( int poolSizeLimit, int maxDatagramSize, boolean direct ) {
+        if ( maxDatagramSize <= 0 ) {
+            throw new IllegalArgumentException( "Cannot set a non-positive maxDatagramSize" );
+        }
+        this.pool = new SlotPool<>( poolSizeLimit );
+        this.maxDatagramSize = maxDatagramSize;
+        this.direct = direct;
+    }
+
+    /**
+     * polls a cleared {@link ByteBuffer} from the pool if available, otherwise allocates one.
+     *
+     * @return a usable buffer, positioned at 0 and limited to its capacity, never null
+     */
+    public ByteBuffer take() {
+        ByteBuffer buffer = pool.poll();
+        if ( buffer == null ) {
+            allocations.increment();
+            return direct ? ByteBuffer.allocateDirect( maxDatagramSize ) : ByteBuffer.allocate( maxDatagramSize );
+        }
+        return buffer;
+    }
+
+    /**
+     * @return the limit on the size if the buffering queue of buffers
+     */
+    public int getPoolSizeLimit() {
+        return pool.capacity();
+    }
+
+    /**
+     * @return the number of {@link #take()} calls that were served from the pool
+     */
+    public long getHitCount() {
+        return pool.getHitCount();
+    }
+
+    /**
+     * @return the number of {@link #take()} calls that found no pooled buffer
+     */
+    public long getMissCount() {
+        return pool.getMissCount();
+    }
+
+    /**
+     * @return the number of buffers that were newly allocated
+     */
+    public long getAllocationCount() {
+        return allocations.sum();
+    }
+
+    /**
+     * @return the number of buffers accepted by {@link #giveBack(ByteBuffer)}
+     */
+    public long getRecycleCount() {
+        return pool.getRecycleCount();
+    }
+
+    /**
+     * @return the number of buffers that were dropped, either because the pool was full or they did not fit
+     */
+    public long getDiscardCount() {
+        return pool.getDiscardCount();
+    }
+
+    @Override
+    public boolean giveBack( ByteBuffer buffer ) {
+        if ( buffer.capacity() != maxDatagramSize || buffer.isDirect() != direct || buffer.isReadOnly() ) {
+            pool.discard();
+            return false;
+        }
+        buffer.clear();
+        return pool.offer( buffer );
+    }
+
+    /**
+     * This pool only holds {@link ByteBuffer byte buffers}
+     *
+     * @param datagramPacket ignored
+     * @return always false
+     */
+    @Override
+    public boolean giveBack( DatagramPacket datagramPacket ) {
+        return false;
+    }
+}
@@ -0,0 +1,140 @@
+package com.timtrense.quic.impl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.time.Instant;
+import java.util.concurrent.BlockingQueue;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * The datagrams receiving thread based on a {@link DatagramChannel}.
+ * <p>
+ * Datagrams are read into pooled direct {@link ByteBuffer buffers}, so that the kernel can copy
+ * the received data straight into them and the parsing pipeline operates on them without further copying.
+ * The {@link ReceivedDatagram received datagrams} carry those buffers and must be
+ * {@link DatagramRecycler#giveBack(ByteBuffer) given back} to the {@link #getBufferPool() pool} after parsing.
+ * <p>
+ * The channel may be in non-blocking mode, so that it can be shared with the {@link Sender} of the endpoint,
+ * which has to answer from the same local address and port that the peer addressed.
+ * In that case the receiver waits on a selector until a datagram is available.
+ *
+ * @author Tim Trense
+ * @see Receiver
+ */
+@EqualsAndHashCode( callSuper = true )
+public class ChannelReceiver extends BaseReceiver {
+
+    /**
+     * The INTERNAL pool to take empty, yet to fill, buffers from
+     */
+    @Getter
+    private final ByteBufferPool bufferPool;
+    /**
+     * The channel to receive from. Its blocking mode must not change after creating the receiver.
+     */
+    @Getter
+    private final @NonNull DatagramChannel channel;
+    /**
+     * the selector to wait on while no datagram is available, null if the channel is in blocking mode
+     */
+    private final Selector selector;
+
+    /**
+     * Creates a new receiver, reading from the given channel to the given target queue
+     *
+     * @param channel       the source to read datagrams from
+     * @param receivedQueue the queue to offer all received datagrams to
+     * @param configuration the initial configuration to apply
+     * @throws IOException if no selector can be opened for a non-blocking channel
+     */
+    public ChannelReceiver(
+            @NonNull DatagramChannel channel,
+            @NonNull BlockingQueue<ReceivedDatagram> receivedQueue,
+            @NonNull EndpointConfiguration configuration
+    ) throws IOException {
+        this( channel, receivedQueue, configuration, configuration.getEndpointName() + ".ChannelReceiver" );
+    }
+
+    /**
+     * Creates a new receiver, reading from the given channel to the given target queue
+     *
+     * @param channel       the source to read datagrams from
+     * @param receivedQueue the queue to offer all received datagrams to
+     * @param configuration the initial configuration to apply
+     * @param threadName    the name of the receiving thread
+     * @throws IOException if no selector can be opened for a non-blocking channel
+     */
+    public ChannelReceiver(
+            @NonNull DatagramChannel channel,
+            @NonNull BlockingQueue<ReceivedDatagram> receivedQueue,
+            @NonNull EndpointConfiguration configuration,
+            @NonNull String threadName
+    ) throws IOException {
+        super( receivedQueue, configuration, threadName );
+        this.channel = channel;
+        if ( channel.isBlocking() ) {
+            this.selector = null;
+        }
+        else {
+            this.selector = Selector.open();
+            channel.register( selector, SelectionKey.OP_READ );
+        }
+        this.bufferPool = new ByteBufferPool(
+                configuration.getReceiveDatagramQueueSizeLimit(),
+                configuration.getMaxDatagramSize(),
+                true
+        );
+    }
+
+    @Override
+    public void run() {
+        try {
+            super.run();
+        }
+        finally {
+            if ( selector != null ) {
+                try {
+                    selector.close();
+                }
+                catch ( IOException e ) {
+                    e.printStackTrace();
+                }
+            }
+        }
+    }
+
+    @Override
+    protected ReceivedDatagram receive( long number ) throws IOException {
+        ByteBuffer buffer = bufferPool.take();
+        SocketAddress sender;
+        try {
+            // a non-blocking channel gives null while no datagram is available
+            while ( ( sender = channel.receive( buffer ) ) == null ) {
+                selector.select();
+                selector.selectedKeys().clear();
+                if ( isInterrupted() ) {
+                    throw new InterruptedIOException( "Interrupted while waiting for a datagram" );
+                }
+            }
+        }
+        catch ( IOException e ) {
+            bufferPool.giveBack( buffer );
+            throw e;
+        }
+        buffer.flip();
+        return new ReceivedDatagram(
+                buffer,
+                sender,
+                Instant.now(),
+                number,
+                (short)0
+        );
+    }
+}
@@ -4,6 +4,8 @@
 
 import com.timtrense.quic.ConnectionId;
 import com.timtrense.quic.EncryptionLevel;
+import com.timtrense.quic.PacketNumberSpace;
+import com.timtrense.quic.impl.recovery.ReceivedPacketTracker;
 
 /**
  * Basic abstraction of a QUIC connection
@@ -32,4 +34,28 @@ public interface Connection {
      */
     PacketProtection getPacketProtection( EncryptionLevel encryptionLevel );
 
+    /**
+     * Provides the handler that receives the frames of the packets of this connection at the given level
+     * while they are parsed, so that no {@link com.timtrense.quic.Frame} objects are materialized.
+     * The handler is called from parsing threads and must copy the byte fields it keeps, see {@link FrameHandler}.
+     *
+     * @param encryptionLevel the protection level of the parsed packets, not null
+     * @return the handler or null to collect the frames into the payload of the packets, which is the default
+     */
+    default FrameHandler getFrameHandler( EncryptionLevel encryptionLevel ) {
+        return null;
+    }
+
+    /**
+     * The tracker of the packet numbers received in the given space. Its
+     * {@link ReceivedPacketTracker#getLargestReceived() largest received} packet number is read from parsing threads
+     * to decode the truncated packet numbers of that space.
+     *
+     * @param space the packet number space, not null
+     * @return the tracker or null if no packet of that space can be received yet, which is the default
+     */
+    default ReceivedPacketTracker getReceivedPacketTracker( PacketNumberSpace space ) {
+        return null;
+    }
+
 }
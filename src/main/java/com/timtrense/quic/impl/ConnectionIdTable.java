@@ -0,0 +1,448 @@
+package com.timtrense.quic.impl;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.BiConsumer;
+import lombok.Getter;
+import lombok.NonNull;
+
+import com.timtrense.quic.ConnectionId;
+
+/**
+ * Lookup table from local {@link ConnectionId connection IDs} to the {@link Connection} they identify.
+ * <p>
+ * The table is keyed by the serialized form of the connection ID, so that a lookup can be done directly on
+ * the header bytes of a received datagram, without wrapping the ID into a {@link ConnectionId} first.
+ * <p>
+ * The table uses open addressing with linear probing. Lookups are lock-free and may be done from any number
+ * of threads concurrently (eg. from multiple {@link DatagramParser parsers}), while modifications are serialized
+ * on the table instance. Readers never block writers and vice versa.
+ * <p>
+ * Because connection IDs in the Destination Connection ID field of Initial packets are chosen by the peer,
+ * the hash function is seeded per table to make collisions hard to provoke from the outside.
+ *
+ * @author Tim Trense
+ */
+public class ConnectionIdTable {
+
+    /**
+     * the default number of slots of a new table
+     */
+    public static final int DEFAULT_INITIAL_CAPACITY = 64;
+
+    /**
+     * marker for a slot whose entry was removed. Readers must continue probing beyond it
+     */
+    private static final Entry REMOVED = new Entry( new byte[0], 0, null, null );
+
+    /**
+     * the seed for {@link #hash(byte[], int, int)}
+     */
+    private final int hashSeed;
+    /**
+     * the current slots. replaced as a whole on resizing
+     */
+    private volatile AtomicReferenceArray<Entry> slots;
+    /**
+     * the number of mapped connection IDs
+     */
+    private volatile int size;
+    /**
+     * the number of non-null slots, including {@link #REMOVED} markers. guarded by this
+     */
+    private int usedSlots;
+    /**
+     * bit n is set if a connection id of n bytes was ever {@link #put(ConnectionId, Connection) put}.
+     * Not cleared on removal, thus a superset of the lengths of the mapped connection ids
+     */
+    private volatile int connectionIdLengths;
+
+    /**
+     * Creates a new table with {@link #DEFAULT_INITIAL_CAPACITY} and a random hash seed
+     */
+    public ConnectionIdTable() {
+        this( DEFAULT_INITIAL_CAPACITY, ThreadLocalRandom.current().nextInt() );
+    }
+
+    /**
+     * Creates a new table
+     *
+     * @param initialCapacity the number of connection IDs to expect, the table grows beyond that if necessary
+     * @param hashSeed        the seed for hashing the connection IDs
+     */
+    public ConnectionIdTable( int initialCapacity, int hashSeed ) {
+        if ( initialCapacity <= 0 ) {
+            throw new IllegalArgumentException( "Cannot create a ConnectionIdTable with non-positive capacity" );
+        }
+        this.hashSeed = hashSeed;
+        this.slots = new AtomicReferenceArray<>( tableSizeFor( initialCapacity ) );
+    }
+
+    /**
+     * @return the number of mapped connection IDs
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return a bit set of the lengths of the connection ids that were put: bit n (that is {@code 1 << n}) is set
+     * if a connection id of n bytes was put. May contain lengths whose connection ids were removed again
+     */
+    public int getConnectionIdLengths() {
+        return connectionIdLengths;
+    }
+
+    /**
+     * Determines the length of the serialized connection id at the offset by probing the table with each of the
+     * {@link #getConnectionIdLengths() lengths} that were put, longest first.
+     * Uses absolute access to the buffer, thus does not change its position.
+     *
+     * @param data      the buffer containing the connection id, may be a direct buffer
+     * @param offset    the absolute index of the first byte of the connection id
+     * @param maxLength the number of bytes available at the offset
+     * @return the length of the mapped connection id or -1 if none is mapped
+     */
+    public int findConnectionIdLength( @NonNull ByteBuffer data, int offset, int maxLength ) {
+        int lengths = connectionIdLengths;
+        while ( lengths != 0 ) {
+            int length = 31 - Integer.numberOfLeadingZeros( lengths );
+            if ( length <= maxLength && findEntry( data, offset, length ) != null ) {
+                return length;
+            }
+            lengths &= ~( 1 << length );
+        }
+        return -1;
+    }
+
+    /**
+     * Searches the connection for the given connection id
+     *
+     * @param connectionId the local connection id
+     * @return the connection or null if that id is unknown
+     */
+    public Connection get( @NonNull ConnectionId connectionId ) {
+        byte[] key = connectionId.getValue();
+        return get( key, 0, key.length );
+    }
+
+    /**
+     * Searches the connection for the given serialized connection id
+     *
+     * @param data   the array containing the connection id
+     * @param offset the index of the first byte of the connection id
+     * @param length the length of the connection id in bytes
+     * @return the connection or null if that id is unknown
+     */
+    public Connection get( @NonNull byte[] data, int offset, int length ) {
+        Entry entry = findEntry( data, offset, length );
+        return entry == null ? null : entry.connection;
+    }
+
+    /**
+     * Searches the connection for the given serialized connection id.
+     * Uses absolute access to the buffer, thus does not change its position.
+     *
+     * @param data   the buffer containing the connection id, may be a direct buffer
+     * @param offset the absolute index of the first byte of the connection id
+     * @param length the length of the connection id in bytes
+     * @return the connection or null if that id is unknown
+     */
+    public Connection get( @NonNull ByteBuffer data, int offset, int length ) {
+        Entry entry = findEntry( data, offset, length );
+        return entry == null ? null : entry.connection;
+    }
+
+    /**
+     * Searches the registered {@link ConnectionId} instance for the given serialized connection id.
+     * Uses absolute access to the buffer, thus does not change its position.
+     *
+     * @param data   the buffer containing the connection id, may be a direct buffer
+     * @param offset the absolute index of the first byte of the connection id
+     * @param length the length of the connection id in bytes
+     * @return the connection id as it was {@link #put(ConnectionId, Connection) put} or null if unknown
+     */
+    public ConnectionId getConnectionId( @NonNull ByteBuffer data, int offset, int length ) {
+        Entry entry = findEntry( data, offset, length );
+        return entry == null ? null : entry.connectionId;
+    }
+
+    /**
+     * Searches the mapping of the given serialized connection id, which resolves both the registered
+     * {@link ConnectionId} instance and its connection in a single lookup.
+     * Uses absolute access to the buffer, thus does not change its position.
+     *
+     * @param data   the buffer containing the connection id, may be a direct buffer
+     * @param offset the absolute index of the first byte of the connection id
+     * @param length the length of the connection id in bytes
+     * @return the mapping or null if that id is unknown
+     */
+    public Entry getEntry( @NonNull ByteBuffer data, int offset, int length ) {
+        return findEntry( data, offset, length );
+    }
+
+    /**
+     * @param data   the array containing the connection id
+     * @param offset the index of the first byte of the connection id
+     * @param length the length of the connection id in bytes
+     * @return true if the connection id is mapped to a connection
+     */
+    public boolean contains( @NonNull byte[] data, int offset, int length ) {
+        return findEntry( data, offset, length ) != null;
+    }
+
+    /**
+     * Maps the connection id to the connection, replacing any previous mapping of that id
+     *
+     * @param connectionId the local connection id
+     * @param connection   the connection identified by it
+     * @return the previously mapped connection or null if there was none
+     */
+    public synchronized Connection put( @NonNull ConnectionId connectionId, @NonNull Connection connection ) {
+        byte[] key = connectionId.getValue().clone();
+        if ( key.length > 31 ) {
+            throw new IllegalArgumentException( "Cannot put a connection id of more than 31 bytes" );
+        }
+        connectionIdLengths |= 1 << key.length;
+        int hash = hash( key, 0, key.length );
+        AtomicReferenceArray<Entry> table = slots;
+        int mask = table.length() - 1;
+        int freeSlot = -1;
+        for ( int i = hash & mask; ; i = ( i + 1 ) & mask ) {
+            Entry e = table.get( i );
+            if ( e == null ) {
+                if ( freeSlot < 0 ) {
+                    freeSlot = i;
+                }
+                break;
+            }
+            if ( e == REMOVED ) {
+                if ( freeSlot < 0 ) {
+                    freeSlot = i;
+                }
+            }
+            else if ( e.hash == hash && e.matches( key, 0, key.length ) ) {
+                table.set( i, new Entry( key, hash, connectionId, connection ) );
+                return e.connection;
+            }
+        }
+
+        if ( table.get( freeSlot ) == null ) {
+            if ( ( usedSlots + 1 ) * 4 > table.length() * 3 ) {
+                // keep at least a quarter of the slots null, so that probing always terminates quickly
+                table = rehash( Math.max( size + 1, table.length() / 2 ) );
+                mask = table.length() - 1;
+                for ( freeSlot = hash & mask; table.get( freeSlot ) != null; freeSlot = ( freeSlot + 1 ) & mask ) {
+                    // find the first free slot in the new table which has no markers
+                }
+            }
+            usedSlots++;
+        }
+        table.set( freeSlot, new Entry( key, hash, connectionId, connection ) );
+        size++;
+        return null;
+    }
+
+    /**
+     * Removes the mapping of the connection id
+     *
+     * @param connectionId the local connection id
+     * @return the connection that was mapped or null if there was none
+     */
+    public synchronized Connection remove( @NonNull ConnectionId connectionId ) {
+        byte[] key = connectionId.getValue();
+        int hash = hash( key, 0, key.length );
+        AtomicReferenceArray<Entry> table = slots;
+        int mask = table.length() - 1;
+        for ( int i = hash & mask; ; i = ( i + 1 ) & mask ) {
+            Entry e = table.get( i );
+            if ( e == null ) {
+                return null;
+            }
+            if ( e != REMOVED && e.hash == hash && e.matches( key, 0, key.length ) ) {
+                table.set( i, REMOVED );
+                size--;
+                return e.connection;
+            }
+        }
+    }
+
+    /**
+     * Removes all connection ids that map to the given connection, eg. when the connection is closed
+     *
+     * @param connection the connection to unmap
+     * @return the number of removed connection ids
+     */
+    public synchronized int removeAll( @NonNull Connection connection ) {
+        AtomicReferenceArray<Entry> table = slots;
+        int removed = 0;
+        for ( int i = 0; i < table.length(); i++ ) {
+            Entry e = table.get( i );
+            if ( e != null && e != REMOVED && e.connection == connection ) {
+                table.set( i, REMOVED );
+                removed++;
+            }
+        }
+        size -= removed;
+        return removed;
+    }
+
+    /**
+     * Iterates all mappings of a consistent snapshot of this table.
+     * Concurrent modifications may or may not be visible to the action.
+     *
+     * @param action the action to perform for each mapping
+     */
+    public void forEach( @NonNull BiConsumer<ConnectionId, Connection> action ) {
+        AtomicReferenceArray<Entry> table = slots;
+        for ( int i = 0; i < table.length(); i++ ) {
+            Entry e = table.get( i );
+            if ( e != null && e != REMOVED ) {
+                action.accept( e.connectionId, e.connection );
+            }
+        }
+    }
+
+    private Entry findEntry( byte[] data, int offset, int length ) {
+        int hash = hash( data, offset, length );
+        AtomicReferenceArray<Entry> table = slots;
+        int mask = table.length() - 1;
+        for ( int i = hash & mask; ; i = ( i + 1 ) & mask ) {
+            Entry e = table.get( i );
+            if ( e == null ) {
+                return null;
+            }
+            if ( e != REMOVED && e.hash == hash && e.matches( data, offset, length ) ) {
+                return e;
+            }
+        }
+    }
+
+    private Entry findEntry( ByteBuffer data, int offset, int length ) {
+        if ( data.hasArray() ) {
+            return findEntry( data.array(), data.arrayOffset() + offset, length );
+        }
+        int hash = hash( data, offset, length );
+        AtomicReferenceArray<Entry> table = slots;
+        int mask = table.length() - 1;
+        for ( int i = hash & mask; ; i = ( i + 1 ) & mask ) {
+            Entry e = table.get( i );
+            if ( e == null ) {
+                return null;
+            }
+            if ( e != REMOVED && e.hash == hash && e.matches( data, offset, length ) ) {
+                return e;
+            }
+        }
+    }
+
+    /**
+     * copies all live entries to a new table and publishes it. must be called holding the lock
+     *
+     * @param expectedSize the number of entries to make room for
+     * @return the new table
+     */
+    private AtomicReferenceArray<Entry> rehash( int expectedSize ) {
+        AtomicReferenceArray<Entry> oldTable = slots;
+        AtomicReferenceArray<Entry> newTable = new AtomicReferenceArray<>( tableSizeFor( expectedSize * 2 ) );
+        int mask = newTable.length() - 1;
+        int used = 0;
+        for ( int i = 0; i < oldTable.length(); i++ ) {
+            Entry e = oldTable.get( i );
+            if ( e == null || e == REMOVED ) {
+                continue;
+            }
+            int j = e.hash & mask;
+            while ( newTable.get( j ) != null ) {
+                j = ( j + 1 ) & mask;
+            }
+            newTable.set( j, e );
+            used++;
+        }
+        usedSlots = used;
+        slots = newTable;
+        return newTable;
+    }
+
+    private int hash( byte[] data, int offset, int length ) {
+        int h = hashSeed ^ length;
+        for ( int i = offset; i < offset + length; i++ ) {
+            h = ( h ^ ( data[i] & 0xff ) ) * 0x01000193; // FNV-1a prime
+        }
+        return finalizeHash( h );
+    }
+
+    private int hash( ByteBuffer data, int offset, int length ) {
+        int h = hashSeed ^ length;
+        for ( int i = offset; i < offset + length; i++ ) {
+            h = ( h ^ ( data.get( i ) & 0xff ) ) * 0x01000193; // FNV-1a prime
+        }
+        return finalizeHash( h );
+    }
+
+    private static int finalizeHash( int h ) {
+        // murmur3 finalizer, spreads the entropy to the low bits that are used for indexing
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    private static int tableSizeFor( int capacity ) {
+        int n = Integer.highestOneBit( Math.max( capacity, 2 ) - 1 ) << 1;
+        return n < 0 ? ( 1 << 30 ) : n;
+    }
+
+    /**
+     * immutable mapping of one connection id
+     */
+    public static final class Entry {
+
+        private final byte[] key;
+        private final int hash;
+        /**
+         * the connection id as it was {@link #put(ConnectionId, Connection) put}
+         */
+        @Getter
+        private final ConnectionId connectionId;
+        /**
+         * the connection identified by the connection id
+         */
+        @Getter
+        private final Connection connection;
+
+        private Entry( byte[] key, int hash, ConnectionId connectionId, Connection connection ) {
+            this.key = key;
+            this.hash = hash;
+            this.connectionId = connectionId;
+            this.connection = connection;
+        }
+
+        private boolean matches( byte[] data, int offset, int length ) {
+            if ( key.length != length ) {
+                return false;
+            }
+            for ( int i = 0; i < length; i++ ) {
+                if ( key[i] != data[offset + i] ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean matches( ByteBuffer data, int offset, int length ) {
+            if ( key.length != length ) {
+                return false;
+            }
+            for ( int i = 0; i < length; i++ ) {
+                if ( key[i] != data.get( offset + i ) ) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
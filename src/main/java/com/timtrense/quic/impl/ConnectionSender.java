@@ -0,0 +1,88 @@
+package com.timtrense.quic.impl;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+/**
+ * Hands the datagrams {@link PacketAssembler#assemble(long) assembled} for one connection over to the
+ * {@link Sender} of the endpoint.
+ * <p>
+ * An assembled datagram already consumed its packet numbers and its frames were reported as sent, thus it must
+ * not be dropped. If the {@link Sender#getSendQueue() send queue} does not accept it within the
+ * {@link Sender#getSendQueueBlockTimeout() timeout}, because the socket would block, the datagram is kept and
+ * retried by the next call, and no further datagram is assembled until it was accepted.
+ * Thus the backpressure of the socket reaches the assembler.
+ * Instances are not thread-safe, they must be used by the thread using the assembler.
+ *
+ * @author Tim Trense
+ */
+public class ConnectionSender {
+
+    /**
+     * The assembler of the datagrams of the connection
+     */
+    @Getter
+    private final @NonNull PacketAssembler assembler;
+    /**
+     * The sender of the endpoint
+     */
+    @Getter
+    private final @NonNull Sender sender;
+    /**
+     * The address of the peer or null if the channel of the sender is connected
+     */
+    @Getter
+    @Setter
+    private SocketAddress peerAddress;
+    /**
+     * the assembled datagram that the sender did not yet accept or null
+     */
+    private OutgoingDatagram pending;
+
+    /**
+     * @param assembler the assembler of the datagrams of the connection
+     * @param sender    the sender of the endpoint
+     */
+    public ConnectionSender( @NonNull PacketAssembler assembler, @NonNull Sender sender ) {
+        this.assembler = assembler;
+        this.sender = sender;
+    }
+
+    /**
+     * Hands the next datagram over to the sender. That is the datagram that was not accepted by the previous call
+     * or else a newly assembled one.
+     *
+     * @param now the current time in nanoseconds
+     * @return the size in bytes of the datagram accepted by the sender or 0 if there is nothing to send or the
+     * sender did not accept the datagram, see {@link #isBlocked()}
+     * @throws GeneralSecurityException if sealing the datagram fails
+     * @throws InterruptedException     if interrupted while waiting for the sender
+     */
+    public int sendNextDatagram( long now ) throws GeneralSecurityException, InterruptedException {
+        if ( pending == null ) {
+            ByteBuffer datagram = assembler.assemble( now );
+            if ( datagram == null ) {
+                return 0;
+            }
+            pending = new OutgoingDatagram( datagram, peerAddress, assembler.getBufferPool() );
+        }
+        // the buffer belongs to the sender once accepted
+        int size = pending.getBuffer().remaining();
+        if ( !sender.send( pending ) ) {
+            return 0;
+        }
+        pending = null;
+        return size;
+    }
+
+    /**
+     * @return whether an assembled datagram waits to be accepted by the sender
+     */
+    public boolean isBlocked() {
+        return pending != null;
+    }
+}
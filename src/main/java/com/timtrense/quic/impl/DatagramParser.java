@@ -1,20 +1,21 @@
 package com.timtrense.quic.impl;
 
 import java.io.IOException;
-import java.net.DatagramPacket;
 import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
 import java.util.ArrayList;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
 import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import lombok.Getter;
 import lombok.NonNull;
 import lombok.Setter;
 
 import com.timtrense.quic.ConnectionId;
+import com.timtrense.quic.EncryptionLevel;
 import com.timtrense.quic.Packet;
 import com.timtrense.quic.impl.exception.MalformedDatagramException;
 import com.timtrense.quic.impl.exception.OutOfOrderProtectedPacketException;
@@ -62,6 +63,32 @@ public class DatagramParser implements Runnable {
      */
     private final Set<DatagramParserStateListener> stateListenerSet = new HashSet<>();
 
+    /**
+     * holds the datagrams that could not be parsed because their keys were not yet available
+     */
+    @Getter
+    private final @NonNull OutOfOrderPacketBuffer outOfOrderBuffer;
+    /**
+     * The number of times a datagram may be held in the {@link #getOutOfOrderBuffer() out-of-order buffer}
+     * before being dropped
+     */
+    @Getter
+    @Setter
+    private int maxParseRetryCount;
+    /**
+     * {@link System#nanoTime()} when the parser became {@link DatagramParserState#ACTIVE}
+     */
+    private volatile long activeSinceNanos;
+    /**
+     * the accumulated nanoseconds spent on parsing instead of waiting for datagrams
+     */
+    private volatile long busyNanos;
+    /**
+     * the number of datagrams taken from the {@link #getParseQueue() parse queue}
+     */
+    @Getter
+    private volatile long parsedDatagramCount;
+
     /**
      * The algorithm used to parse packets
      */
@@ -81,7 +108,18 @@ public DatagramParser(
             @NonNull PacketParser packetParser
     ) {
         this.parsedQueue = targetReceivedQueue;
-        this.parseQueue = new LinkedBlockingQueue<>( configuration.getParseDatagramQueueSizeLimit() );
+        // the parser itself re-offers out-of-order datagrams, thus the queue always has more than one producer
+        this.parseQueue = configuration.getHandoffQueueType().create(
+                configuration.getParseDatagramQueueSizeLimit(),
+                configuration.getHandoffWaitStrategy(),
+                false
+        );
+        this.outOfOrderBuffer = new OutOfOrderPacketBuffer(
+                configuration.getOutOfOrderDatagramLimit(),
+                configuration.getOutOfOrderByteLimit(),
+                Duration.ofMillis( configuration.getOutOfOrderTimeToLive() )
+        );
+        this.maxParseRetryCount = configuration.getMaxParseRetryCount();
         this.packetParser = packetParser;
         setParsedQueueBlockTimeout( configuration.getParsedTargetBlockingTimeout() );
         this.state = DatagramParserState.NEW;
@@ -90,9 +128,10 @@ public DatagramParser(
     @Override
     public void run() {
         setState( DatagramParserState.ACTIVE );
-        boolean offered;
         List<Packet> packets = new ArrayList<>( 5 );
-        DatagramPacket datagram = null;
+        ReceivedDatagram datagram = null;
+        long busySince = 0;
+        activeSinceNanos = System.nanoTime();
         try {
             parsingPackets:
             while ( !Thread.currentThread().isInterrupted() ) {
@@ -101,17 +140,26 @@ public void run() {
                         datagramRecycler.giveBack( datagram );
                     }
                     packets.clear();
+                    outOfOrderBuffer.evictExpired( Instant.now(), this::recycle );
+                    if ( busySince != 0 ) {
+                        busyNanos += System.nanoTime() - busySince;
+                    }
 
                     ReceivedDatagram receivedDatagram;
                     receivedDatagram = parseQueue.take();
-                    datagram = receivedDatagram.getDatagram();
+                    busySince = System.nanoTime();
+                    parsedDatagramCount++;
+                    datagram = receivedDatagram;
 
+                    ByteBuffer data = receivedDatagram.getPayload();
+                    int firstByte = data.position();
+                    // continue behind the packets that were already parsed before the datagram was held
+                    data.position( firstByte + receivedDatagram.getResumeOffset() );
+                    int packetIndex = receivedDatagram.getResumePacketIndex();
+                    int packetStart = data.position();
                     try {
-                        ByteBuffer data = ByteBuffer.wrap( datagram.getData(),
-                                datagram.getOffset(), datagram.getLength() );
-
-                        int packetIndex = 0;
                         while ( data.remaining() > 0 ) {
+                            packetStart = data.position();
                             Packet p = packetParser.parsePacket( receivedDatagram, data, packetIndex );
                             if ( p == null ) {
                                 throw new MalformedDatagramException( receivedDatagram, data );
@@ -121,13 +169,17 @@ public void run() {
                         }
 
                     }
-                    catch ( OutOfOrderProtectedPacketException ignored ) {
-                        synchronized( parseQueue ) {
-                            /*offered =*/
-                            parseQueue.offer( receivedDatagram, 250, TimeUnit.MILLISECONDS );
-                            // if we cannot offer again, just drop the datagram. it was out-of-order anyway and
-                            // the peer will retransmit it if necessary
+                    catch ( OutOfOrderProtectedPacketException e ) {
+                        // the preceding packets were decrypted in place and cannot be parsed again,
+                        // so deliver them now and resume at the undecryptable packet later
+                        receivedDatagram.setResumeOffset( packetStart - firstByte );
+                        receivedDatagram.setResumePacketIndex( packetIndex );
+                        if ( hold( receivedDatagram, e ) ) {
+                            datagram = null; // do not recycle the held datagram
                         }
+                        // if we cannot hold it, just drop the datagram. it was out-of-order anyway and
+                        // the peer will retransmit it if necessary
+                        deliver( packets );
                         continue /*parsingPackets*/;
                     }
                     catch ( Exception e ) {
@@ -136,28 +188,7 @@ public void run() {
                         continue /*parsingPackets*/;
                     }
 
-                    ConnectionId connectionForDatagram = null;
-                    for ( Packet p : packets ) {
-                        if ( connectionForDatagram == null ) {
-
-                            // this cannot be null, because that would be illegal
-                            // and would have thrown an error while parsing
-                            connectionForDatagram = p.getDestinationConnectionId();
-                        }
-                        else if ( !connectionForDatagram.equals( p.getDestinationConnectionId() ) ) {
-                            // "Senders MUST NOT coalesce QUIC packets with different connection IDs into
-                            // a single UDP datagram." QUIC Spec/Section 12.2
-                            continue parsingPackets; // drop entire datagram
-                        }
-                    }
-                    for ( Packet p : packets ) {
-                        synchronized( parsedQueue ) {
-                            offered = parsedQueue.offer( p, parsedQueueBlockTimeout, TimeUnit.MILLISECONDS );
-                        }
-                        if ( !offered ) {
-                            throw new IOException( "Timeout on offering a Packet to the target queue" );
-                        }
-                    }
+                    deliver( packets );
                 }
                 catch ( InterruptedException ignored ) {
                     Thread.currentThread().interrupt();
@@ -172,13 +203,124 @@ else if ( !connectionForDatagram.equals( p.getDestinationConnectionId() ) ) {
         }
     }
 
+    /**
+     * offers the packets of one datagram to the {@link #getParsedQueue() parsed queue},
+     * unless they carry different connection ids
+     *
+     * @param packets the parsed packets of one datagram
+     * @throws InterruptedException if interrupted while offering
+     * @throws IOException          if the parsed queue did not accept a packet in time
+     */
+    private void deliver( @NonNull List<Packet> packets ) throws InterruptedException, IOException {
+        ConnectionId connectionForDatagram = null;
+        for ( Packet p : packets ) {
+            if ( connectionForDatagram == null ) {
+
+                // this cannot be null, because that would be illegal
+                // and would have thrown an error while parsing
+                connectionForDatagram = p.getDestinationConnectionId();
+            }
+            else if ( !connectionForDatagram.equals( p.getDestinationConnectionId() ) ) {
+                // "Senders MUST NOT coalesce QUIC packets with different connection IDs into
+                // a single UDP datagram." QUIC Spec/Section 12.2
+                return; // drop entire datagram
+            }
+        }
+        for ( Packet p : packets ) {
+            boolean offered = parsedQueue.offer( p, parsedQueueBlockTimeout, TimeUnit.MILLISECONDS );
+            if ( !offered ) {
+                throw new IOException( "Timeout on offering a Packet to the target queue" );
+            }
+        }
+    }
+
+    /**
+     * puts the datagram to the {@link #getOutOfOrderBuffer() out-of-order buffer} unless it was retried
+     * too often or the buffer is full
+     *
+     * @param datagram the datagram that could not be parsed
+     * @param cause    the reason for not being able to parse the datagram
+     * @return whether the datagram is held
+     */
+    private boolean hold( @NonNull ReceivedDatagram datagram, @NonNull OutOfOrderProtectedPacketException cause ) {
+        if ( cause.getConnectionId() == null || cause.getEncryptionLevel() == null ) {
+            return false; // would never be released
+        }
+        if ( datagram.getParseRetryCount() >= maxParseRetryCount ) {
+            return false;
+        }
+        datagram.setParseRetryCount( (short)( datagram.getParseRetryCount() + 1 ) );
+        return outOfOrderBuffer.hold(
+                cause.getConnectionId(),
+                cause.getEncryptionLevel(),
+                datagram,
+                Instant.now(),
+                this::recycle
+        );
+    }
+
+    /**
+     * Replays all datagrams that were held because the keys for the given connection and level
+     * were not available. Call this as soon as the keys become available. The datagrams are
+     * offered to the {@link #getParseQueue() parse queue} without blocking, thus dropped if it is full.
+     *
+     * @param connectionId    the destination connection id of the packets that can now be decrypted
+     * @param encryptionLevel the level whose keys became available
+     * @return the number of replayed datagrams
+     */
+    public int onKeysAvailable( @NonNull ConnectionId connectionId, @NonNull EncryptionLevel encryptionLevel ) {
+        int[] replayed = new int[1];
+        outOfOrderBuffer.release( connectionId, encryptionLevel, d -> {
+            if ( parseQueue.offer( d ) ) {
+                replayed[0]++;
+            }
+            else {
+                recycle( d );
+            }
+        } );
+        return replayed[0];
+    }
+
+    /**
+     * gives the datagram back to the {@link #getDatagramRecycler() recycler} if there is one
+     *
+     * @param datagram the datagram that is not used anymore
+     */
+    private void recycle( @NonNull ReceivedDatagram datagram ) {
+        DatagramRecycler recycler = datagramRecycler;
+        if ( recycler != null ) {
+            recycler.giveBack( datagram );
+        }
+    }
+
     /**
      * @return the limit on the size if the buffering queue of datagrams
      */
     public int getParseDatagramQueueSizeLimit() {
-        synchronized( parseQueue ) {
-            return parseQueue.size() + parseQueue.remainingCapacity();
+        return parseQueue.size() + parseQueue.remainingCapacity();
+    }
+
+    /**
+     * @return the number of datagrams currently waiting to be parsed
+     */
+    public int getParseQueueDepth() {
+        return parseQueue.size();
+    }
+
+    /**
+     * @return the share of time (between 0 and 1) that this parser spent on parsing instead of waiting for
+     * datagrams since it became {@link DatagramParserState#ACTIVE}. 0 if it is not yet active.
+     */
+    public double getUtilization() {
+        long activeSince = activeSinceNanos;
+        if ( activeSince == 0 ) {
+            return 0;
+        }
+        long elapsed = System.nanoTime() - activeSince;
+        if ( elapsed <= 0 ) {
+            return 0;
         }
+        return Math.min( 1.0, (double)busyNanos / elapsed );
     }
 
     /**
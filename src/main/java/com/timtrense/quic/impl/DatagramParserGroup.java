@@ -0,0 +1,285 @@
+package com.timtrense.quic.impl;
+
+import java.net.DatagramPacket;
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+import lombok.NonNull;
+
+import com.timtrense.quic.ConnectionId;
+import com.timtrense.quic.EncryptionLevel;
+import com.timtrense.quic.Packet;
+
+/**
+ * A pool of {@link DatagramParser parsers}, each running on its own thread.
+ * <p>
+ * Incoming datagrams are {@link #getDispatchQueue() dispatched} to the parsers by hashing their destination
+ * connection id, which is peeked from the unprotected part of the header without decrypting anything.
+ * All datagrams carrying the same connection id are thus parsed by the same worker and in the order they were
+ * dispatched, while header protection removal and decryption of different connections scale across cores.
+ * <p>
+ * Note that a connection changes its destination connection id during the handshake (from the random one chosen
+ * by the client to the one issued by the server), so ordering is only kept per connection id.
+ *
+ * @author Tim Trense
+ */
+public class DatagramParserGroup {
+
+    /**
+     * All parsers of this group
+     */
+    @Getter
+    private final @NonNull List<DatagramParser> workers;
+    /**
+     * The threads running the {@link #workers}, in the same order
+     */
+    private final @NonNull List<Thread> threads;
+    /**
+     * The length of all local connection ids, required to find the end of the destination connection id
+     * of short header packets
+     */
+    private final int localConnectionIdLength;
+    /**
+     * the queue that routes offered datagrams to the workers
+     */
+    @Getter
+    private final @NonNull BlockingQueue<ReceivedDatagram> dispatchQueue = new DispatchingQueue();
+
+    /**
+     * Creates a new group of {@link EndpointConfiguration#getParserCount()} parsers. The parsers are not started yet.
+     *
+     * @param targetReceivedQueue the queue that all parsers offer their packets to
+     * @param configuration       the configuration to apply
+     * @param packetParser        the algorithm to parse packets, which must be safe to use from multiple threads
+     */
+    public DatagramParserGroup(
+            @NonNull BlockingQueue<Packet> targetReceivedQueue,
+            @NonNull EndpointConfiguration configuration,
+            @NonNull PacketParser packetParser
+    ) {
+        int parserCount = configuration.getParserCount();
+        if ( parserCount <= 0 ) {
+            throw new IllegalArgumentException( "Cannot create a DatagramParserGroup with a non-positive parserCount" );
+        }
+        this.localConnectionIdLength = configuration.getLocalConnectionIdLength();
+        List<DatagramParser> createdWorkers = new ArrayList<>( parserCount );
+        List<Thread> createdThreads = new ArrayList<>( parserCount );
+        for ( int i = 0; i < parserCount; i++ ) {
+            DatagramParser worker = new DatagramParser( targetReceivedQueue, configuration, packetParser );
+            Thread thread = new Thread( worker, configuration.getEndpointName() + ".DatagramParser-" + i );
+            thread.setDaemon( true );
+            createdWorkers.add( worker );
+            createdThreads.add( thread );
+        }
+        this.workers = Collections.unmodifiableList( createdWorkers );
+        this.threads = Collections.unmodifiableList( createdThreads );
+    }
+
+    /**
+     * starts all parsing threads
+     */
+    public void start() {
+        threads.forEach( Thread::start );
+    }
+
+    /**
+     * interrupts all parsing threads
+     */
+    public void stop() {
+        threads.forEach( Thread::interrupt );
+    }
+
+    /**
+     * sets the recycler for fully parsed datagrams on all workers
+     *
+     * @param datagramRecycler the recycler or null
+     */
+    public void setDatagramRecycler( DatagramRecycler datagramRecycler ) {
+        workers.forEach( w -> w.setDatagramRecycler( datagramRecycler ) );
+    }
+
+    /**
+     * Replays the held datagrams of the given connection and level on all workers
+     *
+     * @param connectionId    the destination connection id of the packets that can now be decrypted
+     * @param encryptionLevel the level whose keys became available
+     * @return the number of replayed datagrams
+     * @see DatagramParser#onKeysAvailable(ConnectionId, EncryptionLevel)
+     */
+    public int onKeysAvailable( @NonNull ConnectionId connectionId, @NonNull EncryptionLevel encryptionLevel ) {
+        int replayed = 0;
+        for ( DatagramParser worker : workers ) {
+            replayed += worker.onKeysAvailable( connectionId, encryptionLevel );
+        }
+        return replayed;
+    }
+
+    /**
+     * @param worker the index of the worker
+     * @return the number of datagrams waiting to be parsed by that worker
+     */
+    public int getQueueDepth( int worker ) {
+        return workers.get( worker ).getParseQueueDepth();
+    }
+
+    /**
+     * @param worker the index of the worker
+     * @return the share of time (between 0 and 1) that worker spent on parsing
+     * @see DatagramParser#getUtilization()
+     */
+    public double getUtilization( int worker ) {
+        return workers.get( worker ).getUtilization();
+    }
+
+    /**
+     * @param datagram the datagram to dispatch
+     * @return the index of the worker responsible for the given datagram
+     */
+    public int selectWorker( @NonNull ReceivedDatagram datagram ) {
+        int hash = hashDestinationConnectionId( datagram, localConnectionIdLength );
+        return Math.floorMod( hash, workers.size() );
+    }
+
+    /**
+     * hashes the destination connection id of the first packet within the datagram without parsing the packet.
+     * <p>
+     * Long header packets carry the length of their destination connection id at byte 5 and the id right after.
+     * Short header packets carry the destination connection id right after the first byte, having the fixed
+     * length of all local connection ids. Datagrams that are too short to contain their connection id
+     * are hashed to 0, leaving it to the parser to drop them.
+     *
+     * @param datagram                the received datagram
+     * @param localConnectionIdLength the length of the destination connection id of short header packets
+     * @return the FNV-1a hash of the destination connection id
+     */
+    static int hashDestinationConnectionId( @NonNull ReceivedDatagram datagram, int localConnectionIdLength ) {
+        int length = datagram.getLength();
+        if ( length < 1 ) {
+            return 0;
+        }
+        int idOffset;
+        int idLength;
+        if ( ( byteAt( datagram, 0 ) & 0x80 ) != 0 ) {
+            if ( length < 6 ) {
+                return 0;
+            }
+            idOffset = 6;
+            idLength = byteAt( datagram, 5 ) & 0xFF;
+        }
+        else {
+            idOffset = 1;
+            idLength = localConnectionIdLength;
+        }
+        if ( idOffset + idLength > length ) {
+            return 0;
+        }
+        int hash = 0x811C9DC5;
+        for ( int i = 0; i < idLength; i++ ) {
+            hash ^= byteAt( datagram, idOffset + i ) & 0xFF;
+            hash *= 0x01000193;
+        }
+        return hash;
+    }
+
+    /**
+     * reads the byte at the given index of the received data, without allocating a view on it
+     *
+     * @param datagram the received datagram
+     * @param index    the index relative to the first received byte
+     * @return the byte at that index
+     */
+    private static byte byteAt( ReceivedDatagram datagram, int index ) {
+        DatagramPacket packet = datagram.getDatagram();
+        if ( packet != null ) {
+            return packet.getData()[packet.getOffset() + index];
+        }
+        return datagram.getBuffer().get( index );
+    }
+
+    /**
+     * A write-only queue that routes datagrams to the parse queue of the {@link #selectWorker(ReceivedDatagram)
+     * responsible worker}. Use it as the target queue of a {@link BaseReceiver receiver}.
+     */
+    private class DispatchingQueue extends AbstractQueue<ReceivedDatagram>
+            implements BlockingQueue<ReceivedDatagram> {
+
+        private BlockingQueue<ReceivedDatagram> target( ReceivedDatagram datagram ) {
+            return workers.get( selectWorker( datagram ) ).getParseQueue();
+        }
+
+        @Override
+        public boolean offer( @NonNull ReceivedDatagram datagram ) {
+            return target( datagram ).offer( datagram );
+        }
+
+        @Override
+        public boolean offer( @NonNull ReceivedDatagram datagram, long timeout, @NonNull TimeUnit unit )
+                throws InterruptedException {
+            return target( datagram ).offer( datagram, timeout, unit );
+        }
+
+        @Override
+        public void put( @NonNull ReceivedDatagram datagram ) throws InterruptedException {
+            target( datagram ).put( datagram );
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for ( DatagramParser worker : workers ) {
+                size += worker.getParseQueueDepth();
+            }
+            return size;
+        }
+
+        @Override
+        public int remainingCapacity() {
+            int remaining = 0;
+            for ( DatagramParser worker : workers ) {
+                remaining += worker.getParseQueue().remainingCapacity();
+            }
+            return remaining;
+        }
+
+        @Override
+        public ReceivedDatagram poll() {
+            throw new UnsupportedOperationException( "Cannot poll from a dispatching queue" );
+        }
+
+        @Override
+        public ReceivedDatagram poll( long timeout, TimeUnit unit ) {
+            throw new UnsupportedOperationException( "Cannot poll from a dispatching queue" );
+        }
+
+        @Override
+        public ReceivedDatagram take() {
+            throw new UnsupportedOperationException( "Cannot take from a dispatching queue" );
+        }
+
+        @Override
+        public ReceivedDatagram peek() {
+            throw new UnsupportedOperationException( "Cannot peek into a dispatching queue" );
+        }
+
+        @Override
+        public int drainTo( Collection<? super ReceivedDatagram> c ) {
+            throw new UnsupportedOperationException( "Cannot drain a dispatching queue" );
+        }
+
+        @Override
+        public int drainTo( Collection<? super ReceivedDatagram> c, int maxElements ) {
+            throw new UnsupportedOperationException( "Cannot drain a dispatching queue" );
+        }
+
+        @Override
+        public Iterator<ReceivedDatagram> iterator() {
+            throw new UnsupportedOperationException( "Cannot iterate a dispatching queue" );
+        }
+    }
+}
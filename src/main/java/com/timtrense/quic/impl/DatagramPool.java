@@ -1,25 +1,33 @@
 package com.timtrense.quic.impl;
 
 import java.net.DatagramPacket;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
 import lombok.Getter;
 
 /**
  * A pool of {@link DatagramPacket datagram packets} that holds datagrams that are yet to be used
  * while accepting to {@link #giveBack(DatagramPacket) give back} datagrams that were used.
+ * <p>
+ * The pool is lock-free and keeps counters of its hits, misses and allocations,
+ * so that a steady state without allocations can be verified.
  */
 public class DatagramPool implements DatagramRecycler {
 
     /**
-     * The INTERNAL queue to poll free datagrams from
+     * The INTERNAL slots to poll free datagrams from
      */
-    private final LinkedBlockingQueue<DatagramPacket> pool;
+    private final SlotPool<DatagramPacket> pool;
+
+    /**
+     * number of datagrams allocated by {@link #take()}
+     */
+    private final LongAdder allocations = new LongAdder();
 
     /**
      * The maximum number of bytes that a datagram may contain, thus the length of the allocated buffer
      */
     @Getter
-    private int maxDatagramSize;
+    private volatile int maxDatagramSize;
 
     /**
      * Creates a new pool that holds datagrams that all have exactly maxDatagramSize bytes of buffer
@@ -29,13 +37,14 @@ public class DatagramPool implements DatagramRecycler {
      * @param maxDatagramSize {@link #maxDatagramSize}
      */
     public DatagramPool( int poolSizeLimit, int maxDatagramSize ) {
-        pool = new LinkedBlockingQueue<>( poolSizeLimit );
+        pool = new SlotPool<>( poolSizeLimit );
         setMaxDatagramSize( maxDatagramSize );
     }
 
     /**
      * changes the maximum size that a {@link DatagramPacket} may contain in bytes.
      * By changing this size, all buffered datagrams are dropped and need to be reallocated.
+     * Datagrams with the old size that are given back later on will be discarded.
      *
      * @param maxDatagramSize the new limit on the datagram size
      * @throws IllegalArgumentException if the limit is non-positive
@@ -50,52 +59,92 @@ public void setMaxDatagramSize( int maxDatagramSize ) {
 
         if ( maxDatagramSize != oldMaxDatagramSize ) {
             // drop all datagrams because they now have the wrong buffer size
-            synchronized( pool ) {
-                pool.clear();
-            }
+            pool.clear();
         }
     }
 
     /**
-     * polls a {@link DatagramPacket} from the queue if available, otherwise creates one.
+     * polls a {@link DatagramPacket} from the pool if available, otherwise creates one.
      * This method may return a previously returned instance but only after that instance was
      * {@link #giveBack(DatagramPacket) given back}, although there is no guarantee that any
      * given back instance will be returned eventually.
      *
-     * @return a usable datagram, never null
+     * @return a usable datagram with a buffer of exactly {@link #getMaxDatagramSize()} bytes, never null
      */
     public DatagramPacket take() {
-        boolean isEmpty;
-        synchronized( pool ) {
-            isEmpty = pool.isEmpty();
+        int size = maxDatagramSize;
+        DatagramPacket datagram;
+        // all pooled datagrams have the current size, except for those given back concurrently to a size change
+        while ( ( datagram = pool.poll() ) != null && datagram.getData().length != size ) {
+            pool.reject();
         }
-        if ( isEmpty ) {
-            byte[] buffer = new byte[maxDatagramSize];
+        if ( datagram == null ) {
+            allocations.increment();
+            byte[] buffer = new byte[size];
             return new DatagramPacket( buffer, buffer.length );
         }
-        else {
-            synchronized( pool ) {
-                return pool.poll();
-            }
-        }
+        return datagram;
     }
 
     /**
      * @return the limit on the size if the buffering queue of datagrams
      */
     public int getPoolSizeLimit() {
-        synchronized( pool ) {
-            return pool.size() + pool.remainingCapacity();
-        }
+        return pool.capacity();
+    }
+
+    /**
+     * @return the number of {@link #take()} calls that were served from the pool
+     */
+    public long getHitCount() {
+        return pool.getHitCount();
+    }
+
+    /**
+     * @return the number of {@link #take()} calls that found no pooled datagram
+     */
+    public long getMissCount() {
+        return pool.getMissCount();
+    }
+
+    /**
+     * @return the number of datagrams that were newly allocated
+     */
+    public long getAllocationCount() {
+        return allocations.sum();
+    }
+
+    /**
+     * @return the number of datagrams accepted by {@link #giveBack(DatagramPacket)}
+     */
+    public long getRecycleCount() {
+        return pool.getRecycleCount();
     }
 
+    /**
+     * @return the number of datagrams that were dropped, either because the pool was full, they had the
+     * wrong buffer size or the {@link #setMaxDatagramSize(int) size was changed}
+     */
+    public long getDiscardCount() {
+        return pool.getDiscardCount();
+    }
+
+    /**
+     * Gives back the datagram and resets its offset and length to span its whole buffer,
+     * because receiving shrinks the length to that of the received data.
+     *
+     * @param datagramPacket the datagram to give back for re-usage
+     * @return whether the datagram was accepted, which is not the case if its buffer has not exactly
+     * {@link #getMaxDatagramSize()} bytes or the pool is full
+     */
     @Override
     public boolean giveBack( DatagramPacket datagramPacket ) {
-        synchronized( pool ) {
-            if ( datagramPacket.getLength() != maxDatagramSize ) {
-                return false;
-            }
-            return pool.offer( datagramPacket );
+        byte[] buffer = datagramPacket.getData();
+        if ( buffer.length != maxDatagramSize ) {
+            pool.discard();
+            return false;
         }
+        datagramPacket.setData( buffer );
+        return pool.offer( datagramPacket );
     }
 }
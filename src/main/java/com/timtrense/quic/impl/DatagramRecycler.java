@@ -1,9 +1,11 @@
 package com.timtrense.quic.impl;
 
 import java.net.DatagramPacket;
+import java.nio.ByteBuffer;
 
 /**
- * A disposer to re-use now-unneeded instances of {@link java.net.DatagramPacket DatagramPackets} to reduce the
+ * A disposer to re-use now-unneeded instances of {@link java.net.DatagramPacket DatagramPackets} (or the
+ * {@link ByteBuffer buffers} of datagrams received from a channel) to reduce the
  * need to re-allocate their byte-buffers
  *
  * @author Tim Trense
@@ -18,4 +20,27 @@ public interface DatagramRecycler {
      * datagrams are constraint eg. by size of their buffers)
      */
     boolean giveBack( DatagramPacket datagramPacket );
+
+    /**
+     * indicates the buffer of a datagram as not being used anymore
+     *
+     * @param buffer the buffer to give back for re-usage
+     * @return whether the buffer was accepted. The default implementation accepts none
+     */
+    default boolean giveBack( ByteBuffer buffer ) {
+        return false;
+    }
+
+    /**
+     * gives back whatever the received datagram holds
+     *
+     * @param receivedDatagram the datagram that is not used anymore
+     * @return whether the datagram or its buffer was accepted
+     */
+    default boolean giveBack( ReceivedDatagram receivedDatagram ) {
+        if ( receivedDatagram.getDatagram() != null ) {
+            return giveBack( receivedDatagram.getDatagram() );
+        }
+        return giveBack( receivedDatagram.getBuffer() );
+    }
 }
@@ -1,14 +1,18 @@
 package com.timtrense.quic.impl;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import lombok.Data;
+import lombok.Getter;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 
 import com.timtrense.quic.ConnectionId;
 import com.timtrense.quic.EncryptionLevel;
 import com.timtrense.quic.EndpointRole;
+import com.timtrense.quic.PacketNumberSpace;
+import com.timtrense.quic.impl.base.InitialPacketProtectionImpl;
+import com.timtrense.quic.impl.recovery.ReceivedPacketTracker;
 
 /**
  * An endpoint is the most high level access for an application to use QUIC.
@@ -27,7 +31,17 @@ public class Endpoint implements ParsingContext {
     /**
      * Maps local {@link ConnectionId connection IDs} to the connection
      */
-    private @NonNull Map<ConnectionId, Connection> connections = new HashMap<>();
+    private final @NonNull ConnectionIdTable connections = new ConnectionIdTable(
+            ConnectionIdTable.DEFAULT_INITIAL_CAPACITY,
+            configuration.getRandom().nextInt()
+    );
+
+    /**
+     * Caches the Initial packet protections of the handshakes in progress
+     */
+    @Getter( lazy = true )
+    private final @NonNull InitialPacketProtectionCache initialPacketProtectionCache =
+            new InitialPacketProtectionCache( role, configuration.getInitialPacketProtectionCacheSize() );
 
     /**
      * Searches the connection from one of the given local connection ids
@@ -36,12 +50,7 @@ public class Endpoint implements ParsingContext {
      * @return the connection if found
      */
     Connection findConnectionByLocalId( @NonNull ConnectionId connectionId ) {
-        for ( Map.Entry<ConnectionId, Connection> entries : connections.entrySet() ) {
-            if ( entries.getKey().equals( connectionId ) ) {
-                return entries.getValue();
-            }
-        }
-        return null;
+        return connections.get( connectionId );
     }
 
     /**
@@ -51,12 +60,19 @@ Connection findConnectionByLocalId( @NonNull ConnectionId connectionId ) {
      * @return the connection if found
      */
     Connection findConnectionByLocalId( @NonNull byte[] connectionId ) {
-        for ( Map.Entry<ConnectionId, Connection> entries : connections.entrySet() ) {
-            if ( entries.getKey().equalsValue( connectionId ) ) {
-                return entries.getValue();
-            }
-        }
-        return null;
+        return connections.get( connectionId, 0, connectionId.length );
+    }
+
+    /**
+     * Searches the connection from one of the given local connection ids, directly on the received data
+     *
+     * @param data   the buffer containing the serialized form of a local connection id
+     * @param offset the absolute index of the first byte of the connection id within data
+     * @param length the length of the connection id in bytes
+     * @return the connection if found
+     */
+    Connection findConnectionByLocalId( @NonNull ByteBuffer data, int offset, int length ) {
+        return connections.get( data, offset, length );
     }
 
     @Override
@@ -68,16 +84,61 @@ public PacketProtection getPacketProtection( ConnectionId connectionId, Encrypti
         return connection.getPacketProtection( encryptionLevel );
     }
 
+    @Override
+    public FrameHandler getFrameHandler( ConnectionId connectionId, EncryptionLevel encryptionLevel ) {
+        Connection connection = findConnectionByLocalId( connectionId );
+        if ( connection == null ) {
+            return null;
+        }
+        return connection.getFrameHandler( encryptionLevel );
+    }
+
+    @Override
+    public long getLargestReceivedPacketNumber( ConnectionId connectionId, PacketNumberSpace space ) {
+        Connection connection = findConnectionByLocalId( connectionId );
+        if ( connection == null ) {
+            return -1;
+        }
+        ReceivedPacketTracker tracker = connection.getReceivedPacketTracker( space );
+        return tracker == null ? -1 : tracker.getLargestReceived();
+    }
+
+    /**
+     * All connection ids that this endpoint issues have the {@link EndpointConfiguration#getLocalConnectionIdLength()
+     * configured length}, which is returned without a lookup. Only if connection ids of other lengths were
+     * registered, the length is found by probing the registered lengths.
+     */
+    @Override
+    public int getConnectionIdLength( @NonNull ByteBuffer data, int offset ) {
+        int length = configuration.getLocalConnectionIdLength();
+        if ( ( connections.getConnectionIdLengths() & ~( 1 << length ) ) == 0 ) {
+            return length;
+        }
+        return connections.findConnectionIdLength( data, offset, data.limit() - offset );
+    }
+
+    @Override
+    public ConnectionIdTable.Entry getLocalConnection( @NonNull ByteBuffer data, int offset, int length ) {
+        return connections.getEntry( data, offset, length );
+    }
+
+    @Override
+    public InitialPacketProtectionImpl getInitialPacketProtection( ConnectionId clientDestinationConnectionId )
+            throws GeneralSecurityException {
+        return getInitialPacketProtectionCache().get( clientDestinationConnectionId );
+    }
+
     /**
-     * @return a yet-unused 8 byte length connection id in serialized form
+     * @return a yet-unused connection id of {@link EndpointConfiguration#getLocalConnectionIdLength()} bytes
+     * in serialized form
      */
     public byte[] createRandomUnusedConnectionId() {
-        byte[] cid = new byte[8];
+        byte[] cid = new byte[configuration.getLocalConnectionIdLength()];
         do {
             configuration.getRandom().nextBytes( cid );
             // this loop will not repeat in real life, because chances of
             // having a colliding 256-pow-8 random value are near to zero
-        } while ( findConnectionByLocalId( cid ) != null );
+        } while ( connections.contains( cid, 0, cid.length ) );
         return cid;
     }
 }
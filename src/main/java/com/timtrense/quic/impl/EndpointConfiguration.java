@@ -8,6 +8,9 @@
 import com.timtrense.quic.TransportParameter;
 import com.timtrense.quic.impl.base.TransportParameterCollection;
 import com.timtrense.quic.impl.base.TransportParameterCollectionImpl;
+import com.timtrense.quic.impl.congestion.CongestionControllerType;
+import com.timtrense.quic.impl.queue.HandoffQueueType;
+import com.timtrense.quic.impl.queue.WaitStrategy;
 
 /**
  * All configuration parameters for an {@link Endpoint}
@@ -40,23 +43,133 @@ public class EndpointConfiguration {
     private int receiveDatagramQueueSizeLimit = 3;
 
     /**
-     * @see DatagramAssembler#getDatagramPool()
-     * @see DatagramPool#getPoolSizeLimit()
+     * The capacity of the queue of datagrams waiting to be sent.
+     * Should be well above the {@link #getSenderBatchSize() senderBatchSize}, so that producers
+     * can fill the queue while the sender writes a batch.
+     *
+     * @see Sender#getSendQueue()
+     */
+    private int sendDatagramQueueSizeLimit = 256;
+
+    /**
+     * @see Sender#getBatchSize()
      */
-    private int sendDatagramQueueSizeLimit = 3;
+    private int senderBatchSize = 32;
 
     /**
      * @see DatagramParser#getParseDatagramQueueSizeLimit()
      */
     private int parseDatagramQueueSizeLimit = 10;
 
+    /**
+     * The number of sockets (and thus receiving threads) that a {@link ReceiverGroup} opens on the same port.
+     * Values greater than 1 require {@link #isReusePort() reusePort}.
+     *
+     * @see ReceiverGroup#getReceivers()
+     */
+    private int receiverCount = 1;
+
+    /**
+     * Whether to set SO_REUSEPORT on the sockets of a {@link ReceiverGroup},
+     * so that the operating system distributes incoming datagrams among them (Linux 3.9+)
+     *
+     * @see ReceiverGroup#isReusePortSupported()
+     */
+    private boolean reusePort = true;
+
+    /**
+     * The kind of queues that hand over datagrams and packets between the threads of the endpoint
+     *
+     * @see DatagramParser#getParseQueue()
+     */
+    private @NonNull HandoffQueueType handoffQueueType = HandoffQueueType.LINKED_BLOCKING;
+
+    /**
+     * How threads wait on handoff queues of type {@link HandoffQueueType#RING_BUFFER}
+     */
+    private @NonNull WaitStrategy handoffWaitStrategy = WaitStrategy.PARK;
+
+    /**
+     * The number of {@link DatagramParser parsing threads} of a {@link DatagramParserGroup}
+     *
+     * @see DatagramParserGroup#getWorkers()
+     */
+    private int parserCount = 1;
+
+    /**
+     * The length in bytes of the connection ids that this endpoint issues.
+     * Because short header packets do not carry the length of their destination connection id,
+     * all local connection ids have this same length.
+     */
+    private int localConnectionIdLength = 8;
+
+    /**
+     * @see DatagramParser#getOutOfOrderBuffer()
+     * @see OutOfOrderPacketBuffer#getDatagramLimit()
+     */
+    private int outOfOrderDatagramLimit = 32;
+
+    /**
+     * @see DatagramParser#getOutOfOrderBuffer()
+     * @see OutOfOrderPacketBuffer#getByteLimit()
+     */
+    private int outOfOrderByteLimit = 65536;
+
+    /**
+     * The number of milliseconds a datagram is held in the {@link OutOfOrderPacketBuffer}
+     *
+     * @see OutOfOrderPacketBuffer#getTimeToLive()
+     */
+    private int outOfOrderTimeToLive = 3000;
+
+    /**
+     * @see DatagramParser#getMaxParseRetryCount()
+     */
+    private int maxParseRetryCount = 3;
+
+    /**
+     * The maximum number of Initial packet protections to cache, thus the number of simultaneous handshakes
+     * that do not need to re-derive their Initial keys per packet. 0 disables caching.
+     *
+     * @see InitialPacketProtectionCache#getCapacity()
+     */
+    private int initialPacketProtectionCacheSize = 256;
+
+    /**
+     * The congestion control algorithm of all connections of the endpoint, unless a connection
+     * {@link CongestionControllerType#create(int, com.timtrense.quic.impl.recovery.RttEstimator) creates}
+     * a different one
+     */
+    private @NonNull CongestionControllerType congestionControllerType = CongestionControllerType.NEW_RENO;
+
+    /**
+     * The number of microseconds per tick of the timer of the {@link PacedSendScheduler},
+     * thus the precision at which packets are paced
+     *
+     * @see com.timtrense.quic.impl.base.TimerWheel#getTickDuration()
+     */
+    private int pacingTimerTick = 100;
+
+    /**
+     * The number of buckets of the timer of the {@link PacedSendScheduler}.
+     * Delays longer than this many ticks take more than one rotation of the timer.
+     */
+    private int pacingTimerWheelSize = 512;
+
+    /**
+     * The number of datagrams that a connection may send back-to-back after being idle
+     *
+     * @see com.timtrense.quic.impl.congestion.Pacer#getBurstDatagrams()
+     */
+    private int pacingBurstDatagrams = 2;
+
     /**
      * @see Receiver#getReceivedQueueBlockTimeout()
      */
     private int receiverReceivedQueueBlockTimeout = 1000;
 
     /**
-     * @see DatagramAssembler#getSendQueueBlockTimeout()
+     * @see Sender#getSendQueueBlockTimeout()
      */
     private int assemblerSendQueueBlockTimeout = 1000;
 
@@ -0,0 +1,254 @@
+package com.timtrense.quic.impl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import lombok.Getter;
+
+import com.timtrense.quic.Frame;
+import com.timtrense.quic.FrameType;
+import com.timtrense.quic.VariableLengthInteger;
+import com.timtrense.quic.impl.base.ConnectionIdImpl;
+import com.timtrense.quic.impl.base.EcnCountImpl;
+import com.timtrense.quic.impl.base.StatelessResetTokenImpl;
+import com.timtrense.quic.impl.base.StreamIdImpl;
+import com.timtrense.quic.impl.frames.AckFrameImpl;
+import com.timtrense.quic.impl.frames.ConnectionCloseFrameImpl;
+import com.timtrense.quic.impl.frames.CryptoFrameImpl;
+import com.timtrense.quic.impl.frames.DataBlockedFrameImpl;
+import com.timtrense.quic.impl.frames.DatagramFrameImpl;
+import com.timtrense.quic.impl.frames.HandshakeDoneFrameImpl;
+import com.timtrense.quic.impl.frames.MaxDataFrameImpl;
+import com.timtrense.quic.impl.frames.MaxStreamDataFrameImpl;
+import com.timtrense.quic.impl.frames.MaxStreamsFrameImpl;
+import com.timtrense.quic.impl.frames.MultiPaddingFrameImpl;
+import com.timtrense.quic.impl.frames.NewConnectionIdFrameImpl;
+import com.timtrense.quic.impl.frames.NewTokenFrameImpl;
+import com.timtrense.quic.impl.frames.PathChallangeFrameImpl;
+import com.timtrense.quic.impl.frames.PathResponseFrameImpl;
+import com.timtrense.quic.impl.frames.PingFrameImpl;
+import com.timtrense.quic.impl.frames.ResetStreamFrameImpl;
+import com.timtrense.quic.impl.frames.RetireConnectionIdFrameImpl;
+import com.timtrense.quic.impl.frames.StopSendingFrameImpl;
+import com.timtrense.quic.impl.frames.StreamDataBlockedFrameImpl;
+import com.timtrense.quic.impl.frames.StreamFrameImpl;
+import com.timtrense.quic.impl.frames.StreamsBlockedFrameImpl;
+
+/**
+ * A {@link FrameHandler} that materializes every received frame as a {@link Frame} object.
+ * <p>
+ * This is the adapter from the push-style parsing to a {@link #getFrames() list of frames}, eg. for the
+ * handshake or for tests. The frames are handed over to other threads and outlive the received datagram, which
+ * is recycled right after parsing, so payloads are copied into read-only buffers. The allocation-free path is
+ * to handle the frames with a {@link FrameHandler} while parsing.
+ *
+ * @author Tim Trense
+ */
+public class FrameCollector implements FrameHandler {
+
+    /**
+     * The collected frames in order of their appearance
+     */
+    @Getter
+    private final List<Frame> frames = new ArrayList<>();
+    /**
+     * the type of the frame currently being parsed
+     */
+    private FrameType type;
+    /**
+     * the ACK frame currently being parsed
+     */
+    private AckFrameImpl ack;
+
+    @Override
+    public void onFrame( FrameType type, int frameIndex ) {
+        this.type = type;
+    }
+
+    @Override
+    public void onPadding( int count ) {
+        frames.add( new MultiPaddingFrameImpl( count ) );
+    }
+
+    @Override
+    public void onPing() {
+        frames.add( new PingFrameImpl( type ) );
+    }
+
+    @Override
+    public void onAck( long largestAcknowledged, long delay, long firstAckRange, long rangeCount ) {
+        ack = new AckFrameImpl( type );
+        ack.setDelay( delay );
+        ack.getRanges().startDecoding( largestAcknowledged, firstAckRange );
+        frames.add( ack );
+    }
+
+    @Override
+    public void onAckRange( long gap, long length ) {
+        ack.getRanges().appendDecoded( gap, length );
+    }
+
+    @Override
+    public void onEcnCounts( long ect0Count, long ect1Count, long ecnCeCount ) {
+        ack.setEcnCounts( Collections.singletonList( new EcnCountImpl( ect0Count, ect1Count, ecnCeCount ) ) );
+    }
+
+    @Override
+    public void onResetStream( long streamId, long applicationProtocolErrorCode, long finalSize ) {
+        ResetStreamFrameImpl frame = new ResetStreamFrameImpl( type );
+        frame.setStreamId( new StreamIdImpl( VariableLengthInteger.valueOf( streamId ) ) );
+        frame.setApplicationProtocolErrorCode( applicationProtocolErrorCode );
+        frame.setFinalSize( finalSize );
+        frames.add( frame );
+    }
+
+    @Override
+    public void onStopSending( long streamId, long applicationProtocolErrorCode ) {
+        StopSendingFrameImpl frame = new StopSendingFrameImpl( type );
+        frame.setStreamId( new StreamIdImpl( VariableLengthInteger.valueOf( streamId ) ) );
+        frame.setApplicationProtocolErrorCode( applicationProtocolErrorCode );
+        frames.add( frame );
+    }
+
+    @Override
+    public void onCrypto( long offset, ByteBuffer data, int dataOffset, int length ) {
+        CryptoFrameImpl frame = new CryptoFrameImpl( type );
+        frame.setOffset( offset );
+        frame.setLength( length );
+        frame.setCryptoData( copyToBuffer( data, dataOffset, length ) );
+        frames.add( frame );
+    }
+
+    @Override
+    public void onNewToken( ByteBuffer data, int tokenOffset, int tokenLength ) {
+        NewTokenFrameImpl frame = new NewTokenFrameImpl( type );
+        frame.setTokenLength( tokenLength );
+        frame.setToken( copyToBuffer( data, tokenOffset, tokenLength ) );
+        frames.add( frame );
+    }
+
+    @Override
+    public void onStream( long streamId, long offset, ByteBuffer data, int dataOffset, int length, boolean fin ) {
+        StreamFrameImpl frame = new StreamFrameImpl( type );
+        frame.setStreamId( new StreamIdImpl( VariableLengthInteger.valueOf( streamId ) ) );
+        frame.setOffset( offset );
+        frame.setLength( length );
+        frame.setData( copyToBuffer( data, dataOffset, length ) );
+        frames.add( frame );
+    }
+
+    @Override
+    public void onMaxData( long maximumData ) {
+        MaxDataFrameImpl frame = new MaxDataFrameImpl( type );
+        frame.setMaximumData( maximumData );
+        frames.add( frame );
+    }
+
+    @Override
+    public void onMaxStreamData( long streamId, long maximumStreamData ) {
+        MaxStreamDataFrameImpl frame = new MaxStreamDataFrameImpl( type );
+        frame.setStreamId( new StreamIdImpl( VariableLengthInteger.valueOf( streamId ) ) );
+        frame.setMaximumStreamData( maximumStreamData );
+        frames.add( frame );
+    }
+
+    @Override
+    public void onMaxStreams( boolean unidirectional, long maximumStreams ) {
+        MaxStreamsFrameImpl frame = new MaxStreamsFrameImpl( type );
+        frame.setMaximumStreams( maximumStreams );
+        frames.add( frame );
+    }
+
+    @Override
+    public void onDataBlocked( long maximumData ) {
+        DataBlockedFrameImpl frame = new DataBlockedFrameImpl( type );
+        frame.setMaximumData( maximumData );
+        frames.add( frame );
+    }
+
+    @Override
+    public void onStreamDataBlocked( long streamId, long maximumStreamData ) {
+        StreamDataBlockedFrameImpl frame = new StreamDataBlockedFrameImpl( type );
+        frame.setStreamId( new StreamIdImpl( VariableLengthInteger.valueOf( streamId ) ) );
+        frame.setMaximumStreamData( maximumStreamData );
+        frames.add( frame );
+    }
+
+    @Override
+    public void onStreamsBlocked( boolean unidirectional, long maximumStreams ) {
+        StreamsBlockedFrameImpl frame = new StreamsBlockedFrameImpl( type );
+        frame.setMaximumStreams( maximumStreams );
+        frames.add( frame );
+    }
+
+    @Override
+    public void onNewConnectionId( long sequenceNumber, long retirePriorTo,
+            ByteBuffer data, int idOffset, int idLength, int resetTokenOffset ) {
+        NewConnectionIdFrameImpl frame = new NewConnectionIdFrameImpl( type );
+        frame.setSequenceNumber( sequenceNumber );
+        frame.setRetirePriorTo( retirePriorTo );
+        frame.setLength( idLength );
+        frame.setConnectionId( new ConnectionIdImpl( copy( data, idOffset, idLength ),
+                VariableLengthInteger.valueOf( sequenceNumber ) ) );
+        frame.setStatelessResetToken( new StatelessResetTokenImpl( copy( data, resetTokenOffset, 16 ) ) );
+        frames.add( frame );
+    }
+
+    @Override
+    public void onRetireConnectionId( long sequenceNumber ) {
+        RetireConnectionIdFrameImpl frame = new RetireConnectionIdFrameImpl( type );
+        frame.setSequenceNumber( sequenceNumber );
+        frames.add( frame );
+    }
+
+    @Override
+    public void onPathChallenge( long data ) {
+        PathChallangeFrameImpl frame = new PathChallangeFrameImpl( type );
+        frame.setData( ByteBuffer.allocate( 8 ).putLong( 0, data ).array() );
+        frames.add( frame );
+    }
+
+    @Override
+    public void onPathResponse( long data ) {
+        PathResponseFrameImpl frame = new PathResponseFrameImpl( type );
+        frame.setData( ByteBuffer.allocate( 8 ).putLong( 0, data ).array() );
+        frames.add( frame );
+    }
+
+    @Override
+    public void onConnectionClose( boolean application, long errorCode, long frameType,
+            ByteBuffer data, int reasonOffset, int reasonLength ) {
+        ConnectionCloseFrameImpl frame = new ConnectionCloseFrameImpl( type );
+        frame.setErrorCode( errorCode );
+        frame.setFrameType( frameType );
+        frame.setReasonPhraseLength( reasonLength );
+        frame.setReasonPhrase( copy( data, reasonOffset, reasonLength ) );
+        frames.add( frame );
+    }
+
+    @Override
+    public void onHandshakeDone() {
+        frames.add( new HandshakeDoneFrameImpl( type ) );
+    }
+
+    @Override
+    public void onDatagram( ByteBuffer data, int dataOffset, int length ) {
+        DatagramFrameImpl frame = new DatagramFrameImpl( type );
+        frame.setLength( length );
+        frame.setData( copyToBuffer( data, dataOffset, length ) );
+        frames.add( frame );
+    }
+
+    private static ByteBuffer copyToBuffer( ByteBuffer data, int offset, int length ) {
+        return ByteBuffer.wrap( copy( data, offset, length ) ).asReadOnlyBuffer();
+    }
+
+    private static byte[] copy( ByteBuffer data, int offset, int length ) {
+        byte[] bytes = new byte[length];
+        ByteBuffer view = data.duplicate();
+        view.position( offset );
+        view.get( bytes );
+        return bytes;
+    }
+}
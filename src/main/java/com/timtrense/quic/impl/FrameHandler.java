@@ -0,0 +1,142 @@
+package com.timtrense.quic.impl;
+
+import java.nio.ByteBuffer;
+
+import com.timtrense.quic.FrameType;
+import com.timtrense.quic.Packet;
+
+/**
+ * Receives the frames of a packet while the {@link FrameParser} scans its payload, without materializing
+ * a {@link com.timtrense.quic.Frame} object per frame.
+ * <p>
+ * All arguments are primitives or positions within the scanned payload. Byte fields are passed as the scanned
+ * buffer together with the absolute offset and length of the field, so no view on the buffer is allocated.
+ * Handlers must neither modify the buffer nor its position, and must copy byte fields they keep beyond the
+ * lifetime of the received datagram.
+ * <p>
+ * If the parser rejects a malformed frame, the handler may have already received the preceding frames of the
+ * packet. The packet must then be discarded as a whole.
+ * All methods do nothing by default, so a handler only overrides the frames it is interested in.
+ *
+ * @author Tim Trense
+ * @see FrameParser#parseFrames(com.timtrense.quic.Packet, ByteBuffer, int, FrameHandler)
+ */
+public interface FrameHandler {
+
+    /**
+     * invoked once per packet, before its first frame. A handler that is {@link Connection#getFrameHandler(
+     * com.timtrense.quic.EncryptionLevel) provided per connection} tells the packets apart by this call
+     *
+     * @param packet the packet whose frames follow, with its header already parsed
+     */
+    default void onPacket( Packet packet ) {}
+
+    /**
+     * invoked at the start of every frame, before the callback specific to its type. Useful for eg. telling
+     * whether a packet is ack-eliciting or to preserve the exact type of a frame
+     *
+     * @param type       the type of the frame
+     * @param frameIndex the index of the frame within the packet
+     */
+    default void onFrame( FrameType type, int frameIndex ) {}
+
+    /**
+     * @param count the number of consecutive PADDING frames
+     */
+    default void onPadding( int count ) {}
+
+    default void onPing() {}
+
+    /**
+     * starts an ACK frame. It is followed by {@link #onAckRange(long, long) one call per additional range}
+     * and, for ACK frames with ECN counts, by {@link #onEcnCounts(long, long, long)}
+     *
+     * @param largestAcknowledged the largest acknowledged packet number
+     * @param delay               the encoded acknowledgement delay
+     * @param firstAckRange       the number of acknowledged packets preceding the largest acknowledged
+     * @param rangeCount          the number of following Gap and ACK Range pairs
+     */
+    default void onAck( long largestAcknowledged, long delay, long firstAckRange, long rangeCount ) {}
+
+    /**
+     * @param gap    the number of unacknowledged packets minus one preceding the previous range
+     * @param length the number of acknowledged packets preceding the largest one of this range
+     */
+    default void onAckRange( long gap, long length ) {}
+
+    default void onEcnCounts( long ect0Count, long ect1Count, long ecnCeCount ) {}
+
+    default void onResetStream( long streamId, long applicationProtocolErrorCode, long finalSize ) {}
+
+    default void onStopSending( long streamId, long applicationProtocolErrorCode ) {}
+
+    /**
+     * @param offset     the offset of the data within the crypto stream
+     * @param data       the scanned payload
+     * @param dataOffset the absolute index of the crypto data within the scanned payload
+     * @param length     the number of bytes of crypto data
+     */
+    default void onCrypto( long offset, ByteBuffer data, int dataOffset, int length ) {}
+
+    default void onNewToken( ByteBuffer data, int tokenOffset, int tokenLength ) {}
+
+    /**
+     * @param streamId   the id of the stream
+     * @param offset     the offset of the data within the stream
+     * @param data       the scanned payload
+     * @param dataOffset the absolute index of the stream data within the scanned payload
+     * @param length     the number of bytes of stream data
+     * @param fin        whether this frame marks the end of the stream
+     */
+    default void onStream( long streamId, long offset, ByteBuffer data, int dataOffset, int length, boolean fin ) {}
+
+    default void onMaxData( long maximumData ) {}
+
+    default void onMaxStreamData( long streamId, long maximumStreamData ) {}
+
+    default void onMaxStreams( boolean unidirectional, long maximumStreams ) {}
+
+    default void onDataBlocked( long maximumData ) {}
+
+    default void onStreamDataBlocked( long streamId, long maximumStreamData ) {}
+
+    default void onStreamsBlocked( boolean unidirectional, long maximumStreams ) {}
+
+    /**
+     * @param sequenceNumber    the sequence number of the new connection id
+     * @param retirePriorTo     the sequence number below which connection ids should be retired
+     * @param data              the scanned payload
+     * @param idOffset          the absolute index of the connection id within the scanned payload
+     * @param idLength          the length of the connection id
+     * @param resetTokenOffset  the absolute index of the 16 bytes stateless reset token within the scanned payload
+     */
+    default void onNewConnectionId( long sequenceNumber, long retirePriorTo,
+            ByteBuffer data, int idOffset, int idLength, int resetTokenOffset ) {}
+
+    default void onRetireConnectionId( long sequenceNumber ) {}
+
+    /**
+     * @param data the 8 bytes of the challenge in network byte order
+     */
+    default void onPathChallenge( long data ) {}
+
+    /**
+     * @param data the 8 bytes of the response in network byte order
+     */
+    default void onPathResponse( long data ) {}
+
+    /**
+     * @param application   whether this is the application-specific variant (type 0x1d)
+     * @param errorCode     the error code
+     * @param frameType     the type of the frame that triggered the error, 0 for the application-specific variant
+     * @param data          the scanned payload
+     * @param reasonOffset  the absolute index of the reason phrase within the scanned payload
+     * @param reasonLength  the length of the reason phrase
+     */
+    default void onConnectionClose( boolean application, long errorCode, long frameType,
+            ByteBuffer data, int reasonOffset, int reasonLength ) {}
+
+    default void onHandshakeDone() {}
+
+    default void onDatagram( ByteBuffer data, int dataOffset, int length ) {}
+}
@@ -1,7 +1,6 @@
 package com.timtrense.quic.impl;
 
 import java.nio.ByteBuffer;
-import java.util.LinkedList;
 import java.util.List;
 import lombok.NonNull;
 
@@ -32,6 +31,26 @@ Frame parseFrame(
             int maxLength )
             throws QuicParsingException;
 
+    /**
+     * Scans all frames in the given packet and passes each to the handler, without materializing them.
+     * The handler is {@link FrameHandler#onPacket(Packet) notified of the packet} before its first frame.
+     * This is the allocation-free receive path.
+     *
+     * @param containingPacket the packet that contains those frames
+     * @param data             the data of the datagram, positioned at the start of the payload of the packet
+     * @param packetLength     the length of the payload, or -1 if the payload takes up all
+     *                         data till the end of the datagram
+     * @param handler          receives the frames in order of their appearance
+     * @return the number of scanned frames, each consecutive run of PADDING counting as one
+     * @throws QuicParsingException if any parsing error occurs
+     */
+    int parseFrames(
+            @NonNull Packet containingPacket,
+            @NonNull ByteBuffer data,
+            int packetLength,
+            @NonNull FrameHandler handler )
+            throws QuicParsingException;
+
     /**
      * Parses all frames in the given packet.
      *
@@ -41,25 +60,15 @@ Frame parseFrame(
      *                         data till the end of the datagram
      * @return all frames contained in that packet, never an incomplete or invalid list
      * @throws QuicParsingException if any parsing error occurs
+     * @see FrameCollector
      */
     default List<Frame> parseFrames(
             @NonNull Packet containingPacket,
             @NonNull ByteBuffer data,
             int packetLength )
             throws QuicParsingException {
-        if ( packetLength < 0 ) {
-            packetLength = data.remaining();
-        }
-        List<Frame> payload = new LinkedList<>();
-        for ( int packetIndex = 0; packetLength > 0; packetIndex++ ) {
-            Frame f = parseFrame( containingPacket, data, packetIndex, packetLength );
-            if ( f == null ) {
-                payload = null;
-                break;
-            }
-            payload.add( f );
-            packetLength -= f.getFrameLength();
-        }
-        return payload;
+        FrameCollector collector = new FrameCollector();
+        parseFrames( containingPacket, data, packetLength, collector );
+        return collector.getFrames();
     }
 }
@@ -7,21 +7,44 @@
 import com.timtrense.quic.Frame;
 import com.timtrense.quic.FrameType;
 import com.timtrense.quic.Packet;
-import com.timtrense.quic.VariableLengthInteger;
 import com.timtrense.quic.impl.base.VariableLengthIntegerEncoder;
 import com.timtrense.quic.impl.exception.MalformedFrameException;
 import com.timtrense.quic.impl.exception.QuicParsingException;
-import com.timtrense.quic.impl.frames.CryptoFrameImpl;
-import com.timtrense.quic.impl.frames.MultiPaddingFrameImpl;
 
 /**
  * Parsing algorithm for frames within a packet
+ * <p>
+ * The payload is scanned once and every frame is pushed to a {@link FrameHandler} with primitive arguments, so
+ * the receive path does not need to allocate anything per frame. Parsing into {@link Frame} objects is done
+ * by a {@link FrameCollector} on top of that.
+ * <p>
+ * The payloads of STREAM, CRYPTO, NEW_TOKEN and DATAGRAM frames are not copied, but passed to the handler as
+ * positions within the given data. They are thus only valid during the callback, because the underlying datagram
+ * is {@link DatagramRecycler recycled} after parsing. The {@link FrameCollector} copies them.
  *
  * @author Tim Trense
  */
 @Data
 public class FrameParserImpl implements FrameParser {
 
+    /**
+     * the length of the data of PATH_CHALLENGE and PATH_RESPONSE frames
+     */
+    private static final int PATH_DATA_LENGTH = 8;
+    /**
+     * the length of the token of NEW_CONNECTION_ID frames
+     */
+    private static final int STATELESS_RESET_TOKEN_LENGTH = 16;
+    /**
+     * the largest connection id length within NEW_CONNECTION_ID frames
+     */
+    private static final int MAX_CONNECTION_ID_LENGTH = 20;
+    /**
+     * https://tools.ietf.org/html/draft-ietf-quic-transport-32#section-19.11
+     * "This value cannot exceed 2^60, as it is not possible to encode stream IDs larger than 2^62-1."
+     */
+    private static final long MAX_STREAMS_LIMIT = 1L << 60;
+
     private @NonNull ParsingContext context;
 
     @Override
@@ -31,52 +54,219 @@ public Frame parseFrame(
             int frameIndex,
             int maxLength )
             throws QuicParsingException {
-        long frameTypeRaw = VariableLengthIntegerEncoder.decode( data );
-        FrameType frameType = FrameType.findByValue( (int)frameTypeRaw );
+        FrameCollector collector = new FrameCollector();
+        parseFrame( containingPacket, data, frameIndex, data.position() + Math.min( maxLength, data.remaining() ),
+                collector );
+        return collector.getFrames().get( 0 );
+    }
+
+    @Override
+    public int parseFrames(
+            @NonNull Packet containingPacket,
+            @NonNull ByteBuffer data,
+            int packetLength,
+            @NonNull FrameHandler handler )
+            throws QuicParsingException {
+        // all bounds checks are done against the end of the packet, not the end of the datagram
+        int end = packetLength < 0 ? data.limit() : data.position() + Math.min( packetLength, data.remaining() );
+        int frameIndex = 0;
+        handler.onPacket( containingPacket );
+        while ( data.position() < end ) {
+            parseFrame( containingPacket, data, frameIndex, end, handler );
+            frameIndex++;
+        }
+        return frameIndex;
+    }
+
+    /**
+     * parses the next frame and passes it to the handler
+     *
+     * @param containingPacket the packet being parsed
+     * @param data             the data positioned at the start of the frame
+     * @param frameIndex       the index of the frame within the packet
+     * @param end              the absolute index of the end of the packet
+     * @param handler          receives the frame
+     * @throws QuicParsingException if the frame is malformed
+     */
+    private void parseFrame( Packet containingPacket, ByteBuffer data, int frameIndex, int end,
+            FrameHandler handler ) throws QuicParsingException {
+        long frameTypeRaw = decode( containingPacket, data, frameIndex, end );
+        FrameType frameType = FrameType.findByValue( frameTypeRaw );
         if ( frameType == null ) {
             throw new MalformedFrameException( "Unknown Frame Type: " + frameTypeRaw,
                     containingPacket, data, frameIndex );
         }
+        handler.onFrame( frameType, frameIndex );
 
-        maxLength -= frameType.getValue().getEncodedLengthInBytes(); // because we just parsed a varint
-
-        Frame result;
+        long type = frameType.getLongValue();
         switch ( frameType.getGeneralType() ) {
             case PADDING:
                 // we just detected the start of AT LEAST one padding frame.
                 // lets try finding more consecutive paddings to reduce
-                // amount of instantiated padding frame objects
-                result = parseMultiPaddingFrame( data, maxLength );
+                // amount of callbacks and instantiated padding frame objects
+                handler.onPadding( parseMultiPadding( data, end ) );
+                break;
+            case PING:
+                handler.onPing();
+                break;
+            case ACK:
+                parseAckFrame( ( type & 0x01 ) == 0x01, containingPacket, data, frameIndex, end, handler );
                 break;
+            case RESET_STREAM: {
+                long streamId = decode( containingPacket, data, frameIndex, end );
+                long errorCode = decode( containingPacket, data, frameIndex, end );
+                long finalSize = decode( containingPacket, data, frameIndex, end );
+                handler.onResetStream( streamId, errorCode, finalSize );
+                break;
+            }
+            case STOP_SENDING: {
+                long streamId = decode( containingPacket, data, frameIndex, end );
+                long errorCode = decode( containingPacket, data, frameIndex, end );
+                handler.onStopSending( streamId, errorCode );
+                break;
+            }
             case CRYPTO:
-                result = new CryptoFrameImpl( frameType );
-                parseFrame( (CryptoFrameImpl)result, containingPacket, data, frameIndex, maxLength );
+                parseCryptoFrame( containingPacket, data, frameIndex, end, handler );
                 break;
-            //TODO implement remaining frame types
+            case NEW_TOKEN: {
+                long length = decode( containingPacket, data, frameIndex, end );
+                if ( length == 0 ) {
+                    throw new MalformedFrameException( "NEW_TOKEN with empty token",
+                            containingPacket, data, frameIndex );
+                }
+                int tokenOffset = skip( "NEW_TOKEN", containingPacket, data, frameIndex, end, length );
+                handler.onNewToken( data, tokenOffset, (int)length );
+                break;
+            }
+            case STREAM:
+                parseStreamFrame( type, containingPacket, data, frameIndex, end, handler );
+                break;
+            case MAX_DATA:
+                handler.onMaxData( decode( containingPacket, data, frameIndex, end ) );
+                break;
+            case MAX_STREAM_DATA: {
+                long streamId = decode( containingPacket, data, frameIndex, end );
+                handler.onMaxStreamData( streamId, decode( containingPacket, data, frameIndex, end ) );
+                break;
+            }
+            case MAX_STREAMS:
+                handler.onMaxStreams( ( type & 0x01 ) == 0x01,
+                        decodeStreamCount( containingPacket, data, frameIndex, end ) );
+                break;
+            case DATA_BLOCKED:
+                handler.onDataBlocked( decode( containingPacket, data, frameIndex, end ) );
+                break;
+            case STREAM_DATA_BLOCKED: {
+                long streamId = decode( containingPacket, data, frameIndex, end );
+                handler.onStreamDataBlocked( streamId, decode( containingPacket, data, frameIndex, end ) );
+                break;
+            }
+            case STREAMS_BLOCKED:
+                handler.onStreamsBlocked( ( type & 0x01 ) == 0x01,
+                        decodeStreamCount( containingPacket, data, frameIndex, end ) );
+                break;
+            case NEW_CONNECTION_ID:
+                parseNewConnectionIdFrame( containingPacket, data, frameIndex, end, handler );
+                break;
+            case RETIRE_CONNECTION_ID:
+                handler.onRetireConnectionId( decode( containingPacket, data, frameIndex, end ) );
+                break;
+            case PATH_CHALLENGE:
+                handler.onPathChallenge( data.getLong( skip( "PATH_CHALLENGE", containingPacket,
+                        data, frameIndex, end, PATH_DATA_LENGTH ) ) );
+                break;
+            case PATH_RESPONSE:
+                handler.onPathResponse( data.getLong( skip( "PATH_RESPONSE", containingPacket,
+                        data, frameIndex, end, PATH_DATA_LENGTH ) ) );
+                break;
+            case CONNECTION_CLOSE: {
+                // only the transport variant (type 0x1c) carries the type of the triggering frame
+                boolean application = ( type & 0x01 ) == 0x01;
+                long errorCode = decode( containingPacket, data, frameIndex, end );
+                long triggeringFrameType = application ? 0 : decode( containingPacket, data, frameIndex, end );
+                long length = decode( containingPacket, data, frameIndex, end );
+                int reasonOffset = skip( "CONNECTION_CLOSE", containingPacket, data, frameIndex, end, length );
+                handler.onConnectionClose( application, errorCode, triggeringFrameType,
+                        data, reasonOffset, (int)length );
+                break;
+            }
+            case HANDSHAKE_DONE:
+                handler.onHandshakeDone();
+                break;
+            case DATAGRAM: {
+                long length = ( type & 0x01 ) == 0x01
+                        ? decode( containingPacket, data, frameIndex, end )
+                        : end - data.position(); // the datagram data takes up the rest of the packet
+                int dataOffset = skip( "DATAGRAM", containingPacket, data, frameIndex, end, length );
+                handler.onDatagram( data, dataOffset, (int)length );
+                break;
+            }
             default:
                 throw new MalformedFrameException( "Unimplemented Frame Type: " + frameType,
                         containingPacket, data, frameIndex );
         }
-        return result;
     }
 
-    private Frame parseMultiPaddingFrame( ByteBuffer data, int maxLength ) {
-        byte[] rawData = data.array();
+    private static int parseMultiPadding( ByteBuffer data, int end ) {
         int offset = data.position();
         int paddingCount;
-        for ( paddingCount = 0; paddingCount < maxLength; paddingCount++ ) {
-            if ( rawData[offset + paddingCount] != FrameType.PADDING.getLongValue() ) {
+        for ( paddingCount = 0; offset + paddingCount < end; paddingCount++ ) {
+            if ( data.get( offset + paddingCount ) != FrameType.PADDING.getLongValue() ) {
                 break;
             }
         }
-        paddingCount++; // because already one Padding Frame was parsed by top parseFrame()
-        return new MultiPaddingFrameImpl( paddingCount );
+        data.position( offset + paddingCount ); // skip the consecutive paddings, so that parsing continues after them
+        return paddingCount + 1; // because already one Padding Frame was parsed by top parseFrame()
     }
 
-    private void parseFrame( CryptoFrameImpl frame, Packet containingPacket,
-            ByteBuffer data, int frameIndex, int maxLength ) throws QuicParsingException {
-        long offset = VariableLengthIntegerEncoder.decode( data );
-        long length = VariableLengthIntegerEncoder.decode( data );
+    private static void parseAckFrame( boolean withEcn, Packet containingPacket,
+            ByteBuffer data, int frameIndex, int end, FrameHandler handler ) throws QuicParsingException {
+        long largestAcknowledged = decode( containingPacket, data, frameIndex, end );
+        long delay = decode( containingPacket, data, frameIndex, end );
+        long rangeCount = decode( containingPacket, data, frameIndex, end );
+        long firstRange = decode( containingPacket, data, frameIndex, end );
+
+        /*
+        "If any computed packet number is negative, an endpoint MUST generate
+        a connection error of type FRAME_ENCODING_ERROR."
+        Quote from https://tools.ietf.org/html/draft-ietf-quic-transport-32#section-19.3.1
+         */
+        long smallest = largestAcknowledged - firstRange;
+        if ( smallest < 0 ) {
+            throw new MalformedFrameException( "ACK first range exceeds largest acknowledged:" +
+                    " largestAcknowledged=" + largestAcknowledged +
+                    ", firstRange=" + firstRange,
+                    containingPacket, data, frameIndex );
+        }
+        // each range takes at least 2 bytes, so a count that cannot fit is rejected before looping
+        if ( rangeCount > ( end - data.position() ) / 2 ) {
+            throw new MalformedFrameException( "ACK range count states more ranges than contained in the packet:" +
+                    " rangeCount=" + rangeCount,
+                    containingPacket, data, frameIndex );
+        }
+        handler.onAck( largestAcknowledged, delay, firstRange, rangeCount );
+        for ( long i = 0; i < rangeCount; i++ ) {
+            long gap = decode( containingPacket, data, frameIndex, end );
+            long length = decode( containingPacket, data, frameIndex, end );
+            smallest = smallest - gap - 2 - length;
+            if ( smallest < 0 ) {
+                throw new MalformedFrameException( "ACK range acknowledges negative packet numbers: range=" + i,
+                        containingPacket, data, frameIndex );
+            }
+            handler.onAckRange( gap, length );
+        }
+        if ( withEcn ) {
+            long ect0 = decode( containingPacket, data, frameIndex, end );
+            long ect1 = decode( containingPacket, data, frameIndex, end );
+            long ecnCe = decode( containingPacket, data, frameIndex, end );
+            handler.onEcnCounts( ect0, ect1, ecnCe );
+        }
+    }
+
+    private static void parseCryptoFrame( Packet containingPacket,
+            ByteBuffer data, int frameIndex, int end, FrameHandler handler ) throws QuicParsingException {
+        long offset = decode( containingPacket, data, frameIndex, end );
+        long length = decode( containingPacket, data, frameIndex, end );
 
         /*
        "There is a separate flow of cryptographic handshake data in each
@@ -90,10 +280,6 @@ private void parseFrame( CryptoFrameImpl frame, Packet containingPacket,
        FRAME_ENCODING_ERROR or CRYPTO_BUFFER_EXCEEDED."
        Quote from https://tools.ietf.org/html/draft-ietf-quic-transport-32#section-19.6
          */
-        if ( offset < 0 ) {
-            throw new MalformedFrameException( "CRYPTO offset exceeds limits: " + offset,
-                    containingPacket, data, frameIndex );
-        }
         if ( offset + length > VariableLengthIntegerEncoder.MAX_VALUE ) {
             throw new MalformedFrameException( "CRYPTO offset at frames end exceeds limits:" +
                     " offset=" + offset +
@@ -104,18 +290,101 @@ private void parseFrame( CryptoFrameImpl frame, Packet containingPacket,
         // BTW: we do not expect to get more than Integer.MAX_VALUE -1 bytes anyways, because that would
         // not fit into any datagrams MTU on any reasonable network
 
-        if ( length > maxLength ) {
-            throw new MalformedFrameException( "CRYPTO frames length states more bytes than contained in the packet:" +
-                    " length=" + length +
-                    ", maxLength=" + maxLength,
+        int dataOffset = skip( "CRYPTO", containingPacket, data, frameIndex, end, length );
+        handler.onCrypto( offset, data, dataOffset, (int)length );
+    }
+
+    private static void parseStreamFrame( long type, Packet containingPacket,
+            ByteBuffer data, int frameIndex, int end, FrameHandler handler ) throws QuicParsingException {
+        long streamId = decode( containingPacket, data, frameIndex, end );
+        long offset = ( type & 0x04 ) == 0x04 ? decode( containingPacket, data, frameIndex, end ) : 0;
+        long length = ( type & 0x02 ) == 0x02
+                ? decode( containingPacket, data, frameIndex, end )
+                : end - data.position(); // the stream data takes up the rest of the packet
+        if ( offset + length > VariableLengthIntegerEncoder.MAX_VALUE ) {
+            throw new MalformedFrameException( "STREAM offset at frames end exceeds limits:" +
+                    " offset=" + offset +
+                    ", length=" + length,
+                    containingPacket, data, frameIndex );
+        }
+        int dataOffset = skip( "STREAM", containingPacket, data, frameIndex, end, length );
+        handler.onStream( streamId, offset, data, dataOffset, (int)length, ( type & 0x01 ) == 0x01 );
+    }
+
+    private static void parseNewConnectionIdFrame( Packet containingPacket,
+            ByteBuffer data, int frameIndex, int end, FrameHandler handler ) throws QuicParsingException {
+        long sequenceNumber = decode( containingPacket, data, frameIndex, end );
+        long retirePriorTo = decode( containingPacket, data, frameIndex, end );
+        if ( retirePriorTo > sequenceNumber ) {
+            throw new MalformedFrameException( "NEW_CONNECTION_ID retires its own sequence number:" +
+                    " sequenceNumber=" + sequenceNumber +
+                    ", retirePriorTo=" + retirePriorTo,
+                    containingPacket, data, frameIndex );
+        }
+        int length = data.get( skip( "NEW_CONNECTION_ID", containingPacket, data, frameIndex, end, 1 ) ) & 0xFF;
+        if ( length < 1 || length > MAX_CONNECTION_ID_LENGTH ) {
+            throw new MalformedFrameException( "NEW_CONNECTION_ID with invalid length: " + length,
+                    containingPacket, data, frameIndex );
+        }
+        int idOffset = skip( "NEW_CONNECTION_ID", containingPacket, data, frameIndex, end, length );
+        int tokenOffset = skip( "NEW_CONNECTION_ID", containingPacket, data, frameIndex, end,
+                STATELESS_RESET_TOKEN_LENGTH );
+        handler.onNewConnectionId( sequenceNumber, retirePriorTo, data, idOffset, length, tokenOffset );
+    }
+
+    /**
+     * decodes a variable-length integer that must not exceed the end of the frames packet
+     *
+     * @param containingPacket the packet being parsed
+     * @param data             the data positioned at the encoded value
+     * @param frameIndex       the index of the frame being parsed
+     * @param end              the absolute index of the end of the packet
+     * @return the decoded non-negative value
+     * @throws MalformedFrameException if the encoded value exceeds the end of the packet
+     */
+    private static long decode( Packet containingPacket, ByteBuffer data, int frameIndex, int end )
+            throws MalformedFrameException {
+        int position = data.position();
+        if ( position >= end
+                || position + VariableLengthIntegerEncoder.getEncodedLengthInBytes( data.get( position ) ) > end ) {
+            throw new MalformedFrameException( "Frame exceeds the end of the packet",
                     containingPacket, data, frameIndex );
         }
-        byte[] cryptoData = new byte[(int)length];
-        data.get( cryptoData );
-        frame.setOffset( new VariableLengthInteger( offset ) );
-        frame.setLength( new VariableLengthInteger( length ) );
-        frame.setCryptoData( cryptoData );
+        return VariableLengthIntegerEncoder.decode( data );
     }
 
+    private static long decodeStreamCount( Packet containingPacket, ByteBuffer data, int frameIndex, int end )
+            throws MalformedFrameException {
+        long count = decode( containingPacket, data, frameIndex, end );
+        if ( count > MAX_STREAMS_LIMIT ) {
+            throw new MalformedFrameException( "Stream count exceeds limits: " + count,
+                    containingPacket, data, frameIndex );
+        }
+        return count;
+    }
 
+    /**
+     * skips the next bytes of a field
+     *
+     * @param frameName        the name of the frame for error messages
+     * @param containingPacket the packet being parsed
+     * @param data             the data positioned at the first byte of the field
+     * @param frameIndex       the index of the frame being parsed
+     * @param end              the absolute index of the end of the packet
+     * @param length           the length of the field
+     * @return the absolute index of the first byte of the field
+     * @throws MalformedFrameException if the length exceeds the end of the packet
+     */
+    private static int skip( String frameName, Packet containingPacket,
+            ByteBuffer data, int frameIndex, int end, long length ) throws MalformedFrameException {
+        int position = data.position();
+        if ( length < 0 || length > end - position ) {
+            throw new MalformedFrameException( frameName + " frames length states more bytes than contained in the" +
+                    " packet: length=" + length +
+                    ", maxLength=" + ( end - position ),
+                    containingPacket, data, frameIndex );
+        }
+        data.position( position + (int)length );
+        return position;
+    }
 }
@@ -0,0 +1,25 @@
+package com.timtrense.quic.impl;
+
+import java.nio.ByteBuffer;
+import lombok.NonNull;
+
+import com.timtrense.quic.Frame;
+
+/**
+ * Serializing algorithm for frames within a packet, the counterpart of the {@link FrameParser}
+ *
+ * @author Tim Trense
+ */
+public interface FrameSerializer {
+
+    /**
+     * Writes the frame to the buffer. The buffer must have at least {@link Frame#getFrameLength()} bytes remaining.
+     * The data of the frame (eg. of STREAM or CRYPTO frames) is copied but left unchanged.
+     *
+     * @param frame  a valid frame
+     * @param buffer the target, positioned where the frame starts
+     * @return the number of bytes written, which is the {@link Frame#getFrameLength()}
+     * @throws IllegalArgumentException if the frame is of an unknown implementation
+     */
+    int serializeFrame( @NonNull Frame frame, @NonNull ByteBuffer buffer );
+}
@@ -0,0 +1,211 @@
+package com.timtrense.quic.impl;
+
+import java.nio.ByteBuffer;
+import lombok.NonNull;
+
+import com.timtrense.quic.EcnCount;
+import com.timtrense.quic.Frame;
+import com.timtrense.quic.impl.base.VariableLengthIntegerEncoder;
+import com.timtrense.quic.impl.frames.AckFrameImpl;
+import com.timtrense.quic.impl.frames.ConnectionCloseFrameImpl;
+import com.timtrense.quic.impl.frames.CryptoFrameImpl;
+import com.timtrense.quic.impl.frames.DataBlockedFrameImpl;
+import com.timtrense.quic.impl.frames.DatagramFrameImpl;
+import com.timtrense.quic.impl.frames.MaxDataFrameImpl;
+import com.timtrense.quic.impl.frames.MaxStreamDataFrameImpl;
+import com.timtrense.quic.impl.frames.MaxStreamsFrameImpl;
+import com.timtrense.quic.impl.frames.MultiPaddingFrameImpl;
+import com.timtrense.quic.impl.frames.NewConnectionIdFrameImpl;
+import com.timtrense.quic.impl.frames.NewTokenFrameImpl;
+import com.timtrense.quic.impl.frames.PathChallangeFrameImpl;
+import com.timtrense.quic.impl.frames.PathResponseFrameImpl;
+import com.timtrense.quic.impl.frames.ResetStreamFrameImpl;
+import com.timtrense.quic.impl.frames.RetireConnectionIdFrameImpl;
+import com.timtrense.quic.impl.frames.StopSendingFrameImpl;
+import com.timtrense.quic.impl.frames.StreamDataBlockedFrameImpl;
+import com.timtrense.quic.impl.frames.StreamFrameImpl;
+import com.timtrense.quic.impl.frames.StreamsBlockedFrameImpl;
+
+/**
+ * Serializing algorithm for the frame implementations of package {@link com.timtrense.quic.impl.frames}.
+ * <p>
+ * Each field is encoded exactly as the {@link FrameParserImpl} decodes it, with variable-length integers in their
+ * shortest encoding, so that the written length matches the {@link Frame#getFrameLength()}.
+ * Nothing is allocated, thus instances are stateless and may be shared by all threads.
+ *
+ * @author Tim Trense
+ */
+public class FrameSerializerImpl implements FrameSerializer {
+
+    /**
+     * A shared instance, as the serializer is stateless
+     */
+    public static final FrameSerializerImpl INSTANCE = new FrameSerializerImpl();
+
+    @Override
+    public int serializeFrame( @NonNull Frame frame, @NonNull ByteBuffer buffer ) {
+        int start = buffer.position();
+        if ( frame instanceof MultiPaddingFrameImpl ) {
+            // a run of PADDING frames, each consisting of nothing but the type 0x00
+            for ( int i = ( (MultiPaddingFrameImpl)frame ).getLength(); i > 0; i-- ) {
+                buffer.put( (byte)0 );
+            }
+            return buffer.position() - start;
+        }
+        VariableLengthIntegerEncoder.encode( frame.getType().getLongValue(), buffer );
+        switch( frame.getType().getGeneralType() ) {
+            case PADDING:
+            case PING:
+            case HANDSHAKE_DONE:
+                // these frames consist of their type only
+                break;
+            case ACK:
+                serializeAckFrame( (AckFrameImpl)frame, buffer );
+                break;
+            case RESET_STREAM: {
+                ResetStreamFrameImpl resetStream = (ResetStreamFrameImpl)frame;
+                VariableLengthIntegerEncoder.encode( resetStream.getStreamId().getLongValue(), buffer );
+                VariableLengthIntegerEncoder.encode( resetStream.getApplicationProtocolErrorCode(), buffer );
+                VariableLengthIntegerEncoder.encode( resetStream.getFinalSize(), buffer );
+                break;
+            }
+            case STOP_SENDING: {
+                StopSendingFrameImpl stopSending = (StopSendingFrameImpl)frame;
+                VariableLengthIntegerEncoder.encode( stopSending.getStreamId().getLongValue(), buffer );
+                VariableLengthIntegerEncoder.encode( stopSending.getApplicationProtocolErrorCode(), buffer );
+                break;
+            }
+            case CRYPTO: {
+                CryptoFrameImpl crypto = (CryptoFrameImpl)frame;
+                VariableLengthIntegerEncoder.encode( crypto.getOffset(), buffer );
+                VariableLengthIntegerEncoder.encode( crypto.getLength(), buffer );
+                put( buffer, crypto.getCryptoData(), (int)crypto.getLength() );
+                break;
+            }
+            case NEW_TOKEN: {
+                NewTokenFrameImpl newToken = (NewTokenFrameImpl)frame;
+                VariableLengthIntegerEncoder.encode( newToken.getTokenLength(), buffer );
+                put( buffer, newToken.getToken(), (int)newToken.getTokenLength() );
+                break;
+            }
+            case STREAM:
+                serializeStreamFrame( (StreamFrameImpl)frame, buffer );
+                break;
+            case MAX_DATA:
+                VariableLengthIntegerEncoder.encode( ( (MaxDataFrameImpl)frame ).getMaximumData(), buffer );
+                break;
+            case MAX_STREAM_DATA: {
+                MaxStreamDataFrameImpl maxStreamData = (MaxStreamDataFrameImpl)frame;
+                VariableLengthIntegerEncoder.encode( maxStreamData.getStreamId().getLongValue(), buffer );
+                VariableLengthIntegerEncoder.encode( maxStreamData.getMaximumStreamData(), buffer );
+                break;
+            }
+            case MAX_STREAMS:
+                VariableLengthIntegerEncoder.encode( ( (MaxStreamsFrameImpl)frame ).getMaximumStreams(), buffer );
+                break;
+            case DATA_BLOCKED:
+                VariableLengthIntegerEncoder.encode( ( (DataBlockedFrameImpl)frame ).getMaximumData(), buffer );
+                break;
+            case STREAM_DATA_BLOCKED: {
+                StreamDataBlockedFrameImpl streamDataBlocked = (StreamDataBlockedFrameImpl)frame;
+                VariableLengthIntegerEncoder.encode( streamDataBlocked.getStreamId().getLongValue(), buffer );
+                VariableLengthIntegerEncoder.encode( streamDataBlocked.getMaximumStreamData(), buffer );
+                break;
+            }
+            case STREAMS_BLOCKED:
+                VariableLengthIntegerEncoder.encode( ( (StreamsBlockedFrameImpl)frame ).getMaximumStreams(), buffer );
+                break;
+            case NEW_CONNECTION_ID: {
+                NewConnectionIdFrameImpl newConnectionId = (NewConnectionIdFrameImpl)frame;
+                VariableLengthIntegerEncoder.encode( newConnectionId.getSequenceNumber(), buffer );
+                VariableLengthIntegerEncoder.encode( newConnectionId.getRetirePriorTo(), buffer );
+                buffer.put( (byte)newConnectionId.getLength() );
+                buffer.put( newConnectionId.getConnectionId().getValue(), 0, newConnectionId.getLength() );
+                buffer.put( newConnectionId.getStatelessResetToken().getValue() );
+                break;
+            }
+            case RETIRE_CONNECTION_ID:
+                VariableLengthIntegerEncoder.encode(
+                        ( (RetireConnectionIdFrameImpl)frame ).getSequenceNumber(), buffer );
+                break;
+            case PATH_CHALLENGE:
+                buffer.put( ( (PathChallangeFrameImpl)frame ).getData() );
+                break;
+            case PATH_RESPONSE:
+                buffer.put( ( (PathResponseFrameImpl)frame ).getData() );
+                break;
+            case CONNECTION_CLOSE: {
+                ConnectionCloseFrameImpl connectionClose = (ConnectionCloseFrameImpl)frame;
+                VariableLengthIntegerEncoder.encode( connectionClose.getErrorCode(), buffer );
+                if ( connectionClose.hasFrameTypeBitSet() ) {
+                    VariableLengthIntegerEncoder.encode( connectionClose.getFrameType(), buffer );
+                }
+                VariableLengthIntegerEncoder.encode( connectionClose.getReasonPhraseLength(), buffer );
+                if ( connectionClose.getReasonPhraseLength() > 0 ) {
+                    buffer.put( connectionClose.getReasonPhrase(), 0, (int)connectionClose.getReasonPhraseLength() );
+                }
+                break;
+            }
+            case DATAGRAM: {
+                DatagramFrameImpl datagram = (DatagramFrameImpl)frame;
+                int length = datagram.getData().remaining();
+                if ( datagram.isLengthBitSet() ) {
+                    VariableLengthIntegerEncoder.encode( length, buffer );
+                }
+                put( buffer, datagram.getData(), length );
+                break;
+            }
+            default:
+                throw new IllegalArgumentException( "Cannot serialize frame of type " + frame.getType() );
+        }
+        return buffer.position() - start;
+    }
+
+    private static void serializeAckFrame( AckFrameImpl ack, ByteBuffer buffer ) {
+        ack.getRanges().encode( buffer, ack.getDelay() );
+        if ( ack.isEcnBitSet() ) {
+            for ( EcnCount ecnCount : ack.getEcnCounts() ) {
+                VariableLengthIntegerEncoder.encode( ecnCount.getEct0Count().longValue(), buffer );
+                VariableLengthIntegerEncoder.encode( ecnCount.getEct1Count().longValue(), buffer );
+                VariableLengthIntegerEncoder.encode( ecnCount.getEcnCeCount().longValue(), buffer );
+            }
+        }
+    }
+
+    private static void serializeStreamFrame( StreamFrameImpl stream, ByteBuffer buffer ) {
+        VariableLengthIntegerEncoder.encode( stream.getStreamId().getLongValue(), buffer );
+        if ( stream.isOffsetBitSet() ) {
+            VariableLengthIntegerEncoder.encode( stream.getOffset(), buffer );
+        }
+        int length;
+        if ( stream.isLengthBitSet() ) {
+            length = (int)stream.getLength();
+            VariableLengthIntegerEncoder.encode( length, buffer );
+        }
+        else {
+            // the stream data takes up the rest of the packet
+            length = stream.getData().remaining();
+        }
+        put( buffer, stream.getData(), length );
+    }
+
+    /**
+     * copies the next bytes of the source without changing its position, limit or content
+     *
+     * @param target the buffer to write to
+     * @param source the buffer to read from, beginning at its position
+     * @param length the number of bytes to copy
+     */
+    private static void put( ByteBuffer target, ByteBuffer source, int length ) {
+        int position = source.position();
+        int limit = source.limit();
+        source.limit( position + length );
+        try {
+            target.put( source );
+        }
+        finally {
+            source.limit( limit );
+            source.position( position );
+        }
+    }
+}
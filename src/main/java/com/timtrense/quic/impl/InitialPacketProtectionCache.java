@@ -0,0 +1,130 @@
+package com.timtrense.quic.impl;
+
+import java.security.GeneralSecurityException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import lombok.Getter;
+import lombok.NonNull;
+
+import com.timtrense.quic.ConnectionId;
+import com.timtrense.quic.EndpointRole;
+import com.timtrense.quic.impl.base.InitialPacketProtectionImpl;
+
+/**
+ * A bounded cache of {@link InitialPacketProtectionImpl#initialize(ConnectionId) initialized} Initial packet
+ * protections, keyed by the destination connection id chosen by the client.
+ * <p>
+ * Initializing an Initial packet protection takes an HKDF extract and five expand-labels. Because a handshake
+ * takes several Initial datagrams per connection, the initialized protections are kept and the least recently
+ * used one is evicted when the cache is full. All methods are thread-safe.
+ *
+ * @author Tim Trense
+ */
+public class InitialPacketProtectionCache {
+
+    /**
+     * the role of the endpoint for which protections are created
+     */
+    private final @NonNull EndpointRole role;
+    /**
+     * The maximum number of cached protections
+     */
+    @Getter
+    private final int capacity;
+    /**
+     * the cached protections in access order
+     */
+    private final LinkedHashMap<ConnectionId, InitialPacketProtectionImpl> cache;
+    /**
+     * number of lookups that found an initialized protection
+     */
+    private final LongAdder hits = new LongAdder();
+    /**
+     * number of lookups that had to initialize a new protection
+     */
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a new, empty cache
+     *
+     * @param role     the role of the endpoint for which protections are created
+     * @param capacity the maximum number of cached protections. 0 disables caching
+     */
+    public InitialPacketProtectionCache( @NonNull EndpointRole role, int capacity ) {
+        if ( capacity < 0 ) {
+            throw new IllegalArgumentException( "Cannot create a cache with a negative capacity" );
+        }
+        this.role = role;
+        this.capacity = capacity;
+        this.cache = new LinkedHashMap<ConnectionId, InitialPacketProtectionImpl>( 16, 0.75f, true ) {
+            @Override
+            protected boolean removeEldestEntry( Map.Entry<ConnectionId, InitialPacketProtectionImpl> eldest ) {
+                return size() > InitialPacketProtectionCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached protection for the given connection id or initializes and caches a new one.
+     * Initialization happens outside of any lock, so concurrent lookups of the same new id may both initialize.
+     *
+     * @param clientDestinationConnectionId the destination connection id of the Initial packet
+     * @return the initialized protection, never null
+     * @throws GeneralSecurityException if the spec-required ciphers are not available
+     */
+    public InitialPacketProtectionImpl get( @NonNull ConnectionId clientDestinationConnectionId )
+            throws GeneralSecurityException {
+        InitialPacketProtectionImpl protection;
+        synchronized( cache ) {
+            protection = cache.get( clientDestinationConnectionId );
+        }
+        if ( protection != null ) {
+            hits.increment();
+            return protection;
+        }
+        misses.increment();
+        protection = new InitialPacketProtectionImpl( role );
+        protection.initialize( clientDestinationConnectionId );
+        if ( capacity > 0 ) {
+            synchronized( cache ) {
+                cache.put( clientDestinationConnectionId, protection );
+            }
+        }
+        return protection;
+    }
+
+    /**
+     * removes the protection for the given connection id, eg. after the Initial keys were discarded
+     *
+     * @param clientDestinationConnectionId the destination connection id of the Initial packets
+     */
+    public void remove( @NonNull ConnectionId clientDestinationConnectionId ) {
+        synchronized( cache ) {
+            cache.remove( clientDestinationConnectionId );
+        }
+    }
+
+    /**
+     * @return the number of currently cached protections
+     */
+    public int size() {
+        synchronized( cache ) {
+            return cache.size();
+        }
+    }
+
+    /**
+     * @return the number of lookups that found an initialized protection
+     */
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    /**
+     * @return the number of lookups that had to initialize a new protection
+     */
+    public long getMissCount() {
+        return misses.sum();
+    }
+}
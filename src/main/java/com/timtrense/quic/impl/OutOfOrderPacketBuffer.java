@@ -0,0 +1,186 @@
+package com.timtrense.quic.impl;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Value;
+
+import com.timtrense.quic.ConnectionId;
+import com.timtrense.quic.EncryptionLevel;
+
+/**
+ * Holds datagrams that could not be parsed, because the keys of their {@link EncryptionLevel} were not yet
+ * available, until the keys become available.
+ * <p>
+ * https://tools.ietf.org/html/draft-ietf-quic-tls-32#section-5.7
+ * "Due to reordering and loss, protected packets might be received by an
+ * endpoint before the final TLS handshake messages are received. [...]
+ * Endpoints MAY temporarily store packets that they cannot decrypt"
+ * <p>
+ * The held datagrams are grouped by destination connection id and encryption level. The buffer is bounded by
+ * the number of datagrams and their total bytes, and every datagram is dropped after a time to live.
+ * All methods are thread-safe.
+ *
+ * @author Tim Trense
+ */
+public class OutOfOrderPacketBuffer {
+
+    /**
+     * the held datagrams per connection and encryption level, in order of arrival
+     */
+    private final Map<Key, ArrayDeque<ReceivedDatagram>> held = new LinkedHashMap<>();
+    /**
+     * The maximum number of simultaneously held datagrams
+     */
+    @Getter
+    private final int datagramLimit;
+    /**
+     * The maximum number of bytes of all simultaneously held datagrams
+     */
+    @Getter
+    private final int byteLimit;
+    /**
+     * The time after which a held datagram is dropped, measured from its {@link ReceivedDatagram#getReceiveTime()}
+     */
+    @Getter
+    private final @NonNull Duration timeToLive;
+    /**
+     * the number of currently held datagrams
+     */
+    private int size;
+    /**
+     * the number of bytes of all currently held datagrams
+     */
+    private int bytes;
+
+    /**
+     * Creates a new, empty buffer
+     *
+     * @param datagramLimit {@link #datagramLimit}
+     * @param byteLimit     {@link #byteLimit}
+     * @param timeToLive    {@link #timeToLive}
+     */
+    public OutOfOrderPacketBuffer( int datagramLimit, int byteLimit, @NonNull Duration timeToLive ) {
+        if ( datagramLimit < 0 || byteLimit < 0 || timeToLive.isNegative() ) {
+            throw new IllegalArgumentException( "Cannot create an OutOfOrderPacketBuffer with negative limits" );
+        }
+        this.datagramLimit = datagramLimit;
+        this.byteLimit = byteLimit;
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * holds the datagram until keys for the given connection and level become available.
+     * Expired datagrams are dropped beforehand to make room.
+     *
+     * @param connectionId    the destination connection id of the undecryptable packet
+     * @param encryptionLevel the encryption level of the undecryptable packet
+     * @param datagram        the datagram to hold
+     * @param now             the current time
+     * @param onDrop          receives every datagram that is dropped because it expired
+     * @return whether the datagram is held, otherwise the buffer is full and the caller must drop it
+     */
+    public synchronized boolean hold(
+            @NonNull ConnectionId connectionId,
+            @NonNull EncryptionLevel encryptionLevel,
+            @NonNull ReceivedDatagram datagram,
+            @NonNull Instant now,
+            @NonNull Consumer<ReceivedDatagram> onDrop
+    ) {
+        evictExpired( now, onDrop );
+        int length = datagram.getLength();
+        if ( size + 1 > datagramLimit || bytes + length > byteLimit ) {
+            return false;
+        }
+        held.computeIfAbsent( new Key( connectionId, encryptionLevel ), k -> new ArrayDeque<>() ).add( datagram );
+        size++;
+        bytes += length;
+        return true;
+    }
+
+    /**
+     * removes all datagrams held for the given connection and level, in order of their arrival
+     *
+     * @param connectionId    the destination connection id for which keys became available
+     * @param encryptionLevel the level for which keys became available
+     * @param onRelease       receives every released datagram
+     * @return the number of released datagrams
+     */
+    public synchronized int release(
+            @NonNull ConnectionId connectionId,
+            @NonNull EncryptionLevel encryptionLevel,
+            @NonNull Consumer<ReceivedDatagram> onRelease
+    ) {
+        ArrayDeque<ReceivedDatagram> datagrams = held.remove( new Key( connectionId, encryptionLevel ) );
+        if ( datagrams == null ) {
+            return 0;
+        }
+        int released = datagrams.size();
+        for ( ReceivedDatagram datagram : datagrams ) {
+            size--;
+            bytes -= datagram.getLength();
+            onRelease.accept( datagram );
+        }
+        return released;
+    }
+
+    /**
+     * drops all datagrams that were received more than {@link #getTimeToLive()} ago
+     *
+     * @param now    the current time
+     * @param onDrop receives every dropped datagram
+     * @return the number of dropped datagrams
+     */
+    public synchronized int evictExpired( @NonNull Instant now, @NonNull Consumer<ReceivedDatagram> onDrop ) {
+        if ( size == 0 ) {
+            return 0;
+        }
+        Instant deadline = now.minus( timeToLive );
+        int evicted = 0;
+        Iterator<ArrayDeque<ReceivedDatagram>> queues = held.values().iterator();
+        while ( queues.hasNext() ) {
+            ArrayDeque<ReceivedDatagram> datagrams = queues.next();
+            // datagrams of one key arrive in order, so the expired ones are at the head
+            while ( !datagrams.isEmpty() && datagrams.peekFirst().getReceiveTime().isBefore( deadline ) ) {
+                ReceivedDatagram datagram = datagrams.pollFirst();
+                size--;
+                bytes -= datagram.getLength();
+                evicted++;
+                onDrop.accept( datagram );
+            }
+            if ( datagrams.isEmpty() ) {
+                queues.remove();
+            }
+        }
+        return evicted;
+    }
+
+    /**
+     * @return the number of currently held datagrams
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    /**
+     * @return the number of bytes of all currently held datagrams
+     */
+    public synchronized int getHeldBytes() {
+        return bytes;
+    }
+
+    /**
+     * the map key of held datagrams
+     */
+    @Value
+    private static class Key {
+        ConnectionId connectionId;
+        EncryptionLevel encryptionLevel;
+    }
+}
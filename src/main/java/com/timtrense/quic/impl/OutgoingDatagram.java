@@ -0,0 +1,35 @@
+package com.timtrense.quic.impl;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import lombok.Data;
+import lombok.NonNull;
+
+/**
+ * A datagram that is to be sent by a {@link Sender}.
+ * The counterpart of the {@link ReceivedDatagram}.
+ *
+ * @author Tim Trense
+ */
+@Data
+public class OutgoingDatagram {
+
+    /**
+     * the data to send from its position up to its limit, eg. as {@link PacketAssembler#assemble(long) assembled}
+     */
+    private final @NonNull ByteBuffer buffer;
+    /**
+     * the address of the peer to send to or null if the channel of the sender is connected
+     */
+    private final SocketAddress receiver;
+    /**
+     * where to give the {@link #buffer} back to once it was sent or null if it is not pooled
+     */
+    private final DatagramRecycler recycler;
+    /**
+     * the timestamp in nanoseconds of handing the datagram to the sender
+     *
+     * @see System#nanoTime()
+     */
+    private long enqueueTime;
+}
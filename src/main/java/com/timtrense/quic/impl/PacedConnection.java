@@ -0,0 +1,38 @@
+package com.timtrense.quic.impl;
+
+import com.timtrense.quic.impl.congestion.Pacer;
+
+/**
+ * The sending side of a connection, as seen by the {@link PacedSendScheduler}.
+ * All methods are called by the scheduling thread only.
+ *
+ * @author Tim Trense
+ */
+public interface PacedConnection {
+
+    /**
+     * @return the pacer of this connection, whose controller also limits the bytes in flight
+     */
+    Pacer getPacer();
+
+    /**
+     * @return the size in bytes of the next packet to send or 0 if there is nothing to send
+     */
+    int getNextPacketSize();
+
+    /**
+     * @return whether the next packet may be sent regardless of the congestion window, eg. a probe packet
+     * after a probe timeout or a packet carrying only acknowledgements
+     */
+    default boolean isNextPacketExempt() {
+        return false;
+    }
+
+    /**
+     * assembles the next packet and hands it over for sending
+     *
+     * @param now the current time in nanoseconds
+     * @return the size in bytes of the sent packet or 0 if nothing was sent
+     */
+    int sendNextPacket( long now );
+}
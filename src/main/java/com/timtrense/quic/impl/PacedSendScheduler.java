@@ -0,0 +1,225 @@
+package com.timtrense.quic.impl;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import lombok.Getter;
+import lombok.NonNull;
+
+import com.timtrense.quic.impl.base.TimerWheel;
+import com.timtrense.quic.impl.congestion.CongestionController;
+import com.timtrense.quic.impl.congestion.Pacer;
+
+/**
+ * Sends the packets of all connections of an endpoint on one thread, each paced by its own {@link Pacer}.
+ * <p>
+ * A connection that has something to send {@link #wakeup(Registration) wakes up} the scheduler, which then
+ * sends packets of that connection as long as its congestion window and pacer allow. If the pacer delays the
+ * next packet, the connection waits on a {@link TimerWheel} shared by all connections, so that scheduling and
+ * cancelling the wait takes constant time regardless of the number of connections.
+ * If the congestion window is full, the connection waits until it is woken up again, eg. by an acknowledgement.
+ * <p>
+ * The {@link PacedConnection} is only called by the scheduling thread and must guard state it shares with
+ * other threads (like its congestion controller) itself.
+ *
+ * @author Tim Trense
+ */
+public class PacedSendScheduler implements Runnable {
+
+    /**
+     * The timer of all connections waiting on their pacer
+     */
+    private final @NonNull TimerWheel timerWheel;
+    /**
+     * The maximum size of a datagram in bytes
+     */
+    @Getter
+    private final int maxDatagramSize;
+    /**
+     * The number of datagrams that each connection may send back-to-back after being idle
+     *
+     * @see Pacer#getBurstDatagrams()
+     */
+    @Getter
+    private final int burstDatagrams;
+    /**
+     * the connections that were woken up by other threads
+     */
+    private final @NonNull Queue<Registration> wakeups = new ConcurrentLinkedQueue<>();
+    /**
+     * the thread running this scheduler, to be unparked on wakeups
+     */
+    private volatile Thread thread;
+    /**
+     * The total number of packets sent by this scheduler
+     */
+    @Getter
+    private volatile long sentPacketCount;
+
+    /**
+     * @param configuration the configuration to apply
+     * @param now           the current time in nanoseconds
+     */
+    public PacedSendScheduler( @NonNull EndpointConfiguration configuration, long now ) {
+        if ( configuration.getPacingTimerTick() <= 0 ) {
+            throw new IllegalArgumentException( "Cannot create a PacedSendScheduler with a non-positive timer tick" );
+        }
+        this.timerWheel = new TimerWheel( TimeUnit.MICROSECONDS.toNanos( configuration.getPacingTimerTick() ),
+                configuration.getPacingTimerWheelSize(), now );
+        this.maxDatagramSize = configuration.getMaxDatagramSize();
+        this.burstDatagrams = configuration.getPacingBurstDatagrams();
+    }
+
+    /**
+     * @param controller the congestion controller of a connection
+     * @param now        the current time in nanoseconds
+     * @return a new pacer for that connection matching the timer of this scheduler
+     */
+    public Pacer createPacer( @NonNull CongestionController controller, long now ) {
+        return new Pacer( controller, maxDatagramSize, burstDatagrams, timerWheel.getTickDuration(), now );
+    }
+
+    /**
+     * @param connection the connection to schedule
+     * @return the handle to {@link #wakeup(Registration) wake up} and {@link #unregister(Registration) unregister}
+     * the connection with
+     */
+    public Registration register( @NonNull PacedConnection connection ) {
+        return new Registration( connection );
+    }
+
+    /**
+     * Notifies the scheduler that the connection may be able to send, because it has new data or its congestion
+     * window opened. May be called from any thread, repeated wakeups before the scheduler runs are coalesced.
+     *
+     * @param registration the registration of the connection
+     */
+    public void wakeup( @NonNull Registration registration ) {
+        if ( registration.queued.compareAndSet( false, true ) ) {
+            wakeups.offer( registration );
+            Thread t = thread;
+            if ( t != null ) {
+                LockSupport.unpark( t );
+            }
+        }
+    }
+
+    /**
+     * stops scheduling the connection. May be called from any thread.
+     *
+     * @param registration the registration of the connection
+     */
+    public void unregister( @NonNull Registration registration ) {
+        registration.closed = true;
+        wakeup( registration );
+    }
+
+    /**
+     * @return the number of connections waiting on their pacer
+     */
+    public int getWaitingCount() {
+        return timerWheel.size();
+    }
+
+    @Override
+    public void run() {
+        thread = Thread.currentThread();
+        try {
+            while ( !Thread.currentThread().isInterrupted() ) {
+                long now = System.nanoTime();
+                runOnce( now );
+                if ( !wakeups.isEmpty() ) {
+                    continue;
+                }
+                if ( timerWheel.size() > 0 ) {
+                    LockSupport.parkNanos( this, Math.max( 0, timerWheel.getNextTickTime() - now ) );
+                }
+                else {
+                    LockSupport.park( this );
+                }
+            }
+        }
+        finally {
+            thread = null;
+        }
+    }
+
+    /**
+     * processes all pending wakeups and expired pacing delays. Must only be called by one thread at a time.
+     *
+     * @param now the current time in nanoseconds
+     * @return the number of packets sent
+     */
+    public int runOnce( long now ) {
+        long sentBefore = sentPacketCount;
+        Registration registration;
+        while ( ( registration = wakeups.poll() ) != null ) {
+            registration.queued.set( false );
+            send( registration, now );
+        }
+        timerWheel.advance( now );
+        return (int)( sentPacketCount - sentBefore );
+    }
+
+    private void send( Registration registration, long now ) {
+        if ( registration.closed ) {
+            timerWheel.cancel( registration.timeout );
+            return;
+        }
+        if ( registration.timeout.isScheduled() ) {
+            // still delayed by the pacer, a wakeup cannot speed that up
+            return;
+        }
+        PacedConnection connection = registration.connection;
+        Pacer pacer = connection.getPacer();
+        long sent = 0;
+        int size;
+        while ( ( size = connection.getNextPacketSize() ) > 0 ) {
+            boolean exempt = connection.isNextPacketExempt();
+            if ( !exempt && !pacer.getController().canSend( size ) ) {
+                break; // wait for the window to open
+            }
+            long sendTime = pacer.getNextSendTime( size, now );
+            if ( !exempt && sendTime > now ) {
+                timerWheel.schedule( registration.timeout, sendTime );
+                break;
+            }
+            int sentSize = connection.sendNextPacket( now );
+            if ( sentSize <= 0 ) {
+                break;
+            }
+            pacer.onPacketSent( sentSize, now );
+            sent++;
+        }
+        sentPacketCount += sent;
+    }
+
+    /**
+     * The handle of a connection registered with a {@link PacedSendScheduler}
+     */
+    public final class Registration {
+
+        /**
+         * The connection being scheduled
+         */
+        @Getter
+        private final @NonNull PacedConnection connection;
+        private final @NonNull TimerWheel.Timeout timeout;
+        private final AtomicBoolean queued = new AtomicBoolean();
+        private volatile boolean closed;
+
+        private Registration( @NonNull PacedConnection connection ) {
+            this.connection = connection;
+            this.timeout = new TimerWheel.Timeout( ( t, now ) -> send( this, now ) );
+        }
+
+        /**
+         * @return whether the connection was {@link #unregister(Registration) unregistered}
+         */
+        public boolean isClosed() {
+            return closed;
+        }
+    }
+}
@@ -0,0 +1,601 @@
+package com.timtrense.quic.impl;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+import com.timtrense.quic.ConnectionId;
+import com.timtrense.quic.EndpointRole;
+import com.timtrense.quic.Frame;
+import com.timtrense.quic.FrameType;
+import com.timtrense.quic.PacketNumberSpace;
+import com.timtrense.quic.ProtocolVersion;
+import com.timtrense.quic.impl.base.PacketNumberEncoder;
+import com.timtrense.quic.impl.base.VariableLengthIntegerEncoder;
+import com.timtrense.quic.impl.recovery.ReceivedPacketTracker;
+
+/**
+ * Assembles the outgoing datagrams of one connection.
+ * <p>
+ * Frames are taken from one {@link #getSendQueue(PacketNumberSpace) send queue} per packet number space and
+ * written by a {@link FrameSerializer} into a packet of that space, preceded by an ACK frame if the
+ * {@link #setReceivedPacketTracker(PacketNumberSpace, ReceivedPacketTracker) tracker} of the space has one pending.
+ * Initial, Handshake and 1-RTT packets are coalesced into one datagram of at most {@link #getMaxDatagramSize()}
+ * bytes, in that order, as the short header of the 1-RTT packet has no length and must come last.
+ * Datagrams with Initial packets are padded to {@link #MIN_INITIAL_DATAGRAM_SIZE}. Finally each packet is encrypted
+ * and header protected in place by the {@link PacketSealer} of its space.
+ * <p>
+ * The datagrams are taken from a {@link ByteBufferPool} and the assembler reuses all of its own state, so that
+ * the steady state allocates nothing but what the cipher implementation does, given that the lists of sent frames
+ * are {@link #giveBackFrames(List) given back}.
+ * 0-RTT packets are not sent. Instances are not thread-safe, they must be used by the sending thread only.
+ *
+ * @author Tim Trense
+ * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-transport-32#section-12.2">QUIC Spec/Section 12.2</a>
+ */
+public class PacketAssembler {
+
+    /**
+     * "A client MUST expand the payload of all UDP datagrams carrying Initial
+     * packets to at least the smallest allowed maximum datagram size of 1200
+     * bytes by adding PADDING frames to the Initial packet or by coalescing
+     * the Initial packet; see Section 12.2." QUIC Spec/Section 14.1
+     *
+     * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-transport-32#section-14.1">QUIC Spec/Section 14.1</a>
+     */
+    public static final int MIN_INITIAL_DATAGRAM_SIZE = 1200;
+
+    /**
+     * "In sampling the packet ciphertext, the Packet Number field is assumed to be 4 bytes long" QUIC Spec-TLS/5.4.2
+     */
+    private static final int SAMPLE_PACKET_NUMBER_LENGTH = 4;
+
+    /**
+     * the Length field of long headers is always encoded in 2 bytes, so that it can be written before
+     * the length of the payload is known
+     */
+    private static final int LENGTH_FIELD_LENGTH = 2;
+    private static final int MAX_LENGTH_FIELD_VALUE = (int)VariableLengthIntegerEncoder.MAX_VALUE_2_BYTE;
+
+    /**
+     * The role of this endpoint
+     */
+    @Getter
+    private final @NonNull EndpointRole role;
+    /**
+     * The pool to take the datagrams from
+     */
+    @Getter
+    private final @NonNull ByteBufferPool bufferPool;
+    private final @NonNull FrameSerializer frameSerializer;
+    private final @NonNull Space[] spaces;
+    /**
+     * The maximum size of the assembled datagrams, that is the path MTU without IP and UDP headers.
+     * Never more than the {@link ByteBufferPool#getMaxDatagramSize() size of the pooled buffers}.
+     */
+    @Getter
+    private int maxDatagramSize;
+    /**
+     * The version written into long headers
+     */
+    @Getter
+    @Setter
+    private @NonNull ProtocolVersion version = ProtocolVersion.ONE;
+    /**
+     * The connection id chosen by the peer
+     */
+    @Getter
+    @Setter
+    private ConnectionId destinationConnectionId;
+    /**
+     * The connection id chosen by this endpoint
+     */
+    @Getter
+    @Setter
+    private ConnectionId sourceConnectionId;
+    /**
+     * The token of Initial packets, from a Retry packet or a NEW_TOKEN frame, or null
+     */
+    @Getter
+    @Setter
+    private byte[] token;
+    /**
+     * The receiver of all sealed packets
+     */
+    @Getter
+    @Setter
+    private SentPacketListener sentPacketListener;
+
+    /**
+     * the lists of sent frames given back by the listener, to be reused for the next packets
+     */
+    private final Queue<List<Frame>> frameLists = new ArrayDeque<>();
+
+    /**
+     * the packets of the datagram being assembled, in order
+     */
+    private final Space[] packetSpaces = new Space[PacketNumberSpace.values().length];
+    private int packetCount;
+
+    /**
+     * @param role            the role of this endpoint
+     * @param bufferPool      the pool to take the datagrams from
+     * @param frameSerializer the serializer of all frames
+     * @throws IllegalArgumentException if the pooled buffers are smaller than {@link #MIN_INITIAL_DATAGRAM_SIZE}
+     */
+    public PacketAssembler(
+            @NonNull EndpointRole role,
+            @NonNull ByteBufferPool bufferPool,
+            @NonNull FrameSerializer frameSerializer
+    ) {
+        if ( bufferPool.getMaxDatagramSize() < MIN_INITIAL_DATAGRAM_SIZE ) {
+            throw new IllegalArgumentException( "Cannot assemble datagrams into pooled buffers smaller than "
+                    + MIN_INITIAL_DATAGRAM_SIZE + " bytes" );
+        }
+        this.role = role;
+        this.bufferPool = bufferPool;
+        this.frameSerializer = frameSerializer;
+        this.maxDatagramSize = bufferPool.getMaxDatagramSize();
+        PacketNumberSpace[] values = PacketNumberSpace.values();
+        this.spaces = new Space[values.length];
+        for ( PacketNumberSpace space : values ) {
+            spaces[space.ordinal()] = new Space( space );
+        }
+    }
+
+    /**
+     * @param role       the role of this endpoint
+     * @param bufferPool the pool to take the datagrams from
+     * @throws IllegalArgumentException if the pooled buffers are smaller than {@link #MIN_INITIAL_DATAGRAM_SIZE}
+     */
+    public PacketAssembler( @NonNull EndpointRole role, @NonNull ByteBufferPool bufferPool ) {
+        this( role, bufferPool, FrameSerializerImpl.INSTANCE );
+    }
+
+    /**
+     * @param maxDatagramSize the new maximum size of assembled datagrams, eg. after path MTU discovery
+     * @throws IllegalArgumentException if the size is less than {@link #MIN_INITIAL_DATAGRAM_SIZE} or
+     *                                  exceeds the size of the pooled buffers
+     */
+    public void setMaxDatagramSize( int maxDatagramSize ) {
+        if ( maxDatagramSize < MIN_INITIAL_DATAGRAM_SIZE || maxDatagramSize > bufferPool.getMaxDatagramSize() ) {
+            throw new IllegalArgumentException( "Cannot set a maxDatagramSize outside of ["
+                    + MIN_INITIAL_DATAGRAM_SIZE + ";" + bufferPool.getMaxDatagramSize() + "]" );
+        }
+        this.maxDatagramSize = maxDatagramSize;
+    }
+
+    /**
+     * @param space the packet number space
+     * @return the frames waiting to be sent in packets of that space, in order. A frame must fit into a single
+     * packet, otherwise it blocks all frames behind it
+     */
+    public Queue<Frame> getSendQueue( @NonNull PacketNumberSpace space ) {
+        return spaces[space.ordinal()].sendQueue;
+    }
+
+    /**
+     * @param space  the packet number space
+     * @param sealer the protection of packets of that space or null if the keys are not (or no longer) available
+     */
+    public void setPacketSealer( @NonNull PacketNumberSpace space, PacketSealer sealer ) {
+        spaces[space.ordinal()].sealer = sealer;
+    }
+
+    /**
+     * @param space   the packet number space
+     * @param tracker the tracker deciding when to acknowledge received packets of that space or null
+     */
+    public void setReceivedPacketTracker( @NonNull PacketNumberSpace space, ReceivedPacketTracker tracker ) {
+        spaces[space.ordinal()].ackTracker = tracker;
+    }
+
+    /**
+     * @param space the packet number space
+     * @return the number of the next packet sent in that space
+     */
+    public long getNextPacketNumber( @NonNull PacketNumberSpace space ) {
+        return spaces[space.ordinal()].nextPacketNumber;
+    }
+
+    /**
+     * Updates the largest acknowledged packet number of the space, that determines the length
+     * of the encoded packet numbers
+     *
+     * @param space               the packet number space
+     * @param largestAcknowledged the largest packet number acknowledged by the peer
+     */
+    public void onAckReceived( @NonNull PacketNumberSpace space, long largestAcknowledged ) {
+        Space s = spaces[space.ordinal()];
+        s.largestAcknowledged = Math.max( s.largestAcknowledged, largestAcknowledged );
+    }
+
+    /**
+     * stops sending in the space, dropping all of its queued frames and its sealer
+     *
+     * @param space the packet number space whose keys were discarded
+     */
+    public void discard( @NonNull PacketNumberSpace space ) {
+        Space s = spaces[space.ordinal()];
+        s.sendQueue.clear();
+        s.sealer = null;
+        s.ackTracker = null;
+    }
+
+    /**
+     * Returns a list of frames that was handed to the {@link #getSentPacketListener() listener}, so that it is
+     * reused for a later packet. This should be done once the packet was acknowledged, declared lost or discarded
+     * and its frames were processed. Must be called by the sending thread
+     *
+     * @param frames the frames of a sent packet
+     */
+    public void giveBackFrames( @NonNull List<Frame> frames ) {
+        frames.clear();
+        frameLists.add( frames );
+    }
+
+    /**
+     * @param now the current time in nanoseconds
+     * @return whether {@link #assemble(long)} would write any packet
+     */
+    public boolean hasDataToSend( long now ) {
+        for ( Space space : spaces ) {
+            if ( space.hasDataToSend( now ) ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Assembles the next datagram from all queued frames and due acknowledgements of the spaces whose keys
+     * are available. The frames written to a datagram are removed from their queues and reported to the
+     * {@link #getSentPacketListener() listener} once the datagram is sealed.
+     *
+     * @param now the current time in nanoseconds
+     * @return the datagram, flipped for reading, or null if there is nothing to send.
+     * It should be given back to the {@link #getBufferPool() pool} after sending
+     * @throws GeneralSecurityException if sealing fails, in which case the frames of the datagram are put back
+     *                                  to the front of their send queues
+     */
+    public ByteBuffer assemble( long now ) throws GeneralSecurityException {
+        if ( destinationConnectionId == null || !hasDataToSend( now ) ) {
+            return null;
+        }
+        ByteBuffer datagram = bufferPool.take();
+        datagram.clear();
+        datagram.limit( Math.min( maxDatagramSize, datagram.capacity() ) );
+        packetCount = 0;
+        boolean padInitial = false;
+        for ( Space space : spaces ) {
+            if ( space.hasDataToSend( now ) && writePacket( space, datagram, now ) ) {
+                packetSpaces[packetCount++] = space;
+                if ( space.space == PacketNumberSpace.INITIAL ) {
+                    // "A server MUST expand [...] UDP datagrams containing ack-eliciting Initial packets"
+                    padInitial = role == EndpointRole.CLIENT || space.ackEliciting;
+                }
+            }
+        }
+        if ( packetCount == 0 ) {
+            bufferPool.giveBack( datagram );
+            return null;
+        }
+        if ( padInitial ) {
+            Space last = packetSpaces[packetCount - 1];
+            int paddedEnd = MIN_INITIAL_DATAGRAM_SIZE - last.sealer.getAeadTagLength();
+            pad( datagram, last, paddedEnd );
+        }
+        try {
+            for ( int i = 0; i < packetCount; i++ ) {
+                seal( packetSpaces[i], datagram );
+            }
+        }
+        catch ( GeneralSecurityException e ) {
+            bufferPool.giveBack( datagram );
+            for ( int i = 0; i < packetCount; i++ ) {
+                requeueSentFrames( packetSpaces[i] );
+            }
+            throw e;
+        }
+        int end = packetSpaces[packetCount - 1].packetEnd;
+        for ( int i = 0; i < packetCount; i++ ) {
+            Space space = packetSpaces[i];
+            if ( sentPacketListener != null ) {
+                sentPacketListener.onPacketSent( space.space, space.packetNumber,
+                        space.packetEnd - space.packetStart, space.ackEliciting, space.inFlight,
+                        space.sentFrames, now );
+                // the listener may keep the list, so the next packet of the space gets another one
+                List<Frame> frames = frameLists.poll();
+                space.sentFrames = frames == null ? new ArrayList<>() : frames;
+            }
+            else {
+                space.sentFrames.clear();
+            }
+        }
+        datagram.limit( end );
+        datagram.position( 0 );
+        return datagram;
+    }
+
+    /**
+     * writes the header and the plaintext payload of a packet of the space and leaves room for its
+     * authentication tag
+     *
+     * @return whether a packet was written, which is not the case if not even one frame fits
+     */
+    private boolean writePacket( Space space, ByteBuffer datagram, long now ) {
+        int start = datagram.position();
+        int tagLength = space.sealer.getAeadTagLength();
+        long packetNumber = space.nextPacketNumber;
+        int packetNumberLength = PacketNumberEncoder.getEncodedLength( packetNumber, space.largestAcknowledged );
+        boolean longHeader = space.space != PacketNumberSpace.APPLICATION_DATA;
+        int headerLength = getHeaderLength( space.space, packetNumberLength );
+        // the payload needs to be long enough for the header protection sample
+        int minPayloadLength = SAMPLE_PACKET_NUMBER_LENGTH - packetNumberLength;
+        if ( datagram.remaining() < headerLength + Math.max( minPayloadLength, 1 ) + tagLength ) {
+            return false;
+        }
+
+        // ===== HEADER =====
+
+        int lengthOffset = -1;
+        if ( longHeader ) {
+            int type = space.space == PacketNumberSpace.INITIAL ? 0b00000000 : 0b00100000;
+            datagram.put( (byte)( 0b11000000 | type | ( packetNumberLength - 1 ) ) );
+            datagram.putInt( version.getValue() );
+            putConnectionId( datagram, destinationConnectionId );
+            putConnectionId( datagram, sourceConnectionId );
+            if ( space.space == PacketNumberSpace.INITIAL ) {
+                int tokenLength = token == null ? 0 : token.length;
+                VariableLengthIntegerEncoder.encode( tokenLength, datagram );
+                if ( tokenLength > 0 ) {
+                    datagram.put( token );
+                }
+            }
+            lengthOffset = datagram.position();
+            datagram.position( lengthOffset + LENGTH_FIELD_LENGTH );
+        }
+        else {
+            PacketSealer sealer = space.sealer;
+            datagram.put( (byte)( 0b01000000 | ( sealer.isKeyPhase() ? 0b00000100 : 0 ) | ( packetNumberLength - 1 ) ) );
+            datagram.put( destinationConnectionId.getValue() );
+        }
+        int packetNumberOffset = datagram.position();
+        PacketNumberEncoder.encodePacketNumber( packetNumber, packetNumberLength, datagram );
+
+        // ===== PAYLOAD =====
+
+        int payloadStart = datagram.position();
+        int payloadLimit = datagram.limit() - tagLength;
+        if ( longHeader ) {
+            payloadLimit = Math.min( payloadLimit, lengthOffset + LENGTH_FIELD_LENGTH + MAX_LENGTH_FIELD_VALUE
+                    - tagLength );
+        }
+        space.ackEliciting = false;
+        space.inFlight = false;
+        space.payloadExtendsToEnd = false;
+        ReceivedPacketTracker ackTracker = space.ackTracker;
+        if ( ackTracker != null && ackTracker.isAckPending()
+                && ackTracker.getAckFrameLength( now ) <= payloadLimit - datagram.position() ) {
+            ackTracker.writeAckFrame( datagram, now );
+        }
+        Frame frame;
+        while ( ( frame = space.sendQueue.peek() ) != null
+                && frame.getFrameLength() <= payloadLimit - datagram.position() ) {
+            space.sendQueue.poll();
+            frameSerializer.serializeFrame( frame, datagram );
+            if ( frame.getType() == FrameType.PADDING ) {
+                // "Packets are considered in-flight when they are ack-eliciting or contain a PADDING frame"
+                space.inFlight = true;
+                continue;
+            }
+            space.sentFrames.add( frame );
+            space.ackEliciting |= isAckEliciting( frame.getType() );
+            if ( extendsToEndOfPacket( frame ) ) {
+                // any following frame would be read as part of its data
+                space.payloadExtendsToEnd = true;
+                break;
+            }
+        }
+        space.inFlight |= space.ackEliciting;
+        if ( datagram.position() == payloadStart ) {
+            // nothing fits, do not waste a packet number
+            datagram.position( start );
+            return false;
+        }
+
+        space.packetNumber = packetNumber;
+        space.nextPacketNumber = packetNumber + 1;
+        space.packetStart = start;
+        space.lengthOffset = lengthOffset;
+        space.packetNumberOffset = packetNumberOffset;
+        space.packetNumberLength = packetNumberLength;
+        space.payloadStart = payloadStart;
+        space.payloadEnd = datagram.position();
+        if ( space.payloadEnd - payloadStart < minPayloadLength ) {
+            pad( datagram, space, payloadStart + minPayloadLength );
+        }
+        space.packetEnd = space.payloadEnd + tagLength;
+        datagram.position( space.packetEnd );
+        return true;
+    }
+
+    /**
+     * puts the frames of a packet that was not sent back to the front of the send queue of its space,
+     * so that they are neither lost nor reported as part of the next packet of the space
+     */
+    private static void requeueSentFrames( Space space ) {
+        List<Frame> frames = space.sentFrames;
+        for ( int i = frames.size() - 1; i >= 0; i-- ) {
+            space.sendQueue.addFirst( frames.get( i ) );
+        }
+        frames.clear();
+    }
+
+    /**
+     * adds PADDING frames to the payload of the last written packet. They are appended, unless the last frame
+     * takes up the rest of the packet, in which case the payload is moved behind them
+     *
+     * @param space      the space of the last packet of the datagram
+     * @param payloadEnd the absolute index to pad the payload up to
+     */
+    private static void pad( ByteBuffer datagram, Space space, int payloadEnd ) {
+        if ( payloadEnd <= space.payloadEnd ) {
+            return;
+        }
+        int paddingStart = space.payloadEnd;
+        int paddingLength = payloadEnd - space.payloadEnd;
+        if ( space.payloadExtendsToEnd ) {
+            for ( int i = space.payloadEnd - 1; i >= space.payloadStart; i-- ) {
+                datagram.put( i + paddingLength, datagram.get( i ) );
+            }
+            paddingStart = space.payloadStart;
+        }
+        for ( int i = paddingStart; i < paddingStart + paddingLength; i++ ) {
+            datagram.put( i, (byte)FrameType.PADDING.getLongValue() );
+        }
+        space.payloadEnd = payloadEnd;
+        space.packetEnd = payloadEnd + space.sealer.getAeadTagLength();
+        space.inFlight = true;
+    }
+
+    /**
+     * encrypts the payload and applies the header protection
+     *
+     * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-tls-32#section-5.4.1">QUIC Spec-TLS/Section 5.4.1</a>
+     */
+    private static void seal( Space space, ByteBuffer datagram ) throws GeneralSecurityException {
+        PacketSealer sealer = space.sealer;
+        int payloadLength = space.payloadEnd - space.payloadStart;
+        if ( space.lengthOffset >= 0 ) {
+            // "The length of the remainder of the packet (that is, the Packet Number and Payload fields)"
+            int length = space.packetNumberLength + payloadLength + sealer.getAeadTagLength();
+            datagram.putShort( space.lengthOffset, (short)( 0x4000 | length ) );
+        }
+        sealer.aeadEncrypt( datagram, space.packetStart, space.payloadStart - space.packetStart,
+                payloadLength, space.packetNumber );
+        byte[] mask = sealer.deriveSealingHeaderProtectionMask( datagram,
+                space.packetNumberOffset + SAMPLE_PACKET_NUMBER_LENGTH );
+        if ( mask == null ) {
+            throw new GeneralSecurityException( "Cannot derive header protection mask for " + space.space );
+        }
+        // long header: 4 bits masked, short header: 5 bits masked
+        int flagsMask = space.lengthOffset >= 0 ? 0b00001111 : 0b00011111;
+        byte flags = datagram.get( space.packetStart );
+        datagram.put( space.packetStart, (byte)( flags ^ ( mask[0] & flagsMask ) ) );
+        for ( int i = 0; i < space.packetNumberLength; i++ ) {
+            int offset = space.packetNumberOffset + i;
+            datagram.put( offset, (byte)( datagram.get( offset ) ^ mask[1 + i] ) );
+        }
+    }
+
+    private int getHeaderLength( PacketNumberSpace space, int packetNumberLength ) {
+        if ( space == PacketNumberSpace.APPLICATION_DATA ) {
+            return 1 + destinationConnectionId.getValue().length + packetNumberLength;
+        }
+        int length = 1 + 4
+                + 1 + destinationConnectionId.getValue().length
+                + 1 + ( sourceConnectionId == null ? 0 : sourceConnectionId.getValue().length )
+                + LENGTH_FIELD_LENGTH + packetNumberLength;
+        if ( space == PacketNumberSpace.INITIAL ) {
+            int tokenLength = token == null ? 0 : token.length;
+            length += VariableLengthIntegerEncoder.getLengthInBytes( tokenLength ) + tokenLength;
+        }
+        return length;
+    }
+
+    private static void putConnectionId( ByteBuffer datagram, ConnectionId connectionId ) {
+        if ( connectionId == null ) {
+            datagram.put( (byte)0 );
+            return;
+        }
+        byte[] value = connectionId.getValue();
+        datagram.put( (byte)value.length );
+        datagram.put( value );
+    }
+
+    /**
+     * "Packets that contain ack-eliciting frames elicit an ACK from the receiver [...]
+     * All frames other than ACK, PADDING, and CONNECTION_CLOSE are considered ack-eliciting."
+     * QUIC Spec-Recovery/Section 2
+     *
+     * @param type the type of a frame
+     * @return whether frames of the type are ack-eliciting
+     */
+    static boolean isAckEliciting( @NonNull FrameType type ) {
+        switch( type.getGeneralType() ) {
+            case ACK:
+            case PADDING:
+            case CONNECTION_CLOSE:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * "When the LEN bit is set to 0, the Stream Data field consumes all the remaining bytes in the packet."
+     * QUIC Spec/Section 19.8, and so does the Datagram Data field of DATAGRAM frames without LEN bit
+     *
+     * @param frame a frame to send
+     * @return whether the frame has no Length field, thus must be the last frame of its packet
+     * @see <a href="https://tools.ietf.org/html/rfc9221#section-4">RFC 9221/Section 4</a>
+     */
+    static boolean extendsToEndOfPacket( @NonNull Frame frame ) {
+        switch( frame.getType().getGeneralType() ) {
+            case STREAM:
+                return ( frame.getType().getLongValue() & 0x02 ) == 0;
+            case DATAGRAM:
+                return ( frame.getType().getLongValue() & 0x01 ) == 0;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * The sending state of one packet number space, including the layout of its packet within the datagram
+     * being assembled
+     */
+    private static final class Space {
+
+        private final PacketNumberSpace space;
+        private final ArrayDeque<Frame> sendQueue = new ArrayDeque<>();
+        private List<Frame> sentFrames = new ArrayList<>();
+        private PacketSealer sealer;
+        private ReceivedPacketTracker ackTracker;
+        private long nextPacketNumber;
+        private long largestAcknowledged = -1;
+
+        private long packetNumber;
+        private int packetStart;
+        private int lengthOffset;
+        private int packetNumberOffset;
+        private int packetNumberLength;
+        private int payloadStart;
+        private int payloadEnd;
+        private int packetEnd;
+        private boolean ackEliciting;
+        private boolean inFlight;
+        /**
+         * whether the last frame of the packet has no Length field
+         */
+        private boolean payloadExtendsToEnd;
+
+        private Space( PacketNumberSpace space ) {
+            this.space = space;
+        }
+
+        private boolean hasDataToSend( long now ) {
+            if ( sealer == null ) {
+                return false;
+            }
+            return !sendQueue.isEmpty() || ( ackTracker != null && ackTracker.isAckDue( now ) );
+        }
+    }
+}
@@ -2,18 +2,17 @@
 
 import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
-import java.security.InvalidKeyException;
-import java.security.NoSuchAlgorithmException;
 import java.util.List;
-import javax.crypto.NoSuchPaddingException;
 import lombok.Data;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 
 import com.timtrense.quic.ConnectionId;
+import com.timtrense.quic.EncryptionLevel;
 import com.timtrense.quic.Frame;
 import com.timtrense.quic.LongHeaderPacket;
 import com.timtrense.quic.Packet;
+import com.timtrense.quic.PacketNumberSpace;
 import com.timtrense.quic.ProtocolVersion;
 import com.timtrense.quic.ShortHeaderPacket;
 import com.timtrense.quic.VariableLengthInteger;
@@ -21,7 +20,6 @@
 import com.timtrense.quic.impl.base.InitialPacketProtectionImpl;
 import com.timtrense.quic.impl.base.PacketNumberEncoder;
 import com.timtrense.quic.impl.base.PacketNumberImpl;
-import com.timtrense.quic.impl.base.VariableLengthIntegerEncoder;
 import com.timtrense.quic.impl.exception.MalformedDatagramException;
 import com.timtrense.quic.impl.exception.MalformedPacketException;
 import com.timtrense.quic.impl.exception.OutOfOrderProtectedPacketException;
@@ -30,8 +28,10 @@
 import com.timtrense.quic.impl.packets.HandshakePacketImpl;
 import com.timtrense.quic.impl.packets.InitialPacketImpl;
 import com.timtrense.quic.impl.packets.RetryPacketImpl;
+import com.timtrense.quic.impl.packets.ShortHeaderPacketImpl;
 import com.timtrense.quic.impl.packets.VersionNegotiationPacketImpl;
 import com.timtrense.quic.impl.packets.ZeroRttPacketImpl;
+import com.timtrense.quic.impl.recovery.ReceivedPacketTracker;
 
 @Data
 @RequiredArgsConstructor
@@ -73,7 +73,7 @@ public Packet parsePacket(
             return parseLongHeaderPacket( receivedDatagram, flags, data, packetIndex );
         }
         else {
-            return parseShortHeaderPacket( flags, data );
+            return parseShortHeaderPacket( receivedDatagram, flags, data, packetIndex );
         }
     }
 
@@ -122,8 +122,121 @@ public ZeroRttPacketImpl parse0RttPacket( ReceivedDatagram datagram, byte flags,
         return null; // TODO implement
     }
 
-    public ShortHeaderPacket parseShortHeaderPacket( byte flags, ByteBuffer remainingData ) {
-        return null; // TODO implement
+    /**
+     * Parses a 1-RTT packet, which makes up all of the traffic after the handshake, thus this is the hot path
+     * of parsing. Neither the destination connection id nor the header are copied: the connection id is resolved
+     * to the instance and connection known by the {@link #getContext() context} in a single lookup, the header
+     * protection is removed and the payload is decrypted in place. If the connection provides a
+     * {@link Connection#getFrameHandler(EncryptionLevel) frame handler}, the frames are passed to it instead of
+     * being materialized.
+     * <p>
+     * "Packets with a short header do not contain a Length field and so cannot be followed by other
+     * packets in the same UDP datagram." QUIC Spec/Section 12.2, thus the packet takes up the rest of the data.
+     *
+     * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-transport-32#section-17.3">QUIC Spec/Section 17.3</a>
+     */
+    public ShortHeaderPacket parseShortHeaderPacket( ReceivedDatagram datagram, byte flags,
+            ByteBuffer remainingData, int packetIndex )
+            throws QuicParsingException {
+        // flags were already parsed
+        int packetStart = remainingData.position() - 1;
+
+        // ===== PARSE HEADER =====
+
+        // DESTINATION CONNECTION ID
+        int dstConnIdOffset = remainingData.position();
+        int dstConnIdLength = context.getConnectionIdLength( remainingData, dstConnIdOffset );
+        if ( dstConnIdLength < 0 || dstConnIdLength > remainingData.remaining() ) {
+            throw new MalformedPacketException( "Unknown Destination Connection ID length",
+                    datagram, remainingData, packetIndex );
+        }
+        ConnectionIdTable.Entry localConnection =
+                context.getLocalConnection( remainingData, dstConnIdOffset, dstConnIdLength );
+        if ( localConnection == null ) {
+            throw new MalformedPacketException( "Unknown Destination Connection ID",
+                    datagram, remainingData, packetIndex );
+        }
+        ConnectionId dstConnId = localConnection.getConnectionId();
+        Connection connection = localConnection.getConnection();
+
+        // ===== DECRYPT PROTECTED PARTS OF HEADER =====
+
+        int packetNumberOffset = dstConnIdOffset + dstConnIdLength;
+        int protectedLength = remainingData.limit() - packetNumberOffset;
+        // the packet number is assumed to be 4 bytes long for sampling, see parseInitialPacket
+        if ( protectedLength < 4 + PacketProtection.SAMPLE_LENGTH ) {
+            throw new MalformedPacketException( "Packet too short to be sampled: " + protectedLength,
+                    datagram, remainingData, packetIndex );
+        }
+        PacketProtection packetProtection = connection.getPacketProtection( EncryptionLevel.APPLICATION_DATA );
+        if ( packetProtection == null ) {
+            throw new OutOfOrderProtectedPacketException( datagram, remainingData, packetIndex,
+                    dstConnId, EncryptionLevel.APPLICATION_DATA );
+        }
+        byte[] headerProtectionMask = packetProtection.deriveHeaderProtectionMask(
+                remainingData, packetNumberOffset + 4 );
+        if ( headerProtectionMask == null ) {
+            throw new OutOfOrderProtectedPacketException( datagram, remainingData, packetIndex,
+                    dstConnId, EncryptionLevel.APPLICATION_DATA );
+        }
+
+        byte decryptedFlags = (byte)( flags ^ headerProtectionMask[0] & 0b00011111 ); // short header: 5 bits masked
+        remainingData.put( packetStart, decryptedFlags );
+        int unprotectedPacketNumberLength = ( decryptedFlags & 0b00000011 ) + 1;
+        long packetNumber = 0;
+        for ( int i = 0; i < unprotectedPacketNumberLength; i++ ) {
+            byte unprotected = (byte)( remainingData.get( packetNumberOffset + i ) ^ headerProtectionMask[1 + i] );
+            remainingData.put( packetNumberOffset + i, unprotected );
+            packetNumber = ( packetNumber << 8 ) | ( unprotected & 0xFF );
+        }
+        ReceivedPacketTracker receivedPacketTracker =
+                connection.getReceivedPacketTracker( PacketNumberSpace.APPLICATION_DATA );
+        packetNumber = PacketNumberEncoder.decodePacketNumber(
+                packetNumber,
+                receivedPacketTracker == null ? -1 : receivedPacketTracker.getLargestReceived(),
+                unprotectedPacketNumberLength << 3 /* effectively multiplying by 8 */
+        );
+
+        // ===== DECRYPT PAYLOAD =====
+
+        int payloadOffset = packetNumberOffset + unprotectedPacketNumberLength;
+        int ciphertextLength = protectedLength - unprotectedPacketNumberLength;
+        boolean keyPhase = ( decryptedFlags & 0b00000100 ) != 0;
+        int plaintextLength;
+        try {
+            plaintextLength = packetProtection.aeadDecrypt( remainingData, packetStart,
+                    payloadOffset - packetStart, ciphertextLength, packetNumber, keyPhase );
+        }
+        catch ( GeneralSecurityException e ) {
+            throw new MalformedPacketException( "Cannot decrypt short header packet",
+                    datagram, remainingData, packetIndex );
+        }
+        // "An endpoint MUST treat receipt of a packet that has a non-zero value for these bits, after removing
+        //  both packet and header protection, as a connection error of type PROTOCOL_VIOLATION." QUIC Spec/17.3
+        if ( ( decryptedFlags & 0b00011000 ) != 0 ) {
+            throw new MalformedPacketException( "Reserved bits are set", datagram, remainingData, packetIndex );
+        }
+        ByteBuffer payloadBuffer = remainingData.duplicate();
+        payloadBuffer.limit( payloadOffset + plaintextLength );
+        payloadBuffer.position( payloadOffset );
+        payloadBuffer = payloadBuffer.slice();
+        remainingData.position( remainingData.limit() );
+
+        // ===== PARSE PAYLOAD =====
+
+        ShortHeaderPacketImpl shortHeaderPacket = new ShortHeaderPacketImpl();
+        shortHeaderPacket.setFlags( decryptedFlags );
+        shortHeaderPacket.setDestinationConnectionId( dstConnId );
+        shortHeaderPacket.setPacketNumber( new PacketNumberImpl( packetNumber ) );
+        FrameHandler frameHandler = connection.getFrameHandler( EncryptionLevel.APPLICATION_DATA );
+        if ( frameHandler == null ) {
+            shortHeaderPacket.setPayload( frameParser.parseFrames( shortHeaderPacket, payloadBuffer, plaintextLength ) );
+        }
+        else {
+            // the frames are consumed by the handler, the payload is not materialized
+            frameParser.parseFrames( shortHeaderPacket, payloadBuffer, plaintextLength, frameHandler );
+        }
+        return shortHeaderPacket;
     }
 
     public InitialPacketImpl parseInitialPacket( ReceivedDatagram datagram, byte flags,
@@ -131,6 +244,8 @@ public InitialPacketImpl parseInitialPacket( ReceivedDatagram datagram, byte fla
             throws QuicParsingException {
         InitialPacketImpl initialPacket = new InitialPacketImpl();
         initialPacket.setVersion( protocolVersion );
+        // flags and version were already parsed
+        int packetStart = remainingData.position() - 5;
 
         // ===== PARSE HEADER =====
 
@@ -198,46 +313,52 @@ length integer (Section 16)."
         // ===== DECRYPT PROTECTED PARTS OF HEADER =====
 
         // PACKET NUMBER and DECRYPTED FLAGS
-        // "This algorithm samples 16 bytes from the packet ciphertext." QUIC Spec-TLS/Section 5.4.3
-        byte[] sample = new byte[16];
-        int positionBeforeSampling = remainingData.position();
+        // the header protection is removed and the payload is decrypted in place, so the
+        // datagrams data must not be parsed again
+        int packetNumberOffset = remainingData.position();
+        int protectedLength = length.intValue();
         // "The same number of bytes are always sampled, but an allowance needs
         //   to be made for the endpoint removing protection, which will not know
         //   the length of the Packet Number field.  In sampling the packet
         //   ciphertext, the Packet Number field is assumed to be 4 bytes long
         //   (its maximum possible encoded length)." QUIC Spec-TLS/Section 5.4.2
-        remainingData.position( positionBeforeSampling + 4 );
-        remainingData.get( sample );
-        remainingData.position( positionBeforeSampling );
+        // "This algorithm samples 16 bytes from the packet ciphertext." QUIC Spec-TLS/Section 5.4.3
+        if ( protectedLength < 4 + PacketProtection.SAMPLE_LENGTH || protectedLength > remainingData.remaining() ) {
+            throw new MalformedPacketException( "Length does not fit the packet: " + protectedLength,
+                    datagram, remainingData, packetIndex );
+        }
 
-        InitialPacketProtectionImpl packetProtection = new InitialPacketProtectionImpl( context.getRole() );
+        InitialPacketProtectionImpl packetProtection;
         try {
-            packetProtection.initialize( dstConnIdImpl );
+            packetProtection = context.getInitialPacketProtection( dstConnIdImpl );
         }
-        catch ( NoSuchAlgorithmException | InvalidKeyException | NoSuchPaddingException e ) {
-            throw new OutOfOrderProtectedPacketException( datagram, remainingData, packetIndex );
+        catch ( GeneralSecurityException e ) {
+            // the initial keys are derived from the packet itself, thus they will never become available later
+            throw new MalformedPacketException( "Cannot derive initial packet protection",
+                    datagram, remainingData, packetIndex );
         }
-        byte[] headerProtectionMask = packetProtection.deriveHeaderProtectionMask( sample );
+        byte[] headerProtectionMask = packetProtection.deriveHeaderProtectionMask(
+                remainingData, packetNumberOffset + 4 );
 
         // "The least significant
         //   bits of the first byte of the packet [that is, the flags] are masked by the least
         //   significant bits of the first mask byte..." QUIC Spec-TLS/Section 5.4.1
         byte decryptedFlags = (byte)( flags ^ headerProtectionMask[0] & 0b00001111 ); // long header: 4 bits masked
         initialPacket.setFlags( decryptedFlags );
+        remainingData.put( packetStart, decryptedFlags );
         int unprotectedPacketNumberLength = initialPacket.getPacketNumberLength(); // call may be inlined?
-        byte[] protectedPacketNumber = new byte[unprotectedPacketNumberLength];
-        remainingData.get( protectedPacketNumber );
         // "[...] and the packet number is
         //   masked with the remaining bytes.  Any unused bytes of mask that might
         //   result from a shorter packet number encoding are unused." QUIC Spec-TLS/Section 5.4.1
+        long packetNumber = 0;
         for ( int i = 0; i < unprotectedPacketNumberLength; i++ ) {
-            protectedPacketNumber[i] = (byte)( protectedPacketNumber[i] ^ headerProtectionMask[1 + i] );
+            byte unprotected = (byte)( remainingData.get( packetNumberOffset + i ) ^ headerProtectionMask[1 + i] );
+            remainingData.put( packetNumberOffset + i, unprotected );
+            packetNumber = ( packetNumber << 8 ) | ( unprotected & 0xFF );
         }
-        long packetNumber = VariableLengthIntegerEncoder
-                .decodeFixedLengthInteger( protectedPacketNumber, 0, unprotectedPacketNumberLength );
         packetNumber = PacketNumberEncoder.decodePacketNumber(
                 packetNumber,
-                0L,
+                context.getLargestReceivedPacketNumber( dstConnIdImpl, PacketNumberSpace.INITIAL ),
                 unprotectedPacketNumberLength << 3 /* effectively multiplying by 8 */
         );
         initialPacket.setPacketNumber( new PacketNumberImpl( packetNumber ) );
@@ -248,34 +369,36 @@ length integer (Section 16)."
         //   header, starting from the first byte of either the short or long
         //   header, up to and including the unprotected packet number."
         // Quote from https://tools.ietf.org/html/draft-ietf-quic-tls-32#section-5.3
-
-        int initialHeaderLength = (int)initialPacket.getHeaderLength();
-        byte[] associatedData = new byte[initialHeaderLength];
-        // copy protected header from the received input
-        System.arraycopy( remainingData.array(), remainingData.position() - initialHeaderLength,
-                associatedData, 0, initialHeaderLength );
-        // and overwrite that with the unprotected parts
-        System.arraycopy( protectedPacketNumber /*which is now unprotected*/, 0, associatedData,
-                associatedData.length - protectedPacketNumber.length, protectedPacketNumber.length );
-        associatedData[0] = decryptedFlags;
-
+        // which is exactly the now unprotected header in the data
+        int payloadOffset = packetNumberOffset + unprotectedPacketNumberLength;
         // the length includes the packet number, thus the payload length is it minus that
-        byte[] payload = new byte[length.intValue() - unprotectedPacketNumberLength];
-        remainingData.get( payload );
-        // perform decryption
-        byte[] aeadNonce = packetProtection.deriveAeadNonce( packetNumber );
+        int ciphertextLength = protectedLength - unprotectedPacketNumberLength;
+        int plaintextLength;
         try {
-            payload = packetProtection.aeadDecrypt( payload, associatedData, aeadNonce );
+            plaintextLength = packetProtection.aeadDecrypt( remainingData, packetStart,
+                    payloadOffset - packetStart, ciphertextLength, packetNumber );
         }
         catch ( GeneralSecurityException e ) {
             throw new MalformedPacketException( "Cannot decrypt initial packet", datagram, remainingData, packetIndex );
         }
-        ByteBuffer payloadBuffer = ByteBuffer.wrap( payload );
+        ByteBuffer payloadBuffer = remainingData.duplicate();
+        payloadBuffer.limit( payloadOffset + plaintextLength );
+        payloadBuffer.position( payloadOffset );
+        payloadBuffer = payloadBuffer.slice();
+        // the packet ends after the authentication tag
+        remainingData.position( payloadOffset + ciphertextLength );
 
         // ===== PARSE PAYLOAD =====
 
-        List<Frame> frames = frameParser.parseFrames( initialPacket, payloadBuffer, payload.length );
-        initialPacket.setPayload( frames );
+        FrameHandler frameHandler = context.getFrameHandler( dstConnIdImpl, EncryptionLevel.INITIAL );
+        if ( frameHandler == null ) {
+            List<Frame> frames = frameParser.parseFrames( initialPacket, payloadBuffer, plaintextLength );
+            initialPacket.setPayload( frames );
+        }
+        else {
+            // the frames are consumed by the handler, the payload is not materialized
+            frameParser.parseFrames( initialPacket, payloadBuffer, plaintextLength, frameHandler );
+        }
 
         return initialPacket;
     }
@@ -1,5 +1,7 @@
 package com.timtrense.quic.impl;
 
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
 import lombok.NonNull;
 
 /**
@@ -9,6 +11,11 @@
  */
 public interface PacketProtection {
 
+    /**
+     * "This algorithm samples 16 bytes from the packet ciphertext." QUIC Spec-TLS/Section 5.4.3
+     */
+    int SAMPLE_LENGTH = 16;
+
     /**
      * Computes the header protection mask
      *
@@ -28,4 +35,56 @@ public interface PacketProtection {
     default byte[] deriveHeaderProtectionMask( @NonNull byte[] sample ) {
         return deriveHeaderProtectionMask( sample, 0, sample.length );
     }
+
+    /**
+     * Computes the header protection mask from the {@link #SAMPLE_LENGTH} bytes sample at the given absolute
+     * offset of the data. Implementations may return an array that is reused by the next call on the same thread.
+     * The default implementation copies the sample and forwards to {@link #deriveHeaderProtectionMask(byte[])}.
+     *
+     * @param data         the packet data
+     * @param sampleOffset the absolute index of the first byte of the sample
+     * @return the header protection mask or null if it cannot be computed from the current state and sample
+     */
+    default byte[] deriveHeaderProtectionMask( @NonNull ByteBuffer data, int sampleOffset ) {
+        byte[] sample = new byte[SAMPLE_LENGTH];
+        for ( int i = 0; i < SAMPLE_LENGTH; i++ ) {
+            sample[i] = data.get( sampleOffset + i );
+        }
+        return deriveHeaderProtectionMask( sample );
+    }
+
+    /**
+     * Decrypts the payload of a received packet in place. The header (with header protection already removed)
+     * is used as associated data and the plaintext overwrites the ciphertext, starting right after the header.
+     *
+     * @param data             the packet data, must be writable
+     * @param headerOffset     the absolute index of the first byte of the packet
+     * @param headerLength     the length of the header including the unprotected packet number
+     * @param ciphertextLength the length of the protected payload including the authentication tag
+     * @param packetNumber     the full packet number
+     * @return the length of the decrypted payload, that starts at headerOffset + headerLength
+     * @throws GeneralSecurityException if decryption fails, for example due to an invalid authentication tag
+     */
+    int aeadDecrypt( @NonNull ByteBuffer data, int headerOffset, int headerLength,
+            int ciphertextLength, long packetNumber ) throws GeneralSecurityException;
+
+    /**
+     * Decrypts the payload of a received short header packet in place, with the keys of the given key phase.
+     * The default implementation has no key phases and forwards to
+     * {@link #aeadDecrypt(ByteBuffer, int, int, int, long)}.
+     *
+     * @param data             the packet data, must be writable
+     * @param headerOffset     the absolute index of the first byte of the packet
+     * @param headerLength     the length of the header including the unprotected packet number
+     * @param ciphertextLength the length of the protected payload including the authentication tag
+     * @param packetNumber     the full packet number
+     * @param keyPhase         the unprotected Key Phase bit of the packet
+     * @return the length of the decrypted payload, that starts at headerOffset + headerLength
+     * @throws GeneralSecurityException if decryption fails, for example due to an invalid authentication tag
+     * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-tls-32#section-6">QUIC Spec-TLS/Section 6</a>
+     */
+    default int aeadDecrypt( @NonNull ByteBuffer data, int headerOffset, int headerLength,
+            int ciphertextLength, long packetNumber, boolean keyPhase ) throws GeneralSecurityException {
+        return aeadDecrypt( data, headerOffset, headerLength, ciphertextLength, packetNumber );
+    }
 }
@@ -0,0 +1,55 @@
+package com.timtrense.quic.impl;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import lombok.NonNull;
+
+/**
+ * The sending side of packet protection: encrypts the payload and applies header protection to packets that
+ * this endpoint sends, using the keys of this endpoint (whereas the {@link PacketProtection} removes the
+ * protection of received packets with the keys of the peer).
+ *
+ * @author Tim Trense
+ * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-tls-32#section-5">QUIC Spec-TLS/Section 5</a>
+ */
+public interface PacketSealer {
+
+    /**
+     * @return the number of bytes that the authentication tag adds to each encrypted payload
+     */
+    int getAeadTagLength();
+
+    /**
+     * Encrypts the payload in place and appends the authentication tag. The header (with the unprotected packet
+     * number) is used as associated data.
+     *
+     * @param data            the packet data, must be writable and have room for the tag behind the payload
+     * @param headerOffset    the absolute index of the first byte of the packet
+     * @param headerLength    the length of the header including the unprotected packet number
+     * @param plaintextLength the length of the payload starting at headerOffset + headerLength
+     * @param packetNumber    the full packet number
+     * @return the length of the encrypted payload including the authentication tag
+     * @throws GeneralSecurityException if encryption fails
+     */
+    int aeadEncrypt( @NonNull ByteBuffer data, int headerOffset, int headerLength,
+            int plaintextLength, long packetNumber ) throws GeneralSecurityException;
+
+    /**
+     * Computes the mask for the header protection of a sent packet from the
+     * {@link PacketProtection#SAMPLE_LENGTH} bytes sample at the given absolute offset of the data.
+     * The returned array may be reused by the next call on the same thread.
+     *
+     * @param data         the packet data with the encrypted payload
+     * @param sampleOffset the absolute index of the first byte of the sample
+     * @return the mask or null if it cannot be computed from the current state
+     */
+    byte[] deriveSealingHeaderProtectionMask( @NonNull ByteBuffer data, int sampleOffset );
+
+    /**
+     * @return the Key Phase bit of short headers sealed with the current keys
+     * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-tls-32#section-6">QUIC Spec-TLS/Section 6</a>
+     */
+    default boolean isKeyPhase() {
+        return false;
+    }
+}
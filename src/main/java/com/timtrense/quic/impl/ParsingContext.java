@@ -1,8 +1,13 @@
 package com.timtrense.quic.impl;
 
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+
 import com.timtrense.quic.ConnectionId;
 import com.timtrense.quic.EncryptionLevel;
 import com.timtrense.quic.EndpointRole;
+import com.timtrense.quic.PacketNumberSpace;
+import com.timtrense.quic.impl.base.InitialPacketProtectionImpl;
 
 /**
  * The context in which parsing happens.
@@ -35,10 +40,85 @@ public interface ParsingContext {
      */
     PacketProtection getPacketProtection( ConnectionId connectionId, EncryptionLevel encryptionLevel );
 
+    /**
+     * Provides the protection of Initial packets, which only depends on the destination connection id chosen
+     * by the client. Implementations may cache the returned instances, the default implementation creates
+     * and initializes a new one on every call.
+     *
+     * @param clientDestinationConnectionId the destination connection id of the Initial packet
+     * @return the initialized protection, never null
+     * @throws GeneralSecurityException if the spec-required ciphers are not available
+     */
+    default InitialPacketProtectionImpl getInitialPacketProtection( ConnectionId clientDestinationConnectionId )
+            throws GeneralSecurityException {
+        InitialPacketProtectionImpl protection = new InitialPacketProtectionImpl( getRole() );
+        protection.initialize( clientDestinationConnectionId );
+        return protection;
+    }
+
+    /**
+     * Provides the handler that receives the frames of the packets of that connection while they are parsed.
+     * If a handler is provided, the parser does not materialize the payload of the packet, which is the
+     * allocation-free receive path.
+     * <p>
+     * Note: This method is called from parsing threads.
+     *
+     * @param connectionId    the resolved connection id
+     * @param encryptionLevel the protection level of the packet to parse
+     * @return the handler or null to collect the frames into the payload of the packet, which is the default
+     * @see Connection#getFrameHandler(EncryptionLevel)
+     */
+    default FrameHandler getFrameHandler( ConnectionId connectionId, EncryptionLevel encryptionLevel ) {
+        return null;
+    }
+
+    /**
+     * Provides the largest packet number received so far in the given space of that connection, which is
+     * required to decode the truncated packet numbers of that space. Implementations that keep a
+     * {@link com.timtrense.quic.impl.recovery.ReceivedPacketTracker} per space return its
+     * {@link com.timtrense.quic.impl.recovery.ReceivedPacketTracker#getLargestReceived() largest received}.
+     * <p>
+     * Note: This method is called from parsing threads.
+     *
+     * @param connectionId the resolved connection id
+     * @param space        the space of the packet to decode
+     * @return the largest received packet number or -1 if none was received yet, which is the default
+     */
+    default long getLargestReceivedPacketNumber( ConnectionId connectionId, PacketNumberSpace space ) {
+        return -1;
+    }
+
+    /**
+     * Determines the length of the Destination Connection ID of a received short header packet, which the packet
+     * does not encode, as "The length of the Destination Connection ID field is expected to be known to endpoints."
+     * QUIC Spec/Section 5.1
+     * <p>
+     * Note: This method is called from parsing threads for every short header packet.
+     *
+     * @param data   the received data
+     * @param offset the absolute index of the first byte of the connection id
+     * @return the length of the connection id in bytes or -1 if it is not known to this endpoint
+     * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-transport-32#section-5.1">QUIC Spec/Section 5.1</a>
+     */
+    int getConnectionIdLength( ByteBuffer data, int offset );
+
+    /**
+     * Resolves the serialized form of a local connection id together with the connection it identifies,
+     * so that the keys, the largest received packet number and the frame handler of a short header packet
+     * are taken from the connection without searching it again. Implementations should return the registered
+     * instances, so that parsing does not allocate.
+     * <p>
+     * Note: This method is called from parsing threads for every short header packet.
+     *
+     * @param data   the received data
+     * @param offset the absolute index of the first byte of the connection id
+     * @param length the length of the connection id in bytes
+     * @return the mapping of the connection id or null if it is unknown
+     */
+    ConnectionIdTable.Entry getLocalConnection( ByteBuffer data, int offset, int length );
+
     //TODO: getPeerSecret(byte[] connectionId, EncryptionLevel)
     //TODO: getLocalSecret(byte[] connectionId, EncryptionLevel)
-    //TODO: getConnectionIdLength(byte[] connectionId)
     //TODO: getConnectionProtocolInUse(byte[] connectionId)
     //TODO: setConnectionProtocolInUse(byte[] connectionId, ProtocolVersion isUse)
-    //TODO: setConnectionIdLength(byte[] connectionId, int connectionIdLength)
 }
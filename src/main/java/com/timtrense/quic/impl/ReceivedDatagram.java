@@ -1,32 +1,41 @@
 package com.timtrense.quic.impl;
 
 import java.net.DatagramPacket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.time.Instant;
-import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NonNull;
-import lombok.RequiredArgsConstructor;
 
 /**
- * A {@link DatagramPacket} that was received by a {@link Receiver}
+ * A datagram that was received by a {@link BaseReceiver}.
+ * Depending on the receiver, the data is either held by a {@link DatagramPacket} or by a {@link ByteBuffer},
+ * use {@link #getPayload()} to access it regardless of that.
  *
  * @author Tim Trense
  */
 @Data
-@RequiredArgsConstructor
-@AllArgsConstructor
 public class ReceivedDatagram {
 
     /**
-     * the actual received datagram
+     * the actual received datagram or null if it was received into a {@link #buffer}
      */
-    private @NonNull DatagramPacket datagram;
+    private final DatagramPacket datagram;
+    /**
+     * the buffer holding the received data from position 0 up to its limit or null if it was
+     * received into a {@link #datagram}
+     */
+    private final ByteBuffer buffer;
+    /**
+     * the address of the peer that sent that datagram
+     */
+    private final SocketAddress sender;
     /**
      * the timestamp of receiving
      */
     private @NonNull Instant receiveTime;
     /**
-     * a counter given by the {@link Receiver}
+     * a counter given by the {@link BaseReceiver}
      */
     private long number;
     /**
@@ -34,4 +43,84 @@ public class ReceivedDatagram {
      * possibly due to the lack of decryption material because of reordering on the network
      */
     private short parseRetryCount = 0;
+    /**
+     * the offset relative to the first received byte at which parsing continues on a retry.
+     * Parsing decrypts packets in place, so packets before that offset must not be parsed again
+     */
+    private int resumeOffset = 0;
+    /**
+     * the index of the packet at the {@link #resumeOffset} within the datagram
+     */
+    private int resumePacketIndex = 0;
+
+    /**
+     * Creates a new datagram received into a {@link DatagramPacket}
+     *
+     * @param datagram    the received datagram
+     * @param receiveTime the timestamp of receiving
+     */
+    public ReceivedDatagram( @NonNull DatagramPacket datagram, @NonNull Instant receiveTime ) {
+        this( datagram, receiveTime, 0L, (short)0 );
+    }
+
+    /**
+     * Creates a new datagram received into a {@link DatagramPacket}
+     *
+     * @param datagram        the received datagram
+     * @param receiveTime     the timestamp of receiving
+     * @param number          the counter given by the receiver
+     * @param parseRetryCount the number of failed parsing attempts
+     */
+    public ReceivedDatagram( @NonNull DatagramPacket datagram, @NonNull Instant receiveTime,
+            long number, short parseRetryCount ) {
+        this.datagram = datagram;
+        this.buffer = null;
+        this.sender = datagram.getAddress() == null ? null : datagram.getSocketAddress();
+        this.receiveTime = receiveTime;
+        this.number = number;
+        this.parseRetryCount = parseRetryCount;
+    }
+
+    /**
+     * Creates a new datagram received into a {@link ByteBuffer}
+     *
+     * @param buffer          the buffer holding the received data from position 0 up to its limit
+     * @param sender          the address of the peer that sent that datagram
+     * @param receiveTime     the timestamp of receiving
+     * @param number          the counter given by the receiver
+     * @param parseRetryCount the number of failed parsing attempts
+     */
+    public ReceivedDatagram( @NonNull ByteBuffer buffer, SocketAddress sender, @NonNull Instant receiveTime,
+            long number, short parseRetryCount ) {
+        this.datagram = null;
+        this.buffer = buffer;
+        this.sender = sender;
+        this.receiveTime = receiveTime;
+        this.number = number;
+        this.parseRetryCount = parseRetryCount;
+    }
+
+    /**
+     * Creates a new view on the received data. The view shares the content with the received data, thus any
+     * modification of the content is visible to all views, but has an independent position and limit.
+     * The view may be a direct buffer, therefore parsers must not rely on {@link ByteBuffer#array()}.
+     *
+     * @return a new buffer, positioned at the first received byte and limited after the last received byte
+     */
+    public ByteBuffer getPayload() {
+        if ( datagram != null ) {
+            return ByteBuffer.wrap( datagram.getData(), datagram.getOffset(), datagram.getLength() );
+        }
+        return buffer.duplicate();
+    }
+
+    /**
+     * @return the number of received bytes
+     */
+    public int getLength() {
+        if ( datagram != null ) {
+            return datagram.getLength();
+        }
+        return buffer.limit();
+    }
 }
@@ -0,0 +1,164 @@
+package com.timtrense.quic.impl;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * A group of {@link ChannelReceiver receivers} that all listen on the same local port.
+ * <p>
+ * Each receiver owns its own {@link DatagramChannel} bound with SO_REUSEPORT, so that the operating system
+ * distributes the incoming datagrams among them (on Linux by hashing the 4-tuple of the datagram, which keeps
+ * all datagrams of one peer on the same receiver). This allows receiving on as many cores as there are receivers
+ * instead of being capped by a single receiving thread.
+ * <p>
+ * Each receiver feeds a fixed target queue (receiver i feeds target i modulo the number of targets).
+ * Giving each {@link DatagramParser} its own target queue thus pins every receiver to one parser,
+ * which keeps the datagrams of one socket on one parsing thread.
+ *
+ * @author Tim Trense
+ */
+public class ReceiverGroup {
+
+    /**
+     * All receivers of this group, one per socket
+     */
+    @Getter
+    private final @NonNull List<ChannelReceiver> receivers;
+    /**
+     * The address that all sockets of this group are bound to
+     */
+    @Getter
+    private final @NonNull InetSocketAddress localAddress;
+
+    /**
+     * Creates a new receiver group, opening {@link EndpointConfiguration#getReceiverCount()} sockets
+     * on the given address. The receivers are not started yet.
+     *
+     * @param bindAddress   the address to bind to. If its port is 0, an ephemeral port is chosen
+     *                      by binding the first socket and all other sockets are bound to that same port.
+     * @param targetQueues  the queues to offer the received datagrams to, receiver i offers to
+     *                      target i modulo the number of targets
+     * @param configuration the configuration to apply
+     * @throws IOException              if opening or binding any socket fails
+     * @throws IllegalArgumentException if no target queue is given, the receiver count is non-positive or
+     *                                  more than one receiver is requested without SO_REUSEPORT being available
+     */
+    public ReceiverGroup(
+            @NonNull InetSocketAddress bindAddress,
+            @NonNull List<BlockingQueue<ReceivedDatagram>> targetQueues,
+            @NonNull EndpointConfiguration configuration
+    ) throws IOException {
+        int receiverCount = configuration.getReceiverCount();
+        if ( receiverCount <= 0 ) {
+            throw new IllegalArgumentException( "Cannot create a ReceiverGroup with a non-positive receiverCount" );
+        }
+        if ( targetQueues.isEmpty() ) {
+            throw new IllegalArgumentException( "Cannot create a ReceiverGroup without target queues" );
+        }
+        boolean reusePort = configuration.isReusePort() && isReusePortSupported();
+        if ( receiverCount > 1 && !reusePort ) {
+            throw new IllegalArgumentException( "Cannot open multiple receivers on the same port without SO_REUSEPORT" );
+        }
+
+        List<ChannelReceiver> createdReceivers = new ArrayList<>( receiverCount );
+        SocketAddress address = bindAddress;
+        try {
+            for ( int i = 0; i < receiverCount; i++ ) {
+                DatagramChannel channel = DatagramChannel.open();
+                try {
+                    if ( reusePort ) {
+                        channel.setOption( StandardSocketOptions.SO_REUSEPORT, true );
+                    }
+                    channel.bind( address );
+                }
+                catch ( IOException e ) {
+                    channel.close();
+                    throw e;
+                }
+                // all further sockets must bind to the port that was actually chosen
+                address = channel.getLocalAddress();
+                createdReceivers.add( new ChannelReceiver(
+                        channel,
+                        targetQueues.get( i % targetQueues.size() ),
+                        configuration,
+                        configuration.getEndpointName() + ".ChannelReceiver-" + i
+                ) );
+            }
+        }
+        catch ( IOException e ) {
+            for ( ChannelReceiver receiver : createdReceivers ) {
+                receiver.getChannel().close();
+            }
+            throw e;
+        }
+        this.receivers = Collections.unmodifiableList( createdReceivers );
+        this.localAddress = (InetSocketAddress)address;
+    }
+
+    /**
+     * @return whether the platform supports binding multiple sockets to the same port via SO_REUSEPORT
+     */
+    public static boolean isReusePortSupported() {
+        try ( DatagramChannel channel = DatagramChannel.open() ) {
+            return channel.supportedOptions().contains( StandardSocketOptions.SO_REUSEPORT );
+        }
+        catch ( IOException e ) {
+            return false;
+        }
+    }
+
+    /**
+     * starts all receiving threads
+     */
+    public void start() {
+        receivers.forEach( Thread::start );
+    }
+
+    /**
+     * adds a listener to all receivers of this group
+     *
+     * @param listener the listener to add
+     */
+    public void addListener( @NonNull ReceiverStateListener listener ) {
+        receivers.forEach( r -> r.addListener( listener ) );
+    }
+
+    /**
+     * removes the listener from all receivers of this group
+     *
+     * @param listener the listener to remove
+     */
+    public void removeListener( @NonNull ReceiverStateListener listener ) {
+        receivers.forEach( r -> r.removeListener( listener ) );
+    }
+
+    /**
+     * interrupts all receiving threads and closes all sockets
+     *
+     * @throws IOException if closing any socket fails
+     */
+    public void close() throws IOException {
+        IOException failure = null;
+        for ( ChannelReceiver receiver : receivers ) {
+            receiver.interrupt();
+            try {
+                receiver.getChannel().close();
+            }
+            catch ( IOException e ) {
+                failure = e;
+            }
+        }
+        if ( failure != null ) {
+            throw failure;
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package com.timtrense.quic.impl;
 
 /**
- * Listener for changes of the {@link ReceiverState} of an {@link Receiver}
+ * Listener for changes of the {@link ReceiverState} of a {@link BaseReceiver receiver}
  *
  * @author Tim Trense
  */
@@ -13,5 +13,5 @@ public interface ReceiverStateListener {
      * @param receiver the receiver that's state is transitioning
      * @param newState the state the receiver will be in, any time after this call
      */
-    void beforeStateChange( Receiver receiver, ReceiverState newState );
+    void beforeStateChange( BaseReceiver receiver, ReceiverState newState );
 }
@@ -0,0 +1,313 @@
+package com.timtrense.quic.impl;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousCloseException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * The datagrams sending thread based on a non-blocking {@link DatagramChannel}, the counterpart of
+ * the {@link ChannelReceiver}.
+ * <p>
+ * Producers (usually a {@link ConnectionSender} per {@link PacketAssembler})
+ * {@link #send(OutgoingDatagram) hand over} datagrams via the bounded {@link #getSendQueue() send queue}.
+ * The sender drains that queue in batches of up to {@link #getBatchSize()} datagrams and writes them to
+ * the channel, giving the buffers back to their {@link OutgoingDatagram#getRecycler() recyclers} afterwards.
+ * <p>
+ * If the socket would block, no datagram is dropped. Instead the sender goes to {@link SenderState#BLOCKED}
+ * and waits on a {@link Selector} for the socket to become writable again. Meanwhile the send queue fills up,
+ * so that producers wait in {@link #send(OutgoingDatagram)}, which fails after the
+ * {@link #getSendQueueBlockTimeout() timeout}. Thus the socket applies backpressure to the assemblers.
+ *
+ * @author Tim Trense
+ * @see ChannelReceiver
+ */
+@EqualsAndHashCode( callSuper = true )
+public class Sender extends Thread {
+
+    /**
+     * The channel to send to. Must be in non-blocking mode.
+     */
+    @Getter
+    private final @NonNull DatagramChannel channel;
+    /**
+     * The queue to take the datagrams to send from
+     */
+    @Getter
+    private final @NonNull BlockingQueue<OutgoingDatagram> sendQueue;
+    /**
+     * The maximum number of datagrams to take from the {@link #getSendQueue() send queue} at once
+     */
+    @Getter
+    private final int batchSize;
+    /**
+     * The number of milliseconds that {@link #send(OutgoingDatagram)} may block until the
+     * {@link #getSendQueue() send queue} accepts the datagram
+     */
+    @Getter
+    private int sendQueueBlockTimeout;
+    /**
+     * the current state
+     */
+    @Getter
+    private volatile SenderState senderState;
+    /**
+     * The number of datagrams written to the channel
+     */
+    @Getter
+    private volatile long sentCount;
+    /**
+     * The number of times that the socket would block
+     */
+    @Getter
+    private volatile long blockedCount;
+
+    /**
+     * all registered listeners to notify about state changes
+     */
+    private final Set<SenderStateListener> stateListenerSet = new HashSet<>();
+    /**
+     * the selector to wait on while the socket would block
+     */
+    private final Selector selector;
+    private final SelectionKey selectionKey;
+    /**
+     * the currently sent batch, reused for every batch
+     */
+    private final List<OutgoingDatagram> batch;
+
+    /**
+     * Creates a new sender, writing the datagrams of the given queue to the given channel
+     *
+     * @param channel       the target to write datagrams to, in non-blocking mode
+     * @param sendQueue     the queue to take all datagrams to send from
+     * @param configuration the initial configuration to apply
+     * @throws IOException if no selector can be opened for the channel
+     */
+    public Sender(
+            @NonNull DatagramChannel channel,
+            @NonNull BlockingQueue<OutgoingDatagram> sendQueue,
+            @NonNull EndpointConfiguration configuration
+    ) throws IOException {
+        this( channel, sendQueue, configuration, configuration.getEndpointName() + ".Sender" );
+    }
+
+    /**
+     * Creates a new sender, writing the datagrams of the given queue to the given channel
+     *
+     * @param channel       the target to write datagrams to, in non-blocking mode
+     * @param sendQueue     the queue to take all datagrams to send from
+     * @param configuration the initial configuration to apply
+     * @param threadName    the name of the sending thread
+     * @throws IOException if no selector can be opened for the channel
+     */
+    public Sender(
+            @NonNull DatagramChannel channel,
+            @NonNull BlockingQueue<OutgoingDatagram> sendQueue,
+            @NonNull EndpointConfiguration configuration,
+            @NonNull String threadName
+    ) throws IOException {
+        if ( channel.isBlocking() ) {
+            throw new IllegalArgumentException( "Cannot send via a blocking DatagramChannel" );
+        }
+        if ( configuration.getSenderBatchSize() <= 0 ) {
+            throw new IllegalArgumentException( "Cannot set a non-positive senderBatchSize for a Sender" );
+        }
+        this.channel = channel;
+        this.sendQueue = sendQueue;
+        this.batchSize = configuration.getSenderBatchSize();
+        this.batch = new ArrayList<>( batchSize );
+        setSendQueueBlockTimeout( configuration.getAssemblerSendQueueBlockTimeout() );
+        this.selector = Selector.open();
+        this.selectionKey = channel.register( selector, 0 );
+        this.senderState = SenderState.NEW;
+
+        setDaemon( true );
+        setName( threadName );
+    }
+
+    /**
+     * Hands the datagram over to this sender, blocking while the send queue is full.
+     * If this returns false, the caller still owns the datagram and should retry it later rather than
+     * assembling any more datagrams, as the {@link ConnectionSender} does.
+     *
+     * @param datagram the datagram to send
+     * @return whether the datagram was accepted within the {@link #getSendQueueBlockTimeout() timeout}
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean send( @NonNull OutgoingDatagram datagram ) throws InterruptedException {
+        datagram.setEnqueueTime( System.nanoTime() );
+        return sendQueue.offer( datagram, sendQueueBlockTimeout, TimeUnit.MILLISECONDS );
+    }
+
+    @Override
+    public void run() {
+        setSenderState( SenderState.ACTIVE );
+        try {
+            while ( !isInterrupted() ) {
+                batch.add( sendQueue.take() );
+                sendQueue.drainTo( batch, batchSize - 1 );
+                for ( int i = 0; i < batch.size(); i++ ) {
+                    OutgoingDatagram datagram = batch.get( i );
+                    write( datagram );
+                    batch.set( i, null );
+                    sentCount++;
+                    onSent( datagram, System.nanoTime() );
+                }
+                batch.clear();
+            }
+            setSenderState( SenderState.STOP );
+        }
+        catch ( InterruptedIOException | AsynchronousCloseException | InterruptedException ignored ) {
+            Thread.currentThread().interrupt();
+            setSenderState( SenderState.STOP );
+        }
+        catch ( IOException e ) {
+            e.printStackTrace();
+            setSenderState( SenderState.ERROR );
+        }
+        finally {
+            // nothing is sent anymore, so give back the buffers of the current batch and of all queued datagrams
+            for ( OutgoingDatagram datagram : batch ) {
+                if ( datagram != null ) {
+                    giveBack( datagram );
+                }
+            }
+            batch.clear();
+            OutgoingDatagram queued;
+            while ( ( queued = sendQueue.poll() ) != null ) {
+                giveBack( queued );
+            }
+            try {
+                selector.close();
+            }
+            catch ( IOException e ) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * Called after the datagram was written to the channel.
+     * The default implementation gives the buffer back to its recycler.
+     *
+     * @param datagram the sent datagram
+     * @param now      the timestamp in nanoseconds of having sent the datagram
+     */
+    protected void onSent( @NonNull OutgoingDatagram datagram, long now ) {
+        giveBack( datagram );
+    }
+
+    private static void giveBack( OutgoingDatagram datagram ) {
+        if ( datagram.getRecycler() != null ) {
+            datagram.getRecycler().giveBack( datagram.getBuffer() );
+        }
+    }
+
+    /**
+     * writes the datagram, waiting for the socket to become writable as long as it would block
+     *
+     * @param datagram the datagram to write
+     * @throws IOException if writing fails or the thread is interrupted while waiting
+     */
+    private void write( OutgoingDatagram datagram ) throws IOException {
+        ByteBuffer buffer = datagram.getBuffer();
+        if ( !buffer.hasRemaining() ) {
+            return;
+        }
+        while ( sendOnce( datagram, buffer ) == 0 ) {
+            blockedCount++;
+            setSenderState( SenderState.BLOCKED );
+            selectionKey.interestOps( SelectionKey.OP_WRITE );
+            selector.select();
+            selector.selectedKeys().clear();
+            selectionKey.interestOps( 0 );
+            if ( isInterrupted() ) {
+                throw new InterruptedIOException( "Interrupted while waiting for the socket to become writable" );
+            }
+            setSenderState( SenderState.ACTIVE );
+        }
+    }
+
+    /**
+     * Makes one attempt to write the datagram to the channel
+     *
+     * @param datagram the datagram to write
+     * @param buffer   the buffer of the datagram
+     * @return the number of bytes sent, which is 0 if the socket would block
+     * @throws IOException if writing fails
+     */
+    protected int sendOnce( @NonNull OutgoingDatagram datagram, @NonNull ByteBuffer buffer ) throws IOException {
+        if ( datagram.getReceiver() == null ) {
+            return channel.write( buffer );
+        }
+        return channel.send( buffer, datagram.getReceiver() );
+    }
+
+    /**
+     * adds a listener to this sender
+     *
+     * @param listener the listener to add
+     */
+    public void addListener( @NonNull SenderStateListener listener ) {
+        synchronized( stateListenerSet ) {
+            stateListenerSet.add( listener );
+        }
+    }
+
+    /**
+     * removes the listener from this sender
+     *
+     * @param listener the listener to remove
+     */
+    public void removeListener( @NonNull SenderStateListener listener ) {
+        synchronized( stateListenerSet ) {
+            stateListenerSet.remove( listener );
+        }
+    }
+
+    /**
+     * sets the value corresponding to {@link #getSendQueueBlockTimeout()}
+     *
+     * @param sendQueueBlockTimeout the positive timeout in milliseconds to set
+     */
+    public void setSendQueueBlockTimeout( int sendQueueBlockTimeout ) {
+        if ( sendQueueBlockTimeout <= 0 ) {
+            throw new IllegalArgumentException( "Cannot set a non-positive" +
+                    " sendQueueBlockTimeout for a Sender" );
+        }
+        this.sendQueueBlockTimeout = sendQueueBlockTimeout;
+    }
+
+    /**
+     * calls all listeners and then updates the current state.
+     * does no state transition allowance checks, thus is private
+     *
+     * @param newState the new state to transition to
+     */
+    private void setSenderState( @NonNull SenderState newState ) {
+        synchronized( stateListenerSet ) {
+            stateListenerSet.forEach( l -> {
+                try {
+                    l.beforeStateChange( Sender.this, newState );
+                }
+                catch ( Exception e ) {
+                    e.printStackTrace();
+                }
+            } );
+        }
+        senderState = newState;
+    }
+}
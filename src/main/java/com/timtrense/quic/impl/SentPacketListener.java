@@ -0,0 +1,33 @@
+package com.timtrense.quic.impl;
+
+import java.util.List;
+import lombok.NonNull;
+
+import com.timtrense.quic.Frame;
+import com.timtrense.quic.PacketNumberSpace;
+
+/**
+ * Receives every packet that a {@link PacketAssembler} sealed, eg. to record it for loss detection.
+ * The parameters match {@link com.timtrense.quic.impl.recovery.LossDetector#onPacketSent(PacketNumberSpace, long,
+ * int, boolean, boolean, List, long)}, which keeps the frames of every packet until it was acknowledged, declared
+ * lost or discarded.
+ *
+ * @author Tim Trense
+ */
+@FunctionalInterface
+public interface SentPacketListener {
+
+    /**
+     * @param space        the space of the packet
+     * @param packetNumber the number of the packet
+     * @param size         the number of bytes of the packet
+     * @param ackEliciting whether the packet contains ack-eliciting frames
+     * @param inFlight     whether the packet counts towards the bytes in flight
+     * @param frames       the frames of the packet, except for ACK and PADDING frames. Every packet gets its own
+     *                     list, which the listener may keep. It should be
+     *                     {@link PacketAssembler#giveBackFrames(List) given back} once no longer needed
+     * @param now          the time at which the packet was sent
+     */
+    void onPacketSent( @NonNull PacketNumberSpace space, long packetNumber, int size, boolean ackEliciting,
+                       boolean inFlight, List<Frame> frames, long now );
+}
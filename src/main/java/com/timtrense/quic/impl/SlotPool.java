@@ -0,0 +1,150 @@
+package com.timtrense.quic.impl;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded, lock-free pool of reusable objects.
+ * <p>
+ * The pooled objects are held in a fixed array of slots. Taking an object clears a filled slot and giving back
+ * an object fills an empty slot, both by compare-and-set. Each thread starts probing at its own offset,
+ * so that concurrent takers and givers rarely compete for the same slot.
+ * <p>
+ * The pool counts its hits, misses, recycled and discarded objects, so that callers can verify that
+ * their steady state does not allocate.
+ *
+ * @param <T> the type of pooled objects
+ * @author Tim Trense
+ */
+final class SlotPool<T> {
+
+    /**
+     * the slots, a null slot is empty
+     */
+    private final AtomicReferenceArray<T> slots;
+    /**
+     * number of {@link #poll()} calls that returned a pooled object that was not {@link #reject() rejected}
+     */
+    private final LongAdder hits = new LongAdder();
+    /**
+     * number of {@link #poll()} calls that did not find a pooled object
+     */
+    private final LongAdder misses = new LongAdder();
+    /**
+     * number of objects accepted by {@link #offer(Object)}
+     */
+    private final LongAdder recycled = new LongAdder();
+    /**
+     * number of objects that were rejected by {@link #offer(Object)} or by the caller of {@link #poll()}
+     */
+    private final LongAdder discarded = new LongAdder();
+
+    /**
+     * Creates a new, empty pool
+     *
+     * @param capacity the maximum number of simultaneously pooled objects
+     */
+    SlotPool( int capacity ) {
+        if ( capacity < 0 ) {
+            throw new IllegalArgumentException( "Cannot create a pool with a negative capacity" );
+        }
+        this.slots = new AtomicReferenceArray<>( capacity );
+    }
+
+    /**
+     * takes any object out of the pool
+     *
+     * @return a pooled object or null if the pool is empty
+     */
+    T poll() {
+        int capacity = slots.length();
+        int start = probeStart( capacity );
+        for ( int i = 0; i < capacity; i++ ) {
+            int index = ( start + i ) % capacity;
+            T value = slots.get( index );
+            if ( value != null && slots.compareAndSet( index, value, null ) ) {
+                hits.increment();
+                return value;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * counts an object returned by {@link #poll()} as discarded instead of as a hit,
+     * because the caller found it unusable
+     */
+    void reject() {
+        hits.decrement();
+        discarded.increment();
+    }
+
+    /**
+     * puts the object into an empty slot
+     *
+     * @param value the object to pool
+     * @return whether an empty slot was found, otherwise the object is discarded
+     */
+    boolean offer( T value ) {
+        int capacity = slots.length();
+        int start = probeStart( capacity );
+        for ( int i = 0; i < capacity; i++ ) {
+            int index = ( start + i ) % capacity;
+            if ( slots.get( index ) == null && slots.compareAndSet( index, null, value ) ) {
+                recycled.increment();
+                return true;
+            }
+        }
+        discarded.increment();
+        return false;
+    }
+
+    /**
+     * counts an object as discarded that was rejected without being offered
+     */
+    void discard() {
+        discarded.increment();
+    }
+
+    /**
+     * removes all pooled objects
+     */
+    void clear() {
+        for ( int i = 0; i < slots.length(); i++ ) {
+            if ( slots.getAndSet( i, null ) != null ) {
+                discarded.increment();
+            }
+        }
+    }
+
+    /**
+     * @return the maximum number of simultaneously pooled objects
+     */
+    int capacity() {
+        return slots.length();
+    }
+
+    long getHitCount() {
+        return hits.sum();
+    }
+
+    long getMissCount() {
+        return misses.sum();
+    }
+
+    long getRecycleCount() {
+        return recycled.sum();
+    }
+
+    long getDiscardCount() {
+        return discarded.sum();
+    }
+
+    private static int probeStart( int capacity ) {
+        if ( capacity == 0 ) {
+            return 0;
+        }
+        return (int)( Thread.currentThread().getId() % capacity );
+    }
+}
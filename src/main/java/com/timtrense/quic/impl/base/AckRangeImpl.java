@@ -0,0 +1,28 @@
+package com.timtrense.quic.impl.base;
+
+import lombok.Data;
+import lombok.NonNull;
+
+import com.timtrense.quic.AckRange;
+import com.timtrense.quic.VariableLengthInteger;
+
+/**
+ * Default implementation of {@link AckRange}
+ *
+ * @author Tim Trense
+ */
+@Data
+public class AckRangeImpl implements AckRange {
+
+    private final @NonNull VariableLengthInteger gap;
+    private final @NonNull VariableLengthInteger length;
+
+    public AckRangeImpl( long gap, long length ) {
+        this( VariableLengthInteger.valueOf( gap ), VariableLengthInteger.valueOf( length ) );
+    }
+
+    public AckRangeImpl( @NonNull VariableLengthInteger gap, @NonNull VariableLengthInteger length ) {
+        this.gap = gap;
+        this.length = length;
+    }
+}
@@ -0,0 +1,403 @@
+package com.timtrense.quic.impl.base;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import lombok.NonNull;
+
+import com.timtrense.quic.AckRange;
+
+/**
+ * A set of packet numbers, kept as disjoint ranges in descending order, which is the order of the ranges
+ * within an ACK frame.
+ * <p>
+ * https://tools.ietf.org/html/draft-ietf-quic-transport-32#section-19.3.1
+ * "Each ACK Range consists of alternating Gap and ACK Range values in descending packet number order."
+ * <p>
+ * The ranges are stored as pairs of primitive longs, so neither adding packet numbers nor encoding or decoding
+ * ACK frames allocates once the backing array has grown to the typical number of ranges. The number of bytes
+ * of the encoded Gap and ACK Range pairs is maintained on every change, so that {@link #getEncodedLength()}
+ * takes constant time even for hundreds of ranges. Adding the packet number contiguous to the largest range
+ * takes constant time, too. Starting a new range, like a new largest range after a gap, shifts the smaller
+ * ranges and takes time linear in their number. This class is not thread-safe.
+ *
+ * @author Tim Trense
+ */
+public class AckRangeSet {
+
+    /**
+     * the number of ranges a new set makes room for
+     */
+    private static final int DEFAULT_CAPACITY = 8;
+
+    /**
+     * per range i: the largest packet number at 2*i and the smallest at 2*i+1. the range at 0 is the largest one
+     */
+    private long[] ranges;
+    /**
+     * the number of ranges
+     */
+    private int count;
+    /**
+     * the sum of {@link #pairLength(int)} over all ranges
+     */
+    private long pairsLength;
+
+    public AckRangeSet() {
+        this.ranges = new long[2 * DEFAULT_CAPACITY];
+    }
+
+    /**
+     * @return the number of disjoint ranges, thus the ACK Range Count of an ACK frame plus one
+     */
+    public int size() {
+        return count;
+    }
+
+    public boolean isEmpty() {
+        return count == 0;
+    }
+
+    /**
+     * @param index the index of the range, 0 being the one with the largest packet numbers
+     * @return the largest packet number within that range
+     */
+    public long getLargest( int index ) {
+        checkIndex( index );
+        return ranges[2 * index];
+    }
+
+    /**
+     * @param index the index of the range, 0 being the one with the largest packet numbers
+     * @return the smallest packet number within that range
+     */
+    public long getSmallest( int index ) {
+        checkIndex( index );
+        return ranges[2 * index + 1];
+    }
+
+    /**
+     * @return the largest packet number in this set, the Largest Acknowledged of an ACK frame
+     */
+    public long getLargestAcknowledged() {
+        return getLargest( 0 );
+    }
+
+    /**
+     * @return the First ACK Range of an ACK frame
+     */
+    public long getFirstAckRange() {
+        return getLargest( 0 ) - getSmallest( 0 );
+    }
+
+    /**
+     * @param index the index of the range, from 1 on
+     * @return the encoded Gap preceding the given range within an ACK frame
+     */
+    public long getGap( int index ) {
+        return getSmallest( index - 1 ) - getLargest( index ) - 2;
+    }
+
+    /**
+     * @param index the index of the range, from 1 on
+     * @return the given range as an {@link AckRange} of an ACK frame
+     */
+    public AckRange getAckRange( int index ) {
+        return new AckRangeImpl( getGap( index ), getLargest( index ) - getSmallest( index ) );
+    }
+
+    /**
+     * @param packetNumber the packet number to check
+     * @return true if this set contains the packet number
+     */
+    public boolean contains( long packetNumber ) {
+        int i = indexOfFirstSmallestAtMost( packetNumber );
+        return i < count && ranges[2 * i] >= packetNumber;
+    }
+
+    /**
+     * adds a packet number to this set. Adding the packet number right above the largest range takes constant
+     * time, any packet number starting a new range takes time linear in the number of ranges below it.
+     *
+     * @param packetNumber the packet number to add
+     * @return true if the set did not contain it yet
+     */
+    public boolean add( long packetNumber ) {
+        return addRange( packetNumber, packetNumber );
+    }
+
+    /**
+     * adds all packet numbers in the given range to this set, merging it with the overlapping and adjacent ranges
+     *
+     * @param smallest the smallest packet number to add
+     * @param largest  the largest packet number to add
+     * @return true if the set did not contain all of them yet
+     */
+    public boolean addRange( long smallest, long largest ) {
+        if ( smallest < 0 || largest < smallest ) {
+            throw new IllegalArgumentException( "Cannot add an invalid range: " + smallest + ".." + largest );
+        }
+        // the ranges before first are strictly above the new one, not even adjacent
+        int first = count > 0 && ranges[1] > largest + 1 ? indexOfFirstSmallestAtMost( largest + 1 ) : 0;
+        // the ranges from last on are strictly below the new one, not even adjacent
+        int last = first;
+        while ( last < count && ranges[2 * last] >= smallest - 1 ) {
+            last++;
+        }
+        if ( first == last ) {
+            pairsLength -= pairLength( first );
+            insertAt( first, largest, smallest );
+        }
+        else {
+            long mergedLargest = Math.max( largest, ranges[2 * first] );
+            long mergedSmallest = Math.min( smallest, ranges[2 * ( last - 1 ) + 1] );
+            if ( last - first == 1 && mergedLargest == ranges[2 * first] && mergedSmallest == ranges[2 * first + 1] ) {
+                return false; // already contained
+            }
+            for ( int i = first; i <= last; i++ ) {
+                pairsLength -= pairLength( i );
+            }
+            removeRange( first + 1, last );
+            ranges[2 * first] = mergedLargest;
+            ranges[2 * first + 1] = mergedSmallest;
+        }
+        pairsLength += pairLength( first ) + pairLength( first + 1 );
+        return true;
+    }
+
+    /**
+     * removes all packet numbers below the given one, eg. once an ACK frame acknowledging them was acknowledged
+     *
+     * @param packetNumber the smallest packet number to keep
+     */
+    public void removeBelow( long packetNumber ) {
+        int keep = 0;
+        while ( keep < count && ranges[2 * keep + 1] >= packetNumber ) {
+            keep++;
+        }
+        if ( keep < count && ranges[2 * keep] >= packetNumber ) {
+            // that range is cut, not removed
+            retainLargest( keep + 1 );
+            pairsLength -= pairLength( keep );
+            ranges[2 * keep + 1] = packetNumber;
+            pairsLength += pairLength( keep );
+        }
+        else {
+            retainLargest( keep );
+        }
+    }
+
+    /**
+     * removes the ranges of the smallest packet numbers, eg. to limit the size of an ACK frame
+     *
+     * @param maxRanges the number of ranges to keep
+     */
+    public void retainLargest( int maxRanges ) {
+        if ( maxRanges < 0 ) {
+            throw new IllegalArgumentException( "Cannot retain a negative number of ranges" );
+        }
+        for ( int i = maxRanges; i < count; i++ ) {
+            pairsLength -= pairLength( i );
+        }
+        count = Math.min( count, maxRanges );
+    }
+
+    public void clear() {
+        count = 0;
+        pairsLength = 0;
+    }
+
+    /**
+     * starts filling this set from a received ACK frame, clearing it beforehand
+     *
+     * @param largestAcknowledged the Largest Acknowledged of the ACK frame
+     * @param firstAckRange       the First ACK Range of the ACK frame
+     */
+    public void startDecoding( long largestAcknowledged, long firstAckRange ) {
+        if ( firstAckRange < 0 || firstAckRange > largestAcknowledged ) {
+            throw new IllegalArgumentException( "Cannot decode an ACK frame with invalid first range" );
+        }
+        clear();
+        insertAt( 0, largestAcknowledged, largestAcknowledged - firstAckRange );
+    }
+
+    /**
+     * appends the next range of a received ACK frame below the smallest range of this set, in constant time
+     *
+     * @param gap    the Gap field of the ACK frame
+     * @param length the ACK Range field of the ACK frame
+     */
+    public void appendDecoded( long gap, long length ) {
+        if ( count == 0 ) {
+            throw new IllegalStateException( "Cannot append a range before decoding started" );
+        }
+        long largest = ranges[2 * count - 1] - gap - 2;
+        if ( gap < 0 || length < 0 || largest - length < 0 ) {
+            throw new IllegalArgumentException( "Cannot decode an ACK range of negative packet numbers" );
+        }
+        insertAt( count, largest, largest - length );
+        pairsLength += pairLength( count - 1 );
+    }
+
+    /**
+     * decodes the fields of an ACK frame following its type (Largest Acknowledged, ACK Delay, ACK Range Count,
+     * First ACK Range and the ranges) into this set, clearing it beforehand. ECN counts are not read.
+     *
+     * @param data the data positioned after the frame type, positioned after the last range on return
+     * @return the ACK Delay field
+     * @throws IllegalArgumentException if the frame is truncated or acknowledges negative packet numbers
+     */
+    public long decode( @NonNull ByteBuffer data ) {
+        long largestAcknowledged = decodeField( data );
+        long delay = decodeField( data );
+        long rangeCount = decodeField( data );
+        startDecoding( largestAcknowledged, decodeField( data ) );
+        for ( long i = 0; i < rangeCount; i++ ) {
+            long gap = decodeField( data );
+            appendDecoded( gap, decodeField( data ) );
+        }
+        return delay;
+    }
+
+    /**
+     * @return the number of bytes of the encoded Largest Acknowledged, ACK Range Count, First ACK Range and
+     * all Gap and ACK Range fields, which is the length of an ACK frame without its type, ACK Delay and ECN counts
+     */
+    public long getEncodedLength() {
+        if ( count == 0 ) {
+            return 0;
+        }
+        return VariableLengthIntegerEncoder.getLengthInBytes( getLargestAcknowledged() )
+                + VariableLengthIntegerEncoder.getLengthInBytes( count - 1 )
+                + VariableLengthIntegerEncoder.getLengthInBytes( getFirstAckRange() )
+                + pairsLength;
+    }
+
+    /**
+     * encodes the fields of an ACK frame following its type, that is Largest Acknowledged, the given ACK Delay,
+     * ACK Range Count, First ACK Range and all Gap and ACK Range fields. ECN counts are not written.
+     *
+     * @param buffer the target, must have at least {@link #getEncodedLength()} plus the length of the delay
+     *               bytes remaining
+     * @param delay  the encoded ACK Delay
+     * @return the number of bytes written
+     */
+    public int encode( @NonNull ByteBuffer buffer, long delay ) {
+        if ( count == 0 ) {
+            throw new IllegalStateException( "Cannot encode an empty set of ACK ranges" );
+        }
+        int start = buffer.position();
+        VariableLengthIntegerEncoder.encode( getLargestAcknowledged(), buffer );
+        VariableLengthIntegerEncoder.encode( delay, buffer );
+        VariableLengthIntegerEncoder.encode( count - 1, buffer );
+        VariableLengthIntegerEncoder.encode( getFirstAckRange(), buffer );
+        for ( int i = 1; i < count; i++ ) {
+            VariableLengthIntegerEncoder.encode( ranges[2 * i - 1] - ranges[2 * i] - 2, buffer );
+            VariableLengthIntegerEncoder.encode( ranges[2 * i] - ranges[2 * i + 1], buffer );
+        }
+        return buffer.position() - start;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder( "AckRangeSet[" );
+        for ( int i = 0; i < count; i++ ) {
+            sb.append( i == 0 ? "" : ", " ).append( ranges[2 * i + 1] ).append( ".." ).append( ranges[2 * i] );
+        }
+        return sb.append( ']' ).toString();
+    }
+
+    @Override
+    public boolean equals( Object o ) {
+        if ( this == o ) {
+            return true;
+        }
+        if ( !( o instanceof AckRangeSet ) ) {
+            return false;
+        }
+        AckRangeSet that = (AckRangeSet)o;
+        if ( count != that.count ) {
+            return false;
+        }
+        for ( int i = 0; i < 2 * count; i++ ) {
+            if ( ranges[i] != that.ranges[i] ) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int result = count;
+        for ( int i = 0; i < 2 * count; i++ ) {
+            result = 31 * result + Long.hashCode( ranges[i] );
+        }
+        return result;
+    }
+
+    /**
+     * @param index the index of a range
+     * @return the number of bytes of the encoded Gap and ACK Range fields of that range, 0 for the first range
+     * and for indices out of bounds
+     */
+    private long pairLength( int index ) {
+        if ( index < 1 || index >= count ) {
+            return 0;
+        }
+        return VariableLengthIntegerEncoder.getLengthInBytes( ranges[2 * index - 1] - ranges[2 * index] - 2 )
+                + VariableLengthIntegerEncoder.getLengthInBytes( ranges[2 * index] - ranges[2 * index + 1] );
+    }
+
+    /**
+     * @param packetNumber the packet number to search
+     * @return the index of the first range whose smallest packet number is at most the given one, or the number
+     * of ranges if there is none
+     */
+    private int indexOfFirstSmallestAtMost( long packetNumber ) {
+        int low = 0;
+        int high = count;
+        while ( low < high ) {
+            int mid = ( low + high ) >>> 1;
+            if ( ranges[2 * mid + 1] > packetNumber ) {
+                low = mid + 1;
+            }
+            else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private void insertAt( int index, long largest, long smallest ) {
+        if ( 2 * count == ranges.length ) {
+            ranges = Arrays.copyOf( ranges, ranges.length * 2 );
+        }
+        System.arraycopy( ranges, 2 * index, ranges, 2 * index + 2, 2 * ( count - index ) );
+        ranges[2 * index] = largest;
+        ranges[2 * index + 1] = smallest;
+        count++;
+    }
+
+    /**
+     * @param from the index of the first range to remove
+     * @param to   the index after the last range to remove
+     */
+    private void removeRange( int from, int to ) {
+        System.arraycopy( ranges, 2 * to, ranges, 2 * from, 2 * ( count - to ) );
+        count -= to - from;
+    }
+
+    private void checkIndex( int index ) {
+        if ( index < 0 || index >= count ) {
+            throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + count );
+        }
+    }
+
+    private static long decodeField( ByteBuffer data ) {
+        long value = VariableLengthIntegerEncoder.decode( data );
+        if ( value < 0 ) {
+            throw new IllegalArgumentException( "Cannot decode a truncated ACK frame" );
+        }
+        return value;
+    }
+}
@@ -0,0 +1,100 @@
+package com.timtrense.quic.impl.base;
+
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+
+/**
+ * The receiving side of flow control, which grows its window with the rate the application consumes data.
+ * <p>
+ * https://tools.ietf.org/html/draft-ietf-quic-transport-32#section-4.2
+ * "To avoid blocking a sender, a receiver MAY send a MAX_STREAM_DATA or MAX_DATA frame multiple times within a
+ * round trip or send it early enough to allow time for loss of the frame and subsequent recovery."
+ * <p>
+ * The {@link #getTransferred() transferred} bytes are the ones received from the peer, which must not exceed the
+ * {@link #getLimit() limit} advertised to it. Once the application {@link #onConsumed(long, long) consumed} half
+ * of the window, the limit is moved forward to the consumed bytes plus the window. If that happens within
+ * two round trips since the last move, the window limited the sender more than the application did, so the
+ * window is doubled beforehand (up to {@link #getMaxWindow() a maximum}), like autotuned TCP receive buffers.
+ *
+ * @author Tim Trense
+ */
+public class AutoTuningFlowControl extends FlowControlImpl {
+
+    /**
+     * The largest window this flow control grows to
+     */
+    @Getter
+    private final long maxWindow;
+    /**
+     * The current distance between the consumed bytes and the advertised limit
+     */
+    @Getter
+    private long window;
+    /**
+     * The number of bytes the application consumed
+     */
+    @Getter
+    private long consumed;
+    /**
+     * The current estimate of the round trip time in nanoseconds
+     */
+    @Getter
+    private long smoothedRttNanos = TimeUnit.MILLISECONDS.toNanos( 333 ); // initial RTT by QUIC Spec-Recovery
+    /**
+     * {@link System#nanoTime()} of the last moved limit or 0 if it was never moved
+     */
+    private long lastUpdateNanos;
+
+    /**
+     * Creates a new flow control advertising the initial window as its limit
+     *
+     * @param initialWindow the initial window, eg. the initial_max_data transport parameter
+     * @param maxWindow     the largest window to grow to
+     */
+    public AutoTuningFlowControl( long initialWindow, long maxWindow ) {
+        super( initialWindow );
+        if ( initialWindow <= 0 || maxWindow < initialWindow ) {
+            throw new IllegalArgumentException( "Cannot auto-tune a window of " + initialWindow
+                    + " up to " + maxWindow );
+        }
+        this.window = initialWindow;
+        this.maxWindow = maxWindow;
+    }
+
+    /**
+     * @param smoothedRttNanos the current estimate of the round trip time in nanoseconds
+     */
+    public synchronized void setSmoothedRttNanos( long smoothedRttNanos ) {
+        if ( smoothedRttNanos <= 0 ) {
+            throw new IllegalArgumentException( "Cannot set a non-positive round trip time" );
+        }
+        this.smoothedRttNanos = smoothedRttNanos;
+    }
+
+    /**
+     * records that the application consumed received data and moves the limit forward if necessary
+     *
+     * @param numberOfBytes the number of consumed bytes
+     * @param nowNanos      the current {@link System#nanoTime()}
+     * @return the new limit to advertise in a MAX_DATA or MAX_STREAM_DATA frame or -1 if the limit was not moved
+     */
+    public synchronized long onConsumed( long numberOfBytes, long nowNanos ) {
+        if ( numberOfBytes < 0 ) {
+            throw new IllegalArgumentException( "Cannot consume a negative amount of: " + numberOfBytes );
+        }
+        if ( consumed + numberOfBytes > getTransferred() ) {
+            throw new IllegalStateException( "Cannot consume more bytes than were received" );
+        }
+        consumed += numberOfBytes;
+        if ( getLimit() - consumed > window / 2 ) {
+            return -1;
+        }
+        if ( lastUpdateNanos != 0 && nowNanos - lastUpdateNanos < 2 * smoothedRttNanos ) {
+            window = Math.min( maxWindow, window * 2 );
+        }
+        lastUpdateNanos = nowNanos;
+        long newLimit = consumed + window;
+        raiseLimit( newLimit );
+        return newLimit;
+    }
+}
@@ -0,0 +1,36 @@
+package com.timtrense.quic.impl.base;
+
+import lombok.Data;
+import lombok.NonNull;
+
+import com.timtrense.quic.EcnCount;
+import com.timtrense.quic.VariableLengthInteger;
+
+/**
+ * Default implementation of {@link EcnCount}
+ *
+ * @author Tim Trense
+ */
+@Data
+public class EcnCountImpl implements EcnCount {
+
+    private final @NonNull VariableLengthInteger ect0Count;
+    private final @NonNull VariableLengthInteger ect1Count;
+    private final @NonNull VariableLengthInteger ecnCeCount;
+
+    public EcnCountImpl( long ect0Count, long ect1Count, long ecnCeCount ) {
+        this( VariableLengthInteger.valueOf( ect0Count ),
+                VariableLengthInteger.valueOf( ect1Count ),
+                VariableLengthInteger.valueOf( ecnCeCount ) );
+    }
+
+    public EcnCountImpl(
+            @NonNull VariableLengthInteger ect0Count,
+            @NonNull VariableLengthInteger ect1Count,
+            @NonNull VariableLengthInteger ecnCeCount
+    ) {
+        this.ect0Count = ect0Count;
+        this.ect1Count = ect1Count;
+        this.ecnCeCount = ecnCeCount;
+    }
+}
@@ -1,56 +1,143 @@
 package com.timtrense.quic.impl.base;
 
-import lombok.Data;
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.ToString;
 
 import com.timtrense.quic.CreditBasedFlowControl;
 import com.timtrense.quic.VariableLengthInteger;
 
-@Data
+/**
+ * A thread-safe, lock-free {@link CreditBasedFlowControl}.
+ * <p>
+ * Both counters are atomic longs, so multiple senders may {@link #tryAcquire(long) acquire} credit of the same
+ * connection concurrently without ever acquiring more than the limit in total,
+ * and limit updates of MAX_DATA or MAX_STREAM_DATA frames may arrive on any thread.
+ *
+ * @author Tim Trense
+ */
+@ToString
 public class FlowControlImpl implements CreditBasedFlowControl {
 
-    private VariableLengthInteger limit;
-    private VariableLengthInteger transferred;
+    private final AtomicLong limit;
+    private final AtomicLong transferred = new AtomicLong();
+
+    public FlowControlImpl( long limit ) {
+        this.limit = new AtomicLong( checkEncodable( limit ) );
+    }
 
     public FlowControlImpl( VariableLengthInteger limit ) {
-        this.limit = limit;
-        this.transferred = VariableLengthInteger.ZERO;
+        this( limit.longValue() );
     }
 
     @Override
     public long getLimit() {
-        return limit.getValue();
+        return limit.get();
     }
 
     @Override
     public long getTransferred() {
-        return transferred.getValue();
+        return transferred.get();
     }
 
     public VariableLengthInteger getVariableLengthIntegerLimit() {
-        return limit;
+        return VariableLengthInteger.valueOf( getLimit() );
     }
 
     public VariableLengthInteger getVariableLengthIntegerTransferred() {
-        return transferred;
+        return VariableLengthInteger.valueOf( getTransferred() );
     }
 
     @Override
-    public long incrementTransferred( int numberOfBytes ) {
+    public long incrementTransferred( long numberOfBytes ) {
         if ( numberOfBytes < 0 ) {
             throw new IllegalArgumentException( "Cannot increment the transferred number of bytes count by a negative" +
                     " amount of: " + numberOfBytes );
         }
-        transferred = transferred.increment( numberOfBytes );
-        return transferred.longValue();
+        return transferred.updateAndGet( t -> checkEncodable( t + numberOfBytes ) );
     }
 
     @Override
-    public long incrementLimit( int numberOfBytes ) {
+    public long incrementLimit( long numberOfBytes ) {
         if ( numberOfBytes < 0 ) {
             throw new IllegalArgumentException( "Cannot increment the limit number of bytes count by a negative " +
                     "amount of: " + numberOfBytes );
         }
-        limit = limit.increment( numberOfBytes );
-        return limit.longValue();
+        return limit.updateAndGet( l -> checkEncodable( l + numberOfBytes ) );
+    }
+
+    /**
+     * atomically increments the number of transferred bytes if and only if that does not exceed the limit
+     *
+     * @param numberOfBytes the non-negative amount the caller tries to send
+     * @return true if the credit was acquired, false if it was not available and nothing changed
+     */
+    @Override
+    public boolean tryAcquire( long numberOfBytes ) {
+        if ( numberOfBytes < 0 ) {
+            throw new IllegalArgumentException( "Cannot acquire a negative amount of: " + numberOfBytes );
+        }
+        while ( true ) {
+            long current = transferred.get();
+            long next = current + numberOfBytes;
+            // read the limit after the counter: the limit only grows, so a stale limit may only deny
+            if ( next > limit.get() ) {
+                return false;
+            }
+            if ( transferred.compareAndSet( current, next ) ) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * atomically acquires as much of the requested credit as available
+     *
+     * @param maxNumberOfBytes the non-negative amount the caller would like to send
+     * @return the acquired amount between 0 and maxNumberOfBytes
+     */
+    @Override
+    public long acquireUpTo( long maxNumberOfBytes ) {
+        if ( maxNumberOfBytes < 0 ) {
+            throw new IllegalArgumentException( "Cannot acquire a negative amount of: " + maxNumberOfBytes );
+        }
+        while ( true ) {
+            long current = transferred.get();
+            long acquired = Math.min( maxNumberOfBytes, limit.get() - current );
+            if ( acquired <= 0 ) {
+                return 0;
+            }
+            if ( transferred.compareAndSet( current, current + acquired ) ) {
+                return acquired;
+            }
+        }
+    }
+
+    /**
+     * Raises the limit to the given absolute value, like carried by MAX_DATA and MAX_STREAM_DATA frames.
+     * <p>
+     * https://tools.ietf.org/html/draft-ietf-quic-transport-32#section-4.1
+     * "A sender MUST ignore any MAX_STREAM_DATA or MAX_DATA frames that do not increase flow control limits."
+     *
+     * @param newLimit the new absolute limit
+     * @return true if the limit was raised, false if it already was at least that high
+     */
+    public boolean raiseLimit( long newLimit ) {
+        checkEncodable( newLimit );
+        while ( true ) {
+            long current = limit.get();
+            if ( newLimit <= current ) {
+                return false;
+            }
+            if ( limit.compareAndSet( current, newLimit ) ) {
+                return true;
+            }
+        }
+    }
+
+    private static long checkEncodable( long value ) {
+        if ( !VariableLengthIntegerEncoder.isEncodable( value ) ) {
+            throw new IllegalArgumentException( "Cannot encode that value as a VariableLengthInteger: " + value );
+        }
+        return value;
     }
 }
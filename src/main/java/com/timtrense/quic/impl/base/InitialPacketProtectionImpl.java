@@ -1,5 +1,6 @@
 package com.timtrense.quic.impl.base;
 
+import java.nio.ByteBuffer;
 import java.security.GeneralSecurityException;
 import java.security.InvalidAlgorithmParameterException;
 import java.security.InvalidKeyException;
@@ -19,10 +20,11 @@
 import com.timtrense.quic.EndpointRole;
 import com.timtrense.quic.impl.HkdfUtil;
 import com.timtrense.quic.impl.PacketProtection;
+import com.timtrense.quic.impl.PacketSealer;
 import com.timtrense.quic.impl.packets.InitialPacketImpl;
 
 @Data
-public class InitialPacketProtectionImpl implements PacketProtection {
+public class InitialPacketProtectionImpl implements PacketProtection, PacketSealer {
 
     /**
      * The initial salt is a meaningless truly random number defined by the protocol authors.
@@ -44,13 +46,50 @@ public class InitialPacketProtectionImpl implements PacketProtection {
      */
     public static final HKDF INITIAL_DERIVATION_FUNCTION = HKDF.fromHmacSha256();
 
+    /**
+     * "AEAD_AES_128_GCM and AEAD_AES_128_CCM use 128-bit AES [AES] in electronic code-book (ECB) mode."
+     *
+     * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-tls-27#section-5.4.3">QUIC Spec-TLS/Section 5.4.3</a>
+     */
+    public static final ThreadLocalCipher HEADER_PROTECTION_CIPHER = new ThreadLocalCipher( "AES/ECB/NoPadding" );
+
+    /**
+     * "Initial packets use AEAD_AES_128_GCM"
+     *
+     * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-tls-32#section-5">QUIC Spec-TLS/Section 5</a>
+     */
+    public static final ThreadLocalCipher AEAD_CIPHER = new ThreadLocalCipher( "AES/GCM/NoPadding" );
+
+    /**
+     * "[...] AEAD_AES_128_GCM [...] produce[s] an authentication tag that is 16 bytes"
+     *
+     * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-tls-32#section-5.3">QUIC Spec-TLS/Section 5.3</a>
+     */
+    public static final int AEAD_TAG_LENGTH = 16;
+
+    /**
+     * per-thread scratch space for {@link #deriveHeaderProtectionMask(ByteBuffer, int)}
+     */
+    private static final ThreadLocal<byte[][]> HEADER_PROTECTION_SCRATCH =
+            ThreadLocal.withInitial( () -> new byte[][]{ new byte[SAMPLE_LENGTH], new byte[SAMPLE_LENGTH] } );
+    /**
+     * per-thread scratch space for the nonce of {@link #aeadDecrypt(ByteBuffer, int, int, int, long)}
+     */
+    private static final ThreadLocal<byte[]> NONCE_SCRATCH = ThreadLocal.withInitial( () -> new byte[12] );
+
     private @NonNull EndpointRole endpointRole;
     private byte[] clientInitialSecret;
     private byte[] serverInitialSecret;
     private byte[] clientInitialKey;
     private byte[] clientInitialIV;
     private byte[] headerProtectionSecret;
-    private Cipher headerProtectionCipher;
+    private SecretKeySpec clientInitialKeySpec;
+    private SecretKeySpec headerProtectionKeySpec;
+    private byte[] serverInitialKey;
+    private byte[] serverInitialIV;
+    private byte[] serverHeaderProtectionSecret;
+    private SecretKeySpec serverInitialKeySpec;
+    private SecretKeySpec serverHeaderProtectionKeySpec;
 
     /**
      * Generates the initial_secret as described by the pseudo-code of Section 5.2
@@ -116,22 +155,78 @@ public void initialize( @NonNull ConnectionId clientDestinationConnectionId )
         clientInitialKey = expandInitialQuicKey( clientInitialSecret );
         clientInitialIV = expandInitialQuicIv( clientInitialSecret );
         headerProtectionSecret = expandInitialHeaderProtection( clientInitialSecret );
-        // https://tools.ietf.org/html/draft-ietf-quic-tls-27#section-5.4.3
-        // "AEAD_AES_128_GCM and AEAD_AES_128_CCM use 128-bit AES [AES] in electronic code-book (ECB) mode."
-        headerProtectionCipher = Cipher.getInstance( "AES/ECB/NoPadding" );
-        SecretKeySpec keySpec = new SecretKeySpec( headerProtectionSecret, "AES" );
-        headerProtectionCipher.init( Cipher.ENCRYPT_MODE, keySpec );
+        serverInitialKey = expandInitialQuicKey( serverInitialSecret );
+        serverInitialIV = expandInitialQuicIv( serverInitialSecret );
+        serverHeaderProtectionSecret = expandInitialHeaderProtection( serverInitialSecret );
+        // key specs are immutable, thus computed once and shared by all threads using this protection
+        clientInitialKeySpec = new SecretKeySpec( clientInitialKey, "AES" );
+        headerProtectionKeySpec = new SecretKeySpec( headerProtectionSecret, "AES" );
+        serverInitialKeySpec = new SecretKeySpec( serverInitialKey, "AES" );
+        serverHeaderProtectionKeySpec = new SecretKeySpec( serverHeaderProtectionSecret, "AES" );
+        // fail early if the spec-required ciphers are not available
+        HEADER_PROTECTION_CIPHER.get( Cipher.ENCRYPT_MODE, headerProtectionKeySpec );
+        AEAD_CIPHER.get();
     }
 
     @Override
     public byte[] deriveHeaderProtectionMask( @NonNull byte[] sample, int offset, int length ) {
-        if ( headerProtectionCipher == null ) {
+        if ( headerProtectionKeySpec == null ) {
             return null;
         }
         try {
-            return headerProtectionCipher.doFinal( sample, offset, length );
+            return HEADER_PROTECTION_CIPHER.get( Cipher.ENCRYPT_MODE, headerProtectionKeySpec )
+                    .doFinal( sample, offset, length );
         }
-        catch ( IllegalBlockSizeException | BadPaddingException e ) {
+        catch ( GeneralSecurityException e ) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Computes the header protection mask from the sample at the given absolute offset of the data,
+     * without allocating. The returned array is reused by the next call on the same thread.
+     *
+     * @param data         the packet data
+     * @param sampleOffset the absolute index of the first byte of the {@link #SAMPLE_LENGTH} bytes sample
+     * @return the mask (of {@link #SAMPLE_LENGTH} bytes) or null if it cannot be computed from the current state
+     */
+    @Override
+    public byte[] deriveHeaderProtectionMask( @NonNull ByteBuffer data, int sampleOffset ) {
+        return deriveHeaderProtectionMask( data, sampleOffset, headerProtectionKeySpec );
+    }
+
+    /**
+     * Computes the header protection mask for a packet sent by this {@link #endpointRole endpoint}, using
+     * the client keys if this is the client and the server keys otherwise. The returned array is reused by the
+     * next call on the same thread.
+     *
+     * @param data         the packet data with the encrypted payload
+     * @param sampleOffset the absolute index of the first byte of the {@link #SAMPLE_LENGTH} bytes sample
+     * @return the mask (of {@link #SAMPLE_LENGTH} bytes) or null if it cannot be computed from the current state
+     */
+    @Override
+    public byte[] deriveSealingHeaderProtectionMask( @NonNull ByteBuffer data, int sampleOffset ) {
+        return deriveHeaderProtectionMask( data, sampleOffset,
+                endpointRole == EndpointRole.CLIENT ? headerProtectionKeySpec : serverHeaderProtectionKeySpec );
+    }
+
+    private static byte[] deriveHeaderProtectionMask( ByteBuffer data, int sampleOffset, SecretKeySpec keySpec ) {
+        if ( keySpec == null ) {
+            return null;
+        }
+        byte[][] scratch = HEADER_PROTECTION_SCRATCH.get();
+        byte[] sample = scratch[0];
+        byte[] mask = scratch[1];
+        for ( int i = 0; i < SAMPLE_LENGTH; i++ ) {
+            sample[i] = data.get( sampleOffset + i );
+        }
+        try {
+            HEADER_PROTECTION_CIPHER.get( Cipher.ENCRYPT_MODE, keySpec )
+                    .doFinal( sample, 0, SAMPLE_LENGTH, mask, 0 );
+            return mask;
+        }
+        catch ( GeneralSecurityException e ) {
             e.printStackTrace();
         }
         return null;
@@ -152,12 +247,30 @@ public byte[] deriveHeaderProtectionMask( @NonNull byte[] sample, int offset, in
      * @return the nonce for AEAD_AES_128_GCM, never null, always 16 bytes length
      */
     public byte[] deriveAeadNonce( long packetNumber ) {
-        byte[] nonce = new byte[12]; // java arrays are prefilled with 0
+        byte[] nonce = new byte[12];
+        deriveAeadNonce( packetNumber, nonce );
+        return nonce;
+    }
+
+    /**
+     * Same as {@link #deriveAeadNonce(long)}, but writes the nonce to the given array
+     *
+     * @param packetNumber the packet number to combine with the input vector
+     * @param nonce        the array of 12 bytes to write the nonce to
+     */
+    public void deriveAeadNonce( long packetNumber, @NonNull byte[] nonce ) {
+        deriveAeadNonce( packetNumber, nonce, clientInitialIV );
+    }
+
+    private static void deriveAeadNonce( long packetNumber, byte[] nonce, byte[] iv ) {
+        nonce[0] = 0;
+        nonce[1] = 0;
+        nonce[2] = 0;
+        nonce[3] = 0;
         VariableLengthIntegerEncoder.encodeFixedLengthInteger( packetNumber, nonce, 4, 8 );
         for ( int i = 0; i < nonce.length; i++ ) {
-            nonce[i] ^= clientInitialIV[i];
+            nonce[i] ^= iv[i];
         }
-        return nonce;
     }
 
     /**
@@ -187,14 +300,102 @@ public byte[] aeadDecrypt( byte[] message, byte[] associatedData, byte[] nonce )
             throws BadPaddingException, IllegalBlockSizeException,
             InvalidAlgorithmParameterException, InvalidKeyException,
             NoSuchPaddingException, NoSuchAlgorithmException {
-        Cipher aeadCipher = Cipher.getInstance( "AES/GCM/NoPadding" );
-        SecretKeySpec secretKey = new SecretKeySpec( clientInitialKey, "AES" );
-
+        Cipher aeadCipher = AEAD_CIPHER.get();
         GCMParameterSpec parameterSpec = new GCMParameterSpec( 128 /* AEAD_AES_128_GCM */, nonce );
 
-        aeadCipher.init( Cipher.DECRYPT_MODE, secretKey, parameterSpec );
+        aeadCipher.init( Cipher.DECRYPT_MODE, clientInitialKeySpec, parameterSpec );
         aeadCipher.updateAAD( associatedData );
         return aeadCipher.doFinal( message );
     }
 
+    /**
+     * Performs AEAD_AES_128_GCM decryption using this {@link #clientInitialKey} in place on the packet data.
+     * The header (with header protection already removed) is used as associated data and the
+     * decrypted payload overwrites the ciphertext, starting right after the header.
+     * <p>
+     * The data is neither copied to nor returned in a new array, although the {@link GCMParameterSpec} copies
+     * the nonce, which the {@link Cipher} API does not allow to avoid.
+     *
+     * @param data             the packet data, must be writable
+     * @param headerOffset     the absolute index of the first byte of the packet
+     * @param headerLength     the length of the header including the unprotected packet number
+     * @param ciphertextLength the length of the protected payload including the authentication tag
+     * @param packetNumber     the full packet number
+     * @return the length of the decrypted payload, that starts at headerOffset + headerLength
+     * @throws GeneralSecurityException if decryption fails, for example due to an invalid authentication tag
+     */
+    @Override
+    public int aeadDecrypt( @NonNull ByteBuffer data, int headerOffset, int headerLength,
+            int ciphertextLength, long packetNumber ) throws GeneralSecurityException {
+        byte[] nonce = NONCE_SCRATCH.get();
+        deriveAeadNonce( packetNumber, nonce );
+        Cipher aeadCipher = AEAD_CIPHER.get();
+        aeadCipher.init( Cipher.DECRYPT_MODE, clientInitialKeySpec,
+                new GCMParameterSpec( 128 /* AEAD_AES_128_GCM */, nonce ) );
+
+        int payloadOffset = headerOffset + headerLength;
+        ByteBuffer associatedData = data.duplicate();
+        associatedData.limit( payloadOffset );
+        associatedData.position( headerOffset );
+        aeadCipher.updateAAD( associatedData );
+
+        ByteBuffer ciphertext = data.duplicate();
+        ciphertext.limit( payloadOffset + ciphertextLength );
+        ciphertext.position( payloadOffset );
+        ByteBuffer plaintext = ciphertext.duplicate();
+        return aeadCipher.doFinal( ciphertext, plaintext );
+    }
+
+    @Override
+    public int getAeadTagLength() {
+        return AEAD_TAG_LENGTH;
+    }
+
+    /**
+     * Performs AEAD_AES_128_GCM encryption in place on the packet data for a packet sent by this
+     * {@link #endpointRole endpoint}, using the client keys if this is the client and the server keys otherwise.
+     * The header (with the unprotected packet number) is used as associated data and the ciphertext followed by
+     * the authentication tag overwrites the plaintext, starting right after the header.
+     * <p>
+     * Array-backed data is encrypted without copying, although the {@link GCMParameterSpec} copies the nonce.
+     *
+     * @param data            the packet data, must be writable and have room for the tag behind the payload
+     * @param headerOffset    the absolute index of the first byte of the packet
+     * @param headerLength    the length of the header including the unprotected packet number
+     * @param plaintextLength the length of the payload
+     * @param packetNumber    the full packet number
+     * @return the length of the encrypted payload including the {@link #AEAD_TAG_LENGTH authentication tag}
+     * @throws GeneralSecurityException if encryption fails
+     */
+    @Override
+    public int aeadEncrypt( @NonNull ByteBuffer data, int headerOffset, int headerLength,
+            int plaintextLength, long packetNumber ) throws GeneralSecurityException {
+        boolean client = endpointRole == EndpointRole.CLIENT;
+        byte[] nonce = NONCE_SCRATCH.get();
+        deriveAeadNonce( packetNumber, nonce, client ? clientInitialIV : serverInitialIV );
+        Cipher aeadCipher = AEAD_CIPHER.get();
+        aeadCipher.init( Cipher.ENCRYPT_MODE, client ? clientInitialKeySpec : serverInitialKeySpec,
+                new GCMParameterSpec( 128 /* AEAD_AES_128_GCM */, nonce ) );
+
+        int payloadOffset = headerOffset + headerLength;
+        if ( data.hasArray() ) {
+            byte[] array = data.array();
+            int arrayOffset = data.arrayOffset();
+            aeadCipher.updateAAD( array, arrayOffset + headerOffset, headerLength );
+            return aeadCipher.doFinal( array, arrayOffset + payloadOffset, plaintextLength,
+                    array, arrayOffset + payloadOffset );
+        }
+        ByteBuffer associatedData = data.duplicate();
+        associatedData.limit( payloadOffset );
+        associatedData.position( headerOffset );
+        aeadCipher.updateAAD( associatedData );
+
+        ByteBuffer plaintext = data.duplicate();
+        plaintext.limit( payloadOffset + plaintextLength );
+        plaintext.position( payloadOffset );
+        ByteBuffer ciphertext = data.duplicate();
+        ciphertext.limit( ciphertext.capacity() );
+        ciphertext.position( payloadOffset );
+        return aeadCipher.doFinal( plaintext, ciphertext );
+    }
 }
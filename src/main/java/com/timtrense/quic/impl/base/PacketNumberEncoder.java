@@ -1,5 +1,8 @@
 package com.timtrense.quic.impl.base;
 
+import java.nio.ByteBuffer;
+import lombok.NonNull;
+
 /**
  * Encoder and Decoder for packet numbers with removed header protection as described
  * in Appendix A, QUIC Spec/Transport.
@@ -43,4 +46,35 @@ else if ( candidatePn > expectedPacketNumber + pnHalfWindow
 
         return candidatePn;
     }
+
+    /**
+     * computes the number of bytes to encode a packet number with, such that it represents more than twice
+     * the range of unacknowledged packet numbers as described by
+     * "the sender MUST use a packet number size able to represent more than
+     * twice as large a range than the difference between the largest
+     * acknowledged packet and packet number being sent." QUIC Spec/Section 17.1
+     *
+     * @param packetNumber        the packet number to send
+     * @param largestAcknowledged the largest acknowledged packet number of the same space or -1 if none
+     * @return the encoded length in bytes, from 1 to 4
+     */
+    public static int getEncodedLength( long packetNumber, long largestAcknowledged ) {
+        long unacknowledged = largestAcknowledged < 0 ? packetNumber + 1 : packetNumber - largestAcknowledged;
+        // one bit more than the base-2 logarithm of the number of unacknowledged packets
+        int bits = 64 - Long.numberOfLeadingZeros( unacknowledged ) + 1;
+        return Math.min( 4, Math.max( 1, ( bits + 7 ) / 8 ) );
+    }
+
+    /**
+     * writes the least significant bytes of the packet number
+     *
+     * @param packetNumber the packet number to send
+     * @param length       the number of bytes to write, see {@link #getEncodedLength(long, long)}
+     * @param buffer       the target
+     */
+    public static void encodePacketNumber( long packetNumber, int length, @NonNull ByteBuffer buffer ) {
+        for ( int i = length - 1; i >= 0; i-- ) {
+            buffer.put( (byte)( packetNumber >>> ( i << 3 ) ) );
+        }
+    }
 }
@@ -0,0 +1,493 @@
+package com.timtrense.quic.impl.base;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.spec.AlgorithmParameterSpec;
+import javax.crypto.Cipher;
+import javax.crypto.spec.ChaCha20ParameterSpec;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import lombok.Getter;
+import lombok.NonNull;
+
+import at.favre.lib.crypto.HKDF;
+import at.favre.lib.crypto.HkdfMacFactory;
+
+import com.timtrense.quic.impl.HkdfUtil;
+import com.timtrense.quic.impl.PacketProtection;
+import com.timtrense.quic.impl.PacketSealer;
+import com.timtrense.quic.tls.CipherSuite;
+
+/**
+ * The packet protection of one direction of a connection after the handshake, derived from the
+ * traffic secret that TLS provides for that direction. Use one instance with the secret of the peer to remove
+ * the protection of received packets and one with the own secret to {@link PacketSealer seal} sent packets.
+ * <p>
+ * Supports the cipher suites {@link CipherSuite#TLS_AES_128_GCM_SHA256}, {@link CipherSuite#TLS_AES_256_GCM_SHA384}
+ * and {@link CipherSuite#TLS_CHACHA20_POLY1305_SHA256} as well as key updates: the keys of the next key phase
+ * are derived in advance, so that a received packet with a flipped Key Phase bit can be decrypted right away,
+ * which then moves this protection to the next key phase. The keys of the previous phase are kept for packets
+ * that were reordered across the key update. The header protection key never changes.
+ * <p>
+ * The keys are held in an immutable snapshot that is replaced as a whole on a key update, so that any number of
+ * threads may remove the protection of packets concurrently.
+ *
+ * @author Tim Trense
+ * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-tls-32#section-5">QUIC Spec-TLS/Section 5</a>
+ * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-tls-32#section-6">QUIC Spec-TLS/Section 6</a>
+ */
+public class PacketProtectionImpl implements PacketProtection, PacketSealer {
+
+    /**
+     * the AEAD of {@link CipherSuite#TLS_CHACHA20_POLY1305_SHA256}
+     */
+    public static final ThreadLocalCipher CHACHA20_POLY1305_CIPHER = new ThreadLocalCipher( "ChaCha20-Poly1305" );
+    /**
+     * the AEAD of {@link CipherSuite#TLS_CHACHA20_POLY1305_SHA256} for sealing. Separate from the
+     * {@link #CHACHA20_POLY1305_CIPHER}, because the cipher refuses an encryption with the key and nonce of the
+     * previous initialization, even if that was a decryption
+     */
+    public static final ThreadLocalCipher CHACHA20_POLY1305_SEALING_CIPHER =
+            new ThreadLocalCipher( "ChaCha20-Poly1305" );
+    /**
+     * the header protection of {@link CipherSuite#TLS_CHACHA20_POLY1305_SHA256}
+     */
+    public static final ThreadLocalCipher CHACHA20_CIPHER = new ThreadLocalCipher( "ChaCha20" );
+
+    /**
+     * "The length of the output is determined by the requirements of the AEAD function." QUIC Spec-TLS/5.3,
+     * all supported AEADs add a 16 bytes tag
+     */
+    public static final int AEAD_TAG_LENGTH = 16;
+    /**
+     * "[...] the key and iv for the AEAD function [...] the IV is at least 8 bytes" QUIC Spec-TLS/Section 5.3,
+     * all supported AEADs use a 12 bytes nonce
+     */
+    private static final int IV_LENGTH = 12;
+    /**
+     * "header_protection = ChaCha20(hp_key, counter, nonce, {0,0,0,0,0})" QUIC Spec-TLS/Section 5.4.4
+     */
+    private static final byte[] CHACHA20_MASK_PLAINTEXT = new byte[5];
+
+    /**
+     * per-thread scratch space for the sample, the mask and the ChaCha20 nonce of the header protection
+     */
+    private static final ThreadLocal<byte[][]> HEADER_PROTECTION_SCRATCH = ThreadLocal.withInitial(
+            () -> new byte[][]{ new byte[SAMPLE_LENGTH], new byte[SAMPLE_LENGTH], new byte[IV_LENGTH] } );
+    /**
+     * per-thread scratch space for the nonce of the AEAD
+     */
+    private static final ThreadLocal<byte[]> NONCE_SCRATCH = ThreadLocal.withInitial( () -> new byte[IV_LENGTH] );
+
+    /**
+     * The cipher suite negotiated by TLS
+     */
+    @Getter
+    private final @NonNull CipherSuite cipherSuite;
+    private final HKDF hkdf;
+    private final int keyLength;
+    private final int secretLength;
+    private final String keyAlgorithm;
+    private final ThreadLocalCipher aeadCipher;
+    private final ThreadLocalCipher sealingAeadCipher;
+    private final ThreadLocalCipher headerProtectionCipher;
+    private final SecretKeySpec headerProtectionKeySpec;
+    /**
+     * the current keys, replaced on each key update
+     */
+    private volatile KeyPhase keys;
+
+    /**
+     * Derives the packet protection keys from the traffic secret
+     *
+     * @param cipherSuite   the negotiated cipher suite
+     * @param trafficSecret the traffic secret of one direction, as exported by TLS
+     * @throws GeneralSecurityException if the cipher suite is not supported or the ciphers are not available
+     */
+    public PacketProtectionImpl( @NonNull CipherSuite cipherSuite, @NonNull byte[] trafficSecret )
+            throws GeneralSecurityException {
+        this.cipherSuite = cipherSuite;
+        switch( cipherSuite ) {
+            case TLS_AES_128_GCM_SHA256:
+                this.hkdf = HKDF.fromHmacSha256();
+                this.keyLength = 16;
+                this.secretLength = 32;
+                this.keyAlgorithm = "AES";
+                this.aeadCipher = InitialPacketProtectionImpl.AEAD_CIPHER;
+                this.sealingAeadCipher = InitialPacketProtectionImpl.AEAD_CIPHER;
+                this.headerProtectionCipher = InitialPacketProtectionImpl.HEADER_PROTECTION_CIPHER;
+                break;
+            case TLS_AES_256_GCM_SHA384:
+                this.hkdf = HKDF.from( new HkdfMacFactory.Default( "HmacSHA384" ) );
+                this.keyLength = 32;
+                this.secretLength = 48;
+                this.keyAlgorithm = "AES";
+                this.aeadCipher = InitialPacketProtectionImpl.AEAD_CIPHER;
+                this.sealingAeadCipher = InitialPacketProtectionImpl.AEAD_CIPHER;
+                this.headerProtectionCipher = InitialPacketProtectionImpl.HEADER_PROTECTION_CIPHER;
+                break;
+            case TLS_CHACHA20_POLY1305_SHA256:
+                this.hkdf = HKDF.fromHmacSha256();
+                this.keyLength = 32;
+                this.secretLength = 32;
+                this.keyAlgorithm = "ChaCha20";
+                this.aeadCipher = CHACHA20_POLY1305_CIPHER;
+                this.sealingAeadCipher = CHACHA20_POLY1305_SEALING_CIPHER;
+                this.headerProtectionCipher = CHACHA20_CIPHER;
+                break;
+            default:
+                throw new GeneralSecurityException( "Unsupported cipher suite for packet protection: " + cipherSuite );
+        }
+        if ( trafficSecret.length != secretLength ) {
+            throw new GeneralSecurityException( "Traffic secret of " + cipherSuite + " must have "
+                    + secretLength + " bytes, got " + trafficSecret.length );
+        }
+        this.headerProtectionKeySpec = new SecretKeySpec(
+                HkdfUtil.tlsExpandLabel( hkdf, trafficSecret, HkdfUtil.LABEL_QUIC_HP, null, keyLength ),
+                keyAlgorithm );
+        KeyGeneration current = deriveKeyGeneration( trafficSecret );
+        this.keys = new KeyPhase( null, current, deriveKeyGeneration( deriveNextSecret( current.secret ), current ),
+                false, 0 );
+        // fail early if the ciphers are not available
+        aeadCipher.get();
+        headerProtectionCipher.get();
+    }
+
+    /**
+     * "The Key Phase bit is initially set to 0 for the first set of 1-RTT packets and toggled to
+     * signal each subsequent key update." QUIC Spec-TLS/Section 6
+     *
+     * @return the Key Phase bit of the current keys
+     */
+    @Override
+    public boolean isKeyPhase() {
+        return keys.keyPhase;
+    }
+
+    /**
+     * @return the number of key updates since the keys were derived from the initial traffic secret
+     */
+    public long getKeyGeneration() {
+        return keys.current.generation;
+    }
+
+    /**
+     * Moves to the next key phase. The sending side calls this to initiate a key update or to respond to one
+     * that was initiated by the peer, which this endpoint notices by the receiving protection changing its
+     * {@link #isKeyPhase() key phase}.
+     */
+    public synchronized void updateKeys() {
+        KeyPhase k = keys;
+        updateKeys( k, k.firstPacketNumber );
+    }
+
+    @Override
+    public byte[] deriveHeaderProtectionMask( @NonNull byte[] sample, int offset, int length ) {
+        if ( length < SAMPLE_LENGTH ) {
+            return null;
+        }
+        byte[] mask = new byte[SAMPLE_LENGTH];
+        try {
+            deriveHeaderProtectionMask( sample, offset, mask, HEADER_PROTECTION_SCRATCH.get()[2] );
+            return mask;
+        }
+        catch ( GeneralSecurityException e ) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    /**
+     * Computes the header protection mask from the sample at the given absolute offset of the data,
+     * without allocating (except for the parameters of ChaCha20). The returned array is reused by the next call
+     * on the same thread.
+     *
+     * @param data         the packet data
+     * @param sampleOffset the absolute index of the first byte of the {@link #SAMPLE_LENGTH} bytes sample
+     * @return the mask, of which at least the first 5 bytes are valid, or null if it cannot be computed
+     */
+    @Override
+    public byte[] deriveHeaderProtectionMask( @NonNull ByteBuffer data, int sampleOffset ) {
+        byte[][] scratch = HEADER_PROTECTION_SCRATCH.get();
+        byte[] sample = scratch[0];
+        for ( int i = 0; i < SAMPLE_LENGTH; i++ ) {
+            sample[i] = data.get( sampleOffset + i );
+        }
+        try {
+            deriveHeaderProtectionMask( sample, 0, scratch[1], scratch[2] );
+            return scratch[1];
+        }
+        catch ( GeneralSecurityException e ) {
+            e.printStackTrace();
+        }
+        return null;
+    }
+
+    @Override
+    public byte[] deriveSealingHeaderProtectionMask( @NonNull ByteBuffer data, int sampleOffset ) {
+        return deriveHeaderProtectionMask( data, sampleOffset );
+    }
+
+    /**
+     * "mask = AES-ECB(hp_key, sample)" QUIC Spec-TLS/Section 5.4.3
+     * or, for ChaCha20, "counter = sample[0..3], nonce = sample[4..15],
+     * mask = ChaCha20(hp_key, counter, nonce, {0,0,0,0,0})" QUIC Spec-TLS/Section 5.4.4
+     */
+    private void deriveHeaderProtectionMask( byte[] sample, int offset, byte[] mask, byte[] nonce )
+            throws GeneralSecurityException {
+        if ( headerProtectionCipher == CHACHA20_CIPHER ) {
+            // the counter is read as a little-endian integer
+            int counter = ( sample[offset] & 0xff )
+                    | ( sample[offset + 1] & 0xff ) << 8
+                    | ( sample[offset + 2] & 0xff ) << 16
+                    | ( sample[offset + 3] & 0xff ) << 24;
+            System.arraycopy( sample, offset + 4, nonce, 0, IV_LENGTH );
+            Cipher cipher = headerProtectionCipher.get();
+            // the key stream is the same in both modes, but only the encrypt mode refuses to reuse a nonce
+            initDecryptMode( cipher, headerProtectionKeySpec, new ChaCha20ParameterSpec( nonce, counter ) );
+            cipher.doFinal( CHACHA20_MASK_PLAINTEXT, 0, CHACHA20_MASK_PLAINTEXT.length, mask, 0 );
+            return;
+        }
+        headerProtectionCipher.get( Cipher.ENCRYPT_MODE, headerProtectionKeySpec )
+                .doFinal( sample, offset, SAMPLE_LENGTH, mask, 0 );
+    }
+
+    @Override
+    public int getAeadTagLength() {
+        return AEAD_TAG_LENGTH;
+    }
+
+    /**
+     * Decrypts with the keys of the current key phase
+     *
+     * @see #aeadDecrypt(ByteBuffer, int, int, int, long, boolean)
+     */
+    @Override
+    public int aeadDecrypt( @NonNull ByteBuffer data, int headerOffset, int headerLength,
+            int ciphertextLength, long packetNumber ) throws GeneralSecurityException {
+        return aeadDecrypt( data, headerOffset, headerLength, ciphertextLength, packetNumber, isKeyPhase() );
+    }
+
+    /**
+     * Decrypts in place with the keys matching the Key Phase bit of the packet:
+     * the current keys if the bit matches the current phase, otherwise the keys of the previous phase for
+     * packets older than the last key update and those of the next phase for newer packets.
+     * "An endpoint that receives a packet protected with the next keys [...] MUST update its receive keys"
+     * QUIC Spec-TLS/Section 6.2, thus this protection moves to the next key phase if decryption with its keys
+     * succeeds.
+     *
+     * @param data             the packet data, must be writable
+     * @param headerOffset     the absolute index of the first byte of the packet
+     * @param headerLength     the length of the header including the unprotected packet number
+     * @param ciphertextLength the length of the protected payload including the authentication tag
+     * @param packetNumber     the full packet number
+     * @param keyPhase         the unprotected Key Phase bit of the packet
+     * @return the length of the decrypted payload, that starts at headerOffset + headerLength
+     * @throws GeneralSecurityException if decryption fails, for example due to an invalid authentication tag
+     */
+    @Override
+    public int aeadDecrypt( @NonNull ByteBuffer data, int headerOffset, int headerLength,
+            int ciphertextLength, long packetNumber, boolean keyPhase ) throws GeneralSecurityException {
+        KeyPhase k = keys;
+        KeyGeneration generation;
+        boolean update = false;
+        if ( keyPhase == k.keyPhase ) {
+            generation = k.current;
+        }
+        else if ( k.previous != null && packetNumber < k.firstPacketNumber ) {
+            generation = k.previous;
+        }
+        else {
+            generation = k.next;
+            update = true;
+        }
+
+        Cipher cipher = aeadCipher.get();
+        initDecryptMode( cipher, generation.key, createAeadParameters( generation, packetNumber ) );
+        int payloadOffset = headerOffset + headerLength;
+        ByteBuffer associatedData = data.duplicate();
+        associatedData.limit( payloadOffset );
+        associatedData.position( headerOffset );
+        cipher.updateAAD( associatedData );
+
+        ByteBuffer ciphertext = data.duplicate();
+        ciphertext.limit( payloadOffset + ciphertextLength );
+        ciphertext.position( payloadOffset );
+        ByteBuffer plaintext = ciphertext.duplicate();
+        int plaintextLength = cipher.doFinal( ciphertext, plaintext );
+
+        if ( update ) {
+            synchronized( this ) {
+                // another thread may have moved on concurrently
+                if ( keys == k ) {
+                    updateKeys( k, packetNumber );
+                }
+            }
+        }
+        return plaintextLength;
+    }
+
+    /**
+     * Initializes the cipher for decryption. The JDK refuses to initialize a ChaCha20 cipher twice in a row with
+     * the same key and nonce, even for decryption, which happens if the same packet is received twice on a thread.
+     * Decrypting again does not reuse the key stream for encryption, so the cipher is initialized with another
+     * nonce in between.
+     */
+    private static void initDecryptMode( Cipher cipher, Key key, AlgorithmParameterSpec parameters )
+            throws GeneralSecurityException {
+        try {
+            cipher.init( Cipher.DECRYPT_MODE, key, parameters );
+        }
+        catch ( InvalidKeyException e ) {
+            AlgorithmParameterSpec otherParameters;
+            if ( parameters instanceof ChaCha20ParameterSpec ) {
+                ChaCha20ParameterSpec chaCha20Parameters = (ChaCha20ParameterSpec)parameters;
+                byte[] otherNonce = chaCha20Parameters.getNonce(); // a copy
+                otherNonce[0] ^= 1;
+                otherParameters = new ChaCha20ParameterSpec( otherNonce, chaCha20Parameters.getCounter() );
+            }
+            else if ( parameters instanceof IvParameterSpec ) {
+                byte[] otherNonce = ( (IvParameterSpec)parameters ).getIV(); // a copy
+                otherNonce[0] ^= 1;
+                otherParameters = new IvParameterSpec( otherNonce );
+            }
+            else {
+                throw e;
+            }
+            cipher.init( Cipher.DECRYPT_MODE, key, otherParameters );
+            cipher.init( Cipher.DECRYPT_MODE, key, parameters );
+        }
+    }
+
+    @Override
+    public int aeadEncrypt( @NonNull ByteBuffer data, int headerOffset, int headerLength,
+            int plaintextLength, long packetNumber ) throws GeneralSecurityException {
+        KeyGeneration generation = keys.current;
+        Cipher cipher = sealingAeadCipher.get();
+        cipher.init( Cipher.ENCRYPT_MODE, generation.key, createAeadParameters( generation, packetNumber ) );
+
+        int payloadOffset = headerOffset + headerLength;
+        if ( data.hasArray() ) {
+            byte[] array = data.array();
+            int arrayOffset = data.arrayOffset();
+            cipher.updateAAD( array, arrayOffset + headerOffset, headerLength );
+            return cipher.doFinal( array, arrayOffset + payloadOffset, plaintextLength,
+                    array, arrayOffset + payloadOffset );
+        }
+        ByteBuffer associatedData = data.duplicate();
+        associatedData.limit( payloadOffset );
+        associatedData.position( headerOffset );
+        cipher.updateAAD( associatedData );
+
+        ByteBuffer plaintext = data.duplicate();
+        plaintext.limit( payloadOffset + plaintextLength );
+        plaintext.position( payloadOffset );
+        ByteBuffer ciphertext = data.duplicate();
+        ciphertext.limit( ciphertext.capacity() );
+        ciphertext.position( payloadOffset );
+        return cipher.doFinal( plaintext, ciphertext );
+    }
+
+    /**
+     * "The 62 bits of the reconstructed QUIC packet number in network byte order are left-padded with zeros
+     * to the size of the IV. The exclusive OR of the padded packet number and the IV forms the AEAD nonce."
+     * QUIC Spec-TLS/Section 5.3
+     */
+    private AlgorithmParameterSpec createAeadParameters( KeyGeneration generation, long packetNumber ) {
+        byte[] nonce = NONCE_SCRATCH.get();
+        nonce[0] = 0;
+        nonce[1] = 0;
+        nonce[2] = 0;
+        nonce[3] = 0;
+        VariableLengthIntegerEncoder.encodeFixedLengthInteger( packetNumber, nonce, 4, 8 );
+        for ( int i = 0; i < IV_LENGTH; i++ ) {
+            nonce[i] ^= generation.iv[i];
+        }
+        // both parameter specs copy the nonce
+        if ( aeadCipher == CHACHA20_POLY1305_CIPHER ) {
+            return new IvParameterSpec( nonce );
+        }
+        return new GCMParameterSpec( AEAD_TAG_LENGTH * 8, nonce );
+    }
+
+    /**
+     * moves to the next key phase and derives the keys of the one after. must be called holding the lock
+     *
+     * @param k                 the current keys
+     * @param firstPacketNumber the number of the first packet of the next key phase
+     */
+    private void updateKeys( KeyPhase k, long firstPacketNumber ) {
+        KeyGeneration next = k.next;
+        keys = new KeyPhase( k.current, next, deriveKeyGeneration( deriveNextSecret( next.secret ), next ),
+                !k.keyPhase, firstPacketNumber );
+    }
+
+    /**
+     * "secret_<n+1> = HKDF-Expand-Label(secret_<n>, "quic ku", "", Hash.length)" QUIC Spec-TLS/Section 6.1
+     *
+     * @param secret the secret of the current key phase
+     * @return the secret of the next key phase
+     */
+    byte[] deriveNextSecret( byte[] secret ) {
+        return HkdfUtil.tlsExpandLabel( hkdf, secret, HkdfUtil.LABEL_QUIC_KU, null, secretLength );
+    }
+
+    private KeyGeneration deriveKeyGeneration( byte[] secret ) {
+        return deriveKeyGeneration( secret, null );
+    }
+
+    private KeyGeneration deriveKeyGeneration( byte[] secret, KeyGeneration previous ) {
+        return new KeyGeneration(
+                previous == null ? 0 : previous.generation + 1,
+                secret,
+                new SecretKeySpec( HkdfUtil.tlsExpandLabel( hkdf, secret, HkdfUtil.LABEL_QUIC_KEY, null, keyLength ),
+                        keyAlgorithm ),
+                HkdfUtil.tlsExpandLabel( hkdf, secret, HkdfUtil.LABEL_QUIC_IV, null, IV_LENGTH )
+        );
+    }
+
+    /**
+     * the keys derived from one secret
+     */
+    private static final class KeyGeneration {
+
+        private final long generation;
+        private final byte[] secret;
+        private final SecretKeySpec key;
+        private final byte[] iv;
+
+        private KeyGeneration( long generation, byte[] secret, SecretKeySpec key, byte[] iv ) {
+            this.generation = generation;
+            this.secret = secret;
+            this.key = key;
+            this.iv = iv;
+        }
+    }
+
+    /**
+     * immutable snapshot of the keys around the current key phase
+     */
+    private static final class KeyPhase {
+
+        private final KeyGeneration previous;
+        private final KeyGeneration current;
+        private final KeyGeneration next;
+        private final boolean keyPhase;
+        /**
+         * the number of the packet that started the current key phase
+         */
+        private final long firstPacketNumber;
+
+        private KeyPhase( KeyGeneration previous, KeyGeneration current, KeyGeneration next,
+                boolean keyPhase, long firstPacketNumber ) {
+            this.previous = previous;
+            this.current = current;
+            this.next = next;
+            this.keyPhase = keyPhase;
+            this.firstPacketNumber = firstPacketNumber;
+        }
+    }
+}
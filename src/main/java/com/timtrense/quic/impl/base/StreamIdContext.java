@@ -35,8 +35,8 @@ public interface StreamIdContext {
      * notifies the context that a new stream id was introduced to the connection (presumably by the remote).
      * all remotely created stream ids must indicated the inverted value for server-initiation with respect to
      * this context.
-     * when invoked, the method creates all ids of the given type (initiator and directionality) in between
-     * the current counting step and the given id.
+     * when invoked, all ids of the given type (initiator and directionality) in between
+     * the current counting step of that type and the given id become known, too.
      *
      * this method is not thread-safe unless synchronized on this instance.
      *
@@ -46,7 +46,40 @@ public interface StreamIdContext {
     StreamId notifyAboutNewId( long streamIdValue );
 
     /**
-     * @return an immutable view to all ids sorted by their values which naturally contains each known id only once
+     * @param streamIdValue the id to check
+     * @return true if that id was created or notified about, including the ids implicitly opened in between
+     */
+    boolean isKnown( long streamIdValue );
+
+    /**
+     * @param streamIdValue the id to check
+     * @return true if that id is {@link #isKnown(long) known} and was not yet {@link #notifyClosed(long) closed}
+     */
+    boolean isOpen( long streamIdValue );
+
+    /**
+     * notifies the context that the stream with the given id reached a terminal state
+     *
+     * this method is not thread-safe unless synchronized on this instance.
+     *
+     * @param streamIdValue the id of the closed stream
+     * @return true if that id was open before
+     */
+    boolean notifyClosed( long streamIdValue );
+
+    /**
+     * @param serverInitiated whether to count server-initiated (true) or client-initiated (false) streams
+     * @param unidirectional  whether to count unidirectional (true) or bidirectional (false) streams
+     * @return the number of open streams of that type
+     */
+    long getOpenCount( boolean serverInitiated, boolean unidirectional );
+
+    /**
+     * all ids of the four types are known up to the latest one of each type, so this view is computed from that
+     * on access instead of holding any id.
+     *
+     * @return an immutable, lazy view to all known ids sorted by their values which naturally contains each known
+     * id only once
      */
     List<StreamId> getAllStreamIds();
 
@@ -1,65 +1,259 @@
 package com.timtrense.quic.impl.base;
 
-import java.util.Collections;
-import java.util.Comparator;
-import java.util.LinkedList;
+import java.util.AbstractList;
+import java.util.Arrays;
 import java.util.List;
-import lombok.Data;
+import java.util.RandomAccess;
+import lombok.Getter;
+import lombok.NonNull;
 
 import com.timtrense.quic.EndpointRole;
 import com.timtrense.quic.StreamId;
 import com.timtrense.quic.VariableLengthInteger;
 
-@Data
+/**
+ * Keeps the stream ids of one connection implicitly instead of as objects.
+ * <p>
+ * https://tools.ietf.org/html/draft-ietf-quic-transport-32#section-2.1
+ * "The two least significant bits from a stream ID therefore identify a stream as one of four types [...]
+ * Within each type, streams are created with numerically increasing stream IDs."
+ * <p>
+ * Thus for each of the four types, all ids below a counter are known. Closed ids are tracked by a watermark
+ * below which all ids of a type are closed and a bitmap of the closed ids above it, so the memory grows with the
+ * number of open streams only and no ids in between are materialized when a peer opens a far away stream.
+ * The bitmap is a ring of words that is shifted in place as the watermark moves, so closing does not allocate.
+ *
+ * @author Tim Trense
+ */
 public class StreamIdContextImpl implements StreamIdContext {
 
-    private final EndpointRole role;
-    private long nextCountingValue = 0L;
-    private List<StreamId> knownStreamIds = new LinkedList<>();
+    /**
+     * the number of different stream types
+     */
+    private static final int TYPE_COUNT = 4;
+
+    @Getter
+    private final @NonNull EndpointRole role;
+    /**
+     * per type: the counting value of the next id, thus the number of known ids
+     */
+    private final long[] nextCountingValues = new long[TYPE_COUNT];
+    /**
+     * per type: the closed ids
+     */
+    private final ClosedIds[] closedIds = new ClosedIds[TYPE_COUNT];
+    /**
+     * the lazy view of all known ids
+     */
+    private final List<StreamId> allStreamIds = new AllStreamIds();
+
+    public StreamIdContextImpl( @NonNull EndpointRole role ) {
+        this.role = role;
+        for ( int i = 0; i < TYPE_COUNT; i++ ) {
+            closedIds[i] = new ClosedIds();
+        }
+    }
 
     @Override
     public StreamId createNewId( boolean forUnidirectional ) {
-        long value = nextCountingValue++; // post-increment
-        StreamId created = new StreamIdImpl(
-                new VariableLengthInteger(
-                        ( value << 2 )
-                                | ( role == EndpointRole.SERVER ? StreamId.MASK_INITIATOR : 0 )
-                                | ( forUnidirectional ? StreamId.MASK_DIRECTIONALITY : 0 )
-                )
-        );
-        knownStreamIds.add( created );
-        return created;
+        int type = (int)( ( role == EndpointRole.SERVER ? StreamId.MASK_INITIATOR : 0 )
+                | ( forUnidirectional ? StreamId.MASK_DIRECTIONALITY : 0 ) );
+        long value = nextCountingValues[type]++; // post-increment
+        return toStreamId( value, type );
     }
 
     @Override
     public StreamId notifyAboutNewId( long streamIdValue ) {
-        if ( streamIdValue < 0 ) {
+        if ( !VariableLengthIntegerEncoder.isEncodable( streamIdValue ) ) {
             return null;
         }
-
-        StreamId testId = new StreamIdImpl( new VariableLengthInteger( streamIdValue ) );
-        if ( testId.isServerInitiated() == ( role == EndpointRole.SERVER ) ) {
+        int type = (int)( streamIdValue & ( StreamId.MASK_INITIATOR | StreamId.MASK_DIRECTIONALITY ) );
+        boolean serverInitiated = ( type & StreamId.MASK_INITIATOR ) != 0;
+        if ( serverInitiated == ( role == EndpointRole.SERVER ) ) {
             // remotely created ids must indicate the inverted value for server initiated
             return null;
         }
-        createIdsInBetween( nextCountingValue, testId.getCountingLongValue(), testId.getMask() );
-        knownStreamIds.add( testId );
-        knownStreamIds.sort( Comparator.comparing( StreamId::getLongValue ) );
-        if ( nextCountingValue <= streamIdValue ) {
-            nextCountingValue = ( streamIdValue >> 2 ) + 1;
+        long countingValue = streamIdValue >> 2;
+        if ( countingValue < nextCountingValues[type] ) {
+            return null; // already known
+        }
+        // all ids of that type in between are implicitly opened too
+        nextCountingValues[type] = countingValue + 1;
+        return new StreamIdImpl( VariableLengthInteger.valueOf( streamIdValue ) );
+    }
+
+    @Override
+    public boolean isKnown( long streamIdValue ) {
+        if ( streamIdValue < 0 ) {
+            return false;
+        }
+        return ( streamIdValue >> 2 ) < nextCountingValues[typeOf( streamIdValue )];
+    }
+
+    @Override
+    public boolean isOpen( long streamIdValue ) {
+        if ( !isKnown( streamIdValue ) ) {
+            return false;
+        }
+        return !closedIds[typeOf( streamIdValue )].isClosed( streamIdValue >> 2 );
+    }
+
+    @Override
+    public boolean notifyClosed( long streamIdValue ) {
+        if ( !isOpen( streamIdValue ) ) {
+            return false;
         }
-        return testId;
+        closedIds[typeOf( streamIdValue )].close( streamIdValue >> 2 );
+        return true;
+    }
+
+    @Override
+    public long getOpenCount( boolean serverInitiated, boolean unidirectional ) {
+        int type = (int)( ( serverInitiated ? StreamId.MASK_INITIATOR : 0 )
+                | ( unidirectional ? StreamId.MASK_DIRECTIONALITY : 0 ) );
+        ClosedIds closed = closedIds[type];
+        return nextCountingValues[type] - closed.closedBelow - closed.closedAboveCount;
     }
 
     @Override
     public List<StreamId> getAllStreamIds() {
-        return Collections.unmodifiableList( knownStreamIds );
+        return allStreamIds;
+    }
+
+    private static int typeOf( long streamIdValue ) {
+        return (int)( streamIdValue & ( StreamId.MASK_INITIATOR | StreamId.MASK_DIRECTIONALITY ) );
+    }
+
+    private static StreamId toStreamId( long countingValue, int type ) {
+        return new StreamIdImpl( VariableLengthInteger.valueOf( ( countingValue << 2 ) | type ) );
     }
 
-    private void createIdsInBetween( long currentCountingValue, long endCountingValue, long mask ) {
-        for ( ; currentCountingValue < endCountingValue; currentCountingValue++ ) {
-            StreamId inBetween = new StreamIdImpl( new VariableLengthInteger( ( currentCountingValue << 2 ) | mask ) );
-            knownStreamIds.add( inBetween );
+    /**
+     * The closed counting values of one type: a watermark below which all are closed and a bitmap of the closed
+     * ones above it. The bitmap is a ring of words, of which the word at {@link #head} holds the counting values
+     * from {@link #wordBase} * 64 on. Bits below the watermark within that word are kept set.
+     */
+    private static final class ClosedIds {
+
+        /**
+         * the maximum number of words, thus tracking at most 2^31 counting values above the watermark
+         */
+        private static final int MAX_WORDS = 1 << 25;
+
+        private long[] words = new long[1];
+        /**
+         * the index of the word holding the watermark
+         */
+        private int head;
+        /**
+         * the counting value of the first bit of the {@link #head} word, divided by 64
+         */
+        private long wordBase;
+        /**
+         * the counting value below which all are closed
+         */
+        private long closedBelow;
+        /**
+         * the number of closed counting values from {@link #closedBelow} on
+         */
+        private long closedAboveCount;
+
+        boolean isClosed( long countingValue ) {
+            if ( countingValue < closedBelow ) {
+                return true;
+            }
+            long wordOffset = ( countingValue >>> 6 ) - wordBase;
+            if ( wordOffset >= words.length ) {
+                return false;
+            }
+            return ( words[( head + (int)wordOffset ) & ( words.length - 1 )] & ( 1L << countingValue ) ) != 0;
+        }
+
+        /**
+         * @param countingValue a counting value that is not yet closed
+         */
+        void close( long countingValue ) {
+            long wordOffset = ( countingValue >>> 6 ) - wordBase;
+            if ( wordOffset >= words.length ) {
+                grow( wordOffset );
+            }
+            words[( head + (int)wordOffset ) & ( words.length - 1 )] |= 1L << countingValue;
+            closedAboveCount++;
+            if ( countingValue != closedBelow ) {
+                return;
+            }
+            // move the watermark over the closed ids at its front, streams usually close roughly in order
+            long oldClosedBelow = closedBelow;
+            long word;
+            while ( ( word = words[head] ) == -1L ) {
+                words[head] = 0;
+                head = ( head + 1 ) & ( words.length - 1 );
+                wordBase++;
+            }
+            closedBelow = ( wordBase << 6 ) + Long.numberOfTrailingZeros( ~word );
+            closedAboveCount -= closedBelow - oldClosedBelow;
+        }
+
+        /**
+         * enlarges the ring to hold the word at the given offset from the head, moving the head to index 0
+         */
+        private void grow( long wordOffset ) {
+            if ( wordOffset >= MAX_WORDS ) {
+                throw new IllegalStateException( "Cannot track more than 2^31 open streams of one type" );
+            }
+            long[] grown = new long[Integer.highestOneBit( (int)wordOffset ) << 1];
+            for ( int i = 0; i < words.length; i++ ) {
+                grown[i] = words[( head + i ) & ( words.length - 1 )];
+            }
+            words = grown;
+            head = 0;
+        }
+    }
+
+    /**
+     * All known ids sorted by their values, computed on access from the counters.
+     * <p>
+     * Sorted by value, ids are ordered by their counting value first and their type second. Below the smallest
+     * counter, every counting value has ids of all four types, up to the second smallest one of three types,
+     * and so on. The index of an id is found by walking these at most four segments.
+     */
+    private class AllStreamIds extends AbstractList<StreamId> implements RandomAccess {
+
+        @Override
+        public StreamId get( int index ) {
+            if ( index < 0 ) {
+                throw new IndexOutOfBoundsException( "Index: " + index );
+            }
+            long[] sortedCounts = nextCountingValues.clone();
+            Arrays.sort( sortedCounts );
+            long remaining = index;
+            long segmentStart = 0;
+            for ( int i = 0; i < TYPE_COUNT; i++ ) {
+                int typesInSegment = TYPE_COUNT - i;
+                long segmentSize = ( sortedCounts[i] - segmentStart ) * typesInSegment;
+                if ( remaining < segmentSize ) {
+                    long countingValue = segmentStart + remaining / typesInSegment;
+                    int nth = (int)( remaining % typesInSegment );
+                    // the nth type (in ascending order) that still has ids at that counting value
+                    for ( int type = 0; type < TYPE_COUNT; type++ ) {
+                        if ( countingValue < nextCountingValues[type] && nth-- == 0 ) {
+                            return toStreamId( countingValue, type );
+                        }
+                    }
+                }
+                remaining -= segmentSize;
+                segmentStart = sortedCounts[i];
+            }
+            throw new IndexOutOfBoundsException( "Index: " + index + ", Size: " + size() );
+        }
+
+        @Override
+        public int size() {
+            long size = 0;
+            for ( long count : nextCountingValues ) {
+                size += count;
+            }
+            return (int)Math.min( Integer.MAX_VALUE, size );
         }
     }
 }
@@ -0,0 +1,274 @@
+package com.timtrense.quic.impl.base;
+
+import java.util.Arrays;
+import java.util.function.LongFunction;
+import java.util.function.ObjLongConsumer;
+import lombok.NonNull;
+
+import com.timtrense.quic.Stream;
+import com.timtrense.quic.StreamId;
+
+/**
+ * Lookup table from stream id values to the {@link Stream streams} of one connection.
+ * <p>
+ * Every STREAM, MAX_STREAM_DATA, RESET_STREAM and STOP_SENDING frame resolves its stream id. The table is keyed
+ * by the primitive {@link StreamId#getLongValue() value} of the id, so a lookup neither boxes the key nor
+ * wraps it into a {@link StreamId} first.
+ * <p>
+ * The table uses open addressing with linear probing on parallel arrays. Removal shifts the following entries of
+ * the probe sequence back instead of leaving markers, so the table never degrades when streams are opened and
+ * closed for the whole lifetime of a connection. Stream ids are sequential per type, so they are spread by
+ * fibonacci hashing. The table is not thread-safe, it is meant to be used by the thread handling the connection.
+ *
+ * @param <S> the type of the mapped streams
+ * @author Tim Trense
+ */
+public class StreamTable<S extends Stream> {
+
+    /**
+     * the default number of streams a new table makes room for
+     */
+    public static final int DEFAULT_INITIAL_CAPACITY = 16;
+
+    /**
+     * 2^64 divided by the golden ratio
+     */
+    private static final long FIBONACCI_MULTIPLIER = 0x9E3779B97F4A7C15L;
+    /**
+     * the largest supported number of slots
+     */
+    private static final int MAXIMUM_SLOTS = 1 << 30;
+
+    /**
+     * the stream id values of the slots. only valid where {@link #values} is not null
+     */
+    private long[] keys;
+    /**
+     * the streams of the slots, null for empty slots
+     */
+    private Object[] values;
+    /**
+     * the number of bits to shift the hash to the right to get a slot index
+     */
+    private int shift;
+    /**
+     * the number of mapped streams
+     */
+    private int size;
+
+    /**
+     * Creates a new table with {@link #DEFAULT_INITIAL_CAPACITY}
+     */
+    public StreamTable() {
+        this( DEFAULT_INITIAL_CAPACITY );
+    }
+
+    /**
+     * Creates a new table
+     *
+     * @param initialCapacity the number of streams to expect, the table grows beyond that if necessary
+     */
+    public StreamTable( int initialCapacity ) {
+        if ( initialCapacity <= 0 ) {
+            throw new IllegalArgumentException( "Cannot create a StreamTable with non-positive capacity" );
+        }
+        allocate( slotCountFor( initialCapacity ) );
+    }
+
+    /**
+     * @return the number of mapped streams
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return true if no stream is mapped
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Searches the stream with the given id
+     *
+     * @param streamIdValue the value of the stream id
+     * @return the stream or null if that id is not mapped
+     */
+    @SuppressWarnings( "unchecked" )
+    public S get( long streamIdValue ) {
+        int mask = values.length - 1;
+        for ( int i = indexFor( streamIdValue ); ; i = ( i + 1 ) & mask ) {
+            Object value = values[i];
+            if ( value == null ) {
+                return null;
+            }
+            if ( keys[i] == streamIdValue ) {
+                return (S)value;
+            }
+        }
+    }
+
+    /**
+     * @param streamIdValue the value of the stream id
+     * @return true if that id is mapped to a stream
+     */
+    public boolean contains( long streamIdValue ) {
+        return get( streamIdValue ) != null;
+    }
+
+    /**
+     * Maps the stream by its {@link Stream#getId() id}, replacing any previous mapping of that id
+     *
+     * @param stream the stream to map
+     * @return the previously mapped stream or null if there was none
+     */
+    public S put( @NonNull S stream ) {
+        return put( stream.getId().getLongValue(), stream );
+    }
+
+    /**
+     * Searches the stream with the given id or maps a new one created by the given function
+     *
+     * @param streamIdValue the value of the stream id
+     * @param factory       creates the stream if it is not yet mapped, must not return null
+     * @return the mapped or created stream
+     */
+    public S computeIfAbsent( long streamIdValue, @NonNull LongFunction<S> factory ) {
+        S stream = get( streamIdValue );
+        if ( stream == null ) {
+            stream = factory.apply( streamIdValue );
+            if ( stream == null ) {
+                throw new IllegalArgumentException( "Cannot map a stream id to null" );
+            }
+            put( streamIdValue, stream );
+        }
+        return stream;
+    }
+
+    /**
+     * Removes the mapping of the given id, eg. when the stream reached a terminal state
+     *
+     * @param streamIdValue the value of the stream id
+     * @return the stream that was mapped or null if there was none
+     */
+    @SuppressWarnings( "unchecked" )
+    public S remove( long streamIdValue ) {
+        int mask = values.length - 1;
+        for ( int i = indexFor( streamIdValue ); ; i = ( i + 1 ) & mask ) {
+            Object value = values[i];
+            if ( value == null ) {
+                return null;
+            }
+            if ( keys[i] == streamIdValue ) {
+                shiftBack( i );
+                size--;
+                return (S)value;
+            }
+        }
+    }
+
+    /**
+     * removes all mappings
+     */
+    public void clear() {
+        Arrays.fill( values, null );
+        size = 0;
+    }
+
+    /**
+     * Iterates all mappings in no particular order. The action must not modify this table.
+     *
+     * @param action the action to perform for each mapping
+     */
+    @SuppressWarnings( "unchecked" )
+    public void forEach( @NonNull ObjLongConsumer<S> action ) {
+        for ( int i = 0; i < values.length; i++ ) {
+            if ( values[i] != null ) {
+                action.accept( (S)values[i], keys[i] );
+            }
+        }
+    }
+
+    @SuppressWarnings( "unchecked" )
+    private S put( long streamIdValue, S stream ) {
+        int mask = values.length - 1;
+        int i = indexFor( streamIdValue );
+        for ( ; values[i] != null; i = ( i + 1 ) & mask ) {
+            if ( keys[i] == streamIdValue ) {
+                S previous = (S)values[i];
+                values[i] = stream;
+                return previous;
+            }
+        }
+        if ( ( size + 1 ) * 4 > values.length * 3 ) {
+            // keep at least a quarter of the slots empty, so that probe sequences stay short
+            rehash( values.length * 2 );
+            mask = values.length - 1;
+            for ( i = indexFor( streamIdValue ); values[i] != null; i = ( i + 1 ) & mask ) {
+                // find the first empty slot in the new table
+            }
+        }
+        keys[i] = streamIdValue;
+        values[i] = stream;
+        size++;
+        return null;
+    }
+
+    /**
+     * empties the given slot and moves every following entry of the same cluster that would no longer be
+     * reachable from its home slot into the gap
+     *
+     * @param gap the slot to empty
+     */
+    private void shiftBack( int gap ) {
+        int mask = values.length - 1;
+        for ( int i = ( gap + 1 ) & mask; values[i] != null; i = ( i + 1 ) & mask ) {
+            int home = indexFor( keys[i] );
+            // the entry may move into the gap if its home is not cyclically within (gap, i]
+            if ( ( ( i - home ) & mask ) >= ( ( i - gap ) & mask ) ) {
+                keys[gap] = keys[i];
+                values[gap] = values[i];
+                gap = i;
+            }
+        }
+        values[gap] = null;
+    }
+
+    private void rehash( int slotCount ) {
+        if ( slotCount > MAXIMUM_SLOTS ) {
+            throw new IllegalStateException( "Cannot map more streams in a StreamTable" );
+        }
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        allocate( slotCount );
+        int mask = slotCount - 1;
+        for ( int j = 0; j < oldValues.length; j++ ) {
+            if ( oldValues[j] == null ) {
+                continue;
+            }
+            int i = indexFor( oldKeys[j] );
+            while ( values[i] != null ) {
+                i = ( i + 1 ) & mask;
+            }
+            keys[i] = oldKeys[j];
+            values[i] = oldValues[j];
+        }
+    }
+
+    private void allocate( int slotCount ) {
+        keys = new long[slotCount];
+        values = new Object[slotCount];
+        shift = 64 - Integer.numberOfTrailingZeros( slotCount );
+    }
+
+    private int indexFor( long streamIdValue ) {
+        return (int)( ( streamIdValue * FIBONACCI_MULTIPLIER ) >>> shift );
+    }
+
+    private static int slotCountFor( int capacity ) {
+        // keep the load factor at 3/4 at most
+        long slots = Math.max( 2L, ( capacity * 4L + 2 ) / 3 );
+        return (int)Math.min( MAXIMUM_SLOTS, Long.highestOneBit( slots - 1 ) << 1 );
+    }
+}
@@ -0,0 +1,101 @@
+package com.timtrense.quic.impl.base;
+
+import java.security.InvalidKeyException;
+import java.security.Key;
+import java.security.NoSuchAlgorithmException;
+import javax.crypto.Cipher;
+import javax.crypto.NoSuchPaddingException;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Holds one {@link Cipher} instance of a given transformation per thread.
+ * <p>
+ * {@link Cipher#getInstance(String)} looks up the security providers on every call and {@link Cipher ciphers} are
+ * not thread-safe, so packet protection keeps one cipher per thread and transformation instead of creating one per
+ * packet. For stateless modes like ECB, {@link #get(int, Key)} also skips re-initialization when the
+ * thread used the same key the last time.
+ *
+ * @author Tim Trense
+ */
+public class ThreadLocalCipher {
+
+    /**
+     * The transformation of the held ciphers, as given to {@link Cipher#getInstance(String)}
+     */
+    @Getter
+    private final @NonNull String transformation;
+    /**
+     * the cipher of the current thread and its last initialization
+     */
+    private final ThreadLocal<Holder> holder = new ThreadLocal<>();
+
+    /**
+     * @param transformation the transformation of the held ciphers, as given to {@link Cipher#getInstance(String)}
+     */
+    public ThreadLocalCipher( @NonNull String transformation ) {
+        this.transformation = transformation;
+    }
+
+    /**
+     * Returns the uninitialized or previously initialized cipher of the current thread.
+     * The caller must {@link Cipher#init(int, Key) initialize} it before use.
+     *
+     * @return the cipher of the current thread
+     * @throws NoSuchAlgorithmException if the transformation is not available
+     * @throws NoSuchPaddingException   if the transformation is not available
+     */
+    public Cipher get() throws NoSuchAlgorithmException, NoSuchPaddingException {
+        Holder h = holder();
+        // the caller re-initializes the cipher, so forget what it was initialized with
+        h.mode = 0;
+        h.key = null;
+        return h.cipher;
+    }
+
+    /**
+     * Returns the cipher of the current thread, initialized with the given mode and key.
+     * Only use this for transformations that need no parameters (like AES/ECB),
+     * because the cipher is not re-initialized if it already is initialized with the same mode and key.
+     *
+     * @param mode the operation mode, like {@link Cipher#ENCRYPT_MODE}
+     * @param key  the key to use
+     * @return the initialized cipher of the current thread
+     * @throws NoSuchAlgorithmException if the transformation is not available
+     * @throws NoSuchPaddingException   if the transformation is not available
+     * @throws InvalidKeyException      if the key does not fit the transformation
+     */
+    public Cipher get( int mode, @NonNull Key key )
+            throws NoSuchAlgorithmException, NoSuchPaddingException, InvalidKeyException {
+        Holder h = holder();
+        if ( h.mode != mode || h.key != key ) {
+            h.cipher.init( mode, key );
+            h.mode = mode;
+            h.key = key;
+        }
+        return h.cipher;
+    }
+
+    private Holder holder() throws NoSuchAlgorithmException, NoSuchPaddingException {
+        Holder h = holder.get();
+        if ( h == null ) {
+            h = new Holder( Cipher.getInstance( transformation ) );
+            holder.set( h );
+        }
+        return h;
+    }
+
+    /**
+     * a cipher and its last initialization
+     */
+    private static final class Holder {
+
+        private final Cipher cipher;
+        private int mode;
+        private Key key;
+
+        private Holder( Cipher cipher ) {
+            this.cipher = cipher;
+        }
+    }
+}
@@ -0,0 +1,235 @@
+package com.timtrense.quic.impl.base;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * A hashed timer wheel, that schedules and cancels timeouts in constant time.
+ * <p>
+ * Time is divided into ticks of {@link #getTickDuration()}. A timeout is linked into the bucket of its tick
+ * modulo the number of buckets, together with the number of full rotations of the wheel that must pass before
+ * it expires. {@link #advance(long)} visits the buckets of all ticks up to the given time and runs the expired
+ * timeouts. Thus timeouts fire at most one tick late, and never early.
+ * <p>
+ * The {@link Timeout timeouts} are intrusive list nodes owned by the caller, so they can be re-scheduled
+ * without allocating. Instances are not thread-safe, all methods must be called by the thread driving the wheel.
+ *
+ * @author Tim Trense
+ */
+public class TimerWheel {
+
+    /**
+     * The duration of one tick in nanoseconds
+     */
+    @Getter
+    private final long tickDuration;
+    /**
+     * the first timeout of each bucket
+     */
+    private final Timeout[] buckets;
+    private final int mask;
+    /**
+     * the time of tick 0
+     */
+    private final long startTime;
+    /**
+     * the next tick to be processed
+     */
+    private long currentTick;
+    /**
+     * the number of scheduled timeouts
+     */
+    private int size;
+
+    /**
+     * @param tickDuration the duration of one tick in nanoseconds
+     * @param bucketCount  the number of buckets, rounded up to a power of 2. The wheel rotates once
+     *                     per bucketCount ticks, later timeouts wait for more rotations
+     * @param startTime    the current time in nanoseconds
+     */
+    public TimerWheel( long tickDuration, int bucketCount, long startTime ) {
+        if ( tickDuration <= 0 || bucketCount <= 0 ) {
+            throw new IllegalArgumentException( "Cannot create a TimerWheel with non-positive ticks or buckets" );
+        }
+        int capacity = bucketCount <= 1 ? 1 : Integer.highestOneBit( bucketCount - 1 ) << 1;
+        this.tickDuration = tickDuration;
+        this.buckets = new Timeout[capacity];
+        this.mask = capacity - 1;
+        this.startTime = startTime;
+    }
+
+    /**
+     * @return the number of scheduled timeouts
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the time at which the next tick is due, that is the earliest time at which
+     * {@link #advance(long)} may expire another timeout
+     */
+    public long getNextTickTime() {
+        return startTime + currentTick * tickDuration;
+    }
+
+    /**
+     * Schedules the timeout, re-scheduling it if it already is scheduled. Deadlines in the past expire
+     * with the next tick.
+     *
+     * @param timeout  the timeout to schedule
+     * @param deadline the time in nanoseconds at which it expires
+     */
+    public void schedule( @NonNull Timeout timeout, long deadline ) {
+        if ( timeout.state == Timeout.SCHEDULED ) {
+            unlink( timeout );
+        }
+        // round up, so the timeout never fires early
+        long tick = Math.max( ( deadline - startTime + tickDuration - 1 ) / tickDuration, currentTick );
+        timeout.deadline = deadline;
+        timeout.remainingRounds = ( tick - currentTick ) / buckets.length;
+        timeout.bucket = (int)( tick & mask );
+        timeout.state = Timeout.SCHEDULED;
+        Timeout head = buckets[timeout.bucket];
+        timeout.prev = null;
+        timeout.next = head;
+        if ( head != null ) {
+            head.prev = timeout;
+        }
+        buckets[timeout.bucket] = timeout;
+        size++;
+    }
+
+    /**
+     * @param timeout the timeout to cancel
+     * @return whether the timeout was scheduled and will not expire
+     */
+    public boolean cancel( @NonNull Timeout timeout ) {
+        if ( timeout.state == Timeout.SCHEDULED ) {
+            unlink( timeout );
+            timeout.state = Timeout.IDLE;
+            return true;
+        }
+        if ( timeout.state == Timeout.EXPIRING ) {
+            timeout.state = Timeout.IDLE;
+            return true;
+        }
+        return false;
+    }
+
+    private void unlink( Timeout timeout ) {
+        if ( timeout.prev != null ) {
+            timeout.prev.next = timeout.next;
+        }
+        else {
+            buckets[timeout.bucket] = timeout.next;
+        }
+        if ( timeout.next != null ) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        size--;
+    }
+
+    /**
+     * runs all timeouts of the ticks up to the given time. Timeouts may re-schedule or cancel any timeout
+     * while they run.
+     *
+     * @param now the current time in nanoseconds
+     * @return the number of expired timeouts
+     */
+    public int advance( long now ) {
+        long targetTick = ( now - startTime ) / tickDuration;
+        int expired = 0;
+        while ( currentTick <= targetTick ) {
+            int bucket = (int)( currentTick & mask );
+            // timeouts scheduled while running belong to later ticks
+            currentTick++;
+            if ( size == 0 ) {
+                // nothing to visit, jump ahead
+                currentTick = Math.max( currentTick, targetTick + 1 );
+                break;
+            }
+            Timeout expiring = null;
+            Timeout timeout = buckets[bucket];
+            while ( timeout != null ) {
+                Timeout next = timeout.next;
+                if ( timeout.remainingRounds <= 0 ) {
+                    unlink( timeout );
+                    timeout.state = Timeout.EXPIRING;
+                    timeout.nextExpiring = expiring;
+                    expiring = timeout;
+                }
+                else {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+            // run outside of the bucket iteration. Buckets are in reverse order of scheduling,
+            // so the stack of expiring timeouts is in order of scheduling
+            while ( expiring != null ) {
+                Timeout next = expiring.nextExpiring;
+                expiring.nextExpiring = null;
+                if ( expiring.state == Timeout.EXPIRING ) {
+                    expiring.state = Timeout.IDLE;
+                    expired++;
+                    expiring.task.run( expiring, now );
+                }
+                expiring = next;
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * the action of an expired {@link Timeout}
+     */
+    @FunctionalInterface
+    public interface TimerTask {
+
+        /**
+         * @param timeout the expired timeout, which may be re-scheduled
+         * @param now     the time given to {@link #advance(long)}
+         */
+        void run( Timeout timeout, long now );
+    }
+
+    /**
+     * A reusable timeout, that is at most scheduled once at a time
+     */
+    public static final class Timeout {
+
+        private static final byte IDLE = 0;
+        private static final byte SCHEDULED = 1;
+        private static final byte EXPIRING = 2;
+
+        /**
+         * The action to run when this timeout expires
+         */
+        @Getter
+        private final @NonNull TimerTask task;
+        /**
+         * The time at which this timeout was last scheduled to expire
+         */
+        @Getter
+        private long deadline;
+        private long remainingRounds;
+        private int bucket;
+        private byte state = IDLE;
+        private Timeout prev;
+        private Timeout next;
+        private Timeout nextExpiring;
+
+        public Timeout( @NonNull TimerTask task ) {
+            this.task = task;
+        }
+
+        /**
+         * @return whether this timeout is scheduled and did not yet expire
+         */
+        public boolean isScheduled() {
+            return state == SCHEDULED;
+        }
+    }
+}
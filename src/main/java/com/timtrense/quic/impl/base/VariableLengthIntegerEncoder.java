@@ -73,6 +73,19 @@ public class VariableLengthIntegerEncoder {
      */
     public static final long MASK_8_BYTE = 0x3fffffffffffffffL;
 
+    /**
+     * The encoded length in bytes of values by their {@link Long#numberOfLeadingZeros(long) number of leading zeros}.
+     * 0 for negative values and values above {@link #MAX_VALUE}
+     */
+    private static final byte[] LENGTH_BY_LEADING_ZEROS = new byte[65];
+
+    static {
+        for ( int leadingZeros = 0; leadingZeros <= 64; leadingZeros++ ) {
+            int bits = 64 - leadingZeros;
+            LENGTH_BY_LEADING_ZEROS[leadingZeros] = (byte)( bits <= 6 ? 1 : bits <= 14 ? 2 : bits <= 30 ? 4 : bits <= 62 ? 8 : 0 );
+        }
+    }
+
     private VariableLengthIntegerEncoder() {}
 
     /**
@@ -82,24 +95,26 @@ private VariableLengthIntegerEncoder() {}
      * @return the number of bytes required to encode the value or 0 if the value is out-of-bounds
      */
     public static byte getLengthInBytes( long value ) {
-        if ( value < MIN_VALUE ) {
-            return 0;
-        }
-        else if ( value <= MAX_VALUE_1_BYTE ) {
-            return 1;
-        }
-        else if ( value <= MAX_VALUE_2_BYTE ) {
-            return 2;
-        }
-        else if ( value <= MAX_VALUE_4_BYTE ) {
-            return 4;
-        }
-        else if ( value <= MAX_VALUE ) {
-            return 8;
-        }
-        else {
-            return 0;
-        }
+        // negative values have no leading zeros and values above MAX_VALUE only one
+        return LENGTH_BY_LEADING_ZEROS[Long.numberOfLeadingZeros( value )];
+    }
+
+    /**
+     * @param value the value to check
+     * @return true if the value is within [ {@link #MIN_VALUE} ; {@link #MAX_VALUE} ]
+     */
+    public static boolean isEncodable( long value ) {
+        return ( value & ~MAX_VALUE ) == 0;
+    }
+
+    /**
+     * determines the number of bytes of an encoded value from its first byte
+     *
+     * @param firstByte the first byte of the encoded value
+     * @return the number of bytes of the encoded value (1, 2, 4 or 8)
+     */
+    public static int getEncodedLengthInBytes( byte firstByte ) {
+        return 1 << ( ( firstByte & 0xc0 ) >>> 6 );
     }
 
     /**
@@ -155,30 +170,111 @@ else if ( value <= MAX_VALUE ) {
      * @return the decoded non-negative value or -1 on failure
      */
     public static long decode( ByteBuffer buffer ) {
-        if ( !buffer.hasRemaining() ) {
-            return -1;
+        int position = buffer.position();
+        long value = decode( buffer, position );
+        if ( value >= 0 ) {
+            buffer.position( position + getEncodedLengthInBytes( buffer.get( position ) ) );
         }
+        return value;
+    }
 
-        int remaining = buffer.remaining();
-        byte firstLengthByte = buffer.get();
-        buffer.position( buffer.position() - 1 );
+    /**
+     * decodes a value from the given index of the source without moving its position.
+     * Works the same on heap and direct (off-heap) buffers.
+     *
+     * @param buffer the source to decode from
+     * @param index  the absolute index of the first byte of the encoded value
+     * @return the decoded non-negative value or -1 if the encoded value exceeds the limit of the buffer
+     */
+    public static long decode( ByteBuffer buffer, int index ) {
+        int limit = buffer.limit();
+        if ( index < 0 || index >= limit ) {
+            return -1;
+        }
+        byte firstByte = buffer.get( index );
+        switch ( ( firstByte & 0xc0 ) >>> 6 ) {
+            case 0:
+                return firstByte & MASK_1_BYTE;
+            case 1:
+                return index + 2 <= limit ? buffer.getShort( index ) & MASK_2_BYTE : -1;
+            case 2:
+                return index + 4 <= limit ? buffer.getInt( index ) & MASK_4_BYTE : -1;
+            default:
+                return index + 8 <= limit ? buffer.getLong( index ) & MASK_8_BYTE : -1;
+        }
+    }
 
-        int lengthType = ( firstLengthByte & 0xc0 ) >> 6;
-        if ( lengthType == 0 ) {
-            return buffer.get() & MASK_1_BYTE;
+    /**
+     * decodes a value from the given bytes
+     *
+     * @param data the source to decode from
+     * @param off  the index of the first byte of the encoded value
+     * @param len  the number of bytes available from the offset on
+     * @return the decoded non-negative value or -1 if the encoded value exceeds the available bytes
+     */
+    public static long decode( byte[] data, int off, int len ) {
+        if ( len < 1 ) {
+            return -1;
+        }
+        int length = getEncodedLengthInBytes( data[off] );
+        if ( length > len ) {
+            return -1;
         }
-        else if ( lengthType == 1 && remaining > 1 ) {
-            return buffer.getShort() & MASK_2_BYTE;
+        long value = data[off] & MASK_1_BYTE;
+        for ( int i = 1; i < length; i++ ) {
+            value = ( value << 8 ) | ( data[off + i] & 0xff );
         }
-        else if ( lengthType == 2 && remaining > 3 ) {
-            return buffer.getInt() & MASK_4_BYTE;
+        return value;
+    }
+
+    /**
+     * decodes multiple consecutive values from the given source with a single bounds check for each value.
+     * the buffers position is moved behind the last decoded value.
+     *
+     * @param buffer the source to decode from
+     * @param values the target for the decoded values
+     * @param off    the index in values of the first decoded value
+     * @param count  the number of values to decode
+     * @return the number of decoded values, which is less than count if the buffer ended before
+     */
+    public static int decodeAll( ByteBuffer buffer, long[] values, int off, int count ) {
+        if ( off < 0 || count < 0 || off + count > values.length ) {
+            throw new IndexOutOfBoundsException( "Cannot decode " + count + " values to index " + off
+                    + " of an array of length " + values.length );
         }
-        else if ( lengthType == 3 && remaining > 7 ) {
-            return buffer.getLong() & MASK_8_BYTE;
+        int position = buffer.position();
+        int decoded = 0;
+        while ( decoded < count ) {
+            long value = decode( buffer, position );
+            if ( value < 0 ) {
+                break;
+            }
+            values[off + decoded] = value;
+            decoded++;
+            position += getEncodedLengthInBytes( buffer.get( position ) );
         }
-        else {
-            return -1;
+        buffer.position( position );
+        return decoded;
+    }
+
+    /**
+     * encodes the given value into the given bytes using the fewest possible bytes
+     *
+     * @param value the non-negative long integer to encode
+     * @param data  the target to write the encoded bytes to
+     * @param off   the index of the first byte to write
+     * @return the number of bytes written (1, 2, 4 or 8) or 0 if the value was out of bounds or
+     * would not fit into the array
+     */
+    public static int encode( long value, byte[] data, int off ) {
+        int length = getLengthInBytes( value );
+        if ( length == 0 || off < 0 || off + length > data.length ) {
+            return 0;
         }
+        encodeFixedLengthInteger( value, data, off, length );
+        // the two most significant bits hold the base 2 logarithm of the length
+        data[off] |= (byte)( Integer.numberOfTrailingZeros( length ) << 6 );
+        return length;
     }
 
     /**
@@ -0,0 +1,84 @@
+package com.timtrense.quic.impl.congestion;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import com.timtrense.quic.PacketNumberSpace;
+import com.timtrense.quic.impl.recovery.RttEstimator;
+
+/**
+ * Bookkeeping of the bytes in flight and the congestion window, shared by all {@link CongestionController}s
+ *
+ * @author Tim Trense
+ */
+public abstract class BaseCongestionController implements CongestionController {
+
+    /**
+     * The maximum size of a sent datagram, which is the unit of the congestion window
+     */
+    @Getter
+    protected final int maxDatagramSize;
+    /**
+     * the round-trip time of the connection
+     */
+    protected final @NonNull RttEstimator rttEstimator;
+    @Getter
+    protected long congestionWindow;
+    @Getter
+    protected long bytesInFlight;
+
+    /**
+     * @param maxDatagramSize {@link #maxDatagramSize}
+     * @param rttEstimator    the round-trip time of the connection, updated by its loss detection
+     */
+    protected BaseCongestionController( int maxDatagramSize, @NonNull RttEstimator rttEstimator ) {
+        if ( maxDatagramSize <= 0 ) {
+            throw new IllegalArgumentException( "Cannot create a CongestionController with non-positive datagrams" );
+        }
+        this.maxDatagramSize = maxDatagramSize;
+        this.rttEstimator = rttEstimator;
+        this.congestionWindow = getInitialWindow();
+    }
+
+    /**
+     * "Endpoints SHOULD use an initial congestion window of 10 times the maximum datagram size, while limiting
+     * the window to the larger of 14720 bytes or twice the maximum datagram size." QUIC Spec-Recovery/Section 7.2
+     *
+     * @return the congestion window before any packet was acknowledged
+     */
+    public long getInitialWindow() {
+        return Math.min( 10L * maxDatagramSize, Math.max( 14720L, 2L * maxDatagramSize ) );
+    }
+
+    /**
+     * @return the smallest congestion window, which is 2 datagrams (QUIC Spec-Recovery/Section 7.2)
+     */
+    public long getMinimumWindow() {
+        return 2L * maxDatagramSize;
+    }
+
+    @Override
+    public void onPacketSent( PacketNumberSpace space, long packetNumber, long sentTime, int bytes ) {
+        bytesInFlight += bytes;
+    }
+
+    @Override
+    public void onPacketDiscarded( int bytes ) {
+        removeFromFlight( bytes );
+    }
+
+    protected void removeFromFlight( int bytes ) {
+        bytesInFlight = Math.max( 0, bytesInFlight - bytes );
+    }
+
+    /**
+     * "Using a value for N that is small, but at least 1 (for example, 1.25) ensures that variations in
+     * round-trip time do not result in under-utilization of the congestion window." QUIC Spec-Recovery/Section 7.7
+     *
+     * @return 5/4 of the congestion window per smoothed round-trip time, in bytes per second
+     */
+    protected long getWindowPacingRate() {
+        long smoothedRtt = Math.max( 1, rttEstimator.getSmoothedRtt() );
+        return (long)( congestionWindow * 1.25 * 1e9 / smoothedRtt );
+    }
+}
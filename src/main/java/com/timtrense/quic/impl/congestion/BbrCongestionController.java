@@ -0,0 +1,367 @@
+package com.timtrense.quic.impl.congestion;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+import lombok.NonNull;
+
+import com.timtrense.quic.PacketNumberSpace;
+import com.timtrense.quic.impl.recovery.RttEstimator;
+
+/**
+ * A model-based congestion controller in the style of BBRv2.
+ * <p>
+ * Instead of reacting to every loss, it estimates the bottleneck bandwidth (the maximum delivery rate of the
+ * last {@link #BANDWIDTH_FILTER_ROUNDS} round trips) and the minimum round-trip time, paces at a multiple of that
+ * bandwidth and limits the bytes in flight to a multiple of their product. This keeps the bottleneck queue short
+ * on deep buffers and does not collapse on random loss. The model runs through the phases of {@link Mode}.
+ * <p>
+ * Like BBRv2, a round trip with more than {@link #LOSS_THRESHOLD} of its delivered bytes lost (or ECN-CE marked)
+ * caps the bytes in flight at {@link #BETA} of the bytes in flight, and that cap is probed upwards again.
+ * This is a compact variant, that does not implement app-limited detection, the ECN alpha and the separate
+ * short-term bounds of the full BBRv2 model.
+ *
+ * @author Tim Trense
+ * @see <a href="https://tools.ietf.org/html/draft-cardwell-iccrg-bbr-congestion-control-00">BBR Congestion Control</a>
+ */
+public class BbrCongestionController extends BaseCongestionController {
+
+    /**
+     * the phases of the model
+     */
+    public enum Mode {
+        /**
+         * grow the sending rate exponentially until the bandwidth stops growing
+         */
+        STARTUP,
+        /**
+         * drain the queue created during startup
+         */
+        DRAIN,
+        /**
+         * cycle the sending rate around the estimated bandwidth to probe for more
+         */
+        PROBE_BW,
+        /**
+         * shortly reduce the bytes in flight to re-measure the minimum round-trip time
+         */
+        PROBE_RTT
+    }
+
+    public static final double STARTUP_GAIN = 2.77;
+    public static final double CWND_GAIN = 2.0;
+    /**
+     * the pacing gains of the phases of {@link Mode#PROBE_BW}, each lasting one minimum round-trip time
+     */
+    private static final double[] PROBE_BW_GAINS = { 1.25, 0.75, 1, 1, 1, 1, 1, 1 };
+    public static final int BANDWIDTH_FILTER_ROUNDS = 10;
+    /**
+     * the bandwidth must grow by this factor per round trip in startup, otherwise the pipe is considered full
+     */
+    private static final double FULL_BANDWIDTH_GROWTH = 1.25;
+    private static final int FULL_BANDWIDTH_ROUNDS = 3;
+    public static final long PROBE_RTT_INTERVAL = TimeUnit.SECONDS.toNanos( 5 );
+    public static final long PROBE_RTT_DURATION = TimeUnit.MILLISECONDS.toNanos( 200 );
+    public static final double LOSS_THRESHOLD = 0.02;
+    /**
+     * the minimum number of datagrams lost in a round trip to consider its loss rate,
+     * so that random loss of single datagrams does not bound the bytes in flight
+     */
+    private static final int MIN_LOSS_EVENTS = 3;
+    public static final double BETA = 0.7;
+    /**
+     * the number of sent packets whose delivery state is kept to take bandwidth samples, a power of 2
+     */
+    private static final int SAMPLE_SLOTS = 1024;
+    private static final int PACKET_NUMBER_SPACES = PacketNumberSpace.values().length;
+
+    @Getter
+    private Mode mode = Mode.STARTUP;
+    private double pacingGain = STARTUP_GAIN;
+    private double cwndGain = CWND_GAIN;
+
+    /**
+     * the delivery state at the time each packet was sent, indexed by {@link #getSampleKey(PacketNumberSpace, long)}
+     */
+    private final long[] sampleKeys = new long[SAMPLE_SLOTS];
+    private final long[] sampleDelivered = new long[SAMPLE_SLOTS];
+    private final long[] sampleDeliveredTime = new long[SAMPLE_SLOTS];
+    /**
+     * The total number of acknowledged bytes
+     */
+    @Getter
+    private long delivered;
+    /**
+     * the time of the last acknowledgement or of the first send after idle
+     */
+    private long deliveredTime;
+
+    /**
+     * The number of round trips since the start
+     */
+    @Getter
+    private long roundCount;
+    private long nextRoundDelivered;
+    private long roundStartDelivered;
+    private long lostInRound;
+    /**
+     * the maximum delivery rate of each of the last round trips
+     */
+    private final long[] bandwidthFilter = new long[BANDWIDTH_FILTER_ROUNDS];
+    /**
+     * The estimated bottleneck bandwidth in bytes per second or 0 if not yet sampled
+     */
+    @Getter
+    private long maxBandwidth;
+    /**
+     * The minimum round-trip time or {@link Long#MAX_VALUE} if not yet sampled
+     */
+    @Getter
+    private long minRtt = Long.MAX_VALUE;
+    private long minRttStamp;
+
+    private long fullBandwidth;
+    private int fullBandwidthCount;
+    private boolean filledPipe;
+
+    private int cycleIndex;
+    private long cycleStamp;
+
+    private boolean probeRttDoneStampSet;
+    private long probeRttDoneStamp;
+    private long priorCongestionWindow;
+
+    /**
+     * The upper bound of the bytes in flight, set by excessive loss
+     */
+    @Getter
+    private long inflightHigh = Long.MAX_VALUE;
+
+    public BbrCongestionController( int maxDatagramSize, @NonNull RttEstimator rttEstimator ) {
+        super( maxDatagramSize, rttEstimator );
+        Arrays.fill( sampleKeys, -1 );
+    }
+
+    /**
+     * @return 4 datagrams, enough to keep the ACK clock running
+     */
+    @Override
+    public long getMinimumWindow() {
+        return 4L * maxDatagramSize;
+    }
+
+    /**
+     * @param gain the multiple of the bandwidth-delay product
+     * @return the bandwidth-delay product times gain or the initial window if no model is established
+     */
+    private long getBdp( double gain ) {
+        if ( maxBandwidth == 0 || minRtt == Long.MAX_VALUE ) {
+            return getInitialWindow();
+        }
+        return (long)( gain * maxBandwidth * minRtt / 1e9 );
+    }
+
+    @Override
+    public void onPacketSent( PacketNumberSpace space, long packetNumber, long sentTime, int bytes ) {
+        if ( bytesInFlight == 0 ) {
+            // do not count idle time into the next delivery rate sample
+            deliveredTime = sentTime;
+        }
+        super.onPacketSent( space, packetNumber, sentTime, bytes );
+        long key = getSampleKey( space, packetNumber );
+        int slot = (int)( key & ( SAMPLE_SLOTS - 1 ) );
+        sampleKeys[slot] = key;
+        sampleDelivered[slot] = delivered;
+        sampleDeliveredTime[slot] = deliveredTime;
+    }
+
+    @Override
+    public void onPacketAcked( PacketNumberSpace space, long packetNumber, long sentTime, int bytes, long now ) {
+        removeFromFlight( bytes );
+        delivered += bytes;
+        deliveredTime = now;
+        updateMinRtt( now - sentTime, now );
+        long key = getSampleKey( space, packetNumber );
+        int slot = (int)( key & ( SAMPLE_SLOTS - 1 ) );
+        if ( sampleKeys[slot] == key ) {
+            sampleKeys[slot] = -1;
+            long packetDelivered = sampleDelivered[slot];
+            if ( packetDelivered >= nextRoundDelivered ) {
+                nextRoundDelivered = delivered;
+                onRoundEnd();
+            }
+            long interval = now - sampleDeliveredTime[slot];
+            // shorter intervals than the minimum RTT are compressed by ACK aggregation, so they overestimate
+            if ( interval > 0 && interval >= minRtt ) {
+                long rate = (long)( ( delivered - packetDelivered ) * 1e9 / interval );
+                int filterSlot = (int)( roundCount % BANDWIDTH_FILTER_ROUNDS );
+                bandwidthFilter[filterSlot] = Math.max( bandwidthFilter[filterSlot], rate );
+                maxBandwidth = Math.max( maxBandwidth, rate );
+            }
+        }
+        updateMode( now );
+        updateCongestionWindow( bytes );
+    }
+
+    /**
+     * Packet numbers start at 0 in every space, so during the handshake the same packet number is in flight in
+     * multiple spaces. Consecutive packet numbers of one space still map to distinct slots, because the number of
+     * spaces is odd while the number of slots is a power of 2.
+     *
+     * @param space        the space of the packet
+     * @param packetNumber the number of the packet
+     * @return a key unique to that packet within the connection
+     */
+    private static long getSampleKey( PacketNumberSpace space, long packetNumber ) {
+        return packetNumber * PACKET_NUMBER_SPACES + space.ordinal();
+    }
+
+    private void updateMinRtt( long rtt, long now ) {
+        boolean expired = minRtt != Long.MAX_VALUE && now - minRttStamp > PROBE_RTT_INTERVAL;
+        if ( rtt >= 0 && ( rtt < minRtt || expired ) ) {
+            minRtt = rtt;
+            minRttStamp = now;
+        }
+        if ( expired && mode != Mode.PROBE_RTT ) {
+            mode = Mode.PROBE_RTT;
+            pacingGain = 1;
+            cwndGain = 1;
+            priorCongestionWindow = congestionWindow;
+            probeRttDoneStampSet = false;
+        }
+    }
+
+    private void onRoundEnd() {
+        long deliveredInRound = delivered - roundStartDelivered;
+        if ( lostInRound > LOSS_THRESHOLD * deliveredInRound
+                && lostInRound >= (long)MIN_LOSS_EVENTS * maxDatagramSize ) {
+            inflightHigh = Math.max( (long)( Math.max( bytesInFlight, congestionWindow ) * BETA ),
+                    getMinimumWindow() );
+            if ( mode == Mode.STARTUP ) {
+                filledPipe = true;
+            }
+        }
+        else if ( mode == Mode.PROBE_BW && inflightHigh != Long.MAX_VALUE ) {
+            // a round trip without excessive loss raises the bound again
+            inflightHigh += Math.max( maxDatagramSize, inflightHigh >> 2 );
+            if ( inflightHigh > 2 * getBdp( CWND_GAIN ) ) {
+                // far beyond the model, so the bound no longer applies
+                inflightHigh = Long.MAX_VALUE;
+            }
+        }
+        if ( mode == Mode.STARTUP && !filledPipe ) {
+            if ( maxBandwidth >= fullBandwidth * FULL_BANDWIDTH_GROWTH ) {
+                fullBandwidth = maxBandwidth;
+                fullBandwidthCount = 0;
+            }
+            else if ( ++fullBandwidthCount >= FULL_BANDWIDTH_ROUNDS ) {
+                filledPipe = true;
+            }
+        }
+        roundCount++;
+        roundStartDelivered = delivered;
+        lostInRound = 0;
+        // the filter slot of the new round replaces the oldest round
+        bandwidthFilter[(int)( roundCount % BANDWIDTH_FILTER_ROUNDS )] = 0;
+        long max = 0;
+        for ( long bandwidth : bandwidthFilter ) {
+            max = Math.max( max, bandwidth );
+        }
+        maxBandwidth = max;
+    }
+
+    private void updateMode( long now ) {
+        switch( mode ) {
+            case STARTUP:
+                if ( filledPipe ) {
+                    mode = Mode.DRAIN;
+                    pacingGain = 1 / STARTUP_GAIN;
+                    cwndGain = CWND_GAIN;
+                }
+                break;
+            case DRAIN:
+                if ( bytesInFlight <= getBdp( 1 ) ) {
+                    enterProbeBandwidth( now );
+                }
+                break;
+            case PROBE_BW:
+                if ( now - cycleStamp > minRtt ) {
+                    cycleIndex = ( cycleIndex + 1 ) % PROBE_BW_GAINS.length;
+                    cycleStamp = now;
+                    pacingGain = PROBE_BW_GAINS[cycleIndex];
+                }
+                break;
+            case PROBE_RTT:
+                if ( !probeRttDoneStampSet && bytesInFlight <= getMinimumWindow() ) {
+                    probeRttDoneStampSet = true;
+                    probeRttDoneStamp = now + PROBE_RTT_DURATION;
+                }
+                else if ( probeRttDoneStampSet && now - probeRttDoneStamp >= 0 ) {
+                    minRttStamp = now;
+                    congestionWindow = Math.max( congestionWindow, priorCongestionWindow );
+                    if ( filledPipe ) {
+                        enterProbeBandwidth( now );
+                    }
+                    else {
+                        mode = Mode.STARTUP;
+                        pacingGain = STARTUP_GAIN;
+                        cwndGain = CWND_GAIN;
+                    }
+                }
+                break;
+        }
+    }
+
+    private void enterProbeBandwidth( long now ) {
+        mode = Mode.PROBE_BW;
+        cwndGain = CWND_GAIN;
+        // start at a cruising phase, not probing up right after draining
+        cycleIndex = 2;
+        cycleStamp = now;
+        pacingGain = PROBE_BW_GAINS[cycleIndex];
+    }
+
+    private void updateCongestionWindow( int ackedBytes ) {
+        if ( mode == Mode.PROBE_RTT ) {
+            congestionWindow = getMinimumWindow();
+            return;
+        }
+        // allow some headroom for delayed and aggregated acknowledgements
+        long target = getBdp( cwndGain ) + 3L * maxDatagramSize;
+        if ( filledPipe ) {
+            congestionWindow = Math.min( congestionWindow + ackedBytes, target );
+        }
+        else if ( congestionWindow < target || delivered < getInitialWindow() ) {
+            congestionWindow += ackedBytes;
+        }
+        congestionWindow = Math.max( Math.min( congestionWindow, inflightHigh ), getMinimumWindow() );
+    }
+
+    @Override
+    public void onPacketLost( PacketNumberSpace space, long packetNumber, long sentTime, int bytes, long now ) {
+        removeFromFlight( bytes );
+        lostInRound += bytes;
+    }
+
+    @Override
+    public void onEcnCongestionExperienced( long sentTime, long now ) {
+        // without per-packet marks, a CE signal counts like one lost datagram
+        lostInRound += maxDatagramSize;
+    }
+
+    @Override
+    public void onPersistentCongestion( long now ) {
+        congestionWindow = getMinimumWindow();
+        inflightHigh = Math.max( inflightHigh == Long.MAX_VALUE ? 0 : (long)( inflightHigh * BETA ),
+                getMinimumWindow() );
+    }
+
+    @Override
+    public long getPacingRate() {
+        if ( maxBandwidth == 0 ) {
+            long smoothedRtt = Math.max( 1, rttEstimator.getSmoothedRtt() );
+            return (long)( STARTUP_GAIN * congestionWindow * 1e9 / smoothedRtt );
+        }
+        return (long)( pacingGain * maxBandwidth );
+    }
+}
@@ -0,0 +1,82 @@
+package com.timtrense.quic.impl.congestion;
+
+import java.util.List;
+import lombok.Getter;
+import lombok.NonNull;
+
+import com.timtrense.quic.Frame;
+import com.timtrense.quic.PacketNumberSpace;
+import com.timtrense.quic.impl.recovery.LossDetectionListener;
+
+/**
+ * Feeds the outcome of a {@link com.timtrense.quic.impl.recovery.LossDetector} into a {@link CongestionController}
+ * and passes every event on to another listener, eg. the one retransmitting lost frames.
+ * Packets that are not in flight are not reported to the controller.
+ *
+ * @author Tim Trense
+ */
+public class CongestionControlListener implements LossDetectionListener {
+
+    /**
+     * The controller receiving the in-flight packets
+     */
+    @Getter
+    private final @NonNull CongestionController controller;
+    private final @NonNull LossDetectionListener delegate;
+
+    /**
+     * @param controller the controller receiving the in-flight packets
+     * @param delegate   the listener receiving all events afterwards
+     */
+    public CongestionControlListener(
+            @NonNull CongestionController controller,
+            @NonNull LossDetectionListener delegate
+    ) {
+        this.controller = controller;
+        this.delegate = delegate;
+    }
+
+    /**
+     * @param controller the controller receiving the in-flight packets
+     */
+    public CongestionControlListener( @NonNull CongestionController controller ) {
+        this( controller, new LossDetectionListener() {} );
+    }
+
+    @Override
+    public void onPacketAcked( PacketNumberSpace space, long packetNumber, long sentTime, int size,
+                               boolean inFlight, List<Frame> frames, long now ) {
+        if ( inFlight ) {
+            controller.onPacketAcked( space, packetNumber, sentTime, size, now );
+        }
+        delegate.onPacketAcked( space, packetNumber, sentTime, size, inFlight, frames, now );
+    }
+
+    @Override
+    public void onPacketLost( PacketNumberSpace space, long packetNumber, long sentTime, int size,
+                              boolean inFlight, List<Frame> frames, long now ) {
+        if ( inFlight ) {
+            controller.onPacketLost( space, packetNumber, sentTime, size, now );
+        }
+        delegate.onPacketLost( space, packetNumber, sentTime, size, inFlight, frames, now );
+    }
+
+    @Override
+    public void onPacketDiscarded( PacketNumberSpace space, int size, boolean inFlight ) {
+        if ( inFlight ) {
+            controller.onPacketDiscarded( size );
+        }
+        delegate.onPacketDiscarded( space, size, inFlight );
+    }
+
+    @Override
+    public void onPersistentCongestion( PacketNumberSpace space, long now ) {
+        controller.onPersistentCongestion( now );
+        delegate.onPersistentCongestion( space, now );
+    }
+
+    @Override
+    public void onProbeTimeout( PacketNumberSpace space, int ptoCount ) {
+        delegate.onProbeTimeout( space, ptoCount );
+    }
+}
@@ -0,0 +1,90 @@
+package com.timtrense.quic.impl.congestion;
+
+import com.timtrense.quic.PacketNumberSpace;
+
+/**
+ * Limits the number of bytes a connection has in flight and the rate at which it sends them.
+ * <p>
+ * The controller is informed about every in-flight packet when it is sent and when it is acknowledged, declared
+ * lost or discarded, as reported by the {@link com.timtrense.quic.impl.recovery.LossDetector}. Packets that are
+ * not in flight (eg. carrying only ACK frames) must not be reported. All times are given in nanoseconds.
+ * Instances are not thread-safe.
+ *
+ * @author Tim Trense
+ * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-recovery-32#section-7">QUIC Spec-Recovery/Section 7</a>
+ */
+public interface CongestionController {
+
+    /**
+     * @param space        the space of the packet, as packet numbers are only unique within one space
+     * @param packetNumber the number of the sent packet
+     * @param sentTime     the time at which the packet was sent
+     * @param bytes        the size of the packet
+     */
+    void onPacketSent( PacketNumberSpace space, long packetNumber, long sentTime, int bytes );
+
+    /**
+     * @param space        the space of the packet
+     * @param packetNumber the number of the acknowledged packet
+     * @param sentTime     the time at which the packet was sent
+     * @param bytes        the size of the packet
+     * @param now          the time at which the acknowledgement was received
+     */
+    void onPacketAcked( PacketNumberSpace space, long packetNumber, long sentTime, int bytes, long now );
+
+    /**
+     * @param space        the space of the packet
+     * @param packetNumber the number of the lost packet
+     * @param sentTime     the time at which the packet was sent
+     * @param bytes        the size of the packet
+     * @param now          the time at which the packet was declared lost
+     */
+    void onPacketLost( PacketNumberSpace space, long packetNumber, long sentTime, int bytes, long now );
+
+    /**
+     * invoked when an ACK frame increased the ECN-CE count, signalling congestion without loss
+     *
+     * @param sentTime the time at which the largest packet acknowledged by that ACK frame was sent
+     * @param now      the time at which the ACK frame was received
+     * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-recovery-32#section-7.1">QUIC Spec-Recovery/Section 7.1</a>
+     */
+    void onEcnCongestionExperienced( long sentTime, long now );
+
+    /**
+     * @param now the time at which persistent congestion was detected
+     * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-recovery-32#section-7.6">QUIC Spec-Recovery/Section 7.6</a>
+     */
+    void onPersistentCongestion( long now );
+
+    /**
+     * removes a packet from the bytes in flight without interpreting it as a congestion signal,
+     * eg. because its packet number space was discarded
+     *
+     * @param bytes the size of the packet
+     */
+    void onPacketDiscarded( int bytes );
+
+    /**
+     * @return the maximum number of bytes in flight
+     */
+    long getCongestionWindow();
+
+    /**
+     * @return the number of bytes sent but neither acknowledged, lost nor discarded
+     */
+    long getBytesInFlight();
+
+    /**
+     * @param bytes the size of the packet to send
+     * @return whether the congestion window has room for that packet
+     */
+    default boolean canSend( int bytes ) {
+        return getBytesInFlight() + bytes <= getCongestionWindow();
+    }
+
+    /**
+     * @return the rate at which packets should be paced, in bytes per second
+     * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-recovery-32#section-7.7">QUIC Spec-Recovery/Section 7.7</a>
+     */
+    long getPacingRate();
+}
@@ -0,0 +1,45 @@
+package com.timtrense.quic.impl.congestion;
+
+import lombok.NonNull;
+
+import com.timtrense.quic.impl.recovery.RttEstimator;
+
+/**
+ * The available congestion control algorithms
+ *
+ * @author Tim Trense
+ */
+public enum CongestionControllerType {
+
+    /**
+     * The {@link NewRenoCongestionController congestion control given by the QUIC specification}
+     */
+    NEW_RENO,
+    /**
+     * {@link CubicCongestionController CUBIC}, which scales better on paths with large bandwidth-delay products
+     */
+    CUBIC,
+    /**
+     * The {@link BbrCongestionController model-based congestion control}, which keeps queues short
+     * and tolerates random loss
+     */
+    BBR;
+
+    /**
+     * Creates a new controller of this type, eg. per connection
+     *
+     * @param maxDatagramSize the maximum size of a sent datagram
+     * @param rttEstimator    the round-trip time of the connection, updated by its loss detection
+     * @return a new controller at its initial window
+     */
+    public CongestionController create( int maxDatagramSize, @NonNull RttEstimator rttEstimator ) {
+        switch( this ) {
+            case CUBIC:
+                return new CubicCongestionController( maxDatagramSize, rttEstimator );
+            case BBR:
+                return new BbrCongestionController( maxDatagramSize, rttEstimator );
+            default:
+                return new NewRenoCongestionController( maxDatagramSize, rttEstimator );
+        }
+    }
+}
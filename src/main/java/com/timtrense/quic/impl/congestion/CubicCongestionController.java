@@ -0,0 +1,117 @@
+package com.timtrense.quic.impl.congestion;
+
+import lombok.NonNull;
+
+import com.timtrense.quic.impl.recovery.RttEstimator;
+
+/**
+ * CUBIC congestion control on top of the {@link NewRenoCongestionController slow start and recovery of QUIC}.
+ * <p>
+ * In congestion avoidance, the window follows a cubic function of the time since the last congestion event,
+ * which is concave up to the window at that event and convex beyond. Thus the window recovers fast after a loss
+ * and probes carefully around the previous maximum, independent of the round-trip time. Where standard
+ * congestion avoidance would grow faster (short RTTs), the window follows that estimate instead.
+ *
+ * @author Tim Trense
+ * @see <a href="https://tools.ietf.org/html/rfc8312">RFC 8312</a>
+ */
+public class CubicCongestionController extends NewRenoCongestionController {
+
+    /**
+     * the constant that determines the aggressiveness of the cubic function, in datagrams per second^3
+     */
+    public static final double C = 0.4;
+    /**
+     * the multiplicative window decrease on congestion
+     */
+    public static final double BETA = 0.7;
+    /**
+     * the additive increase of the estimated standard congestion avoidance window,
+     * that gives the same average window as standard congestion avoidance under the same loss rate
+     */
+    private static final double ALPHA = 3 * ( 1 - BETA ) / ( 1 + BETA );
+
+    /**
+     * the window in bytes at the last congestion event
+     */
+    private double windowMax;
+    /**
+     * whether the current congestion avoidance epoch started
+     */
+    private boolean epochStarted;
+    /**
+     * the time at which the current congestion avoidance epoch started
+     */
+    private long epochStart;
+    /**
+     * the time in seconds after {@link #epochStart} at which the cubic function reaches {@link #windowMax}
+     */
+    private double k;
+    /**
+     * the window in bytes that standard congestion avoidance would have reached
+     */
+    private double renoWindowEstimate;
+    /**
+     * the fraction of a byte of window growth that was not yet applied
+     */
+    private double windowRemainder;
+
+    public CubicCongestionController( int maxDatagramSize, @NonNull RttEstimator rttEstimator ) {
+        super( maxDatagramSize, rttEstimator );
+    }
+
+    @Override
+    protected void onCongestionAvoidanceAck( int bytes, long now ) {
+        if ( !epochStarted ) {
+            epochStarted = true;
+            epochStart = now;
+            renoWindowEstimate = congestionWindow;
+            windowRemainder = 0;
+            if ( windowMax <= congestionWindow ) {
+                windowMax = congestionWindow;
+                k = 0;
+            }
+            else {
+                k = Math.cbrt( ( windowMax - congestionWindow ) / maxDatagramSize / C );
+            }
+        }
+        // the window to reach within the next round trip
+        double t = ( now - epochStart + rttEstimator.getSmoothedRtt() ) / 1e9;
+        double target = windowMax + C * Math.pow( t - k, 3 ) * maxDatagramSize;
+        target = Math.max( congestionWindow, Math.min( target, 1.5 * congestionWindow ) );
+
+        renoWindowEstimate += ALPHA * maxDatagramSize * bytes / congestionWindow;
+        double growth;
+        if ( renoWindowEstimate > target ) {
+            growth = renoWindowEstimate - congestionWindow;
+        }
+        else {
+            growth = ( target - congestionWindow ) * bytes / congestionWindow;
+        }
+        windowRemainder += Math.max( 0, growth );
+        long whole = (long)windowRemainder;
+        congestionWindow += whole;
+        windowRemainder -= whole;
+    }
+
+    @Override
+    protected void reduceWindow( long now ) {
+        epochStarted = false;
+        if ( congestionWindow < windowMax ) {
+            // fast convergence: release bandwidth to newer flows
+            windowMax = congestionWindow * ( 1 + BETA ) / 2;
+        }
+        else {
+            windowMax = congestionWindow;
+        }
+        slowStartThreshold = Math.max( (long)( congestionWindow * BETA ), getMinimumWindow() );
+        congestionWindow = slowStartThreshold;
+    }
+
+    @Override
+    public void onPersistentCongestion( long now ) {
+        super.onPersistentCongestion( now );
+        epochStarted = false;
+        windowMax = 0;
+    }
+}
@@ -0,0 +1,126 @@
+package com.timtrense.quic.impl.congestion;
+
+import lombok.Getter;
+import lombok.NonNull;
+
+import com.timtrense.quic.PacketNumberSpace;
+import com.timtrense.quic.impl.recovery.RttEstimator;
+
+/**
+ * The congestion controller given by QUIC Spec-Recovery, which is similar to TCP NewReno: the window grows by
+ * the acknowledged bytes in slow start and by one datagram per window in congestion avoidance, and it is halved
+ * once per recovery period on loss or ECN-CE.
+ *
+ * @author Tim Trense
+ * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-recovery-32#appendix-B">QUIC Spec-Recovery/Appendix B</a>
+ */
+public class NewRenoCongestionController extends BaseCongestionController {
+
+    /**
+     * "Reduction in congestion window when a new loss event is detected." QUIC Spec-Recovery/Appendix B.2
+     */
+    public static final double LOSS_REDUCTION_FACTOR = 0.5;
+
+    /**
+     * The window above which congestion avoidance applies instead of slow start
+     */
+    @Getter
+    protected long slowStartThreshold = Long.MAX_VALUE;
+    /**
+     * whether a recovery period was started
+     */
+    private boolean recovering;
+    /**
+     * the time at which the current recovery period started
+     */
+    private long recoveryStartTime;
+    /**
+     * acknowledged bytes in congestion avoidance not yet accounted for in the window
+     */
+    private long bytesAckedInAvoidance;
+
+    public NewRenoCongestionController( int maxDatagramSize, @NonNull RttEstimator rttEstimator ) {
+        super( maxDatagramSize, rttEstimator );
+    }
+
+    /**
+     * @param sentTime the time at which a packet was sent
+     * @return whether that packet was sent before the current recovery period started
+     */
+    public boolean isInRecovery( long sentTime ) {
+        return recovering && sentTime <= recoveryStartTime;
+    }
+
+    @Override
+    public void onPacketAcked( PacketNumberSpace space, long packetNumber, long sentTime, int bytes, long now ) {
+        removeFromFlight( bytes );
+        if ( isInRecovery( sentTime ) ) {
+            // "Do not increase congestion window in recovery period."
+            return;
+        }
+        if ( congestionWindow < slowStartThreshold ) {
+            congestionWindow += bytes;
+        }
+        else {
+            onCongestionAvoidanceAck( bytes, now );
+        }
+    }
+
+    /**
+     * grows the window by one datagram per acknowledged window
+     *
+     * @param bytes the acknowledged bytes
+     * @param now   the time at which they were acknowledged
+     */
+    protected void onCongestionAvoidanceAck( int bytes, long now ) {
+        bytesAckedInAvoidance += bytes;
+        if ( bytesAckedInAvoidance >= congestionWindow ) {
+            bytesAckedInAvoidance -= congestionWindow;
+            congestionWindow += maxDatagramSize;
+        }
+    }
+
+    @Override
+    public void onPacketLost( PacketNumberSpace space, long packetNumber, long sentTime, int bytes, long now ) {
+        removeFromFlight( bytes );
+        onCongestionEvent( sentTime, now );
+    }
+
+    @Override
+    public void onEcnCongestionExperienced( long sentTime, long now ) {
+        onCongestionEvent( sentTime, now );
+    }
+
+    private void onCongestionEvent( long sentTime, long now ) {
+        // "Start a new congestion event if packet was sent after the start of the previous congestion recovery period."
+        if ( isInRecovery( sentTime ) ) {
+            return;
+        }
+        recovering = true;
+        recoveryStartTime = now;
+        bytesAckedInAvoidance = 0;
+        reduceWindow( now );
+    }
+
+    /**
+     * reduces the window at the start of a recovery period
+     *
+     * @param now the time at which congestion was detected
+     */
+    protected void reduceWindow( long now ) {
+        slowStartThreshold = (long)( congestionWindow * LOSS_REDUCTION_FACTOR );
+        congestionWindow = Math.max( slowStartThreshold, getMinimumWindow() );
+    }
+
+    @Override
+    public void onPersistentCongestion( long now ) {
+        congestionWindow = getMinimumWindow();
+        recovering = false;
+        bytesAckedInAvoidance = 0;
+    }
+
+    @Override
+    public long getPacingRate() {
+        return getWindowPacingRate();
+    }
+}
@@ -0,0 +1,136 @@
+package com.timtrense.quic.impl.congestion;
+
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Spreads the packets of one connection over time at the {@link CongestionController#getPacingRate() pacing rate}
+ * of its congestion controller, instead of sending the whole congestion window in one burst.
+ * <p>
+ * The pacer is a token bucket that refills with the pacing rate. It holds at most {@link #getBurstDatagrams()}
+ * datagrams, but never less than the bytes the rate delivers within one {@link #getGranularity() timer tick},
+ * so that a coarse timer does not cap the rate.
+ *
+ * <pre>
+ * "A sender SHOULD pace sending of all in-flight packets based on input from the congestion controller.
+ * Sending multiple packets into the network without any delay between them creates a packet burst that
+ * might cause short-term congestion and losses. Senders MUST either use pacing or limit such bursts."
+ * </pre>
+ * QUIC Spec-Recovery/Section 7.7
+ *
+ * @author Tim Trense
+ * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-recovery-32#section-7.7">QUIC Spec-Recovery/Section 7.7</a>
+ */
+public class Pacer {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos( 1 );
+
+    /**
+     * The controller providing the pacing rate
+     */
+    @Getter
+    private final @NonNull CongestionController controller;
+    /**
+     * The maximum size of a datagram in bytes
+     */
+    @Getter
+    private final int maxDatagramSize;
+    /**
+     * The number of datagrams that may be sent back-to-back after being idle
+     */
+    @Getter
+    private final int burstDatagrams;
+    /**
+     * The resolution in nanoseconds of the timer that wakes up the sender
+     */
+    @Getter
+    private final long granularity;
+    /**
+     * the bytes that may currently be sent without delay
+     */
+    private long tokens;
+    /**
+     * the time of the last refill of the {@link #tokens}
+     */
+    private long lastUpdate;
+
+    /**
+     * @param controller      the controller providing the pacing rate
+     * @param maxDatagramSize the maximum size of a datagram in bytes
+     * @param burstDatagrams  the number of datagrams that may be sent back-to-back after being idle
+     * @param granularity     the resolution in nanoseconds of the timer that wakes up the sender
+     * @param now             the current time in nanoseconds
+     */
+    public Pacer( @NonNull CongestionController controller, int maxDatagramSize, int burstDatagrams,
+                  long granularity, long now ) {
+        if ( maxDatagramSize <= 0 || burstDatagrams <= 0 || granularity <= 0 ) {
+            throw new IllegalArgumentException( "Cannot create a Pacer with non-positive sizes" );
+        }
+        this.controller = controller;
+        this.maxDatagramSize = maxDatagramSize;
+        this.burstDatagrams = burstDatagrams;
+        this.granularity = granularity;
+        this.tokens = (long)burstDatagrams * maxDatagramSize;
+        this.lastUpdate = now;
+    }
+
+    /**
+     * @return the maximum number of bytes the bucket holds at the current rate
+     */
+    public long getCapacity() {
+        long perTick = getBytesAtRate( controller.getPacingRate(), granularity );
+        return Math.max( (long)burstDatagrams * maxDatagramSize, perTick );
+    }
+
+    /**
+     * @param rate  the rate in bytes per second
+     * @param nanos the duration
+     * @return the bytes sent at the rate within the duration, saturating instead of overflowing
+     */
+    private static long getBytesAtRate( long rate, long nanos ) {
+        if ( rate <= 0 || nanos <= 0 ) {
+            return 0;
+        }
+        return (long)Math.min( Long.MAX_VALUE, (double)rate * nanos / NANOS_PER_SECOND );
+    }
+
+    private void refill( long now ) {
+        if ( now > lastUpdate ) {
+            long refilled = getBytesAtRate( controller.getPacingRate(), now - lastUpdate );
+            long capacity = getCapacity();
+            tokens = refilled >= capacity - tokens ? capacity : tokens + refilled;
+            lastUpdate = now;
+        }
+    }
+
+    /**
+     * @param bytes the size of the next packet
+     * @param now   the current time in nanoseconds
+     * @return the earliest time at which that packet may be sent, which is now or later
+     */
+    public long getNextSendTime( int bytes, long now ) {
+        refill( now );
+        if ( tokens >= bytes ) {
+            return now;
+        }
+        long rate = controller.getPacingRate();
+        if ( rate <= 0 ) {
+            return now + granularity;
+        }
+        long missing = bytes - tokens;
+        return now + ( missing * NANOS_PER_SECOND + rate - 1 ) / rate;
+    }
+
+    /**
+     * takes the bytes of a sent packet from the bucket. The bucket may go into debt,
+     * which delays the following packets.
+     *
+     * @param bytes the size of the sent packet
+     * @param now   the current time in nanoseconds
+     */
+    public void onPacketSent( int bytes, long now ) {
+        refill( now );
+        tokens -= bytes;
+    }
+}
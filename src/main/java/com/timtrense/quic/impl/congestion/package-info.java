@@ -0,0 +1,6 @@
+/**
+ * This package contains the congestion controllers that limit and pace the data a connection sends
+ *
+ * @author Tim Trense
+ */
+package com.timtrense.quic.impl.congestion;
@@ -4,6 +4,8 @@
 import lombok.Getter;
 import lombok.NonNull;
 
+import com.timtrense.quic.ConnectionId;
+import com.timtrense.quic.EncryptionLevel;
 import com.timtrense.quic.impl.ReceivedDatagram;
 
 /**
@@ -28,16 +30,38 @@ public class OutOfOrderProtectedPacketException extends QuicParsingException {
      */
     @Getter
     private final int packetIndex;
+    /**
+     * the destination connection id of the packet or null if not known
+     */
+    @Getter
+    private final transient ConnectionId connectionId;
+    /**
+     * the level of the missing keys or null if not known
+     */
+    @Getter
+    private final EncryptionLevel encryptionLevel;
 
     public OutOfOrderProtectedPacketException(
             ReceivedDatagram datagram,
             @NonNull ByteBuffer payload,
             int packetIndex
+    ) {
+        this( datagram, payload, packetIndex, null, null );
+    }
+
+    public OutOfOrderProtectedPacketException(
+            ReceivedDatagram datagram,
+            @NonNull ByteBuffer payload,
+            int packetIndex,
+            ConnectionId connectionId,
+            EncryptionLevel encryptionLevel
     ) {
         super( "The packet was received out-of-order and may be processed later: Packet number " + packetIndex );
         this.datagram = datagram;
         this.payload = payload;
         this.packetIndex = packetIndex;
+        this.connectionId = connectionId;
+        this.encryptionLevel = encryptionLevel;
     }
 
     public OutOfOrderProtectedPacketException(
@@ -50,5 +74,7 @@ public OutOfOrderProtectedPacketException(
         this.datagram = datagram;
         this.payload = payload;
         this.packetIndex = packetIndex;
+        this.connectionId = null;
+        this.encryptionLevel = null;
     }
 }
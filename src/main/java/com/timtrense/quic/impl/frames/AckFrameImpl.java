@@ -1,16 +1,16 @@
 package com.timtrense.quic.impl.frames;
 
-import java.util.LinkedList;
 import java.util.List;
 import lombok.Data;
 import lombok.NonNull;
 
-import com.timtrense.quic.AckRange;
 import com.timtrense.quic.EcnCount;
 import com.timtrense.quic.Frame;
 import com.timtrense.quic.FrameGeneralType;
 import com.timtrense.quic.FrameType;
 import com.timtrense.quic.VariableLengthInteger;
+import com.timtrense.quic.impl.base.AckRangeSet;
+import com.timtrense.quic.impl.base.VariableLengthIntegerEncoder;
 
 /**
  * acknowledgement frame.
@@ -58,24 +58,6 @@ public AckFrameImpl( @NonNull FrameType frameType ) {
         }
     }
 
-    /**
-     * A variable-length integer representing the
-     * largest packet number the peer is acknowledging; this is usually
-     * the largest packet number that the peer has received prior to
-     * generating the ACK frame.  Unlike the packet number in the QUIC
-     * long or short header, the value in an ACK frame is not truncated.
-     */
-    private VariableLengthInteger largestAcknowledged;
-    /**
-     * A variable-length integer indicating the number of
-     * contiguous packets preceding the Largest Acknowledged that are
-     * being acknowledged.  The First ACK Range is encoded as an ACK
-     * Range; see Section 19.3.1 starting from the Largest Acknowledged.
-     * That is, the smallest packet acknowledged in the range is
-     * determined by subtracting the First ACK Range value from the
-     * Largest Acknowledged.
-     */
-    private VariableLengthInteger firstAcknowledgedRange;
     /**
      * A variable-length integer encoding the acknowledgement
      * delay in microseconds; see Section 13.2.5.  It is decoded by
@@ -86,16 +68,41 @@ public AckFrameImpl( @NonNull FrameType frameType ) {
      * values within the same number of bytes, at the cost of lower
      * resolution
      */
-    private VariableLengthInteger delay;
+    private long delay;
 
     /**
-     * Contains additional ranges of packets that are
+     * The acknowledged packet numbers. They determine the Largest Acknowledged, the First ACK Range
+     * and the additional ranges of packets that are
      * alternately not acknowledged (Gap) and acknowledged (ACK Range);
      * see Section 19.3.1.
      */
-    private final List<AckRange> ranges = new LinkedList<>();
+    private final AckRangeSet ranges = new AckRangeSet();
     private List<EcnCount> ecnCounts = null;
 
+    /**
+     * A variable-length integer representing the
+     * largest packet number the peer is acknowledging; this is usually
+     * the largest packet number that the peer has received prior to
+     * generating the ACK frame.  Unlike the packet number in the QUIC
+     * long or short header, the value in an ACK frame is not truncated.
+     *
+     * @return the largest acknowledged packet number
+     */
+    public long getLargestAcknowledged() {
+        return ranges.getLargestAcknowledged();
+    }
+
+    /**
+     * A variable-length integer indicating the number of
+     * contiguous packets preceding the Largest Acknowledged that are
+     * being acknowledged.
+     *
+     * @return the First ACK Range
+     */
+    public long getFirstAcknowledgedRange() {
+        return ranges.getFirstAckRange();
+    }
+
     /**
      * ACK Range Count:  A variable-length integer specifying the number of
      * Gap and ACK Range fields in the frame.
@@ -103,7 +110,7 @@ public AckFrameImpl( @NonNull FrameType frameType ) {
      * @return number of Gap and ACK Range fields in the frame (not including the first one)
      */
     public VariableLengthInteger getRangeCount() {
-        return new VariableLengthInteger( ranges.size() );
+        return VariableLengthInteger.valueOf( getLongRangeCount() );
     }
 
     /**
@@ -113,7 +120,7 @@ public VariableLengthInteger getRangeCount() {
      * @return number of Gap and ACK Range fields in the frame (not including the first one)
      */
     public long getLongRangeCount() {
-        return ranges.size();
+        return Math.max( 0, ranges.size() - 1 );
     }
 
     /**
@@ -127,9 +134,9 @@ public boolean isEcnBitSet() {
 
     @Override
     public boolean isValid() {
-        return largestAcknowledged != null
-                && firstAcknowledgedRange != null
-                && delay != null
+        return !ranges.isEmpty()
+                && VariableLengthIntegerEncoder.isEncodable( ranges.getLargestAcknowledged() )
+                && VariableLengthIntegerEncoder.isEncodable( delay )
                 &&
                 (
                         isEcnBitSet()
@@ -142,14 +149,8 @@ public boolean isValid() {
     @Override
     public long getFrameLength() {
         long sum = type.getValue().getEncodedLengthInBytes();
-        sum += largestAcknowledged.getEncodedLengthInBytes();
-        sum += delay.getEncodedLengthInBytes();
-        sum += getRangeCount().getEncodedLengthInBytes();
-        sum += firstAcknowledgedRange.getEncodedLengthInBytes();
-        for ( AckRange r : ranges ) {
-            sum += r.getGap().getEncodedLengthInBytes();
-            sum += r.getLength().getEncodedLengthInBytes();
-        }
+        sum += VariableLengthIntegerEncoder.getLengthInBytes( delay );
+        sum += ranges.getEncodedLength();
         if ( ecnCounts != null ) {
             for ( EcnCount e : ecnCounts ) {
                 sum += e.getEct0Count().getEncodedLengthInBytes();
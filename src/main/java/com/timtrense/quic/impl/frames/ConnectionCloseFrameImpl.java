@@ -7,7 +7,7 @@
 import com.timtrense.quic.Frame;
 import com.timtrense.quic.FrameGeneralType;
 import com.timtrense.quic.FrameType;
-import com.timtrense.quic.VariableLengthInteger;
+import com.timtrense.quic.impl.base.VariableLengthIntegerEncoder;
 
 /**
  * connection close frame.
@@ -54,7 +54,7 @@ public ConnectionCloseFrameImpl( @NonNull FrameType frameType ) {
      * CONNECTION_CLOSE frame of type 0x1d uses codes from the
      * application protocol error code space; see Section 20.2.
      */
-    private VariableLengthInteger errorCode;
+    private long errorCode;
 
     /**
      * A variable-length integer encoding the type of frame
@@ -63,7 +63,7 @@ public ConnectionCloseFrameImpl( @NonNull FrameType frameType ) {
      * application-specific variant of CONNECTION_CLOSE (type 0x1d) does
      * not include this field.
      */
-    private VariableLengthInteger frameType;
+    private long frameType;
 
     /**
      * A variable-length integer specifying the
@@ -71,7 +71,7 @@ public ConnectionCloseFrameImpl( @NonNull FrameType frameType ) {
      * frame cannot be split between packets, any limits on packet size
      * will also limit the space available for a reason phrase.
      */
-    private VariableLengthInteger reasonPhraseLength;
+    private long reasonPhraseLength;
 
     /**
      * A human-readable explanation for why the connection
@@ -82,13 +82,14 @@ public ConnectionCloseFrameImpl( @NonNull FrameType frameType ) {
     private byte[] reasonPhrase;
 
     /**
-     * checks whether the {@link FrameType} least significant bit is set, indicating that this frame MUST hold a
-     * frameType
+     * checks whether this frame MUST hold a frameType, which is the case for type 0x1c only, that is when the
+     * {@link FrameType} least significant bit is NOT set. The application-specific variant (type 0x1d) does not
+     * include that field.
      *
-     * @return true if the frame type bit is set
+     * @return true if the frame holds a frameType
      */
     public boolean hasFrameTypeBitSet() {
-        return ( type.getLongValue() & 0x01 ) == 0x01;
+        return ( type.getLongValue() & 0x01 ) == 0x00;
     }
 
     /**
@@ -109,23 +110,23 @@ public void setReasonPhrase( @NonNull String reasonPhrase ) {
 
     @Override
     public boolean isValid() {
-        return errorCode != null
-                && ( hasFrameTypeBitSet() == ( frameType != null ) )
-                && reasonPhraseLength != null
+        return VariableLengthIntegerEncoder.isEncodable( errorCode )
+                && ( !hasFrameTypeBitSet() || VariableLengthIntegerEncoder.isEncodable( frameType ) )
+                && VariableLengthIntegerEncoder.isEncodable( reasonPhraseLength )
                 && reasonPhrase != null
-                && reasonPhraseLength.longValue() == reasonPhrase.length
+                && reasonPhraseLength == reasonPhrase.length
                 ;
     }
 
     @Override
     public long getFrameLength() {
         long sum = type.getValue().getEncodedLengthInBytes();
-        sum += errorCode.getEncodedLengthInBytes();
-        if ( frameType != null ) {
-            sum += frameType.getEncodedLengthInBytes();
+        sum += VariableLengthIntegerEncoder.getLengthInBytes( errorCode );
+        if ( hasFrameTypeBitSet() ) {
+            sum += VariableLengthIntegerEncoder.getLengthInBytes( frameType );
         }
-        sum += reasonPhraseLength.getEncodedLengthInBytes();
-        sum += reasonPhraseLength.getValue();
+        sum += VariableLengthIntegerEncoder.getLengthInBytes( reasonPhraseLength );
+        sum += reasonPhraseLength;
         return sum;
     }
 }
@@ -1,12 +1,13 @@
 package com.timtrense.quic.impl.frames;
 
+import java.nio.ByteBuffer;
 import lombok.Data;
 import lombok.NonNull;
 
 import com.timtrense.quic.Frame;
 import com.timtrense.quic.FrameGeneralType;
 import com.timtrense.quic.FrameType;
-import com.timtrense.quic.VariableLengthInteger;
+import com.timtrense.quic.impl.base.VariableLengthIntegerEncoder;
 
 /**
  * crypto frame.
@@ -47,16 +48,18 @@ public class CryptoFrameImpl implements Frame {
      * A variable-length integer specifying the byte offset in the
      * stream for the data in this CRYPTO frame
      */
-    private VariableLengthInteger offset;
+    private long offset;
     /**
      * A variable-length integer specifying the length of the
      * Crypto Data field in this CRYPTO frame
      */
-    private VariableLengthInteger length;
+    private long length;
     /**
-     * The cryptographic message data
+     * The cryptographic message data.
+     * When parsed by a {@link com.timtrense.quic.impl.FrameCollector}, this is a read-only copy, so that it
+     * outlives the received datagram.
      */
-    private byte[] cryptoData;
+    private ByteBuffer cryptoData;
 
     public CryptoFrameImpl( @NonNull FrameType frameType ) {
         this.type = frameType;
@@ -70,20 +73,20 @@ public CryptoFrameImpl( @NonNull FrameType frameType ) {
 
     @Override
     public boolean isValid() {
-        return offset != null
-                && length != null
+        return VariableLengthIntegerEncoder.isEncodable( offset )
+                && VariableLengthIntegerEncoder.isEncodable( length )
                 && cryptoData != null
-                && cryptoData.length > 0
-                && length.longValue() == cryptoData.length
+                && cryptoData.remaining() > 0
+                && length == cryptoData.remaining()
                 ;
     }
 
     @Override
     public long getFrameLength() {
         long sum = type.getValue().getEncodedLengthInBytes();
-        sum += offset.getEncodedLengthInBytes();
-        sum += length.getEncodedLengthInBytes();
-        sum += length.getValue();
+        sum += VariableLengthIntegerEncoder.getLengthInBytes( offset );
+        sum += VariableLengthIntegerEncoder.getLengthInBytes( length );
+        sum += length;
         return sum;
     }
 }
@@ -6,7 +6,7 @@
 import com.timtrense.quic.Frame;
 import com.timtrense.quic.FrameGeneralType;
 import com.timtrense.quic.FrameType;
-import com.timtrense.quic.VariableLengthInteger;
+import com.timtrense.quic.impl.base.VariableLengthIntegerEncoder;
 
 /**
  * data blocked frame.
@@ -39,17 +39,17 @@ public DataBlockedFrameImpl( @NonNull FrameType frameType ) {
      * A variable-length integer indicating the connection-
      * level limit at which blocking occurred.
      */
-    private VariableLengthInteger maximumData;
+    private long maximumData;
 
     @Override
     public boolean isValid() {
-        return maximumData != null;
+        return VariableLengthIntegerEncoder.isEncodable( maximumData );
     }
 
     @Override
     public long getFrameLength() {
         long sum = type.getValue().getEncodedLengthInBytes();
-        sum += maximumData.getEncodedLengthInBytes();
+        sum += VariableLengthIntegerEncoder.getLengthInBytes( maximumData );
         return sum;
     }
 }
@@ -0,0 +1,84 @@
+package com.timtrense.quic.impl.frames;
+
+import java.nio.ByteBuffer;
+import lombok.Data;
+import lombok.NonNull;
+
+import com.timtrense.quic.Frame;
+import com.timtrense.quic.FrameGeneralType;
+import com.timtrense.quic.FrameType;
+import com.timtrense.quic.impl.base.VariableLengthIntegerEncoder;
+
+/**
+ * datagram frame.
+ * existing known frames are : {@link FrameType#DATAGRAM} and {@link FrameType#DATAGRAM_LEN}.
+ *
+ * DATAGRAM frames are used to transmit application data in an
+ * unreliable manner.  The Type field in the DATAGRAM frame takes the
+ * form 0b0011000X (or the values 0x30 and 0x31).  The least significant
+ * bit of the Type field in the DATAGRAM frame is the LEN bit (0x01),
+ * which indicates whether there is a Length field present: if this bit
+ * is set to 0, the Length field is absent and the Datagram Data field
+ * extends to the end of the packet; if this bit is set to 1, the Length
+ * field is present.
+ *
+ * DATAGRAM frames are not retransmitted upon loss detection and are not
+ * subject to flow control.
+ *
+ * @author Tim Trense
+ * @see <a href="https://tools.ietf.org/html/rfc9221#section-4">RFC 9221/Section 4</a>
+ */
+@Data
+public class DatagramFrameImpl implements Frame {
+
+    private final FrameType type;
+
+    public DatagramFrameImpl( @NonNull FrameType frameType ) {
+        this.type = frameType;
+        if ( type.getGeneralType() != FrameGeneralType.DATAGRAM ) {
+            throw new IllegalArgumentException(
+                    "Cannot build a DatagramFrame with FrameGeneralType other than "
+                            + FrameGeneralType.DATAGRAM.name()
+            );
+        }
+    }
+
+    /**
+     * A variable-length integer specifying the length of the
+     * Datagram Data field in bytes.  This field is present only when the
+     * LEN bit is set to 1.
+     */
+    private long length;
+    /**
+     * The bytes of the datagram to be delivered.
+     * When parsed by a {@link com.timtrense.quic.impl.FrameCollector}, this is a read-only copy, so that it
+     * outlives the received datagram.
+     */
+    private ByteBuffer data;
+
+    /**
+     * checks whether the LEN-Bit is set, thus expecting this frame to have a given length
+     *
+     * @return true if the LEN-Bit is set
+     */
+    public boolean isLengthBitSet() {
+        return ( type.getLongValue() & 0x01 ) == 0x01;
+    }
+
+    @Override
+    public boolean isValid() {
+        return data != null
+                && ( !isLengthBitSet() || length == data.remaining() )
+                ;
+    }
+
+    @Override
+    public long getFrameLength() {
+        long sum = type.getValue().getEncodedLengthInBytes();
+        if ( isLengthBitSet() ) {
+            sum += VariableLengthIntegerEncoder.getLengthInBytes( length );
+        }
+        sum += data.remaining();
+        return sum;
+    }
+}
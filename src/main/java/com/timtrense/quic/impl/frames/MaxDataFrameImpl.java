@@ -6,7 +6,7 @@
 import com.timtrense.quic.Frame;
 import com.timtrense.quic.FrameGeneralType;
 import com.timtrense.quic.FrameType;
-import com.timtrense.quic.VariableLengthInteger;
+import com.timtrense.quic.impl.base.VariableLengthIntegerEncoder;
 
 /**
  * max data frame.
@@ -47,17 +47,17 @@ public MaxDataFrameImpl( @NonNull FrameType frameType ) {
      * amount of data that can be sent on the entire connection, in units
      * of bytes.
      */
-    private VariableLengthInteger maximumData;
+    private long maximumData;
 
     @Override
     public boolean isValid() {
-        return maximumData != null;
+        return VariableLengthIntegerEncoder.isEncodable( maximumData );
     }
 
     @Override
     public long getFrameLength() {
         long sum = type.getValue().getEncodedLengthInBytes();
-        sum += maximumData.getEncodedLengthInBytes();
+        sum += VariableLengthIntegerEncoder.getLengthInBytes( maximumData );
         return sum;
     }
 }
@@ -7,7 +7,7 @@
 import com.timtrense.quic.FrameGeneralType;
 import com.timtrense.quic.FrameType;
 import com.timtrense.quic.StreamId;
-import com.timtrense.quic.VariableLengthInteger;
+import com.timtrense.quic.impl.base.VariableLengthIntegerEncoder;
 
 /**
  * max stream data frame.
@@ -66,19 +66,19 @@ public MaxStreamDataFrameImpl( @NonNull FrameType frameType ) {
      * amount of data that can be sent on the entire connection, in units
      * of bytes.
      */
-    private VariableLengthInteger maximumStreamData;
+    private long maximumStreamData;
 
     @Override
     public boolean isValid() {
         return streamId != null
-                && maximumStreamData != null;
+                && VariableLengthIntegerEncoder.isEncodable( maximumStreamData );
     }
 
     @Override
     public long getFrameLength() {
         long sum = type.getValue().getEncodedLengthInBytes();
         sum += streamId.getValue().getEncodedLengthInBytes();
-        sum += maximumStreamData.getEncodedLengthInBytes();
+        sum += VariableLengthIntegerEncoder.getLengthInBytes( maximumStreamData );
         return sum;
     }
 }
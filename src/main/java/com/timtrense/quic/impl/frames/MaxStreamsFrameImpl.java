@@ -6,7 +6,7 @@
 import com.timtrense.quic.Frame;
 import com.timtrense.quic.FrameGeneralType;
 import com.timtrense.quic.FrameType;
-import com.timtrense.quic.VariableLengthInteger;
+import com.timtrense.quic.impl.base.VariableLengthIntegerEncoder;
 
 /**
  * max streams frame.
@@ -62,17 +62,17 @@ public MaxStreamsFrameImpl( @NonNull FrameType frameType ) {
      * permits opening of a stream larger than this limit MUST be treated
      * as a FRAME_ENCODING_ERROR.
      */
-    private VariableLengthInteger maximumStreams;
+    private long maximumStreams;
 
     @Override
     public boolean isValid() {
-        return maximumStreams != null;
+        return VariableLengthIntegerEncoder.isEncodable( maximumStreams );
     }
 
     @Override
     public long getFrameLength() {
         long sum = type.getValue().getEncodedLengthInBytes();
-        sum += maximumStreams.getEncodedLengthInBytes();
+        sum += VariableLengthIntegerEncoder.getLengthInBytes( maximumStreams );
         return sum;
     }
 }
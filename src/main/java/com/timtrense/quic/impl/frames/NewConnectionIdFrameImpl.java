@@ -8,7 +8,7 @@
 import com.timtrense.quic.FrameGeneralType;
 import com.timtrense.quic.FrameType;
 import com.timtrense.quic.StatelessResetToken;
-import com.timtrense.quic.VariableLengthInteger;
+import com.timtrense.quic.impl.base.VariableLengthIntegerEncoder;
 
 /**
  * new connection id frame.
@@ -80,12 +80,12 @@ public NewConnectionIdFrameImpl( @NonNull FrameType frameType ) {
      * by the sender, encoded as a variable-length integer; see
      * Section 5.1.1.
      */
-    private VariableLengthInteger sequenceNumber;
+    private long sequenceNumber;
     /**
      * A variable-length integer indicating which connection IDs
      * should be retired; see Section 5.1.2.
      */
-    private VariableLengthInteger retirePriorTo;
+    private long retirePriorTo;
     /**
      * An 8-bit unsigned integer containing the length of the
      * connection ID.  Values less than 1 and greater than 20 are invalid
@@ -106,8 +106,8 @@ public NewConnectionIdFrameImpl( @NonNull FrameType frameType ) {
 
     @Override
     public boolean isValid() {
-        return sequenceNumber != null
-                && retirePriorTo != null
+        return VariableLengthIntegerEncoder.isEncodable( sequenceNumber )
+                && VariableLengthIntegerEncoder.isEncodable( retirePriorTo )
                 && length > 0 && length < 21
                 && connectionId != null
 //                && statelessResetToken != null //TODO: does the packet need to have that?
@@ -117,8 +117,8 @@ public boolean isValid() {
     @Override
     public long getFrameLength() {
         long sum = type.getValue().getEncodedLengthInBytes();
-        sum += sequenceNumber.getEncodedLengthInBytes();
-        sum += retirePriorTo.getEncodedLengthInBytes();
+        sum += VariableLengthIntegerEncoder.getLengthInBytes( sequenceNumber );
+        sum += VariableLengthIntegerEncoder.getLengthInBytes( retirePriorTo );
         sum += 1 + 16; // length + stateless reset token
         sum += length; // connectionId
         return sum;
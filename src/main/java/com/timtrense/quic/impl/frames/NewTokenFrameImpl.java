@@ -1,12 +1,13 @@
 package com.timtrense.quic.impl.frames;
 
+import java.nio.ByteBuffer;
 import lombok.Data;
 import lombok.NonNull;
 
 import com.timtrense.quic.Frame;
 import com.timtrense.quic.FrameGeneralType;
 import com.timtrense.quic.FrameType;
-import com.timtrense.quic.VariableLengthInteger;
+import com.timtrense.quic.impl.base.VariableLengthIntegerEncoder;
 
 /**
  * new token frame.
@@ -48,29 +49,31 @@ public NewTokenFrameImpl( @NonNull FrameType frameType ) {
      * A variable-length integer specifying the length of the
      * token in bytes.
      */
-    private VariableLengthInteger tokenLength;
+    private long tokenLength;
     /**
      * An opaque blob that the client may use with a future Initial
      * packet.  The token MUST NOT be empty.  An endpoint MUST treat
      * receipt of a NEW_TOKEN frame with an empty Token field as a
      * connection error of type FRAME_ENCODING_ERROR.
+     * When parsed by a {@link com.timtrense.quic.impl.FrameCollector}, this is a read-only copy, so that it
+     * outlives the received datagram.
      */
-    private byte[] token;
+    private ByteBuffer token;
 
     @Override
     public boolean isValid() {
-        return tokenLength != null
+        return VariableLengthIntegerEncoder.isEncodable( tokenLength )
                 && token != null
-                && token.length > 0
-                && tokenLength.longValue() == token.length
+                && token.remaining() > 0
+                && tokenLength == token.remaining()
                 ;
     }
 
     @Override
     public long getFrameLength() {
         long sum = type.getValue().getEncodedLengthInBytes();
-        sum += tokenLength.getEncodedLengthInBytes();
-        sum += tokenLength.getValue();
+        sum += VariableLengthIntegerEncoder.getLengthInBytes( tokenLength );
+        sum += tokenLength;
         return sum;
     }
 }
@@ -0,0 +1,49 @@
+package com.timtrense.quic.impl.frames;
+
+import lombok.Data;
+import lombok.NonNull;
+
+import com.timtrense.quic.Frame;
+import com.timtrense.quic.FrameGeneralType;
+import com.timtrense.quic.FrameType;
+
+/**
+ * ping frame.
+ * existing known frames are : {@link FrameType#PING}.
+ *
+ * Endpoints can use PING frames (type=0x01) to verify that their peers
+ * are still alive or to check reachability to the peer.
+ *
+ * PING frames contain no additional fields.
+ *
+ * The receiver of a PING frame simply needs to acknowledge the packet
+ * containing this frame.
+ *
+ * @author Tim Trense
+ * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-transport-32#section-19.2">QUIC Spec/Section 19.2</a>
+ */
+@Data
+public class PingFrameImpl implements Frame {
+
+    private final FrameType type;
+
+    public PingFrameImpl( @NonNull FrameType frameType ) {
+        this.type = frameType;
+        if ( type.getGeneralType() != FrameGeneralType.PING ) {
+            throw new IllegalArgumentException(
+                    "Cannot build a PingFrame with FrameGeneralType other than "
+                            + FrameGeneralType.PING.name()
+            );
+        }
+    }
+
+    @Override
+    public boolean isValid() {
+        return true;
+    }
+
+    @Override
+    public long getFrameLength() {
+        return type.getValue().getEncodedLengthInBytes();
+    }
+}
@@ -7,7 +7,7 @@
 import com.timtrense.quic.FrameGeneralType;
 import com.timtrense.quic.FrameType;
 import com.timtrense.quic.StreamId;
-import com.timtrense.quic.VariableLengthInteger;
+import com.timtrense.quic.impl.base.VariableLengthIntegerEncoder;
 
 /**
  * reset stream frame.
@@ -53,28 +53,28 @@ public ResetStreamFrameImpl( @NonNull FrameType type ) {
      * containing the application protocol error code (see Section 20.2)
      * that indicates why the stream is being closed
      */
-    private VariableLengthInteger applicationProtocolErrorCode;
+    private long applicationProtocolErrorCode;
 
     /**
      * A variable-length integer indicating the final size of
      * the stream by the RESET_STREAM sender, in unit of bytes; see
      * Section 4.5
      */
-    private VariableLengthInteger finalSize;
+    private long finalSize;
 
     @Override
     public boolean isValid() {
         return streamId != null
-                && finalSize != null
-                && applicationProtocolErrorCode != null;
+                && VariableLengthIntegerEncoder.isEncodable( finalSize )
+                && VariableLengthIntegerEncoder.isEncodable( applicationProtocolErrorCode );
     }
 
     @Override
     public long getFrameLength() {
         long sum = type.getValue().getEncodedLengthInBytes();
         sum += streamId.getValue().getEncodedLengthInBytes();
-        sum += applicationProtocolErrorCode.getEncodedLengthInBytes();
-        sum += finalSize.getEncodedLengthInBytes();
+        sum += VariableLengthIntegerEncoder.getLengthInBytes( applicationProtocolErrorCode );
+        sum += VariableLengthIntegerEncoder.getLengthInBytes( finalSize );
         return sum;
     }
 }
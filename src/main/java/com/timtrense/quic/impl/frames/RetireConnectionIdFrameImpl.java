@@ -6,7 +6,7 @@
 import com.timtrense.quic.Frame;
 import com.timtrense.quic.FrameGeneralType;
 import com.timtrense.quic.FrameType;
-import com.timtrense.quic.VariableLengthInteger;
+import com.timtrense.quic.impl.base.VariableLengthIntegerEncoder;
 
 /**
  * retire connection id frame.
@@ -59,17 +59,17 @@ public RetireConnectionIdFrameImpl( @NonNull FrameType frameType ) {
      * The sequence number of the connection ID being
      * retired; see Section 5.1.2.
      */
-    private VariableLengthInteger sequenceNumber;
+    private long sequenceNumber;
 
     @Override
     public boolean isValid() {
-        return sequenceNumber != null;
+        return VariableLengthIntegerEncoder.isEncodable( sequenceNumber );
     }
 
     @Override
     public long getFrameLength() {
         long sum = type.getValue().getEncodedLengthInBytes();
-        sum += sequenceNumber.getEncodedLengthInBytes();
+        sum += VariableLengthIntegerEncoder.getLengthInBytes( sequenceNumber );
         return sum;
     }
 }
@@ -6,7 +6,7 @@
 import com.timtrense.quic.FrameGeneralType;
 import com.timtrense.quic.FrameType;
 import com.timtrense.quic.StreamId;
-import com.timtrense.quic.VariableLengthInteger;
+import com.timtrense.quic.impl.base.VariableLengthIntegerEncoder;
 
 /**
  * stop sending frame.
@@ -51,19 +51,19 @@ public StopSendingFrameImpl( FrameType type ) {
      * containing the application-specified reason the sender is ignoring
      * the stream; see Section 20.2
      */
-    private VariableLengthInteger applicationProtocolErrorCode;
+    private long applicationProtocolErrorCode;
 
     @Override
     public boolean isValid() {
         return streamId != null
-                && applicationProtocolErrorCode != null;
+                && VariableLengthIntegerEncoder.isEncodable( applicationProtocolErrorCode );
     }
 
     @Override
     public long getFrameLength() {
         long sum = type.getValue().getEncodedLengthInBytes();
         sum += streamId.getValue().getEncodedLengthInBytes();
-        sum += applicationProtocolErrorCode.getEncodedLengthInBytes();
+        sum += VariableLengthIntegerEncoder.getLengthInBytes( applicationProtocolErrorCode );
         return sum;
     }
 }
@@ -7,7 +7,7 @@
 import com.timtrense.quic.FrameGeneralType;
 import com.timtrense.quic.FrameType;
 import com.timtrense.quic.StreamId;
-import com.timtrense.quic.VariableLengthInteger;
+import com.timtrense.quic.impl.base.VariableLengthIntegerEncoder;
 
 /**
  * stream data blocked frame.
@@ -48,19 +48,19 @@ public StreamDataBlockedFrameImpl( @NonNull FrameType frameType ) {
      * A variable-length integer indicating the offset
      * of the stream at which the blocking occurred.
      */
-    private VariableLengthInteger maximumStreamData;
+    private long maximumStreamData;
 
     @Override
     public boolean isValid() {
         return streamId != null
-                && maximumStreamData != null;
+                && VariableLengthIntegerEncoder.isEncodable( maximumStreamData );
     }
 
     @Override
     public long getFrameLength() {
         long sum = type.getValue().getEncodedLengthInBytes();
         sum += streamId.getValue().getEncodedLengthInBytes();
-        sum += maximumStreamData.getEncodedLengthInBytes();
+        sum += VariableLengthIntegerEncoder.getLengthInBytes( maximumStreamData );
         return sum;
     }
 }
@@ -1,12 +1,12 @@
 package com.timtrense.quic.impl.frames;
 
+import java.nio.ByteBuffer;
 import lombok.Data;
 
 import com.timtrense.quic.Frame;
 import com.timtrense.quic.FrameGeneralType;
 import com.timtrense.quic.FrameType;
 import com.timtrense.quic.StreamId;
-import com.timtrense.quic.VariableLengthInteger;
 import com.timtrense.quic.impl.base.VariableLengthIntegerEncoder;
 
 /**
@@ -84,18 +84,20 @@ public StreamFrameImpl( FrameType frameType ) {
      * when the OFF bit is set to 1.  When the Offset field is absent,
      * the offset is 0.
      */
-    private VariableLengthInteger offset;
+    private long offset;
     /**
      * A variable-length integer specifying the length of the
      * Stream Data field in this STREAM frame.  This field is present
      * when the LEN bit is set to 1.  When the LEN bit is set to 0, the
      * Stream Data field consumes all the remaining bytes in the packet.
      */
-    private VariableLengthInteger length;
+    private long length;
     /**
      * The bytes from the designated stream to be delivered.
+     * When parsed by a {@link com.timtrense.quic.impl.FrameCollector}, this is a read-only copy, so that it
+     * outlives the received datagram.
      */
-    private byte[] data;
+    private ByteBuffer data;
 
     /**
      * checks whether the FIN-Bit is set, thus making this the last frame of data for the associated stream
@@ -126,23 +128,17 @@ public boolean isOffsetBitSet() {
 
     @Override
     public boolean isValid() {
-        if ( streamId == null ) {
+        if ( streamId == null || data == null ) {
             return false;
         }
-        if ( isLengthBitSet() && length == null ) {
+        if ( !VariableLengthIntegerEncoder.isEncodable( offset ) ) {
             return false;
         }
-        if ( isOffsetBitSet() && offset == null ) {
-            return false;
-        }
-        if ( length != null && length.longValue() != data.length ) {
+        if ( isLengthBitSet() && length != data.remaining() ) {
             return false;
         }
         //noinspection RedundantIfStatement
-        if ( offset != null
-                && length != null
-                && VariableLengthIntegerEncoder.getLengthInBytes(
-                offset.longValue() + length.longValue() ) == 0 ) {
+        if ( !VariableLengthIntegerEncoder.isEncodable( offset + data.remaining() ) ) {
             // QUOTE: The largest offset
             //   delivered on a stream - the sum of the offset and data length -
             //   cannot exceed 2^62-1, as it is not possible to provide flow control
@@ -156,15 +152,15 @@ public boolean isValid() {
     public long getFrameLength() {
         long sum = type.getValue().getEncodedLengthInBytes();
         sum += streamId.getValue().getEncodedLengthInBytes();
-        if ( length != null ) {
-            sum += length.getEncodedLengthInBytes();
-            sum += length.getValue();
+        if ( isLengthBitSet() ) {
+            sum += VariableLengthIntegerEncoder.getLengthInBytes( length );
+            sum += length;
         }
         else {
-            sum += data.length;
+            sum += data.remaining();
         }
-        if ( offset != null ) {
-            sum += offset.getEncodedLengthInBytes();
+        if ( isOffsetBitSet() ) {
+            sum += VariableLengthIntegerEncoder.getLengthInBytes( offset );
         }
         return sum;
     }
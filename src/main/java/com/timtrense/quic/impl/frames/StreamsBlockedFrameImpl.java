@@ -6,7 +6,7 @@
 import com.timtrense.quic.Frame;
 import com.timtrense.quic.FrameGeneralType;
 import com.timtrense.quic.FrameType;
-import com.timtrense.quic.VariableLengthInteger;
+import com.timtrense.quic.impl.base.VariableLengthIntegerEncoder;
 
 /**
  * streams blocked frame.
@@ -49,17 +49,17 @@ public StreamsBlockedFrameImpl( @NonNull FrameType frameType ) {
      * stream ID MUST be treated as a STREAM_LIMIT_ERROR or a
      * FRAME_ENCODING_ERROR.
      */
-    private VariableLengthInteger maximumStreams;
+    private long maximumStreams;
 
     @Override
     public boolean isValid() {
-        return maximumStreams != null;
+        return VariableLengthIntegerEncoder.isEncodable( maximumStreams );
     }
 
     @Override
     public long getFrameLength() {
         long sum = type.getValue().getEncodedLengthInBytes();
-        sum += maximumStreams.getEncodedLengthInBytes();
+        sum += VariableLengthIntegerEncoder.getLengthInBytes( maximumStreams );
         return sum;
     }
 }
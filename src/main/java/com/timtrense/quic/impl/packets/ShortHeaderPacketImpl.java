@@ -22,7 +22,7 @@
 @RequiredArgsConstructor
 public class ShortHeaderPacketImpl implements ShortHeaderPacket {
 
-    private final @NonNull List<Frame> payload = new LinkedList<>();
+    private @NonNull List<Frame> payload = new LinkedList<>();
     private byte flags;
     private ConnectionId destinationConnectionId;
     private PacketNumber packetNumber;
@@ -33,7 +33,7 @@ public boolean isPacketValid() {
                 && ( ( flags & 0b01000000 ) == 0b01000000 ) // fixed bit
                 // spin bit may have arbitrary value
                 // key phase bit may have arbitrary value
-                && ( ( flags & 0b00000011 ) != 0b00000000 ) // packet number length may not be zero
+                && ( ( flags & 0b00011000 ) == 0b00000000 ) // reserved bits
                 && packetNumber != null
                 && destinationConnectionId != null;
     }
@@ -0,0 +1,44 @@
+package com.timtrense.quic.impl.queue;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import lombok.NonNull;
+
+/**
+ * The kind of queue that hands over datagrams and packets between the threads of an endpoint
+ *
+ * @author Tim Trense
+ */
+public enum HandoffQueueType {
+
+    /**
+     * A {@link LinkedBlockingQueue}, allocating one node per element and locking on every operation,
+     * but signalling waiting threads instead of polling
+     */
+    LINKED_BLOCKING,
+    /**
+     * A preallocated {@link RingBuffer}: a {@link SpscRingBuffer} if there is only a single producer,
+     * otherwise a {@link MpmcRingBuffer}. Waiting threads poll according to a {@link WaitStrategy}.
+     */
+    RING_BUFFER;
+
+    /**
+     * Creates a new queue of this type
+     *
+     * @param capacity       the minimum capacity of the queue
+     * @param waitStrategy   how threads wait on a {@link #RING_BUFFER}, ignored for {@link #LINKED_BLOCKING}
+     * @param singleProducer whether it is guaranteed that only a single thread at a time offers elements
+     *                       (and only a single thread at a time takes elements)
+     * @param <E>            the type of elements
+     * @return a new, empty queue
+     */
+    public <E> BlockingQueue<E> create( int capacity, @NonNull WaitStrategy waitStrategy, boolean singleProducer ) {
+        if ( this == LINKED_BLOCKING ) {
+            return new LinkedBlockingQueue<>( capacity );
+        }
+        if ( singleProducer ) {
+            return new SpscRingBuffer<>( capacity, waitStrategy );
+        }
+        return new MpmcRingBuffer<>( capacity, waitStrategy );
+    }
+}
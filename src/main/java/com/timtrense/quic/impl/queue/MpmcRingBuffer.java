@@ -0,0 +1,110 @@
+package com.timtrense.quic.impl.queue;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import lombok.NonNull;
+
+/**
+ * A {@link RingBuffer} for any number of producing and consuming threads,
+ * following the bounded queue of Dmitry Vyukov.
+ * <p>
+ * Every slot carries a sequence number telling whether it is free for the producer of a given sequence
+ * or filled for the consumer of a given sequence. Producers (and consumers) claim their sequence by a single
+ * compare-and-set on the shared counter and then publish the slot by advancing its sequence number.
+ * In the common case of a single consumer that compare-and-set never fails on the consuming side.
+ *
+ * @param <E> the type of elements
+ * @author Tim Trense
+ */
+public class MpmcRingBuffer<E> extends RingBuffer<E> {
+
+    /**
+     * the preallocated slots
+     */
+    private final AtomicReferenceArray<E> buffer;
+    /**
+     * the sequence number of each slot
+     */
+    private final AtomicLongArray sequences;
+    /**
+     * the sequence of the next element to add
+     */
+    private final AtomicLong producerIndex = new AtomicLong();
+    /**
+     * the sequence of the next element to remove
+     */
+    private final AtomicLong consumerIndex = new AtomicLong();
+
+    /**
+     * Creates a new ring buffer
+     *
+     * @param requestedCapacity the minimum capacity, rounded up to the next power of 2
+     * @param waitStrategy      how threads wait for free space or new elements
+     */
+    public MpmcRingBuffer( int requestedCapacity, @NonNull WaitStrategy waitStrategy ) {
+        super( requestedCapacity, waitStrategy );
+        this.buffer = new AtomicReferenceArray<>( capacity );
+        this.sequences = new AtomicLongArray( capacity );
+        for ( int i = 0; i < capacity; i++ ) {
+            sequences.set( i, i );
+        }
+    }
+
+    @Override
+    public boolean offer( @NonNull E e ) {
+        while ( true ) {
+            long producer = producerIndex.get();
+            int index = (int)producer & mask;
+            long difference = sequences.get( index ) - producer;
+            if ( difference == 0 ) {
+                if ( producerIndex.compareAndSet( producer, producer + 1 ) ) {
+                    buffer.lazySet( index, e );
+                    sequences.set( index, producer + 1 );
+                    return true;
+                }
+            }
+            else if ( difference < 0 ) {
+                return false; // the slot still holds the element of the previous round
+            }
+            // otherwise another producer claimed that sequence, retry with the next one
+        }
+    }
+
+    @Override
+    public E poll() {
+        while ( true ) {
+            long consumer = consumerIndex.get();
+            int index = (int)consumer & mask;
+            long difference = sequences.get( index ) - ( consumer + 1 );
+            if ( difference == 0 ) {
+                if ( consumerIndex.compareAndSet( consumer, consumer + 1 ) ) {
+                    E e = buffer.get( index );
+                    buffer.lazySet( index, null );
+                    sequences.set( index, consumer + capacity );
+                    return e;
+                }
+            }
+            else if ( difference < 0 ) {
+                return null; // the slot is not yet published
+            }
+            // otherwise another consumer took that sequence, retry with the next one
+        }
+    }
+
+    @Override
+    public E peek() {
+        long consumer = consumerIndex.get();
+        int index = (int)consumer & mask;
+        if ( sequences.get( index ) != consumer + 1 ) {
+            return null;
+        }
+        return buffer.get( index );
+    }
+
+    @Override
+    public int size() {
+        long consumer = consumerIndex.get();
+        return size( producerIndex.get(), consumer );
+    }
+}
@@ -0,0 +1,174 @@
+package com.timtrense.quic.impl.queue;
+
+import java.util.AbstractQueue;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+import lombok.NonNull;
+
+/**
+ * Base class for bounded, preallocated, lock-free queues.
+ * <p>
+ * Subclasses implement the non-blocking {@link #offer(Object)} and {@link #poll()}, on which this class
+ * implements the blocking operations of a {@link BlockingQueue} by idling with the {@link #getWaitStrategy()
+ * wait strategy} until the operation succeeds. Because no thread is ever signalled,
+ * there is no lock and no allocation per element.
+ * <p>
+ * Ring buffers do not support iteration, thus neither {@link #iterator()} nor the operations based on it
+ * (like {@link #contains(Object)} or {@link #remove(Object)}) are available.
+ *
+ * @param <E> the type of elements
+ * @author Tim Trense
+ */
+public abstract class RingBuffer<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+    /**
+     * The maximum number of elements in this buffer, always a power of 2
+     */
+    @Getter
+    protected final int capacity;
+    /**
+     * capacity - 1, to compute indices from sequence numbers
+     */
+    protected final int mask;
+    /**
+     * How threads wait for free space or new elements
+     */
+    @Getter
+    private final @NonNull WaitStrategy waitStrategy;
+
+    /**
+     * Creates a new ring buffer
+     *
+     * @param requestedCapacity the minimum capacity, rounded up to the next power of 2
+     * @param waitStrategy      how threads wait for free space or new elements
+     */
+    protected RingBuffer( int requestedCapacity, @NonNull WaitStrategy waitStrategy ) {
+        if ( requestedCapacity <= 0 || requestedCapacity > ( 1 << 30 ) ) {
+            throw new IllegalArgumentException( "Cannot create a ring buffer with capacity " + requestedCapacity );
+        }
+        this.capacity = requestedCapacity == 1 ? 1 : Integer.highestOneBit( requestedCapacity - 1 ) << 1;
+        this.mask = capacity - 1;
+        this.waitStrategy = waitStrategy;
+    }
+
+    @Override
+    public void put( @NonNull E e ) throws InterruptedException {
+        while ( !offer( e ) ) {
+            checkInterrupted();
+            waitStrategy.idle();
+        }
+    }
+
+    @Override
+    public boolean offer( @NonNull E e, long timeout, @NonNull TimeUnit unit ) throws InterruptedException {
+        if ( offer( e ) ) {
+            return true;
+        }
+        long deadline = System.nanoTime() + unit.toNanos( timeout );
+        while ( !offer( e ) ) {
+            checkInterrupted();
+            if ( System.nanoTime() - deadline >= 0 ) {
+                return false;
+            }
+            waitStrategy.idle();
+        }
+        return true;
+    }
+
+    @Override
+    public E take() throws InterruptedException {
+        E e;
+        while ( ( e = poll() ) == null ) {
+            checkInterrupted();
+            waitStrategy.idle();
+        }
+        return e;
+    }
+
+    @Override
+    public E poll( long timeout, @NonNull TimeUnit unit ) throws InterruptedException {
+        E e = poll();
+        if ( e != null ) {
+            return e;
+        }
+        long deadline = System.nanoTime() + unit.toNanos( timeout );
+        while ( ( e = poll() ) == null ) {
+            checkInterrupted();
+            if ( System.nanoTime() - deadline >= 0 ) {
+                return null;
+            }
+            waitStrategy.idle();
+        }
+        return e;
+    }
+
+    @Override
+    public int remainingCapacity() {
+        return capacity - size();
+    }
+
+    @Override
+    public int drainTo( @NonNull Collection<? super E> c ) {
+        return drainTo( c, Integer.MAX_VALUE );
+    }
+
+    @Override
+    public int drainTo( @NonNull Collection<? super E> c, int maxElements ) {
+        if ( c == this ) {
+            throw new IllegalArgumentException( "Cannot drain a queue to itself" );
+        }
+        int drained = 0;
+        E e;
+        while ( drained < maxElements && ( e = poll() ) != null ) {
+            c.add( e );
+            drained++;
+        }
+        return drained;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    /**
+     * Ring buffers cannot be iterated
+     *
+     * @return never
+     * @throws UnsupportedOperationException always
+     */
+    @Override
+    public Iterator<E> iterator() {
+        throw new UnsupportedOperationException( "Cannot iterate a ring buffer" );
+    }
+
+    @Override
+    public String toString() {
+        return getClass().getSimpleName() + "(size=" + size() + ", capacity=" + capacity + ")";
+    }
+
+    /**
+     * computes the number of elements from the two sequence counters,
+     * which may be read inconsistently while other threads operate on the buffer
+     *
+     * @param producerIndex the sequence of the next element to add
+     * @param consumerIndex the sequence of the next element to remove
+     * @return the number of elements, bounded to [0,capacity]
+     */
+    protected int size( long producerIndex, long consumerIndex ) {
+        long size = producerIndex - consumerIndex;
+        if ( size < 0 ) {
+            return 0;
+        }
+        return (int)Math.min( size, capacity );
+    }
+
+    private static void checkInterrupted() throws InterruptedException {
+        if ( Thread.interrupted() ) {
+            throw new InterruptedException();
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.timtrense.quic.impl.queue;
+
+import java.util.concurrent.atomic.AtomicLong;
+import lombok.NonNull;
+
+/**
+ * A {@link RingBuffer} for exactly one producing and one consuming thread.
+ * <p>
+ * Each side owns its sequence counter and publishes it with release semantics only. Each side also caches
+ * the last seen counter of the other side, so that the shared counters are only read when the
+ * buffer appears to be full (respectively empty).
+ *
+ * @param <E> the type of elements
+ * @author Tim Trense
+ */
+public class SpscRingBuffer<E> extends RingBuffer<E> {
+
+    /**
+     * the preallocated slots
+     */
+    private final Object[] buffer;
+    /**
+     * the sequence of the next element to add, only written by the producer
+     */
+    private final AtomicLong producerIndex = new AtomicLong();
+    /**
+     * the sequence of the next element to remove, only written by the consumer
+     */
+    private final AtomicLong consumerIndex = new AtomicLong();
+    /**
+     * the producers cached value of {@link #consumerIndex}
+     */
+    private long consumerIndexCache;
+    /**
+     * the consumers cached value of {@link #producerIndex}
+     */
+    private long producerIndexCache;
+
+    /**
+     * Creates a new ring buffer
+     *
+     * @param requestedCapacity the minimum capacity, rounded up to the next power of 2
+     * @param waitStrategy      how threads wait for free space or new elements
+     */
+    public SpscRingBuffer( int requestedCapacity, @NonNull WaitStrategy waitStrategy ) {
+        super( requestedCapacity, waitStrategy );
+        this.buffer = new Object[capacity];
+    }
+
+    @Override
+    public boolean offer( @NonNull E e ) {
+        long producer = producerIndex.get();
+        if ( producer - consumerIndexCache >= capacity ) {
+            consumerIndexCache = consumerIndex.get();
+            if ( producer - consumerIndexCache >= capacity ) {
+                return false;
+            }
+        }
+        buffer[(int)producer & mask] = e;
+        producerIndex.lazySet( producer + 1 );
+        return true;
+    }
+
+    @Override
+    public E poll() {
+        long consumer = consumerIndex.get();
+        if ( consumer >= producerIndexCache ) {
+            producerIndexCache = producerIndex.get();
+            if ( consumer >= producerIndexCache ) {
+                return null;
+            }
+        }
+        int index = (int)consumer & mask;
+        @SuppressWarnings( "unchecked" )
+        E e = (E)buffer[index];
+        buffer[index] = null;
+        consumerIndex.lazySet( consumer + 1 );
+        return e;
+    }
+
+    @Override
+    @SuppressWarnings( "unchecked" )
+    public E peek() {
+        long consumer = consumerIndex.get();
+        if ( consumer >= producerIndex.get() ) {
+            return null;
+        }
+        return (E)buffer[(int)consumer & mask];
+    }
+
+    @Override
+    public int size() {
+        long consumer = consumerIndex.get();
+        return size( producerIndex.get(), consumer );
+    }
+}
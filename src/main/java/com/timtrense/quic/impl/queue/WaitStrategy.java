@@ -0,0 +1,50 @@
+package com.timtrense.quic.impl.queue;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * The way a thread waits on a {@link RingBuffer} that is empty (for consumers) or full (for producers).
+ * Ring buffers do not signal waiting threads, thus every strategy re-checks the buffer after idling.
+ *
+ * @author Tim Trense
+ */
+public enum WaitStrategy {
+
+    /**
+     * Re-check immediately. Lowest latency, but occupies a whole core while waiting
+     */
+    BUSY_SPIN {
+        @Override
+        public void idle() {
+            Thread.onSpinWait();
+        }
+    },
+    /**
+     * Yield to other threads before re-checking. Low latency, but still occupies a core if it is idle
+     */
+    YIELD {
+        @Override
+        public void idle() {
+            Thread.yield();
+        }
+    },
+    /**
+     * Park the thread for {@link #PARK_NANOS} before re-checking. Adds latency, but frees the core
+     */
+    PARK {
+        @Override
+        public void idle() {
+            LockSupport.parkNanos( PARK_NANOS );
+        }
+    };
+
+    /**
+     * The number of nanoseconds that {@link #PARK} parks a waiting thread
+     */
+    public static final long PARK_NANOS = 50_000L;
+
+    /**
+     * idles once before re-checking the condition waited for
+     */
+    public abstract void idle();
+}
@@ -0,0 +1,5 @@
+/**
+ * This package contains the preallocated queues that hand over datagrams and packets
+ * between the threads of an {@link com.timtrense.quic.impl.Endpoint}
+ */
+package com.timtrense.quic.impl.queue;
@@ -0,0 +1,67 @@
+package com.timtrense.quic.impl.recovery;
+
+import java.util.List;
+
+import com.timtrense.quic.Frame;
+import com.timtrense.quic.PacketNumberSpace;
+
+/**
+ * Receives the outcome of a {@link LossDetector}, eg. to retransmit frames of lost packets or to drive
+ * congestion control. All methods do nothing by default, so a listener only overrides what it is interested in.
+ *
+ * @author Tim Trense
+ */
+public interface LossDetectionListener {
+
+    /**
+     * @param space        the space of the packet
+     * @param packetNumber the number of the acknowledged packet
+     * @param sentTime     the time at which the packet was sent
+     * @param size         the number of bytes of the packet
+     * @param inFlight     whether the packet counted towards the bytes in flight
+     * @param frames       the retransmittable frames given when the packet was sent
+     * @param now          the time at which the acknowledgement was received
+     */
+    default void onPacketAcked( PacketNumberSpace space, long packetNumber, long sentTime, int size,
+                                boolean inFlight, List<Frame> frames, long now ) {}
+
+    /**
+     * @param space        the space of the packet
+     * @param packetNumber the number of the lost packet
+     * @param sentTime     the time at which the packet was sent
+     * @param size         the number of bytes of the packet
+     * @param inFlight     whether the packet counted towards the bytes in flight
+     * @param frames       the retransmittable frames given when the packet was sent, to be sent again
+     * @param now          the time at which the packet was declared lost
+     */
+    default void onPacketLost( PacketNumberSpace space, long packetNumber, long sentTime, int size,
+                               boolean inFlight, List<Frame> frames, long now ) {}
+
+    /**
+     * invoked for every outstanding packet when its space is discarded
+     *
+     * @param space    the discarded space
+     * @param size     the number of bytes of the packet
+     * @param inFlight whether the packet counted towards the bytes in flight
+     */
+    default void onPacketDiscarded( PacketNumberSpace space, int size, boolean inFlight ) {}
+
+    /**
+     * invoked after the lost packets of a space were reported, if they establish persistent congestion
+     *
+     * @param space the space of the lost packets
+     * @param now   the time at which the packets were declared lost
+     * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-recovery-32#section-7.6">QUIC Spec-Recovery/Section 7.6</a>
+     */
+    default void onPersistentCongestion( PacketNumberSpace space, long now ) {}
+
+    /**
+     * invoked when the probe timeout expired. The listener should send one or two ack-eliciting packets in the
+     * given space, bypassing congestion control
+     *
+     * @param space    the space to send probe packets in
+     * @param ptoCount the number of consecutive probe timeouts, including this one
+     * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-recovery-32#section-6.2.4">QUIC Spec-Recovery/Section 6.2.4</a>
+     */
+    default void onProbeTimeout( PacketNumberSpace space, int ptoCount ) {}
+}
@@ -0,0 +1,375 @@
+package com.timtrense.quic.impl.recovery;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Setter;
+
+import com.timtrense.quic.EndpointRole;
+import com.timtrense.quic.Frame;
+import com.timtrense.quic.PacketNumberSpace;
+import com.timtrense.quic.TransportParameterType;
+import com.timtrense.quic.impl.base.AckRangeSet;
+import com.timtrense.quic.impl.base.TransportParameterCollection;
+
+/**
+ * The loss detection of one connection, following the pseudocode of QUIC Spec-Recovery/Appendix A.
+ * <p>
+ * It keeps one {@link SentPacketLedger} per {@link PacketNumberSpace}, processes received ACK frames,
+ * declares packets lost by packet and time threshold, detects persistent congestion and arms the loss detection
+ * timer, which is either the earliest time threshold loss or the probe timeout (PTO). The owner of the detector
+ * schedules the {@link #getLossDetectionTimer() timer} and calls {@link #onLossDetectionTimeout(long)} once it
+ * expired. Outcomes are reported to a {@link LossDetectionListener}.
+ * <p>
+ * Unlike the pseudocode, acknowledged packets are reported while the ACK frame is processed, before lost
+ * packets are reported, so no list of newly acknowledged packets is allocated.
+ * The anti-amplification limit of servers is not considered here.
+ * <p>
+ * All times are given in nanoseconds. Instances are not thread-safe.
+ *
+ * @author Tim Trense
+ * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-recovery-32#section-6">QUIC Spec-Recovery/Section 6</a>
+ */
+public class LossDetector {
+
+    /**
+     * The role of the local endpoint
+     */
+    @Getter
+    private final @NonNull EndpointRole role;
+    /**
+     * The maximum time by which the peer delays its acknowledgements
+     */
+    @Getter
+    private final long maxAckDelay;
+    /**
+     * The exponent to decode the ACK Delay field of the peers ACK frames with
+     */
+    @Getter
+    private final int ackDelayExponent;
+    /**
+     * The estimator fed by RTT samples of received ACK frames
+     */
+    @Getter
+    private final @NonNull RttEstimator rttEstimator;
+    private final @NonNull LossDetectionListener listener;
+    private final SentPacketLedger[] ledgers;
+    private final boolean[] discarded;
+    /**
+     * Whether the handshake is confirmed, which arms the PTO of the application data space
+     */
+    @Getter
+    @Setter
+    private boolean handshakeConfirmed;
+    /**
+     * Whether the keys of the Handshake space are available, which determines the space of
+     * anti-deadlock probes of clients
+     */
+    @Getter
+    @Setter
+    private boolean handshakeKeysAvailable;
+    /**
+     * whether an ACK frame of the Handshake space was received
+     */
+    private boolean handshakeAckReceived;
+    /**
+     * The number of consecutive probe timeouts without receiving an acknowledgement
+     */
+    @Getter
+    private int ptoCount;
+    /**
+     * The time at which {@link #onLossDetectionTimeout(long)} must be called or {@link SentPacketLedger#NO_TIME}
+     */
+    @Getter
+    private long lossDetectionTimer = SentPacketLedger.NO_TIME;
+    /**
+     * the space of the last computed probe timeout
+     */
+    private PacketNumberSpace ptoSpace;
+    /**
+     * the space whose ledger is currently processed and the time of processing, read by the consumers below
+     */
+    private PacketNumberSpace currentSpace;
+    private long currentTime;
+    private final SentPacketConsumer onAcked;
+    private final SentPacketConsumer onLost;
+    private final SentPacketConsumer onDiscarded;
+
+    /**
+     * @param role           the role of the local endpoint
+     * @param peerParameters the transport parameters received from the peer,
+     *                       providing {@link TransportParameterType#MAX_ACK_DELAY} and
+     *                       {@link TransportParameterType#ACK_DELAY_EXPONENT}
+     * @param listener       receives the outcome of loss detection
+     */
+    public LossDetector(
+            @NonNull EndpointRole role,
+            @NonNull TransportParameterCollection peerParameters,
+            @NonNull LossDetectionListener listener
+    ) {
+        this( role, peerParameters, new RttEstimator(), listener );
+    }
+
+    /**
+     * @param role           the role of the local endpoint
+     * @param peerParameters the transport parameters received from the peer,
+     *                       providing {@link TransportParameterType#MAX_ACK_DELAY} and
+     *                       {@link TransportParameterType#ACK_DELAY_EXPONENT}
+     * @param rttEstimator   the estimator to feed, eg. shared with the congestion controller
+     * @param listener       receives the outcome of loss detection
+     */
+    public LossDetector(
+            @NonNull EndpointRole role,
+            @NonNull TransportParameterCollection peerParameters,
+            @NonNull RttEstimator rttEstimator,
+            @NonNull LossDetectionListener listener
+    ) {
+        this.role = role;
+        this.maxAckDelay = TimeUnit.MILLISECONDS.toNanos(
+                ReceivedPacketTracker.getLongParameter( peerParameters, TransportParameterType.MAX_ACK_DELAY ) );
+        this.ackDelayExponent = (int)ReceivedPacketTracker.getLongParameter(
+                peerParameters, TransportParameterType.ACK_DELAY_EXPONENT );
+        this.rttEstimator = rttEstimator;
+        this.listener = listener;
+        int spaceCount = PacketNumberSpace.values().length;
+        this.ledgers = new SentPacketLedger[spaceCount];
+        for ( int i = 0; i < spaceCount; i++ ) {
+            ledgers[i] = new SentPacketLedger();
+        }
+        this.discarded = new boolean[spaceCount];
+        this.onAcked = ( pn, sentTime, size, ackEliciting, inFlight, frames ) ->
+                listener.onPacketAcked( currentSpace, pn, sentTime, size, inFlight, frames, currentTime );
+        this.onLost = ( pn, sentTime, size, ackEliciting, inFlight, frames ) ->
+                listener.onPacketLost( currentSpace, pn, sentTime, size, inFlight, frames, currentTime );
+        this.onDiscarded = ( pn, sentTime, size, ackEliciting, inFlight, frames ) ->
+                listener.onPacketDiscarded( currentSpace, size, inFlight );
+    }
+
+    /**
+     * @param space the space of the sent packets
+     * @return the ledger of that space
+     */
+    public SentPacketLedger getLedger( @NonNull PacketNumberSpace space ) {
+        return ledgers[space.ordinal()];
+    }
+
+    /**
+     * @return the bytes in flight of all spaces
+     */
+    public long getBytesInFlight() {
+        long bytesInFlight = 0;
+        for ( SentPacketLedger ledger : ledgers ) {
+            bytesInFlight += ledger.getBytesInFlight();
+        }
+        return bytesInFlight;
+    }
+
+    /**
+     * "Assume clients validate the server's address implicitly. Servers complete address validation when a
+     * protected packet is received." QUIC Spec-Recovery/Appendix A.6
+     *
+     * @return whether the peer is known to have validated the address of this endpoint
+     */
+    public boolean isPeerCompletedAddressValidation() {
+        return role == EndpointRole.SERVER || handshakeAckReceived || handshakeConfirmed;
+    }
+
+    /**
+     * records a sent packet and re-arms the timer if it is in flight
+     *
+     * @param space        the space of the packet
+     * @param packetNumber the number of the packet
+     * @param size         the number of bytes of the packet
+     * @param ackEliciting whether the packet contains ack-eliciting frames
+     * @param inFlight     whether the packet counts towards the bytes in flight
+     * @param frames       the retransmittable frames of the packet or null
+     * @param now          the time at which the packet was sent
+     * @see SentPacketLedger#onPacketSent(long, long, int, boolean, boolean, List)
+     */
+    public void onPacketSent(
+            @NonNull PacketNumberSpace space,
+            long packetNumber,
+            int size,
+            boolean ackEliciting,
+            boolean inFlight,
+            List<Frame> frames,
+            long now
+    ) {
+        getLedger( space ).onPacketSent( packetNumber, now, size, ackEliciting, inFlight, frames );
+        if ( inFlight ) {
+            setLossDetectionTimer( now );
+        }
+    }
+
+    /**
+     * processes a received ACK frame
+     *
+     * @param space           the space of the packet that carried the ACK frame
+     * @param ranges          the acknowledged ranges
+     * @param encodedAckDelay the ACK Delay field as received
+     * @param now             the time of reception
+     * @return the number of newly acknowledged packets
+     * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-recovery-32#appendix-A.7">QUIC Spec-Recovery/Appendix A.7</a>
+     */
+    public int onAckReceived( @NonNull PacketNumberSpace space, @NonNull AckRangeSet ranges,
+                              long encodedAckDelay, long now ) {
+        if ( discarded[space.ordinal()] ) {
+            return 0;
+        }
+        SentPacketLedger ledger = getLedger( space );
+        currentSpace = space;
+        currentTime = now;
+        int newlyAcked = ledger.onAckReceived( ranges, onAcked );
+        if ( newlyAcked == 0 ) {
+            return 0;
+        }
+        if ( space == PacketNumberSpace.HANDSHAKE ) {
+            handshakeAckReceived = true;
+        }
+        if ( ledger.isRttSampleAvailable() ) {
+            // the ACK Delay of the Initial and Handshake spaces is ignored, QUIC Spec-Recovery/Section 5.3
+            long ackDelay = space != PacketNumberSpace.APPLICATION_DATA ? 0
+                    : TimeUnit.MICROSECONDS.toNanos( encodedAckDelay << ackDelayExponent );
+            rttEstimator.update( now - ledger.getRttSampleSentTime(), ackDelay, maxAckDelay,
+                    handshakeConfirmed, now );
+        }
+        detectAndRemoveLostPackets( space, now );
+        if ( isPeerCompletedAddressValidation() ) {
+            ptoCount = 0;
+        }
+        setLossDetectionTimer( now );
+        return newlyAcked;
+    }
+
+    /**
+     * handles the expiry of the {@link #getLossDetectionTimer() loss detection timer}, by either declaring
+     * packets lost by time threshold or {@link LossDetectionListener#onProbeTimeout(PacketNumberSpace, int)
+     * requesting probe packets}
+     *
+     * @param now the current time
+     * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-recovery-32#appendix-A.9">QUIC Spec-Recovery/Appendix A.9</a>
+     */
+    public void onLossDetectionTimeout( long now ) {
+        PacketNumberSpace lossSpace = getEarliestLossTimeSpace();
+        if ( lossSpace != null ) {
+            detectAndRemoveLostPackets( lossSpace, now );
+            setLossDetectionTimer( now );
+            return;
+        }
+        PacketNumberSpace probeSpace;
+        if ( !isAckElicitingInFlight() ) {
+            // client anti-deadlock: the server may be blocked by its amplification limit
+            probeSpace = handshakeKeysAvailable ? PacketNumberSpace.HANDSHAKE : PacketNumberSpace.INITIAL;
+        }
+        else {
+            getPtoTime( now );
+            probeSpace = ptoSpace;
+        }
+        ptoCount++;
+        listener.onProbeTimeout( probeSpace, ptoCount );
+        setLossDetectionTimer( now );
+    }
+
+    /**
+     * Removes all packets of the given space from loss detection, because its keys were discarded
+     *
+     * @param space the discarded space
+     * @param now   the current time
+     * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-recovery-32#appendix-A.11">QUIC Spec-Recovery/Appendix A.11</a>
+     */
+    public void onPacketNumberSpaceDiscarded( @NonNull PacketNumberSpace space, long now ) {
+        if ( discarded[space.ordinal()] ) {
+            return;
+        }
+        currentSpace = space;
+        getLedger( space ).discard( onDiscarded );
+        discarded[space.ordinal()] = true;
+        ptoCount = 0;
+        setLossDetectionTimer( now );
+    }
+
+    private void detectAndRemoveLostPackets( PacketNumberSpace space, long now ) {
+        SentPacketLedger ledger = getLedger( space );
+        currentSpace = space;
+        currentTime = now;
+        int lost = ledger.detectLostPackets(
+                rttEstimator.getLossDelay(), now, rttEstimator.getFirstSampleTime(), onLost );
+        if ( lost > 0 && rttEstimator.isSampled()
+                && ledger.getLostPeriod() > rttEstimator.getPersistentCongestionDuration( maxAckDelay ) ) {
+            listener.onPersistentCongestion( space, now );
+        }
+    }
+
+    private boolean isAckElicitingInFlight() {
+        for ( int i = 0; i < ledgers.length; i++ ) {
+            if ( !discarded[i] && ledgers[i].getAckElicitingInFlight() > 0 ) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private PacketNumberSpace getEarliestLossTimeSpace() {
+        PacketNumberSpace space = null;
+        long time = SentPacketLedger.NO_TIME;
+        for ( PacketNumberSpace s : PacketNumberSpace.values() ) {
+            long lossTime = getLedger( s ).getLossTime();
+            if ( !discarded[s.ordinal()] && lossTime < time ) {
+                time = lossTime;
+                space = s;
+            }
+        }
+        return space;
+    }
+
+    /**
+     * computes the probe timeout and sets {@link #ptoSpace}
+     *
+     * @param now the current time
+     * @return the time at which the probe timeout expires
+     * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-recovery-32#appendix-A.8">QUIC Spec-Recovery/Appendix A.8</a>
+     */
+    private long getPtoTime( long now ) {
+        // the backoff is capped, far beyond any idle timeout
+        int backoff = Math.min( ptoCount, 16 );
+        long duration = rttEstimator.getProbeTimeout() << backoff;
+        if ( !isAckElicitingInFlight() ) {
+            ptoSpace = handshakeKeysAvailable ? PacketNumberSpace.HANDSHAKE : PacketNumberSpace.INITIAL;
+            return now + duration;
+        }
+        long timeout = SentPacketLedger.NO_TIME;
+        for ( PacketNumberSpace space : PacketNumberSpace.values() ) {
+            SentPacketLedger ledger = getLedger( space );
+            if ( discarded[space.ordinal()] || ledger.getAckElicitingInFlight() == 0 ) {
+                continue;
+            }
+            if ( space == PacketNumberSpace.APPLICATION_DATA ) {
+                if ( !handshakeConfirmed ) {
+                    // "Skip Application Data until handshake confirmed"
+                    break;
+                }
+                duration += maxAckDelay << backoff;
+            }
+            long time = ledger.getTimeOfLastAckElicitingPacket() + duration;
+            if ( time < timeout ) {
+                timeout = time;
+                ptoSpace = space;
+            }
+        }
+        return timeout;
+    }
+
+    private void setLossDetectionTimer( long now ) {
+        PacketNumberSpace lossSpace = getEarliestLossTimeSpace();
+        if ( lossSpace != null ) {
+            lossDetectionTimer = getLedger( lossSpace ).getLossTime();
+            return;
+        }
+        if ( !isAckElicitingInFlight() && isPeerCompletedAddressValidation() ) {
+            lossDetectionTimer = SentPacketLedger.NO_TIME;
+            return;
+        }
+        lossDetectionTimer = getPtoTime( now );
+    }
+}
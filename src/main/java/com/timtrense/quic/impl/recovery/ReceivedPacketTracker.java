@@ -0,0 +1,344 @@
+package com.timtrense.quic.impl.recovery;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+import lombok.NonNull;
+
+import com.timtrense.quic.FrameType;
+import com.timtrense.quic.PacketNumberSpace;
+import com.timtrense.quic.TransportParameter;
+import com.timtrense.quic.TransportParameterType;
+import com.timtrense.quic.impl.base.AckRangeSet;
+import com.timtrense.quic.impl.base.PacketNumberEncoder;
+import com.timtrense.quic.impl.base.TransportParameterCollection;
+import com.timtrense.quic.impl.base.VariableLengthIntegerEncoder;
+import com.timtrense.quic.impl.frames.AckFrameImpl;
+
+/**
+ * Tracks the packet numbers received in one {@link PacketNumberSpace} and decides when to acknowledge them.
+ * <p>
+ * The received packet numbers are kept as an {@link AckRangeSet}, which is bounded to {@link #getMaxRanges()}
+ * ranges. When it grows beyond, the ranges of the oldest packets are evicted and every packet number below the
+ * remaining ranges is treated as a duplicate from then on.
+ * <p>
+ * https://tools.ietf.org/html/draft-ietf-quic-transport-32#section-13.2.3
+ * "A receiver MUST retain an ACK Range unless it can ensure that it will not subsequently accept packets with
+ * numbers in that range. Maintaining a minimum packet number that increases as ranges are discarded is one way
+ * to achieve this with minimal state."
+ * <p>
+ * ACK frames are delayed by at most {@link TransportParameterType#MAX_ACK_DELAY} and sent immediately if
+ * <ul>
+ *     <li>the packet was received in the {@link PacketNumberSpace#INITIAL Initial} or
+ *     {@link PacketNumberSpace#HANDSHAKE Handshake} space (Section 13.2.1),</li>
+ *     <li>an ack-eliciting packet was received out of order or revealed a gap (Section 13.2.1) or</li>
+ *     <li>{@link #getAckElicitingThreshold()} ack-eliciting packets were received since the last ACK frame
+ *     (Section 13.2.2).</li>
+ * </ul>
+ * All times are given in nanoseconds, as returned by {@link System#nanoTime()}.
+ * <p>
+ * Instances are not thread-safe, except for {@link #getLargestReceived()} which may be read from parsing threads.
+ *
+ * @author Tim Trense
+ * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-transport-32#section-13.2">QUIC Spec/Section 13.2</a>
+ */
+public class ReceivedPacketTracker {
+
+    /**
+     * The default of {@link #getMaxRanges()}
+     */
+    public static final int DEFAULT_MAX_RANGES = 64;
+    /**
+     * The default of {@link #getAckElicitingThreshold()}, as recommended by Section 13.2.2
+     */
+    public static final int DEFAULT_ACK_ELICITING_THRESHOLD = 2;
+    /**
+     * value of {@link #getAckDeadline()} if no ACK frame needs to be sent
+     */
+    public static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    /**
+     * The space of the tracked packet numbers
+     */
+    @Getter
+    private final @NonNull PacketNumberSpace space;
+    /**
+     * The maximum number of retained ranges of received packet numbers
+     */
+    @Getter
+    private final int maxRanges;
+    /**
+     * The number of ack-eliciting packets after which an ACK frame is sent immediately
+     */
+    @Getter
+    private final int ackElicitingThreshold;
+    /**
+     * The maximum time in nanoseconds by which an ACK frame is delayed
+     */
+    @Getter
+    private final long maxAckDelay;
+    /**
+     * The exponent to encode the ACK Delay field with
+     */
+    @Getter
+    private final int ackDelayExponent;
+    /**
+     * the received packet numbers
+     */
+    private final AckRangeSet received = new AckRangeSet();
+    /**
+     * The largest received packet number or -1 if none was received yet
+     */
+    @Getter
+    private volatile long largestReceived = -1;
+    /**
+     * The time when the {@link #getLargestReceived() largest packet} was received
+     */
+    @Getter
+    private long largestReceivedTime;
+    /**
+     * The smallest packet number that is not treated as a duplicate, raised when ranges are evicted
+     */
+    @Getter
+    private long floor;
+    /**
+     * the number of ack-eliciting packets received since the last ACK frame
+     */
+    private int ackElicitingSinceLastAck;
+    /**
+     * whether any packet was received since the last ACK frame
+     */
+    private boolean ackPending;
+    /**
+     * The time by which the next ACK frame must be sent or {@link #NO_DEADLINE}
+     */
+    @Getter
+    private long ackDeadline = NO_DEADLINE;
+
+    /**
+     * Creates a tracker with {@link #DEFAULT_MAX_RANGES} and {@link #DEFAULT_ACK_ELICITING_THRESHOLD}
+     *
+     * @param space           the space of the tracked packet numbers
+     * @param localParameters the transport parameters sent to the peer,
+     *                        providing {@link TransportParameterType#MAX_ACK_DELAY} and
+     *                        {@link TransportParameterType#ACK_DELAY_EXPONENT}
+     */
+    public ReceivedPacketTracker(
+            @NonNull PacketNumberSpace space,
+            @NonNull TransportParameterCollection localParameters
+    ) {
+        this( space, localParameters, DEFAULT_MAX_RANGES, DEFAULT_ACK_ELICITING_THRESHOLD );
+    }
+
+    /**
+     * @param space                 the space of the tracked packet numbers
+     * @param localParameters       the transport parameters sent to the peer,
+     *                              providing {@link TransportParameterType#MAX_ACK_DELAY} and
+     *                              {@link TransportParameterType#ACK_DELAY_EXPONENT}
+     * @param maxRanges             {@link #maxRanges}
+     * @param ackElicitingThreshold {@link #ackElicitingThreshold}
+     */
+    public ReceivedPacketTracker(
+            @NonNull PacketNumberSpace space,
+            @NonNull TransportParameterCollection localParameters,
+            int maxRanges,
+            int ackElicitingThreshold
+    ) {
+        if ( maxRanges <= 0 || ackElicitingThreshold <= 0 ) {
+            throw new IllegalArgumentException( "Cannot create a ReceivedPacketTracker with non-positive limits" );
+        }
+        this.space = space;
+        this.maxRanges = maxRanges;
+        this.ackElicitingThreshold = ackElicitingThreshold;
+        this.maxAckDelay = TimeUnit.MILLISECONDS.toNanos(
+                getLongParameter( localParameters, TransportParameterType.MAX_ACK_DELAY ) );
+        this.ackDelayExponent = (int)getLongParameter( localParameters, TransportParameterType.ACK_DELAY_EXPONENT );
+    }
+
+    static long getLongParameter( TransportParameterCollection parameters, TransportParameterType type ) {
+        TransportParameter<?> parameter = parameters.getParameter( type );
+        if ( parameter == null || !( parameter.getValue() instanceof Long ) ) {
+            throw new IllegalArgumentException( "Cannot read transport parameter " + type.name() );
+        }
+        return (Long)parameter.getValue();
+    }
+
+    /**
+     * decodes a truncated packet number of this space relative to the {@link #getLargestReceived() largest}
+     *
+     * @param truncatedPacketNumber the packet number as read from the header
+     * @param lengthInBytes         the number of bytes the packet number was encoded with
+     * @return the full packet number
+     */
+    public long decodePacketNumber( long truncatedPacketNumber, int lengthInBytes ) {
+        return PacketNumberEncoder.decodePacketNumber( truncatedPacketNumber, largestReceived, lengthInBytes << 3 );
+    }
+
+    /**
+     * checks whether the packet number was already received or is too old to be tracked, in O(log ranges)
+     *
+     * @param packetNumber the packet number to check
+     * @return true if the packet must not be processed again
+     */
+    public boolean isDuplicate( long packetNumber ) {
+        return packetNumber < floor || received.contains( packetNumber );
+    }
+
+    /**
+     * Records a successfully decrypted packet. Must be called once the packet is processed,
+     * because a duplicate is detected on the second call.
+     *
+     * @param packetNumber the full packet number
+     * @param ackEliciting whether the packet contained ack-eliciting frames
+     * @param now          the time of reception
+     * @return false if the packet is a {@link #isDuplicate(long) duplicate} and must be dropped
+     */
+    public boolean onPacketReceived( long packetNumber, boolean ackEliciting, long now ) {
+        if ( packetNumber < 0 ) {
+            throw new IllegalArgumentException( "Cannot receive a negative packet number" );
+        }
+        if ( isDuplicate( packetNumber ) ) {
+            return false;
+        }
+        long previousLargest = largestReceived;
+        received.add( packetNumber );
+        if ( received.size() > maxRanges ) {
+            received.retainLargest( maxRanges );
+            floor = received.getSmallest( maxRanges - 1 );
+        }
+        if ( packetNumber > previousLargest ) {
+            largestReceived = packetNumber;
+            largestReceivedTime = now;
+        }
+        ackPending = true;
+        if ( !ackEliciting ) {
+            // non-ack-eliciting packets are acknowledged along with the next ack-eliciting one
+            return true;
+        }
+        ackElicitingSinceLastAck++;
+        boolean outOfOrder = packetNumber != previousLargest + 1;
+        if ( space != PacketNumberSpace.APPLICATION_DATA
+                || outOfOrder
+                || ackElicitingSinceLastAck >= ackElicitingThreshold ) {
+            ackDeadline = now;
+        }
+        else if ( ackDeadline == NO_DEADLINE ) {
+            ackDeadline = now + maxAckDelay;
+        }
+        return true;
+    }
+
+    /**
+     * @param now the current time
+     * @return whether an ACK frame should be sent now
+     */
+    public boolean isAckDue( long now ) {
+        return ackDeadline != NO_DEADLINE && now - ackDeadline >= 0;
+    }
+
+    /**
+     * @return whether packets were received that were not yet acknowledged,
+     * eg. to piggyback an ACK frame on a packet that is sent anyways
+     */
+    public boolean isAckPending() {
+        return ackPending;
+    }
+
+    /**
+     * @param now the time at which the ACK frame is sent
+     * @return the encoded ACK Delay field, that is the time since the largest packet was received
+     * in microseconds, scaled down by the {@link #getAckDelayExponent() exponent}
+     */
+    public long getEncodedAckDelay( long now ) {
+        if ( space != PacketNumberSpace.APPLICATION_DATA ) {
+            // the peer ignores the ACK Delay of the Initial and Handshake spaces, QUIC Spec-Recovery/Section 5.3
+            return 0;
+        }
+        long delayMicros = Math.max( 0, TimeUnit.NANOSECONDS.toMicros( now - largestReceivedTime ) );
+        return delayMicros >> ackDelayExponent;
+    }
+
+    /**
+     * @param now the time at which the frame is sent
+     * @return the number of bytes of the ACK frame that would be {@link #writeAckFrame(ByteBuffer, long) written},
+     * or 0 if nothing was received yet
+     */
+    public int getAckFrameLength( long now ) {
+        if ( received.isEmpty() ) {
+            return 0;
+        }
+        return (int)( 1 + received.getEncodedLength()
+                + VariableLengthIntegerEncoder.getLengthInBytes( getEncodedAckDelay( now ) ) );
+    }
+
+    /**
+     * Creates an ACK frame of all retained packet numbers and resets the ACK timer
+     *
+     * @param now the time at which the frame is sent
+     * @return the frame or null if nothing was received yet
+     */
+    public AckFrameImpl createAckFrame( long now ) {
+        if ( received.isEmpty() ) {
+            return null;
+        }
+        AckFrameImpl frame = new AckFrameImpl( FrameType.ACK );
+        frame.setDelay( getEncodedAckDelay( now ) );
+        AckRangeSet ranges = frame.getRanges();
+        for ( int i = received.size() - 1; i >= 0; i-- ) {
+            ranges.addRange( received.getSmallest( i ), received.getLargest( i ) );
+        }
+        onAckSent();
+        return frame;
+    }
+
+    /**
+     * Writes an ACK frame (including its type) of all retained packet numbers without allocating
+     * and resets the ACK timer
+     *
+     * @param buffer the target with at least {@link #getAckFrameLength(long)} bytes remaining
+     * @param now    the time at which the frame is sent
+     * @return the number of bytes written, 0 if nothing was received yet
+     */
+    public int writeAckFrame( @NonNull ByteBuffer buffer, long now ) {
+        if ( received.isEmpty() ) {
+            return 0;
+        }
+        int start = buffer.position();
+        buffer.put( (byte)FrameType.ACK.getLongValue() );
+        received.encode( buffer, getEncodedAckDelay( now ) );
+        onAckSent();
+        return buffer.position() - start;
+    }
+
+    private void onAckSent() {
+        ackPending = false;
+        ackElicitingSinceLastAck = 0;
+        ackDeadline = NO_DEADLINE;
+    }
+
+    /**
+     * Called when a packet carrying an ACK frame of this tracker was acknowledged by the peer.
+     * The peer then knows about all packets up to the frames Largest Acknowledged, so they need not be
+     * acknowledged again and are treated as duplicates from then on.
+     *
+     * @param largestAcknowledged the Largest Acknowledged field of the acknowledged ACK frame
+     * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-transport-32#section-13.2.4">QUIC Spec/Section 13.2.4</a>
+     */
+    public void onAckFrameAcknowledged( long largestAcknowledged ) {
+        if ( largestAcknowledged < floor ) {
+            return;
+        }
+        received.removeBelow( largestAcknowledged );
+        floor = largestAcknowledged;
+        if ( received.isEmpty() ) {
+            ackPending = false;
+        }
+    }
+
+    /**
+     * @return the number of retained ranges of received packet numbers
+     */
+    public int getRangeCount() {
+        return received.size();
+    }
+}
@@ -0,0 +1,121 @@
+package com.timtrense.quic.impl.recovery;
+
+import java.util.concurrent.TimeUnit;
+import lombok.Getter;
+
+/**
+ * Estimates the round-trip time of a connection from the RTT samples of received ACK frames.
+ * All times are given in nanoseconds. Instances are not thread-safe.
+ *
+ * @author Tim Trense
+ * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-recovery-32#section-5">QUIC Spec-Recovery/Section 5</a>
+ */
+public class RttEstimator {
+
+    /**
+     * "The RTT used before an RTT sample is taken" QUIC Spec-Recovery/Section 6.2.2
+     */
+    public static final long INITIAL_RTT = TimeUnit.MILLISECONDS.toNanos( 333 );
+    /**
+     * "Timer granularity. This is a system-dependent value, and Section 6.1.2 recommends a value of 1ms."
+     * QUIC Spec-Recovery/Appendix A.2
+     */
+    public static final long GRANULARITY = TimeUnit.MILLISECONDS.toNanos( 1 );
+    /**
+     * "Period of time for persistent congestion to be established, specified as a PTO multiplier."
+     * QUIC Spec-Recovery/Appendix B.2
+     */
+    public static final int PERSISTENT_CONGESTION_THRESHOLD = 3;
+
+    /**
+     * The most recent RTT sample or 0
+     */
+    @Getter
+    private long latestRtt;
+    /**
+     * The exponentially-weighted moving average of the RTT samples, adjusted by the ACK delay
+     */
+    @Getter
+    private long smoothedRtt = INITIAL_RTT;
+    /**
+     * The mean deviation of the RTT samples
+     */
+    @Getter
+    private long rttVariance = INITIAL_RTT / 2;
+    /**
+     * The minimum RTT sample, not adjusted by the ACK delay, or 0
+     */
+    @Getter
+    private long minRtt;
+    /**
+     * Whether a sample was taken
+     */
+    @Getter
+    private boolean sampled;
+    /**
+     * The time of the first sample or {@link SentPacketLedger#NO_TIME}
+     */
+    @Getter
+    private long firstSampleTime = SentPacketLedger.NO_TIME;
+
+    /**
+     * adds an RTT sample
+     *
+     * @param latestRtt          the time between sending the largest acknowledged packet and receiving the ACK
+     * @param ackDelay           the decoded ACK Delay field of the ACK frame
+     * @param maxAckDelay        the max_ack_delay of the peer
+     * @param handshakeConfirmed whether the handshake is confirmed, which limits the ACK delay to maxAckDelay
+     * @param now                the current time
+     * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-recovery-32#appendix-A.7">QUIC Spec-Recovery/Appendix A.7</a>
+     */
+    public void update( long latestRtt, long ackDelay, long maxAckDelay, boolean handshakeConfirmed, long now ) {
+        latestRtt = Math.max( 0, latestRtt );
+        this.latestRtt = latestRtt;
+        if ( !sampled ) {
+            sampled = true;
+            firstSampleTime = now;
+            minRtt = latestRtt;
+            smoothedRtt = latestRtt;
+            rttVariance = latestRtt / 2;
+            return;
+        }
+        minRtt = Math.min( minRtt, latestRtt );
+        if ( handshakeConfirmed ) {
+            ackDelay = Math.min( ackDelay, maxAckDelay );
+        }
+        long adjustedRtt = latestRtt;
+        if ( latestRtt >= minRtt + ackDelay ) {
+            adjustedRtt = latestRtt - ackDelay;
+        }
+        rttVariance = ( 3 * rttVariance + Math.abs( smoothedRtt - adjustedRtt ) ) / 4;
+        smoothedRtt = ( 7 * smoothedRtt + adjustedRtt ) / 8;
+    }
+
+    /**
+     * @return the time after which a packet sent before an acknowledged one is declared lost,
+     * that is 9/8 of the larger of the smoothed and latest RTT, but at least {@link #GRANULARITY}
+     * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-recovery-32#section-6.1.2">QUIC Spec-Recovery/Section 6.1.2</a>
+     */
+    public long getLossDelay() {
+        long rtt = Math.max( smoothedRtt, latestRtt );
+        return Math.max( rtt + ( rtt >> 3 ), GRANULARITY );
+    }
+
+    /**
+     * @return the probe timeout without the peers max_ack_delay and backoff, that is
+     * smoothed RTT + max(4 * RTT variance, {@link #GRANULARITY})
+     * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-recovery-32#section-6.2.1">QUIC Spec-Recovery/Section 6.2.1</a>
+     */
+    public long getProbeTimeout() {
+        return smoothedRtt + Math.max( 4 * rttVariance, GRANULARITY );
+    }
+
+    /**
+     * @param maxAckDelay the max_ack_delay of the peer
+     * @return the minimum time between the send times of two lost packets to establish persistent congestion
+     * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-recovery-32#section-7.6.1">QUIC Spec-Recovery/Section 7.6.1</a>
+     */
+    public long getPersistentCongestionDuration( long maxAckDelay ) {
+        return ( getProbeTimeout() + maxAckDelay ) * PERSISTENT_CONGESTION_THRESHOLD;
+    }
+}
@@ -0,0 +1,26 @@
+package com.timtrense.quic.impl.recovery;
+
+import java.util.List;
+
+import com.timtrense.quic.Frame;
+
+/**
+ * Receives packets that leave a {@link SentPacketLedger}, because they were acknowledged, declared lost or
+ * discarded. All arguments are primitives or references held by the ledger, so no object is allocated per packet.
+ *
+ * @author Tim Trense
+ */
+@FunctionalInterface
+public interface SentPacketConsumer {
+
+    /**
+     * @param packetNumber the number of the packet
+     * @param sentTime     the time at which the packet was sent
+     * @param size         the number of bytes of the packet
+     * @param ackEliciting whether the packet contained ack-eliciting frames
+     * @param inFlight     whether the packet counted towards the bytes in flight
+     * @param frames       the retransmittable frames of the packet, as given when it was sent
+     */
+    void accept( long packetNumber, long sentTime, int size, boolean ackEliciting, boolean inFlight,
+                 List<Frame> frames );
+}
@@ -0,0 +1,389 @@
+package com.timtrense.quic.impl.recovery;
+
+import java.util.List;
+import lombok.Getter;
+import lombok.NonNull;
+
+import com.timtrense.quic.Frame;
+import com.timtrense.quic.impl.base.AckRangeSet;
+
+/**
+ * Holds the packets sent in one {@link com.timtrense.quic.PacketNumberSpace} until they are acknowledged,
+ * declared lost or discarded.
+ * <p>
+ * The packets are kept in a ring buffer indexed by their packet number, spanning from the smallest
+ * outstanding packet to the largest sent one. Every slot consists of parallel primitive arrays, so sending
+ * and acknowledging packets allocates nothing once the ring is large enough for the packets in flight.
+ * Processing an ACK frame visits its ranges from the largest down and skips everything below the smallest
+ * outstanding packet, so it takes time proportional to the acknowledged packets within the ring, independent of
+ * the number of packets in flight.
+ * <p>
+ * Packet numbers must be sent in increasing order, but may skip numbers. Instances are not thread-safe.
+ *
+ * @author Tim Trense
+ * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-recovery-32#appendix-A.1">QUIC Spec-Recovery/Appendix A.1</a>
+ */
+public class SentPacketLedger {
+
+    /**
+     * "Maximum reordering in packets before packet threshold loss detection considers a packet lost."
+     * QUIC Spec-Recovery/Section 6.1.1
+     */
+    public static final int PACKET_THRESHOLD = 3;
+    /**
+     * The default number of slots of the ring buffer
+     */
+    public static final int DEFAULT_INITIAL_CAPACITY = 256;
+    /**
+     * value of times that are not set
+     */
+    public static final long NO_TIME = Long.MAX_VALUE;
+
+    /**
+     * the slot holds an outstanding packet
+     */
+    private static final byte SENT = 1;
+    private static final byte ACK_ELICITING = 2;
+    private static final byte IN_FLIGHT = 4;
+    /**
+     * the slot held a packet that was acknowledged, kept until the ring moves past it
+     */
+    private static final byte ACKED = 8;
+
+    private long[] sentTimes;
+    private int[] sizes;
+    private byte[] flags;
+    private Object[] frames;
+    /**
+     * the number of slots minus one, the number of slots is a power of 2
+     */
+    private int mask;
+    /**
+     * the smallest packet number held by the ring
+     */
+    private long base;
+    /**
+     * the largest sent packet number plus one
+     */
+    private long next;
+
+    /**
+     * The largest packet number acknowledged by the peer or -1
+     */
+    @Getter
+    private long largestAcked = -1;
+    /**
+     * The sum of the sizes of all outstanding in-flight packets
+     */
+    @Getter
+    private long bytesInFlight;
+    /**
+     * The number of outstanding ack-eliciting in-flight packets
+     */
+    @Getter
+    private int ackElicitingInFlight;
+    /**
+     * The time at which the last ack-eliciting in-flight packet was sent
+     */
+    @Getter
+    private long timeOfLastAckElicitingPacket;
+    /**
+     * The time at which the next outstanding packet will be declared lost by time threshold or {@link #NO_TIME},
+     * as computed by the last {@link #detectLostPackets(long, long, long, SentPacketConsumer) detection}
+     */
+    @Getter
+    private long lossTime = NO_TIME;
+    /**
+     * Whether the last processed ACK frame newly acknowledged its Largest Acknowledged and at least one
+     * ack-eliciting packet, which makes it an RTT sample (QUIC Spec-Recovery/Section 5.1)
+     */
+    @Getter
+    private boolean rttSampleAvailable;
+    /**
+     * The time at which the Largest Acknowledged of the last processed ACK frame was sent, if it was
+     * {@link #isRttSampleAvailable() an RTT sample}
+     */
+    @Getter
+    private long rttSampleSentTime;
+    /**
+     * The longest time between the send times of two ack-eliciting packets declared lost by the last detection,
+     * without any acknowledged packet sent between them. Used to detect persistent congestion
+     */
+    @Getter
+    private long lostPeriod;
+
+    public SentPacketLedger() {
+        this( DEFAULT_INITIAL_CAPACITY );
+    }
+
+    /**
+     * @param initialCapacity the initial number of slots, rounded up to a power of 2. The ring grows when more
+     *                        packets are outstanding
+     */
+    public SentPacketLedger( int initialCapacity ) {
+        if ( initialCapacity <= 0 ) {
+            throw new IllegalArgumentException( "Cannot create a SentPacketLedger with non-positive capacity" );
+        }
+        allocate( ceilingPowerOfTwo( initialCapacity ) );
+    }
+
+    private static int ceilingPowerOfTwo( int value ) {
+        return value <= 1 ? 1 : Integer.highestOneBit( value - 1 ) << 1;
+    }
+
+    private void allocate( int capacity ) {
+        sentTimes = new long[capacity];
+        sizes = new int[capacity];
+        flags = new byte[capacity];
+        frames = new Object[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * @return the current number of slots of the ring buffer
+     */
+    public int getCapacity() {
+        return mask + 1;
+    }
+
+    /**
+     * @return the largest sent packet number or -1
+     */
+    public long getLargestSent() {
+        return next - 1;
+    }
+
+    /**
+     * @param packetNumber the packet number to check
+     * @return whether that packet was sent and is neither acknowledged nor declared lost nor discarded
+     */
+    public boolean isOutstanding( long packetNumber ) {
+        return packetNumber >= base && packetNumber < next && ( flags[slot( packetNumber )] & SENT ) != 0;
+    }
+
+    private int slot( long packetNumber ) {
+        return (int)( packetNumber & mask );
+    }
+
+    /**
+     * Records a sent packet
+     *
+     * @param packetNumber the number of the packet, larger than all previously sent ones
+     * @param sentTime     the time at which the packet was sent
+     * @param size         the number of bytes of the packet
+     * @param ackEliciting whether the packet contained ack-eliciting frames
+     * @param inFlight     whether the packet counts towards the bytes in flight, that is it contains other
+     *                     frames than ACK frames
+     * @param frames       the retransmittable frames of the packet, handed back when it leaves the ledger.
+     *                     Not copied, may be null
+     */
+    public void onPacketSent(
+            long packetNumber,
+            long sentTime,
+            int size,
+            boolean ackEliciting,
+            boolean inFlight,
+            List<Frame> frames
+    ) {
+        if ( packetNumber < next ) {
+            throw new IllegalArgumentException( "Cannot send packet number " + packetNumber
+                    + " after " + ( next - 1 ) );
+        }
+        if ( base == next ) {
+            // nothing outstanding, the ring can start anywhere
+            base = packetNumber;
+        }
+        else if ( packetNumber - base > mask ) {
+            grow( packetNumber - base + 1 );
+        }
+        int slot = slot( packetNumber );
+        sentTimes[slot] = sentTime;
+        sizes[slot] = size;
+        this.frames[slot] = frames;
+        byte f = SENT;
+        if ( ackEliciting ) {
+            f |= ACK_ELICITING;
+        }
+        if ( inFlight ) {
+            f |= IN_FLIGHT;
+            bytesInFlight += size;
+            if ( ackEliciting ) {
+                ackElicitingInFlight++;
+                timeOfLastAckElicitingPacket = sentTime;
+            }
+        }
+        flags[slot] = f;
+        next = packetNumber + 1;
+    }
+
+    private void grow( long required ) {
+        if ( required > ( 1 << 30 ) ) {
+            throw new IllegalStateException( "Cannot hold " + required + " outstanding packets" );
+        }
+        long[] oldSentTimes = sentTimes;
+        int[] oldSizes = sizes;
+        byte[] oldFlags = flags;
+        Object[] oldFrames = frames;
+        int oldMask = mask;
+        allocate( ceilingPowerOfTwo( (int)required ) );
+        for ( long pn = base; pn < next; pn++ ) {
+            int from = (int)( pn & oldMask );
+            int to = slot( pn );
+            sentTimes[to] = oldSentTimes[from];
+            sizes[to] = oldSizes[from];
+            flags[to] = oldFlags[from];
+            frames[to] = oldFrames[from];
+        }
+    }
+
+    /**
+     * Removes all newly acknowledged packets and updates {@link #isRttSampleAvailable()}.
+     * Acknowledged packet numbers that were never sent are ignored.
+     *
+     * @param ranges  the ranges of a received ACK frame
+     * @param onAcked receives every newly acknowledged packet, from the largest down
+     * @return the number of newly acknowledged packets
+     */
+    public int onAckReceived( @NonNull AckRangeSet ranges, @NonNull SentPacketConsumer onAcked ) {
+        rttSampleAvailable = false;
+        if ( ranges.isEmpty() ) {
+            return 0;
+        }
+        long largestAcknowledged = ranges.getLargestAcknowledged();
+        boolean largestNewlyAcked = false;
+        boolean ackElicitingNewlyAcked = false;
+        int newlyAcked = 0;
+        for ( int i = 0; i < ranges.size(); i++ ) {
+            long top = Math.min( ranges.getLargest( i ), next - 1 );
+            if ( top < base ) {
+                // all further ranges are even smaller
+                break;
+            }
+            long bottom = Math.max( ranges.getSmallest( i ), base );
+            for ( long pn = top; pn >= bottom; pn-- ) {
+                int slot = slot( pn );
+                byte f = flags[slot];
+                if ( ( f & SENT ) == 0 ) {
+                    continue;
+                }
+                if ( pn == largestAcknowledged ) {
+                    largestNewlyAcked = true;
+                    rttSampleSentTime = sentTimes[slot];
+                }
+                ackElicitingNewlyAcked |= ( f & ACK_ELICITING ) != 0;
+                newlyAcked++;
+                remove( pn, slot, ACKED, onAcked );
+            }
+        }
+        largestAcked = Math.max( largestAcked, Math.min( largestAcknowledged, next - 1 ) );
+        rttSampleAvailable = largestNewlyAcked && ackElicitingNewlyAcked;
+        advanceBase();
+        return newlyAcked;
+    }
+
+    /**
+     * Declares all outstanding packets below the {@link #getLargestAcked() largest acknowledged} one lost that
+     * exceed the packet or time threshold, and updates {@link #getLossTime()} and {@link #getLostPeriod()}
+     *
+     * @param lossDelay          the time after which a packet sent before an acknowledged one is lost
+     * @param now                the current time
+     * @param firstRttSampleTime the time of the first RTT sample, only packets sent afterwards count towards
+     *                           the {@link #getLostPeriod() lost period}
+     * @param onLost             receives every lost packet, in order of their packet numbers
+     * @return the number of lost packets
+     * @see <a href="https://tools.ietf.org/html/draft-ietf-quic-recovery-32#appendix-A.10">QUIC Spec-Recovery/Appendix A.10</a>
+     */
+    public int detectLostPackets(
+            long lossDelay,
+            long now,
+            long firstRttSampleTime,
+            @NonNull SentPacketConsumer onLost
+    ) {
+        lossTime = NO_TIME;
+        lostPeriod = 0;
+        long end = Math.min( largestAcked, next - 1 );
+        long lostSendTime = now - lossDelay;
+        boolean inLostRun = false;
+        long lostRunStart = 0;
+        int lost = 0;
+        for ( long pn = base; pn <= end; pn++ ) {
+            int slot = slot( pn );
+            byte f = flags[slot];
+            if ( ( f & ACKED ) != 0 ) {
+                inLostRun = false;
+                continue;
+            }
+            if ( ( f & SENT ) == 0 ) {
+                continue;
+            }
+            long sentTime = sentTimes[slot];
+            if ( sentTime <= lostSendTime || largestAcked >= pn + PACKET_THRESHOLD ) {
+                if ( ( f & ACK_ELICITING ) != 0 && sentTime > firstRttSampleTime ) {
+                    if ( !inLostRun ) {
+                        inLostRun = true;
+                        lostRunStart = sentTime;
+                    }
+                    lostPeriod = Math.max( lostPeriod, sentTime - lostRunStart );
+                }
+                lost++;
+                remove( pn, slot, (byte)0, onLost );
+            }
+            else {
+                lossTime = Math.min( lossTime, sentTime + lossDelay );
+            }
+        }
+        advanceBase();
+        return lost;
+    }
+
+    /**
+     * removes all outstanding packets, eg. when the keys of the packet number space are discarded
+     *
+     * @param onDiscarded receives every outstanding packet
+     * @return the number of discarded packets
+     */
+    public int discard( @NonNull SentPacketConsumer onDiscarded ) {
+        int discarded = 0;
+        for ( long pn = base; pn < next; pn++ ) {
+            int slot = slot( pn );
+            if ( ( flags[slot] & SENT ) != 0 ) {
+                discarded++;
+                remove( pn, slot, (byte)0, onDiscarded );
+            }
+        }
+        advanceBase();
+        lossTime = NO_TIME;
+        return discarded;
+    }
+
+    private void remove( long packetNumber, int slot, byte newFlags, SentPacketConsumer consumer ) {
+        byte f = flags[slot];
+        boolean ackEliciting = ( f & ACK_ELICITING ) != 0;
+        boolean inFlight = ( f & IN_FLIGHT ) != 0;
+        if ( inFlight ) {
+            bytesInFlight -= sizes[slot];
+            if ( ackEliciting ) {
+                ackElicitingInFlight--;
+            }
+        }
+        @SuppressWarnings( "unchecked" )
+        List<Frame> packetFrames = (List<Frame>)frames[slot];
+        frames[slot] = null;
+        flags[slot] = newFlags;
+        consumer.accept( packetNumber, sentTimes[slot], sizes[slot], ackEliciting, inFlight, packetFrames );
+    }
+
+    /**
+     * moves the start of the ring past all packets that are no longer outstanding
+     */
+    private void advanceBase() {
+        while ( base < next ) {
+            int slot = slot( base );
+            if ( ( flags[slot] & SENT ) != 0 ) {
+                return;
+            }
+            flags[slot] = 0;
+            base++;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+/**
+ * This package contains the bookkeeping of received and sent packets per
+ * {@link com.timtrense.quic.PacketNumberSpace}, that is acknowledgement generation and loss recovery
+ *
+ * @author Tim Trense
+ */
+package com.timtrense.quic.impl.recovery;
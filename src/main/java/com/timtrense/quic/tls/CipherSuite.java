@@ -39,12 +39,26 @@ public enum CipherSuite {
 
     CipherSuite( short value ) {this.value = value;}
 
-    public static CipherSuite findByValue( short value ) {
+    /**
+     * all cipher suites indexed by their value minus {@link #TLS_AES_128_GCM_SHA256 the lowest one}
+     */
+    private static final CipherSuite[] BY_VALUE = new CipherSuite[values().length];
+
+    static {
         for ( CipherSuite f : values() ) {
-            if ( f.value == value ) {
-                return f;
-            }
+            BY_VALUE[f.value - TLS_AES_128_GCM_SHA256.value] = f;
+        }
+    }
+
+    /**
+     * @param value the raw value of the cipher suite
+     * @return the cipher suite with the given value or null if there is none
+     */
+    public static CipherSuite findByValue( short value ) {
+        int index = value - TLS_AES_128_GCM_SHA256.value;
+        if ( index < 0 || index >= BY_VALUE.length ) {
+            return null;
         }
-        return null;
+        return BY_VALUE[index];
     }
 }
@@ -273,12 +273,35 @@ public enum ExtensionType {
 
     ExtensionType( long value ) {this.value = value;}
 
-    public static ExtensionType findByValue( int value ) {
+    /**
+     * all extension types with a value below 64 indexed by their value. The only larger ones
+     * are switched over in {@link #findByValue(int)}
+     */
+    private static final ExtensionType[] BY_SMALL_VALUE = new ExtensionType[64];
+
+    static {
         for ( ExtensionType f : values() ) {
-            if ( f.value == value ) {
-                return f;
+            if ( f.value < BY_SMALL_VALUE.length ) {
+                BY_SMALL_VALUE[(int)f.value] = f;
             }
         }
-        return null;
+    }
+
+    /**
+     * @param value the raw value of the extension type
+     * @return the extension type with the given value or null if there is none
+     */
+    public static ExtensionType findByValue( int value ) {
+        if ( value >= 0 && value < BY_SMALL_VALUE.length ) {
+            return BY_SMALL_VALUE[value];
+        }
+        switch ( value ) {
+            case 65281:
+                return RENEGOTIATION_INFO;
+            case 65445:
+                return QUIC_TRANSPORT_PARAMETERS;
+            default:
+                return null;
+        }
     }
 }
@@ -0,0 +1,28 @@
+package com.timtrense.quic;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @see FrameType
+ */
+public class FrameTypeTest {
+
+    @Test
+    public void findByValue_everyFrameType_givesSameFrameType() {
+        for ( FrameType f : FrameType.values() ) {
+            assertSame( f, FrameType.findByValue( f.getLongValue() ) );
+            assertSame( f, FrameType.findByValue( (int)f.getLongValue() ) );
+            assertSame( f, FrameType.findByValue( f.getValue() ) );
+        }
+    }
+
+    @Test
+    public void findByValue_unknownValues_givesNull() {
+        assertNull( FrameType.findByValue( -1L ) );
+        assertNull( FrameType.findByValue( 0x1fL ) );
+        assertNull( FrameType.findByValue( 0x100000000L ) ); // would wrap to PADDING if truncated to int
+    }
+}
@@ -0,0 +1,27 @@
+package com.timtrense.quic;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * @see ProtocolVersion
+ */
+public class ProtocolVersionTest {
+
+    @Test
+    public void findByValue_everyVersion_givesSameVersion() {
+        for ( ProtocolVersion v : ProtocolVersion.values() ) {
+            assertSame( v, ProtocolVersion.findByValue( v.getValue() ) );
+        }
+    }
+
+    @Test
+    public void findByValue_unknownVersions_givesNull() {
+        assertNull( ProtocolVersion.findByValue( 0xff000001 ) ); // draft 1
+        assertNull( ProtocolVersion.findByValue( 0xff0000ff ) ); // future draft
+        assertNull( ProtocolVersion.findByValue( 0xff010020 ) );
+        assertNull( ProtocolVersion.findByValue( 0x1a2a3a4a ) ); // reserved for version negotiation
+    }
+}
@@ -1,5 +1,8 @@
 package com.timtrense.quic;
 
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
 import org.junit.Test;
 
 import com.timtrense.quic.impl.base.StreamIdContext;
@@ -8,6 +11,8 @@
 import static com.timtrense.quic.EndpointRole.CLIENT;
 import static com.timtrense.quic.EndpointRole.SERVER;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 public class StreamIdContextTest {
@@ -100,7 +105,8 @@ public void createNewId_requestedIdAfterNotificationOnNewUnidirectional_returnsU
         StreamId notifiedId = context.notifyAboutNewId( 0b001011 );
         StreamId nextUnidirectional = context.createNewUnidirectionalId();
 
-        assertEquals( 0b001110, nextUnidirectional.getLongValue() );
+        // the ids of each type are counted independently
+        assertEquals( 0b000010, nextUnidirectional.getLongValue() );
     }
 
     @Test
@@ -112,7 +118,8 @@ public void createNewId_requestedIdAfter2NotificationOnNewUnidirectional_returns
         StreamId notifiedId2 = context.notifyAboutNewId( 0b001111 );
         StreamId nextUnidirectional = context.createNewUnidirectionalId();
 
-        assertEquals( 0b010010, nextUnidirectional.getLongValue() );
+        // the ids of each type are counted independently
+        assertEquals( 0b000010, nextUnidirectional.getLongValue() );
     }
 
     @Test
@@ -127,4 +134,84 @@ public void createNewId_notificationOnId_createsIdsInBetween() {
         assertEquals( 0b000111, context.getAllStreamIds().get( 1 ).getLongValue() );
         assertEquals( 0b001011, context.getAllStreamIds().get( 2 ).getLongValue() );
     }
+
+    @Test
+    public void notifyAboutNewId_farAwayId_knowsAllIdsInBetweenWithoutCreatingThem() {
+        StreamIdContext context = new StreamIdContextImpl( SERVER );
+
+        context.notifyAboutNewId( 4_000_000L );
+
+        assertEquals( 1_000_001, context.getAllStreamIds().size() );
+        assertEquals( 0L, context.getAllStreamIds().get( 0 ).getLongValue() );
+        assertEquals( 2_000_000L, context.getAllStreamIds().get( 500_000 ).getLongValue() );
+        assertTrue( context.isOpen( 1_234_560L ) );
+        assertFalse( context.isKnown( 4_000_004L ) );
+        assertEquals( 1_000_001L, context.getOpenCount( false, false ) );
+    }
+
+    @Test
+    public void notifyAboutNewId_alreadyKnownId_givesNull() {
+        StreamIdContext context = new StreamIdContextImpl( SERVER );
+
+        context.notifyAboutNewId( 8 );
+
+        assertNull( context.notifyAboutNewId( 4 ) );
+        assertNull( context.notifyAboutNewId( 8 ) );
+    }
+
+    @Test
+    public void getAllStreamIds_mixedTypes_sortedByValue() {
+        StreamIdContext context = new StreamIdContextImpl( SERVER );
+        context.createNewBidirectionalId(); // 1
+        context.createNewUnidirectionalId(); // 3
+        context.createNewUnidirectionalId(); // 7
+        context.notifyAboutNewId( 8 ); // 0, 4, 8
+        context.notifyAboutNewId( 2 ); // 2
+
+        long[] values = context.getAllStreamIds().stream().mapToLong( StreamId::getLongValue ).toArray();
+
+        assertEquals( "[0, 1, 2, 3, 4, 7, 8]", java.util.Arrays.toString( values ) );
+    }
+
+    @Test
+    public void notifyClosed_closingOutOfOrder_tracksOpenIds() {
+        StreamIdContext context = new StreamIdContextImpl( SERVER );
+        context.notifyAboutNewId( 16 ); // 0, 4, 8, 12, 16
+
+        assertTrue( context.notifyClosed( 8 ) );
+        assertTrue( context.notifyClosed( 0 ) );
+        assertFalse( context.notifyClosed( 0 ) );
+        assertTrue( context.notifyClosed( 4 ) );
+
+        assertFalse( context.isOpen( 0 ) );
+        assertFalse( context.isOpen( 4 ) );
+        assertFalse( context.isOpen( 8 ) );
+        assertTrue( context.isOpen( 12 ) );
+        assertTrue( context.isOpen( 16 ) );
+        assertFalse( context.notifyClosed( 20 ) );
+        assertEquals( 2L, context.getOpenCount( false, false ) );
+        assertEquals( 5, context.getAllStreamIds().size() );
+    }
+
+    @Test
+    public void notifyClosed_randomOrderAcrossManyWords_matchesClosedSet() {
+        StreamIdContext context = new StreamIdContextImpl( SERVER );
+        Random random = new Random( 42 );
+        Set<Long> closed = new HashSet<>();
+        long known = 0;
+        for ( int i = 0; i < 20000; i++ ) {
+            if ( known < 2000 || random.nextInt( 3 ) == 0 ) {
+                context.notifyAboutNewId( known * 4 );
+                known++;
+            }
+            // mostly close near the oldest ids, like streams that finish roughly in order
+            long countingValue = Math.max( 0, known - 1 - random.nextInt( (int)Math.min( known, 300 ) ) );
+            assertEquals( closed.add( countingValue ), context.notifyClosed( countingValue * 4 ) );
+        }
+
+        for ( long countingValue = 0; countingValue < known; countingValue++ ) {
+            assertEquals( !closed.contains( countingValue ), context.isOpen( countingValue * 4 ) );
+        }
+        assertEquals( known - closed.size(), context.getOpenCount( false, false ) );
+    }
 }
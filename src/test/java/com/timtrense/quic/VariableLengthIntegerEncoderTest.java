@@ -176,4 +176,89 @@ public void encodeFixedLengthInteger_258Length2Offset1_byteArrayOfZerosLeading0A
         VariableLengthIntegerEncoder.encodeFixedLengthInteger( 258, out, 1, 2 );
         assertArrayEquals( new byte[]{0, 1, 2, 0, 0, 0, 0, 0, 0, 0}, out );
     }
+
+    @Test
+    public void getLengthInBytes_boundaries_givesSpecLengths() {
+        assertEquals( 0, VariableLengthIntegerEncoder.getLengthInBytes( -1L ) );
+        assertEquals( 1, VariableLengthIntegerEncoder.getLengthInBytes( 0L ) );
+        assertEquals( 1, VariableLengthIntegerEncoder.getLengthInBytes( 63L ) );
+        assertEquals( 2, VariableLengthIntegerEncoder.getLengthInBytes( 64L ) );
+        assertEquals( 2, VariableLengthIntegerEncoder.getLengthInBytes( 16383L ) );
+        assertEquals( 4, VariableLengthIntegerEncoder.getLengthInBytes( 16384L ) );
+        assertEquals( 4, VariableLengthIntegerEncoder.getLengthInBytes( 1073741823L ) );
+        assertEquals( 8, VariableLengthIntegerEncoder.getLengthInBytes( 1073741824L ) );
+        assertEquals( 8, VariableLengthIntegerEncoder.getLengthInBytes( VariableLengthIntegerEncoder.MAX_VALUE ) );
+        assertEquals( 0, VariableLengthIntegerEncoder.getLengthInBytes( VariableLengthIntegerEncoder.MAX_VALUE + 1 ) );
+        assertEquals( 0, VariableLengthIntegerEncoder.getLengthInBytes( Long.MIN_VALUE ) );
+    }
+
+    @Test
+    public void decode_givenIndex_doesNotMovePosition() {
+        ByteBuffer buffer = ByteBuffer.allocateDirect( 5 );
+        buffer.put( new byte[]{0x25, (byte)0x9d, 0x7f, 0x3e, 0x7d} );
+        buffer.position( 0 );
+
+        long result = VariableLengthIntegerEncoder.decode( buffer, 1 );
+
+        assertEquals( 494878333L, result );
+        assertEquals( 0, buffer.position() );
+    }
+
+    @Test
+    public void decode_truncatedValue_givesMinusOneAndKeepsPosition() {
+        ByteBuffer buffer = ByteBuffer.wrap( new byte[]{(byte)0x9d, 0x7f, 0x3e} );
+
+        long result = VariableLengthIntegerEncoder.decode( buffer );
+
+        assertEquals( -1L, result );
+        assertEquals( 0, buffer.position() );
+    }
+
+    @Test
+    public void decode_givenByteArray_decodesCorrect() {
+        byte[] data = new byte[]{0, (byte)0xc2, 0x19, 0x7c, 0x5e, (byte)0xff, 0x14, (byte)0xe8, (byte)0x8c};
+
+        assertEquals( 151288809941952652L, VariableLengthIntegerEncoder.decode( data, 1, 8 ) );
+        assertEquals( -1L, VariableLengthIntegerEncoder.decode( data, 1, 7 ) );
+    }
+
+    @Test
+    public void decodeAll_givenSpecExamples_decodesAllAndMovesPosition() {
+        ByteBuffer buffer = ByteBuffer.wrap( new byte[]{
+                (byte)0xc2, 0x19, 0x7c, 0x5e, (byte)0xff, 0x14, (byte)0xe8, (byte)0x8c,
+                (byte)0x9d, 0x7f, 0x3e, 0x7d,
+                0x7b, (byte)0xbd,
+                0x25,
+                0x40 // truncated
+        } );
+        long[] values = new long[6];
+
+        int decoded = VariableLengthIntegerEncoder.decodeAll( buffer, values, 1, 5 );
+
+        assertEquals( 4, decoded );
+        assertArrayEquals( new long[]{0, 151288809941952652L, 494878333L, 15293L, 37L, 0}, values );
+        assertEquals( 15, buffer.position() );
+    }
+
+    @Test
+    public void encode_givenByteArray_encodesLikeByteBuffer() {
+        long[] values = new long[]{0, 37, 15293L, 494878333L, 151288809941952652L, VariableLengthIntegerEncoder.MAX_VALUE};
+        for ( long value : values ) {
+            byte[] expected = new byte[8];
+            int expectedLength = VariableLengthIntegerEncoder.encode( value, ByteBuffer.wrap( expected ) );
+            byte[] out = new byte[8];
+
+            int length = VariableLengthIntegerEncoder.encode( value, out, 0 );
+
+            assertEquals( expectedLength, length );
+            assertArrayEquals( expected, out );
+        }
+    }
+
+    @Test
+    public void encode_givenByteArrayTooShort_writesNothing() {
+        byte[] out = new byte[3];
+        assertEquals( 0, VariableLengthIntegerEncoder.encode( 494878333L, out, 0 ) );
+        assertArrayEquals( new byte[3], out );
+    }
 }
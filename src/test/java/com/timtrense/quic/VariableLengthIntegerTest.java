@@ -5,6 +5,8 @@
 import org.junit.Test;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
 
 public class VariableLengthIntegerTest {
 
@@ -61,4 +63,32 @@ public void encodingAndDecoding_ofAllConstants_remainsValue() {
         }
     }
 
+
+    @Test
+    public void valueOf_smallValues_givesCachedInstances() {
+        assertSame( VariableLengthInteger.valueOf( 0 ), VariableLengthInteger.valueOf( 0 ) );
+        assertSame( VariableLengthInteger.valueOf( 63 ), VariableLengthInteger.valueOf( 63 ) );
+        assertSame( VariableLengthInteger.valueOf( 64 ), VariableLengthInteger.valueOf( 64 ) );
+        assertSame( VariableLengthInteger.valueOf( 17 ), VariableLengthInteger.valueOf( 16 ).increment() );
+        assertEquals( 2, VariableLengthInteger.valueOf( 64 ).getEncodedLengthInBytes() );
+    }
+
+    @Test
+    public void valueOf_largeValues_givesEqualInstances() {
+        VariableLengthInteger large = VariableLengthInteger.valueOf( 1073741824L );
+        assertEquals( new VariableLengthInteger( 1073741824L ), large );
+        assertNotSame( large, VariableLengthInteger.valueOf( 1073741824L ) );
+        assertEquals( 8, large.getEncodedLengthInBytes() );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void valueOf_negativeValue_throws() {
+        VariableLengthInteger.valueOf( -1 );
+    }
+
+    @Test
+    public void decode_smallValue_givesCachedInstance() {
+        VariableLengthInteger decoded = VariableLengthInteger.decode( ByteBuffer.wrap( new byte[]{0x40, 0x25} ) );
+        assertSame( VariableLengthInteger.valueOf( 37 ), decoded );
+    }
 }
@@ -0,0 +1,69 @@
+package com.timtrense.quic.impl;
+
+import java.nio.ByteBuffer;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @see ByteBufferPool
+ */
+public class ByteBufferPoolTest {
+
+    @Test
+    public void giveBack_usedBuffer_isRecycledCleared() {
+        ByteBufferPool pool = new ByteBufferPool( 2, 1500, true );
+        ByteBuffer buffer = pool.take();
+        buffer.put( new byte[100] ).flip(); // as if a datagram of 100 bytes was received
+
+        assertTrue( pool.giveBack( buffer ) );
+        ByteBuffer reused = pool.take();
+
+        assertSame( buffer, reused );
+        assertTrue( reused.isDirect() );
+        assertEquals( 0, reused.position() );
+        assertEquals( 1500, reused.limit() );
+    }
+
+    @Test
+    public void take_steadyState_allocatesOnce() {
+        ByteBufferPool pool = new ByteBufferPool( 4, 1500, false );
+        for ( int i = 0; i < 1000; i++ ) {
+            ByteBuffer buffer = pool.take();
+            buffer.position( i % 1500 );
+            pool.giveBack( buffer );
+        }
+
+        assertEquals( 1, pool.getAllocationCount() );
+        assertEquals( 1, pool.getMissCount() );
+        assertEquals( 999, pool.getHitCount() );
+        assertEquals( 1000, pool.getRecycleCount() );
+        assertEquals( 0, pool.getDiscardCount() );
+    }
+
+    @Test
+    public void giveBack_poolFull_discards() {
+        ByteBufferPool pool = new ByteBufferPool( 1, 100, false );
+        ByteBuffer first = pool.take();
+        ByteBuffer second = pool.take();
+
+        assertTrue( pool.giveBack( first ) );
+        assertFalse( pool.giveBack( second ) );
+        assertEquals( 2, pool.getAllocationCount() );
+        assertEquals( 1, pool.getDiscardCount() );
+    }
+
+    @Test
+    public void giveBack_foreignBuffers_discards() {
+        ByteBufferPool pool = new ByteBufferPool( 4, 100, true );
+
+        assertFalse( pool.giveBack( ByteBuffer.allocateDirect( 200 ) ) );
+        assertFalse( pool.giveBack( ByteBuffer.allocate( 100 ) ) );
+        assertFalse( pool.giveBack( ByteBuffer.allocateDirect( 100 ).asReadOnlyBuffer() ) );
+        assertEquals( 3, pool.getDiscardCount() );
+        assertEquals( 0, pool.getRecycleCount() );
+    }
+}
@@ -0,0 +1,136 @@
+package com.timtrense.quic.impl;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @see ChannelReceiver
+ */
+public class ChannelReceiverTest {
+
+    @Test( timeout = 10000 )
+    public void run_blockingChannel_receivesIntoPooledBuffers() throws Exception {
+        final int datagramCount = 100;
+        try ( DatagramChannel channel = DatagramChannel.open();
+              DatagramChannel peerChannel = DatagramChannel.open() ) {
+            channel.bind( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ) );
+            peerChannel.connect( channel.getLocalAddress() );
+            BlockingQueue<ReceivedDatagram> receivedQueue = new LinkedBlockingQueue<>();
+            ChannelReceiver receiver = new ChannelReceiver( channel, receivedQueue, new EndpointConfiguration() );
+            receiver.start();
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate( 100 );
+                for ( int i = 0; i < datagramCount; i++ ) {
+                    buffer.clear();
+                    buffer.putInt( i ).position( 100 ).flip();
+                    peerChannel.write( buffer );
+
+                    ReceivedDatagram received = receivedQueue.poll( 5, TimeUnit.SECONDS );
+                    assertNotNull( received );
+                    assertEquals( i, received.getNumber() );
+                    assertEquals( peerChannel.getLocalAddress(), received.getSender() );
+                    assertTrue( received.getBuffer().isDirect() );
+                    assertEquals( 0, received.getBuffer().position() );
+                    assertEquals( 100, received.getBuffer().limit() );
+                    assertEquals( i, received.getBuffer().getInt( 0 ) );
+                    // as if parsing finished
+                    receiver.getBufferPool().giveBack( received.getBuffer() );
+                }
+            }
+            finally {
+                // closes the channel, as it is interruptible
+                receiver.interrupt();
+                receiver.join();
+            }
+
+            assertEquals( ReceiverState.STOP, receiver.getReceiverState() );
+            // at most the receiver waits for the next datagram with one buffer while the other one is parsed
+            assertTrue( receiver.getBufferPool().getAllocationCount() <= 2 );
+        }
+    }
+
+    @Test( timeout = 10000 )
+    public void interrupt_nonBlockingChannelWithoutDatagrams_stops() throws Exception {
+        try ( DatagramChannel channel = DatagramChannel.open() ) {
+            channel.bind( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ) );
+            channel.configureBlocking( false );
+            ChannelReceiver receiver = new ChannelReceiver(
+                    channel, new LinkedBlockingQueue<>(), new EndpointConfiguration() );
+            receiver.start();
+            while ( receiver.getReceiverState() != ReceiverState.ACTIVE ) {
+                Thread.yield();
+            }
+
+            receiver.interrupt();
+            receiver.join();
+
+            assertEquals( ReceiverState.STOP, receiver.getReceiverState() );
+            // the buffer taken for the datagram that never arrived was given back
+            assertEquals( receiver.getBufferPool().getAllocationCount(), receiver.getBufferPool().getRecycleCount() );
+        }
+    }
+
+    @Test( timeout = 30000 )
+    public void run_channelSharedWithSender_answersFromTheAddressedSocket() throws Exception {
+        final int datagramCount = 200;
+        EndpointConfiguration configuration = new EndpointConfiguration();
+        try ( DatagramChannel endpointChannel = DatagramChannel.open();
+              DatagramChannel peerChannel = DatagramChannel.open() ) {
+            endpointChannel.bind( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ) );
+            endpointChannel.configureBlocking( false );
+            peerChannel.bind( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ) );
+            // the peer only accepts datagrams from the address it sent to
+            peerChannel.connect( endpointChannel.getLocalAddress() );
+
+            BlockingQueue<ReceivedDatagram> receivedQueue = new LinkedBlockingQueue<>();
+            ChannelReceiver receiver = new ChannelReceiver( endpointChannel, receivedQueue, configuration );
+            Sender sender = new Sender( endpointChannel,
+                    new ArrayBlockingQueue<>( configuration.getSendDatagramQueueSizeLimit() ), configuration );
+            receiver.start();
+            sender.start();
+            try {
+                ByteBuffer buffer = ByteBuffer.allocate( 1200 );
+                for ( int i = 0; i < datagramCount; i++ ) {
+                    buffer.clear();
+                    buffer.putInt( i ).position( 100 ).flip();
+                    peerChannel.write( buffer );
+
+                    // echo the datagram back to where it came from, giving the buffer back to the receiver
+                    ReceivedDatagram received = receivedQueue.poll( 5, TimeUnit.SECONDS );
+                    assertNotNull( received );
+                    assertEquals( peerChannel.getLocalAddress(), received.getSender() );
+                    assertEquals( 100, received.getBuffer().remaining() );
+                    while ( !sender.send( new OutgoingDatagram(
+                            received.getBuffer(), received.getSender(), receiver.getBufferPool() ) ) ) {
+                        Thread.yield();
+                    }
+
+                    buffer.clear();
+                    assertEquals( 100, peerChannel.read( buffer ) );
+                    assertEquals( i, buffer.getInt( 0 ) );
+                }
+            }
+            finally {
+                receiver.interrupt();
+                sender.interrupt();
+                receiver.join();
+                sender.join();
+            }
+
+            assertEquals( ReceiverState.STOP, receiver.getReceiverState() );
+            assertEquals( SenderState.STOP, sender.getSenderState() );
+            assertEquals( datagramCount, sender.getSentCount() );
+        }
+    }
+}
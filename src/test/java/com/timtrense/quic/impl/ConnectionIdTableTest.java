@@ -0,0 +1,118 @@
+package com.timtrense.quic.impl;
+
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.timtrense.quic.ConnectionId;
+import com.timtrense.quic.EncryptionLevel;
+import com.timtrense.quic.VariableLengthInteger;
+import com.timtrense.quic.impl.base.ConnectionIdImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @see ConnectionIdTable
+ */
+public class ConnectionIdTableTest {
+
+    private static ConnectionId connectionId( int... bytes ) {
+        byte[] value = new byte[bytes.length];
+        for ( int i = 0; i < bytes.length; i++ ) {
+            value[i] = (byte)bytes[i];
+        }
+        return new ConnectionIdImpl( value, VariableLengthInteger.ZERO );
+    }
+
+    private static Connection newConnection() {
+        return new Connection() {
+            @Override
+            public Set<ConnectionId> getRemoteConnectionIds() {
+                return Collections.emptySet();
+            }
+
+            @Override
+            public PacketProtection getPacketProtection( EncryptionLevel encryptionLevel ) {
+                return null;
+            }
+        };
+    }
+
+    @Test
+    public void get_givenSliceOfDatagram_findsConnection() {
+        ConnectionIdTable table = new ConnectionIdTable();
+        Connection connection = newConnection();
+        table.put( connectionId( 1, 2, 3, 4 ), connection );
+
+        ByteBuffer heapDatagram = ByteBuffer.wrap( new byte[]{0x40, 1, 2, 3, 4, 0x55} );
+        ByteBuffer directDatagram = ByteBuffer.allocateDirect( 6 );
+        directDatagram.put( heapDatagram.duplicate() ).flip();
+
+        assertSame( connection, table.get( heapDatagram, 1, 4 ) );
+        assertSame( connection, table.get( directDatagram, 1, 4 ) );
+        assertSame( connection, table.get( new byte[]{1, 2, 3, 4}, 0, 4 ) );
+        assertNull( table.get( heapDatagram, 1, 3 ) );
+        assertNull( table.get( heapDatagram, 2, 4 ) );
+    }
+
+    @Test
+    public void remove_givenMappedId_isNotFoundAnymore() {
+        ConnectionIdTable table = new ConnectionIdTable();
+        Connection connection = newConnection();
+        table.put( connectionId( 9, 8, 7 ), connection );
+
+        assertSame( connection, table.remove( connectionId( 9, 8, 7 ) ) );
+        assertFalse( table.contains( new byte[]{9, 8, 7}, 0, 3 ) );
+        assertEquals( 0, table.size() );
+    }
+
+    @Test
+    public void put_manyIdsWithRemovals_growsAndKeepsAllMappings() {
+        ConnectionIdTable table = new ConnectionIdTable( 2, 42 );
+        Connection connection = newConnection();
+        for ( int i = 0; i < 10_000; i++ ) {
+            table.put( connectionId( i >> 8, i, 0x11 ), connection );
+            if ( i % 3 == 0 ) {
+                table.remove( connectionId( i >> 8, i, 0x11 ) );
+            }
+        }
+        for ( int i = 0; i < 10_000; i++ ) {
+            boolean expected = i % 3 != 0;
+            assertEquals( expected, table.contains( new byte[]{(byte)( i >> 8 ), (byte)i, 0x11}, 0, 3 ) );
+        }
+        assertEquals( 10_000 - 3334, table.size() );
+    }
+
+    @Test
+    public void removeAll_givenConnection_removesOnlyItsIds() {
+        ConnectionIdTable table = new ConnectionIdTable();
+        Connection first = newConnection();
+        Connection second = newConnection();
+        table.put( connectionId( 1 ), first );
+        table.put( connectionId( 2 ), first );
+        table.put( connectionId( 3 ), second );
+
+        assertEquals( 2, table.removeAll( first ) );
+        assertEquals( 1, table.size() );
+        assertTrue( table.contains( new byte[]{3}, 0, 1 ) );
+    }
+
+    @Test
+    public void findConnectionIdLength_mixedLengths_givesLengthOfMappedId() {
+        ConnectionIdTable table = new ConnectionIdTable();
+        table.put( connectionId( 1, 2, 3, 4 ), newConnection() );
+        table.put( connectionId( 5, 6 ), newConnection() );
+        ByteBuffer data = ByteBuffer.wrap( new byte[]{ 5, 6, 7, 8, 9 } );
+
+        assertEquals( ( 1 << 4 ) | ( 1 << 2 ), table.getConnectionIdLengths() );
+        assertEquals( 2, table.findConnectionIdLength( data, 0, 5 ) );
+        assertEquals( 4, table.findConnectionIdLength( ByteBuffer.wrap( new byte[]{ 1, 2, 3, 4 } ), 0, 4 ) );
+        assertEquals( -1, table.findConnectionIdLength( data, 1, 4 ) );
+    }
+}
@@ -0,0 +1,76 @@
+package com.timtrense.quic.impl;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.concurrent.ArrayBlockingQueue;
+import org.junit.Test;
+
+import com.timtrense.quic.ConnectionId;
+import com.timtrense.quic.EndpointRole;
+import com.timtrense.quic.FrameType;
+import com.timtrense.quic.PacketNumberSpace;
+import com.timtrense.quic.ProtocolVersion;
+import com.timtrense.quic.VariableLengthInteger;
+import com.timtrense.quic.impl.base.ConnectionIdImpl;
+import com.timtrense.quic.impl.base.InitialPacketProtectionImpl;
+import com.timtrense.quic.impl.frames.CryptoFrameImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @see ConnectionSender
+ */
+public class ConnectionSenderTest {
+
+    private static final ConnectionId DESTINATION_CONNECTION_ID = new ConnectionIdImpl(
+            new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8 }, VariableLengthInteger.ZERO );
+
+    @Test( timeout = 10000 )
+    public void sendNextDatagram_senderDoesNotAccept_stopsAssemblingUntilRetried() throws Exception {
+        InitialPacketProtectionImpl protection = new InitialPacketProtectionImpl( EndpointRole.CLIENT );
+        protection.initialize( DESTINATION_CONNECTION_ID );
+        PacketAssembler assembler = new PacketAssembler( EndpointRole.CLIENT, new ByteBufferPool( 4, 1500, false ) );
+        assembler.setVersion( ProtocolVersion.IETF_DRAFT_32 );
+        assembler.setDestinationConnectionId( DESTINATION_CONNECTION_ID );
+        assembler.setPacketSealer( PacketNumberSpace.INITIAL, protection );
+        for ( int i = 0; i < 3; i++ ) {
+            CryptoFrameImpl frame = new CryptoFrameImpl( FrameType.CRYPTO );
+            frame.setOffset( i * 1000 );
+            frame.setLength( 1000 );
+            frame.setCryptoData( ByteBuffer.allocate( 1000 ) );
+            assembler.getSendQueue( PacketNumberSpace.INITIAL ).add( frame );
+        }
+        EndpointConfiguration configuration = new EndpointConfiguration();
+        configuration.setAssemblerSendQueueBlockTimeout( 10 );
+        try ( DatagramChannel channel = DatagramChannel.open() ) {
+            channel.configureBlocking( false );
+            // the sender is not started, thus its queue of one datagram is never drained
+            Sender sender = new Sender( channel, new ArrayBlockingQueue<>( 1 ), configuration );
+            ConnectionSender connectionSender = new ConnectionSender( assembler, sender );
+
+            assertTrue( connectionSender.sendNextDatagram( 0 ) > 0 );
+            assertFalse( connectionSender.isBlocked() );
+            assertEquals( 0, connectionSender.sendNextDatagram( 0 ) );
+            assertTrue( connectionSender.isBlocked() );
+            assertEquals( 2, assembler.getNextPacketNumber( PacketNumberSpace.INITIAL ) );
+
+            // nothing is assembled while the sender does not accept the pending datagram
+            assertEquals( 0, connectionSender.sendNextDatagram( 0 ) );
+            assertEquals( 2, assembler.getNextPacketNumber( PacketNumberSpace.INITIAL ) );
+            assertEquals( 1, assembler.getSendQueue( PacketNumberSpace.INITIAL ).size() );
+
+            OutgoingDatagram first = sender.getSendQueue().poll();
+            assertNotNull( first );
+            assertTrue( connectionSender.sendNextDatagram( 0 ) > 0 );
+            assertFalse( connectionSender.isBlocked() );
+            assertEquals( 2, assembler.getNextPacketNumber( PacketNumberSpace.INITIAL ) );
+            OutgoingDatagram second = sender.getSendQueue().peek();
+            assertNotNull( second );
+            assertSame( assembler.getBufferPool(), second.getRecycler() );
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.timtrense.quic.impl;
+
+import java.net.DatagramPacket;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.concurrent.LinkedBlockingQueue;
+import org.junit.Test;
+
+import com.timtrense.quic.EndpointRole;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class DatagramParserGroupTest {
+
+    private static final byte[] CID_A = { 1, 2, 3, 4, 5, 6, 7, 8 };
+    private static final byte[] CID_B = { 8, 7, 6, 5, 4, 3, 2, 1 };
+
+    private static ReceivedDatagram longHeaderDatagram( byte[] cid ) {
+        byte[] data = new byte[6 + cid.length + 20];
+        data[0] = (byte)0xC0;
+        data[4] = 0x01;
+        data[5] = (byte)cid.length;
+        System.arraycopy( cid, 0, data, 6, cid.length );
+        return new ReceivedDatagram( new DatagramPacket( data, data.length ), Instant.now() );
+    }
+
+    private static ReceivedDatagram shortHeaderDatagram( byte[] cid ) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect( 1 + cid.length + 20 );
+        buffer.put( (byte)0x40 );
+        buffer.put( cid );
+        buffer.position( buffer.limit() );
+        buffer.flip();
+        return new ReceivedDatagram( buffer, null, Instant.now(), 0, (short)0 );
+    }
+
+    @Test
+    public void hashDestinationConnectionId_longAndShortHeader_equalForSameId() {
+        int longHash = DatagramParserGroup.hashDestinationConnectionId( longHeaderDatagram( CID_A ), 8 );
+        int shortHash = DatagramParserGroup.hashDestinationConnectionId( shortHeaderDatagram( CID_A ), 8 );
+        int otherHash = DatagramParserGroup.hashDestinationConnectionId( shortHeaderDatagram( CID_B ), 8 );
+
+        assertEquals( longHash, shortHash );
+        assertNotEquals( longHash, otherHash );
+    }
+
+    @Test
+    public void hashDestinationConnectionId_truncated_isZero() {
+        byte[] data = { (byte)0xC0, 0, 0, 0, 1, 20, 1, 2 };
+        ReceivedDatagram datagram = new ReceivedDatagram( new DatagramPacket( data, data.length ), Instant.now() );
+
+        assertEquals( 0, DatagramParserGroup.hashDestinationConnectionId( datagram, 8 ) );
+    }
+
+    @Test
+    public void dispatchQueue_sameConnectionId_routesToSameWorker() {
+        EndpointConfiguration configuration = new EndpointConfiguration();
+        configuration.setParserCount( 4 );
+        configuration.setParseDatagramQueueSizeLimit( 16 );
+        DatagramParserGroup group = new DatagramParserGroup(
+                new LinkedBlockingQueue<>(),
+                configuration,
+                new PacketParserImpl( new Endpoint( EndpointRole.SERVER ) )
+        );
+
+        ReceivedDatagram first = longHeaderDatagram( CID_A );
+        ReceivedDatagram second = shortHeaderDatagram( CID_A );
+        assertTrue( group.getDispatchQueue().offer( first ) );
+        assertTrue( group.getDispatchQueue().offer( second ) );
+
+        int worker = group.selectWorker( first );
+        assertEquals( worker, group.selectWorker( second ) );
+        assertEquals( 2, group.getQueueDepth( worker ) );
+        assertEquals( 2, group.getDispatchQueue().size() );
+        assertEquals( 0.0, group.getUtilization( worker ), 0.0 );
+    }
+}
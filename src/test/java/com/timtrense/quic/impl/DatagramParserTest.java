@@ -0,0 +1,86 @@
+package com.timtrense.quic.impl;
+
+import java.net.DatagramPacket;
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import com.timtrense.quic.ConnectionId;
+import com.timtrense.quic.EndpointRole;
+import com.timtrense.quic.FrameType;
+import com.timtrense.quic.Packet;
+import com.timtrense.quic.PacketNumberSpace;
+import com.timtrense.quic.ProtocolVersion;
+import com.timtrense.quic.VariableLengthInteger;
+import com.timtrense.quic.impl.base.ConnectionIdImpl;
+import com.timtrense.quic.impl.base.InitialPacketProtectionImpl;
+import com.timtrense.quic.impl.frames.CryptoFrameImpl;
+import com.timtrense.quic.impl.packets.InitialPacketImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @see DatagramParser
+ */
+public class DatagramParserTest {
+
+    @Test( timeout = 10000 )
+    public void run_datagramRecycledAfterDelivery_deliveredFramesKeepTheirPayload() throws Exception {
+        ConnectionId connectionId = new ConnectionIdImpl( new byte[]{ 1, 2, 3, 4, 5, 6, 7, 8 },
+                VariableLengthInteger.ZERO );
+        InitialPacketProtectionImpl protection = new InitialPacketProtectionImpl( EndpointRole.CLIENT );
+        protection.initialize( connectionId );
+        PacketAssembler assembler = new PacketAssembler( EndpointRole.CLIENT, new ByteBufferPool( 1, 1500, true ) );
+        assembler.setVersion( ProtocolVersion.IETF_DRAFT_32 );
+        assembler.setDestinationConnectionId( connectionId );
+        assembler.setPacketSealer( PacketNumberSpace.INITIAL, protection );
+        byte[] cryptoData = new byte[100];
+        Arrays.fill( cryptoData, (byte)0x2a );
+        CryptoFrameImpl frame = new CryptoFrameImpl( FrameType.CRYPTO );
+        frame.setLength( cryptoData.length );
+        frame.setCryptoData( ByteBuffer.wrap( cryptoData ) );
+        assembler.getSendQueue( PacketNumberSpace.INITIAL ).add( frame );
+        ByteBuffer datagram = assembler.assemble( 0 );
+
+        BlockingQueue<Packet> parsedQueue = new LinkedBlockingQueue<>();
+        DatagramParser parser = new DatagramParser( parsedQueue, new EndpointConfiguration(),
+                new PacketParserImpl( new Endpoint( EndpointRole.SERVER ) ) );
+        CountDownLatch recycled = new CountDownLatch( 1 );
+        parser.setDatagramRecycler( new DatagramRecycler() {
+            @Override
+            public boolean giveBack( DatagramPacket datagramPacket ) {
+                return false;
+            }
+
+            @Override
+            public boolean giveBack( ByteBuffer buffer ) {
+                // as if the next datagram was received into the buffer
+                for ( int i = 0; i < buffer.limit(); i++ ) {
+                    buffer.put( i, (byte)0 );
+                }
+                recycled.countDown();
+                return true;
+            }
+        } );
+        Thread thread = new Thread( parser );
+        thread.start();
+        try {
+            parser.getParseQueue().put( new ReceivedDatagram( datagram, null, Instant.now(), 0, (short)0 ) );
+
+            InitialPacketImpl packet = (InitialPacketImpl)parsedQueue.poll( 5, TimeUnit.SECONDS );
+            assertTrue( recycled.await( 5, TimeUnit.SECONDS ) );
+
+            CryptoFrameImpl parsedFrame = (CryptoFrameImpl)packet.getPayload().get( 0 );
+            assertEquals( ByteBuffer.wrap( cryptoData ), parsedFrame.getCryptoData() );
+        }
+        finally {
+            thread.interrupt();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package com.timtrense.quic.impl;
+
+import java.lang.management.ManagementFactory;
+import java.net.DatagramPacket;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @see DatagramPool
+ */
+public class DatagramPoolTest {
+
+    @Test
+    public void giveBack_shrunkLength_isRecycledWithFullLength() {
+        DatagramPool pool = new DatagramPool( 2, 1600 );
+        DatagramPacket datagram = pool.take();
+        datagram.setLength( 100 ); // as if socket.receive received 100 bytes
+
+        assertTrue( pool.giveBack( datagram ) );
+        DatagramPacket reused = pool.take();
+
+        assertSame( datagram, reused );
+        assertEquals( 1600, reused.getLength() );
+        assertEquals( 0, reused.getOffset() );
+    }
+
+    @Test
+    public void take_steadyState_allocatesNothing() {
+        DatagramPool pool = new DatagramPool( 4, 1600 );
+        for ( int i = 0; i < 1000; i++ ) {
+            DatagramPacket datagram = pool.take();
+            datagram.setLength( i % 1600 );
+            pool.giveBack( datagram );
+        }
+
+        assertEquals( 1, pool.getAllocationCount() );
+        assertEquals( 1, pool.getMissCount() );
+        assertEquals( 999, pool.getHitCount() );
+        assertEquals( 1000, pool.getRecycleCount() );
+        assertEquals( 0, pool.getDiscardCount() );
+    }
+
+    @Test
+    public void take_steadyState_allocatesNoBytes() {
+        DatagramPool pool = new DatagramPool( 4, 1600 );
+        pool.giveBack( pool.take() );
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes( threadId );
+
+        for ( int i = 0; i < 10000; i++ ) {
+            pool.giveBack( pool.take() );
+        }
+
+        long allocated = threads.getThreadAllocatedBytes( threadId ) - allocatedBefore;
+        assertTrue( "allocated " + allocated + " bytes", allocated < 10000 );
+    }
+
+    @Test
+    public void giveBack_poolFull_discards() {
+        DatagramPool pool = new DatagramPool( 1, 100 );
+        DatagramPacket first = pool.take();
+        DatagramPacket second = pool.take();
+
+        assertTrue( pool.giveBack( first ) );
+        assertFalse( pool.giveBack( second ) );
+        assertEquals( 1, pool.getDiscardCount() );
+    }
+
+    @Test
+    public void setMaxDatagramSize_changed_dropsAndRejectsOldBuffers() {
+        DatagramPool pool = new DatagramPool( 2, 100 );
+        DatagramPacket old = pool.take();
+        DatagramPacket pooled = pool.take();
+        pool.giveBack( pooled );
+
+        pool.setMaxDatagramSize( 200 );
+
+        assertFalse( pool.giveBack( old ) );
+        DatagramPacket fresh = pool.take();
+        assertNotSame( pooled, fresh );
+        assertEquals( 200, fresh.getData().length );
+        assertTrue( pool.giveBack( fresh ) );
+    }
+
+    @Test
+    public void take_concurrentUsage_neverHandsOutTheSameDatagramTwice() throws InterruptedException {
+        DatagramPool pool = new DatagramPool( 8, 64 );
+        int threadCount = 4;
+        Thread[] threads = new Thread[threadCount];
+        boolean[] failed = new boolean[1];
+        for ( int t = 0; t < threadCount; t++ ) {
+            threads[t] = new Thread( () -> {
+                for ( int i = 0; i < 10000; i++ ) {
+                    DatagramPacket datagram = pool.take();
+                    byte[] data = datagram.getData();
+                    byte marker = (byte)Thread.currentThread().getId();
+                    data[0] = marker;
+                    Thread.yield();
+                    if ( data[0] != marker ) {
+                        failed[0] = true;
+                    }
+                    pool.giveBack( datagram );
+                }
+            } );
+            threads[t].start();
+        }
+        for ( Thread thread : threads ) {
+            thread.join();
+        }
+
+        assertFalse( failed[0] );
+        assertTrue( pool.getHitCount() > pool.getMissCount() );
+    }
+}
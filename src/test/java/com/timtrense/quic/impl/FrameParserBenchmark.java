@@ -0,0 +1,221 @@
+package com.timtrense.quic.impl;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+
+import com.timtrense.quic.EndpointRole;
+import com.timtrense.quic.FrameType;
+import com.timtrense.quic.Packet;
+import com.timtrense.quic.ProtocolVersion;
+import com.timtrense.quic.impl.base.VariableLengthIntegerEncoder;
+import com.timtrense.quic.impl.packets.InitialPacketImpl;
+import com.timtrense.quic.impl.packets.ShortHeaderPacketImpl;
+import com.timtrense.quic.tls.CipherSuite;
+import com.timtrense.quic.tls.ExtensionType;
+
+/**
+ * Measures parsing a handshake payload of mixed frames, the throughput of parsing 1-RTT payloads into frames and
+ * with a {@link FrameHandler}
+ * and the lookups of {@link FrameType}, {@link ProtocolVersion},
+ * {@link ExtensionType} and {@link CipherSuite} by their values, compared to iterating the values of the enums.
+ * This is no unit test, run it manually via its {@link #main(String[]) main method}.
+ *
+ * @author Tim Trense
+ */
+public class FrameParserBenchmark {
+
+    private static final int PAYLOADS = 200_000;
+    private static final int LOOKUPS = 10_000_000;
+    private static final int RUNS = 5;
+
+    public static void main( String[] args ) throws Exception {
+        byte[] payload = createMixedPayload();
+        byte[] shortHeaderPayload = createShortHeaderPayload();
+        FrameParser parser = new FrameParserImpl( new Endpoint( EndpointRole.SERVER ) );
+        InitialPacketImpl packet = new InitialPacketImpl();
+        ShortHeaderPacketImpl shortHeaderPacket = new ShortHeaderPacketImpl();
+
+        for ( int run = 0; run < RUNS; run++ ) {
+            System.out.println( "run " + run + ( run == 0 ? " (warmup)" : "" ) );
+            System.out.printf( "  mixed frames payload: %,8.0f ns/payload%n", measureParsing( parser, packet, payload ) );
+            double nanos = measureParsing( parser, shortHeaderPacket, shortHeaderPayload );
+            System.out.printf( "  1-RTT payload:        %,8.0f ns/payload, %,8.0f MB/s, %,6.0f bytes allocated/payload%n",
+                    nanos, shortHeaderPayload.length * 1000d / nanos,
+                    measureAllocation( () -> measureParsing( parser, shortHeaderPacket, shortHeaderPayload ) ) );
+            nanos = measureHandling( parser, shortHeaderPacket, shortHeaderPayload );
+            System.out.printf( "  1-RTT with handler:   %,8.0f ns/payload, %,8.0f MB/s, %,6.0f bytes allocated/payload%n",
+                    nanos, shortHeaderPayload.length * 1000d / nanos,
+                    measureAllocation( () -> measureHandling( parser, shortHeaderPacket, shortHeaderPayload ) ) );
+            System.out.printf( "  table lookups:        %,8.2f ns/lookup%n", measureTableLookups() );
+            System.out.printf( "  linear lookups:       %,8.2f ns/lookup%n", measureLinearLookups() );
+        }
+    }
+
+    /**
+     * @return 8 CRYPTO frames of 64 bytes each, separated by 1 to 8 PADDING frames, like a handshake payload
+     */
+    private static byte[] createMixedPayload() {
+        ByteBuffer buffer = ByteBuffer.allocate( 1200 );
+        for ( int i = 0; i < 8; i++ ) {
+            buffer.put( (byte)FrameType.CRYPTO.getLongValue() );
+            VariableLengthIntegerEncoder.encode( i * 64, buffer ); // offset
+            VariableLengthIntegerEncoder.encode( 64, buffer ); // length
+            buffer.put( new byte[64] );
+            for ( int p = 0; p <= i; p++ ) {
+                buffer.put( (byte)FrameType.PADDING.getLongValue() );
+            }
+        }
+        buffer.flip();
+        byte[] payload = new byte[buffer.remaining()];
+        buffer.get( payload );
+        return payload;
+    }
+
+    /**
+     * @return an ACK with 3 ranges, a MAX_STREAM_DATA and two STREAM frames filling the rest of a 1200 byte
+     * packet, like a payload of a bulk transfer
+     */
+    private static byte[] createShortHeaderPayload() {
+        ByteBuffer buffer = ByteBuffer.allocate( 1160 );
+        buffer.put( (byte)FrameType.ACK.getLongValue() );
+        VariableLengthIntegerEncoder.encode( 100_000, buffer ); // largest acknowledged
+        VariableLengthIntegerEncoder.encode( 250, buffer ); // delay
+        VariableLengthIntegerEncoder.encode( 3, buffer ); // range count
+        VariableLengthIntegerEncoder.encode( 20, buffer ); // first range
+        for ( int i = 0; i < 3; i++ ) {
+            VariableLengthIntegerEncoder.encode( 1, buffer ); // gap
+            VariableLengthIntegerEncoder.encode( 10, buffer ); // range length
+        }
+        buffer.put( (byte)FrameType.MAX_STREAM_DATA.getLongValue() );
+        VariableLengthIntegerEncoder.encode( 4, buffer ); // stream id
+        VariableLengthIntegerEncoder.encode( 1_000_000, buffer ); // maximum stream data
+        buffer.put( (byte)FrameType.STREAM_OFF_LEN.getLongValue() );
+        VariableLengthIntegerEncoder.encode( 4, buffer ); // stream id
+        VariableLengthIntegerEncoder.encode( 500_000, buffer ); // offset
+        VariableLengthIntegerEncoder.encode( 500, buffer ); // length
+        buffer.put( new byte[500] );
+        buffer.put( (byte)FrameType.STREAM_OFF.getLongValue() ); // takes up the rest of the packet
+        VariableLengthIntegerEncoder.encode( 8, buffer ); // stream id
+        VariableLengthIntegerEncoder.encode( 200_000, buffer ); // offset
+        return buffer.array();
+    }
+
+    private static double measureParsing( FrameParser parser, Packet packet, byte[] payload )
+            throws Exception {
+        long start = System.nanoTime();
+        for ( int i = 0; i < PAYLOADS; i++ ) {
+            if ( parser.parseFrames( packet, ByteBuffer.wrap( payload ), payload.length ) == null ) {
+                throw new IllegalStateException( "parsing failed" );
+            }
+        }
+        return (double)( System.nanoTime() - start ) / PAYLOADS;
+    }
+
+    private static double measureHandling( FrameParser parser, Packet packet, byte[] payload )
+            throws Exception {
+        ByteBuffer data = ByteBuffer.wrap( payload );
+        long[] received = new long[1];
+        FrameHandler handler = new FrameHandler() {
+            @Override
+            public void onStream( long streamId, long offset, ByteBuffer data, int dataOffset, int length,
+                    boolean fin ) {
+                received[0] += length;
+            }
+        };
+        long start = System.nanoTime();
+        for ( int i = 0; i < PAYLOADS; i++ ) {
+            data.clear();
+            parser.parseFrames( packet, data, payload.length, handler );
+        }
+        long elapsed = System.nanoTime() - start;
+        if ( received[0] == 0 ) {
+            throw new IllegalStateException( "nothing received" );
+        }
+        return (double)elapsed / PAYLOADS;
+    }
+
+    /**
+     * @param measurement a measurement over {@link #PAYLOADS} payloads
+     * @return the number of bytes allocated by the current thread per payload
+     */
+    private static double measureAllocation( Measurement measurement ) throws Exception {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes( threadId );
+        measurement.run();
+        return (double)( threads.getThreadAllocatedBytes( threadId ) - allocatedBefore ) / PAYLOADS;
+    }
+
+    private interface Measurement {
+        double run() throws Exception;
+    }
+
+    private static double measureTableLookups() {
+        int found = 0;
+        long start = System.nanoTime();
+        for ( int i = 0; i < LOOKUPS; i++ ) {
+            found += FrameType.findByValue( (long)( i & 0x1f ) ) != null ? 1 : 0;
+            found += ProtocolVersion.findByValue( 0xff000000 | ( i & 0x1f ) ) != null ? 1 : 0;
+            found += ExtensionType.findByValue( i & 0x3f ) != null ? 1 : 0;
+            found += CipherSuite.findByValue( (short)( 0x1300 | ( i & 0x07 ) ) ) != null ? 1 : 0;
+        }
+        return report( found, start );
+    }
+
+    private static double measureLinearLookups() {
+        int found = 0;
+        long start = System.nanoTime();
+        for ( int i = 0; i < LOOKUPS; i++ ) {
+            found += linearFrameType( i & 0x1f ) != null ? 1 : 0;
+            found += linearProtocolVersion( 0xff000000 | ( i & 0x1f ) ) != null ? 1 : 0;
+            found += linearExtensionType( i & 0x3f ) != null ? 1 : 0;
+            found += linearCipherSuite( (short)( 0x1300 | ( i & 0x07 ) ) ) != null ? 1 : 0;
+        }
+        return report( found, start );
+    }
+
+    private static double report( int found, long start ) {
+        long elapsed = System.nanoTime() - start;
+        if ( found == 0 ) {
+            throw new IllegalStateException( "nothing found" ); // also keeps the lookups from being eliminated
+        }
+        return (double)elapsed / LOOKUPS / 4;
+    }
+
+    private static FrameType linearFrameType( long value ) {
+        for ( FrameType f : FrameType.values() ) {
+            if ( f.getLongValue() == value ) {
+                return f;
+            }
+        }
+        return null;
+    }
+
+    private static ProtocolVersion linearProtocolVersion( int value ) {
+        for ( ProtocolVersion f : ProtocolVersion.values() ) {
+            if ( f.getValue() == value ) {
+                return f;
+            }
+        }
+        return null;
+    }
+
+    private static ExtensionType linearExtensionType( int value ) {
+        for ( ExtensionType f : ExtensionType.values() ) {
+            if ( f.getValue() == value ) {
+                return f;
+            }
+        }
+        return null;
+    }
+
+    private static CipherSuite linearCipherSuite( short value ) {
+        for ( CipherSuite f : CipherSuite.values() ) {
+            if ( f.getValue() == value ) {
+                return f;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,276 @@
+package com.timtrense.quic.impl;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.timtrense.quic.EndpointRole;
+import com.timtrense.quic.Frame;
+import com.timtrense.quic.FrameType;
+import com.timtrense.quic.impl.base.AckRangeImpl;
+import com.timtrense.quic.impl.base.EcnCountImpl;
+import com.timtrense.quic.impl.exception.MalformedFrameException;
+import com.timtrense.quic.impl.exception.QuicParsingException;
+import com.timtrense.quic.impl.frames.AckFrameImpl;
+import com.timtrense.quic.impl.frames.ConnectionCloseFrameImpl;
+import com.timtrense.quic.impl.frames.CryptoFrameImpl;
+import com.timtrense.quic.impl.frames.DatagramFrameImpl;
+import com.timtrense.quic.impl.frames.MultiPaddingFrameImpl;
+import com.timtrense.quic.impl.frames.NewConnectionIdFrameImpl;
+import com.timtrense.quic.impl.frames.StreamFrameImpl;
+import com.timtrense.quic.impl.packets.InitialPacketImpl;
+import com.timtrense.quic.impl.packets.ShortHeaderPacketImpl;
+
+import static com.timtrense.quic.HexByteStringConvertHelper.hexStringToByteArray;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @see com.timtrense.quic.impl.FrameParserImpl
+ */
+public class FrameParserImplTest {
+
+    /**
+     * one valid frame of each type, used as seeds for fuzzing. The frames without length field are last,
+     * because they take up the rest of the packet
+     */
+    private static final String[] CORPUS = {
+            "01", // PING
+            "020a0501020101", // ACK largest=10 delay=5 ranges=1 first=2 gap=1 length=1
+            "030a050002010203", // ACK_WITH_ECN largest=10 delay=5 ranges=0 first=2 ect0=1 ect1=2 ce=3
+            "0404014064", // RESET_STREAM id=4 error=1 finalSize=100
+            "050802", // STOP_SENDING id=8 error=2
+            "060003aabbcc", // CRYPTO offset=0 length=3
+            "07021122", // NEW_TOKEN length=2
+            "0f040503010203", // STREAM_OFF_LEN_FIN id=4 offset=5 length=3
+            "104400", // MAX_DATA 1024
+            "110420", // MAX_STREAM_DATA id=4 max=32
+            "120a", // MAX_STREAMS_1 10
+            "130a", // MAX_STREAMS_2 10
+            "1420", // DATA_BLOCKED 32
+            "150420", // STREAM_DATA_BLOCKED id=4 max=32
+            "1605", // STREAMS_BLOCKED_1 5
+            "1705", // STREAMS_BLOCKED_2 5
+            "1801000401020304" + "00112233445566778899aabbccddeeff", // NEW_CONNECTION_ID seq=1 retire=0 length=4
+            "1901", // RETIRE_CONNECTION_ID 1
+            "1a0102030405060708", // PATH_CHALLENGE
+            "1b0102030405060708", // PATH_RESPONSE
+            "1c0a0603616263", // CONNECTION_CLOSE error=10 frameType=6 reason="abc"
+            "1d0a026869", // CONNECTION_CLOSE_ON_FRAME_TYPE error=10 reason="hi"
+            "1e", // HANDSHAKE_DONE
+            "31020102", // DATAGRAM_LEN length=2
+            "000000", // PADDING
+            "0800deadbeef", // STREAM id=0 till the end of the packet
+            "30010203" // DATAGRAM till the end of the packet
+    };
+
+    private final FrameParser frameParser = new FrameParserImpl( new Endpoint( EndpointRole.SERVER ) );
+
+    private List<Frame> parse( String hex ) throws QuicParsingException {
+        return frameParser.parseFrames( new ShortHeaderPacketImpl(), ByteBuffer.wrap( hexStringToByteArray( hex ) ), -1 );
+    }
+
+    @Test
+    public void parseFrames_paddingBetweenCryptoFrames_givesAllFrames() throws Exception {
+        byte[] payload = new byte[]{
+                0x06, 0x00, 0x02, 0x11, 0x12, // CRYPTO offset=0 length=2
+                0x00, 0x00, 0x00, // 3 PADDING
+                0x06, 0x02, 0x01, 0x13 // CRYPTO offset=2 length=1
+        };
+
+        List<Frame> frames = frameParser.parseFrames( new InitialPacketImpl(), ByteBuffer.wrap( payload ), -1 );
+
+        assertEquals( 3, frames.size() );
+        assertTrue( frames.get( 0 ) instanceof CryptoFrameImpl );
+        assertEquals( 3L, ( (MultiPaddingFrameImpl)frames.get( 1 ) ).getFrameLength() );
+        assertEquals( ByteBuffer.wrap( new byte[]{0x13} ), ( (CryptoFrameImpl)frames.get( 2 ) ).getCryptoData() );
+    }
+
+    @Test
+    public void parseFrames_corpusConcatenated_givesOneValidFramePerEntry() throws Exception {
+        List<Frame> frames = parse( String.join( "", CORPUS ).replace( "0800deadbeef30010203", "" ) );
+
+        assertEquals( CORPUS.length - 2, frames.size() );
+        for ( int i = 0; i < frames.size(); i++ ) {
+            Frame frame = frames.get( i );
+            assertTrue( "frame " + i + " " + frame, frame.isValid() );
+            assertEquals( "frame " + i, CORPUS[i].length() / 2, frame.getFrameLength() );
+        }
+    }
+
+    @Test
+    public void parseFrame_ackWithEcn_givesRangesAndCounts() throws Exception {
+        AckFrameImpl ack = (AckFrameImpl)parse( "031e050114020301020a" ).get( 0 );
+
+        assertEquals( 30L, ack.getLargestAcknowledged() );
+        assertEquals( 5L, ack.getDelay() );
+        assertEquals( 20L, ack.getFirstAcknowledgedRange() );
+        assertEquals( 1L, ack.getLongRangeCount() );
+        assertEquals( new AckRangeImpl( 2, 3 ), ack.getRanges().getAckRange( 1 ) );
+        assertEquals( Arrays.asList( new EcnCountImpl( 1, 2, 10 ) ), ack.getEcnCounts() );
+    }
+
+    @Test( expected = MalformedFrameException.class )
+    public void parseFrame_ackRangeBelowZero_throwsMalformedFrame() throws Exception {
+        parse( "020a0501020505" ); // smallest = 10 - 2 - 5 - 2 - 5 < 0
+    }
+
+    @Test
+    public void parseFrame_streamWithoutLength_givesReadOnlyCopyOfRestOfPacket() throws Exception {
+        byte[] payload = hexStringToByteArray( "0c0440c8" + "0102030405" );
+
+        StreamFrameImpl frame = (StreamFrameImpl)frameParser.parseFrames(
+                new ShortHeaderPacketImpl(), ByteBuffer.wrap( payload ), -1 ).get( 0 );
+
+        assertEquals( 4L, frame.getStreamId().getLongValue() );
+        assertEquals( 200L, frame.getOffset() );
+        assertEquals( 5L, frame.getLength() );
+        assertTrue( frame.getData().isReadOnly() );
+        assertEquals( ByteBuffer.wrap( payload, 4, 5 ), frame.getData() );
+        payload[4] = 0x7f; // copied, so recycling the datagram does not change the frame
+        assertEquals( 0x01, frame.getData().get( 0 ) );
+    }
+
+    @Test
+    public void parseFrame_newConnectionId_givesIdAndToken() throws Exception {
+        NewConnectionIdFrameImpl frame = (NewConnectionIdFrameImpl)parse( CORPUS[16] ).get( 0 );
+
+        assertEquals( 1L, frame.getSequenceNumber() );
+        assertArrayEquals( new byte[]{1, 2, 3, 4}, frame.getConnectionId().getValue() );
+        assertArrayEquals( hexStringToByteArray( "00112233445566778899aabbccddeeff" ),
+                frame.getStatelessResetToken().getValue() );
+    }
+
+    @Test
+    public void parseFrame_connectionCloseOnFrameType_givesReasonPhrase() throws Exception {
+        ConnectionCloseFrameImpl frame = (ConnectionCloseFrameImpl)parse( CORPUS[20] ).get( 0 );
+
+        assertEquals( 10L, frame.getErrorCode() );
+        assertEquals( FrameType.CRYPTO.getLongValue(), frame.getFrameType() );
+        assertArrayEquals( "abc".getBytes(), frame.getReasonPhrase() );
+    }
+
+    @Test
+    public void parseFrames_datagramFramesWithAndWithoutLength_givesBoth() throws Exception {
+        List<Frame> frames = parse( "3102aabb" + "30ccddee" );
+
+        DatagramFrameImpl first = (DatagramFrameImpl)frames.get( 0 );
+        DatagramFrameImpl second = (DatagramFrameImpl)frames.get( 1 );
+        assertTrue( first.isLengthBitSet() );
+        assertEquals( ByteBuffer.wrap( hexStringToByteArray( "aabb" ) ), first.getData() );
+        assertFalse( second.isLengthBitSet() );
+        assertEquals( ByteBuffer.wrap( hexStringToByteArray( "ccddee" ) ), second.getData() );
+    }
+
+    @Test( expected = MalformedFrameException.class )
+    public void parseFrame_lengthBeyondPacket_throwsMalformedFrame() throws Exception {
+        // the CRYPTO frame fits into the datagram, but not into the packet
+        frameParser.parseFrames( new ShortHeaderPacketImpl(),
+                ByteBuffer.wrap( hexStringToByteArray( "060003aabbcc" ) ), 5 );
+    }
+
+    @Test
+    public void parseFrames_withHandler_receivesPrimitiveFields() throws Exception {
+        byte[] payload = hexStringToByteArray( "020a0501020101" + "1a0102030405060708" + "13" + "0a" + "0f040503010203" );
+        List<String> calls = new ArrayList<>();
+        FrameHandler handler = new FrameHandler() {
+            @Override
+            public void onAck( long largestAcknowledged, long delay, long firstAckRange, long rangeCount ) {
+                calls.add( "ack " + largestAcknowledged + " " + delay + " " + firstAckRange + " " + rangeCount );
+            }
+
+            @Override
+            public void onAckRange( long gap, long length ) {
+                calls.add( "range " + gap + " " + length );
+            }
+
+            @Override
+            public void onPathChallenge( long data ) {
+                calls.add( "challenge " + Long.toHexString( data ) );
+            }
+
+            @Override
+            public void onMaxStreams( boolean unidirectional, long maximumStreams ) {
+                calls.add( "maxStreams " + unidirectional + " " + maximumStreams );
+            }
+
+            @Override
+            public void onStream( long streamId, long offset, ByteBuffer data, int dataOffset, int length,
+                    boolean fin ) {
+                calls.add( "stream " + streamId + " " + offset + " " + dataOffset + " " + length + " " + fin );
+            }
+        };
+
+        int frameCount = frameParser.parseFrames( new ShortHeaderPacketImpl(), ByteBuffer.wrap( payload ), -1,
+                handler );
+
+        assertEquals( 4, frameCount );
+        assertEquals( Arrays.asList(
+                "ack 10 5 2 1",
+                "range 1 1",
+                "challenge 102030405060708",
+                "maxStreams true 10",
+                "stream 4 5 22 3 true"
+        ), calls );
+    }
+
+    @Test
+    public void parseFrames_mutatedCorpus_throwsOnlyParsingExceptions() {
+        Random random = new Random( 0x5eed );
+        for ( int i = 0; i < 50_000; i++ ) {
+            byte[] input = mutate( random, hexStringToByteArray( CORPUS[random.nextInt( CORPUS.length )] ) );
+            ByteBuffer data = ByteBuffer.wrap( input );
+            try {
+                frameParser.parseFrames( new ShortHeaderPacketImpl(), data, -1 );
+                assertEquals( input.length, data.position() );
+            }
+            catch ( QuicParsingException ignored ) {
+                // rejecting malformed input is the expected outcome
+            }
+            catch ( RuntimeException e ) {
+                fail( "Unexpected " + e + " on input " + toHex( input ) );
+            }
+        }
+    }
+
+    private static byte[] mutate( Random random, byte[] seed ) {
+        byte[] input = seed;
+        int mutations = 1 + random.nextInt( 3 );
+        for ( int m = 0; m < mutations; m++ ) {
+            switch ( random.nextInt( 4 ) ) {
+                case 0: // flip a bit
+                    input[random.nextInt( input.length )] ^= (byte)( 1 << random.nextInt( 8 ) );
+                    break;
+                case 1: // truncate
+                    input = Arrays.copyOf( input, Math.max( 1, random.nextInt( input.length + 1 ) ) );
+                    break;
+                case 2: // replace a byte
+                    input[random.nextInt( input.length )] = (byte)random.nextInt( 256 );
+                    break;
+                default: // append random bytes
+                    int start = input.length;
+                    input = Arrays.copyOf( input, start + 1 + random.nextInt( 8 ) );
+                    for ( int b = start; b < input.length; b++ ) {
+                        input[b] = (byte)random.nextInt( 256 );
+                    }
+                    break;
+            }
+        }
+        return input;
+    }
+
+    private static String toHex( byte[] input ) {
+        StringBuilder sb = new StringBuilder();
+        for ( byte b : input ) {
+            sb.append( String.format( "%02x", b ) );
+        }
+        return sb.toString();
+    }
+}
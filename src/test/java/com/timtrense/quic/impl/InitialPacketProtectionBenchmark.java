@@ -0,0 +1,47 @@
+package com.timtrense.quic.impl;
+
+import java.nio.ByteBuffer;
+
+import com.timtrense.quic.EndpointRole;
+
+/**
+ * Measures the cost of parsing an Initial packet (the one of Appendix A of QUIC Spec-TLS) with and without
+ * caching the {@link InitialPacketProtectionCache Initial packet protection}.
+ * This is no unit test, run it manually via its {@link #main(String[]) main method}.
+ *
+ * @author Tim Trense
+ */
+public class InitialPacketProtectionBenchmark {
+
+    private static final int PACKETS = 20_000;
+    private static final int RUNS = 5;
+
+    public static void main( String[] args ) throws Exception {
+        PacketParserImplTest.prepareProtectedIntialPacket();
+        byte[] packet = PacketParserImplTest.protectedInitialPacket;
+
+        Endpoint uncached = new Endpoint( EndpointRole.SERVER );
+        uncached.getConfiguration().setInitialPacketProtectionCacheSize( 0 );
+        Endpoint cached = new Endpoint( EndpointRole.SERVER );
+
+        for ( int run = 0; run < RUNS; run++ ) {
+            System.out.println( "run " + run + ( run == 0 ? " (warmup)" : "" ) );
+            System.out.printf( "  without cache: %,8.0f ns/packet%n", measure( uncached, packet ) );
+            System.out.printf( "  with cache:    %,8.0f ns/packet%n", measure( cached, packet ) );
+        }
+    }
+
+    private static double measure( Endpoint endpoint, byte[] packet ) throws Exception {
+        PacketParser parser = new PacketParserImpl( endpoint );
+        // parsing decrypts in place, so every iteration receives a fresh copy like from a pooled buffer
+        byte[] received = new byte[packet.length];
+        long start = System.nanoTime();
+        for ( int i = 0; i < PACKETS; i++ ) {
+            System.arraycopy( packet, 0, received, 0, packet.length );
+            if ( parser.parsePacket( null, ByteBuffer.wrap( received ), 0 ) == null ) {
+                throw new IllegalStateException( "parsing failed" );
+            }
+        }
+        return (double)( System.nanoTime() - start ) / PACKETS;
+    }
+}
@@ -0,0 +1,69 @@
+package com.timtrense.quic.impl;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import org.junit.Test;
+
+import com.timtrense.quic.ConnectionId;
+import com.timtrense.quic.EndpointRole;
+import com.timtrense.quic.VariableLengthInteger;
+import com.timtrense.quic.impl.base.ConnectionIdImpl;
+import com.timtrense.quic.impl.base.InitialPacketProtectionImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+public class InitialPacketProtectionCacheTest {
+
+    private static ConnectionId cid( int value ) {
+        return new ConnectionIdImpl( new byte[]{ 1, 2, 3, (byte)value }, VariableLengthInteger.ZERO );
+    }
+
+    @Test
+    public void get_sameConnectionIdValue_returnsCachedInstance() throws GeneralSecurityException {
+        InitialPacketProtectionCache cache = new InitialPacketProtectionCache( EndpointRole.SERVER, 4 );
+
+        InitialPacketProtectionImpl first = cache.get( cid( 1 ) );
+        InitialPacketProtectionImpl second = cache.get( cid( 1 ) );
+
+        assertSame( first, second );
+        assertEquals( 1, cache.getMissCount() );
+        assertEquals( 1, cache.getHitCount() );
+    }
+
+    @Test
+    public void get_full_evictsLeastRecentlyUsed() throws GeneralSecurityException {
+        InitialPacketProtectionCache cache = new InitialPacketProtectionCache( EndpointRole.SERVER, 2 );
+        InitialPacketProtectionImpl first = cache.get( cid( 1 ) );
+        InitialPacketProtectionImpl second = cache.get( cid( 2 ) );
+        cache.get( cid( 1 ) ); // makes 2 the least recently used
+        cache.get( cid( 3 ) );
+
+        assertEquals( 2, cache.size() );
+        assertSame( first, cache.get( cid( 1 ) ) );
+        assertNotSame( second, cache.get( cid( 2 ) ) );
+    }
+
+    @Test
+    public void get_zeroCapacity_neverCaches() throws GeneralSecurityException {
+        InitialPacketProtectionCache cache = new InitialPacketProtectionCache( EndpointRole.SERVER, 0 );
+
+        assertNotSame( cache.get( cid( 1 ) ), cache.get( cid( 1 ) ) );
+        assertEquals( 0, cache.size() );
+    }
+
+    @Test
+    public void parsePacket_repeatedInitial_reusesProtection() throws Exception {
+        PacketParserImplTest.prepareProtectedIntialPacket();
+        Endpoint endpoint = new Endpoint( EndpointRole.SERVER );
+        PacketParser parser = new PacketParserImpl( endpoint );
+
+        for ( int i = 0; i < 3; i++ ) {
+            parser.parsePacket( null, ByteBuffer.wrap( PacketParserImplTest.protectedInitialPacket.clone() ), 0 );
+        }
+
+        assertEquals( 1, endpoint.getInitialPacketProtectionCache().getMissCount() );
+        assertEquals( 2, endpoint.getInitialPacketProtectionCache().getHitCount() );
+    }
+}
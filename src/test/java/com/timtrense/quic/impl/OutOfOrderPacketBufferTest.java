@@ -0,0 +1,74 @@
+package com.timtrense.quic.impl;
+
+import java.net.DatagramPacket;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+import com.timtrense.quic.ConnectionId;
+import com.timtrense.quic.EncryptionLevel;
+import com.timtrense.quic.VariableLengthInteger;
+import com.timtrense.quic.impl.base.ConnectionIdImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OutOfOrderPacketBufferTest {
+
+    private static final ConnectionId CID = new ConnectionIdImpl( new byte[]{ 1, 2, 3 }, VariableLengthInteger.ZERO );
+    private static final Instant T0 = Instant.parse( "2020-01-01T00:00:00Z" );
+
+    private static ReceivedDatagram datagram( int length, Instant receiveTime ) {
+        byte[] data = new byte[length];
+        return new ReceivedDatagram( new DatagramPacket( data, length ), receiveTime );
+    }
+
+    @Test
+    public void release_heldDatagrams_returnsThemInOrderOfArrival() {
+        OutOfOrderPacketBuffer buffer = new OutOfOrderPacketBuffer( 10, 10_000, Duration.ofSeconds( 1 ) );
+        ReceivedDatagram first = datagram( 100, T0 );
+        ReceivedDatagram second = datagram( 100, T0 );
+        ReceivedDatagram otherLevel = datagram( 100, T0 );
+        assertTrue( buffer.hold( CID, EncryptionLevel.HANDSHAKE, first, T0, d -> {} ) );
+        assertTrue( buffer.hold( CID, EncryptionLevel.HANDSHAKE, second, T0, d -> {} ) );
+        assertTrue( buffer.hold( CID, EncryptionLevel.APPLICATION_DATA, otherLevel, T0, d -> {} ) );
+
+        List<ReceivedDatagram> released = new ArrayList<>();
+        ConnectionId sameValue = new ConnectionIdImpl( new byte[]{ 1, 2, 3 }, VariableLengthInteger.ONE );
+        assertEquals( 2, buffer.release( sameValue, EncryptionLevel.HANDSHAKE, released::add ) );
+
+        assertEquals( 2, released.size() );
+        assertSame( first, released.get( 0 ) );
+        assertSame( second, released.get( 1 ) );
+        assertEquals( 1, buffer.size() );
+        assertEquals( 100, buffer.getHeldBytes() );
+    }
+
+    @Test
+    public void hold_limitsExceeded_rejects() {
+        OutOfOrderPacketBuffer buffer = new OutOfOrderPacketBuffer( 2, 250, Duration.ofSeconds( 1 ) );
+        assertTrue( buffer.hold( CID, EncryptionLevel.HANDSHAKE, datagram( 100, T0 ), T0, d -> {} ) );
+        assertFalse( buffer.hold( CID, EncryptionLevel.HANDSHAKE, datagram( 200, T0 ), T0, d -> {} ) );
+        assertTrue( buffer.hold( CID, EncryptionLevel.HANDSHAKE, datagram( 100, T0 ), T0, d -> {} ) );
+        assertFalse( buffer.hold( CID, EncryptionLevel.HANDSHAKE, datagram( 10, T0 ), T0, d -> {} ) );
+    }
+
+    @Test
+    public void hold_expiredDatagrams_areDroppedToMakeRoom() {
+        OutOfOrderPacketBuffer buffer = new OutOfOrderPacketBuffer( 1, 10_000, Duration.ofSeconds( 1 ) );
+        ReceivedDatagram old = datagram( 100, T0 );
+        assertTrue( buffer.hold( CID, EncryptionLevel.HANDSHAKE, old, T0, d -> {} ) );
+
+        List<ReceivedDatagram> dropped = new ArrayList<>();
+        Instant later = T0.plusSeconds( 2 );
+        assertTrue( buffer.hold( CID, EncryptionLevel.HANDSHAKE, datagram( 100, later ), later, dropped::add ) );
+
+        assertEquals( 1, dropped.size() );
+        assertSame( old, dropped.get( 0 ) );
+        assertEquals( 1, buffer.size() );
+    }
+}
@@ -0,0 +1,226 @@
+package com.timtrense.quic.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.timtrense.quic.PacketNumberSpace;
+import com.timtrense.quic.impl.congestion.CongestionController;
+import com.timtrense.quic.impl.congestion.Pacer;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @see PacedSendScheduler
+ */
+public class PacedSendSchedulerTest {
+
+    private static final int DATAGRAM_SIZE = 1200;
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos( 1 );
+    private static final long TICK = TimeUnit.MICROSECONDS.toNanos( 100 );
+
+    private static PacedSendScheduler createScheduler( long now ) {
+        EndpointConfiguration configuration = new EndpointConfiguration();
+        configuration.setMaxDatagramSize( DATAGRAM_SIZE );
+        configuration.setPacingTimerTick( 100 );
+        configuration.setPacingBurstDatagrams( 2 );
+        return new PacedSendScheduler( configuration, now );
+    }
+
+    @Test
+    public void runOnce_pacingRate_spacesPacketsAfterInitialBurst() {
+        PacedSendScheduler scheduler = createScheduler( 0 );
+        // one datagram per millisecond
+        FixedRateController controller = new FixedRateController( 1_200_000, Long.MAX_VALUE );
+        TestConnection connection = new TestConnection( scheduler.createPacer( controller, 0 ), controller, 20 );
+        PacedSendScheduler.Registration registration = scheduler.register( connection );
+
+        scheduler.wakeup( registration );
+        for ( long now = 0; now <= 30 * MS; now += TICK ) {
+            scheduler.runOnce( now );
+        }
+
+        List<Long> sendTimes = connection.sendTimes;
+        assertEquals( 20, sendTimes.size() );
+        assertEquals( 0L, (long)sendTimes.get( 0 ) );
+        assertEquals( 0L, (long)sendTimes.get( 1 ) );
+        for ( int i = 2; i < sendTimes.size(); i++ ) {
+            long gap = sendTimes.get( i ) - sendTimes.get( i - 1 );
+            assertTrue( gap >= MS && gap <= MS + TICK );
+        }
+        assertEquals( 0, scheduler.getWaitingCount() );
+    }
+
+    @Test
+    public void runOnce_congestionWindowFull_waitsForWakeup() {
+        PacedSendScheduler scheduler = createScheduler( 0 );
+        FixedRateController controller = new FixedRateController( 120_000_000, 3 * DATAGRAM_SIZE );
+        TestConnection connection = new TestConnection( scheduler.createPacer( controller, 0 ), controller, 10 );
+        PacedSendScheduler.Registration registration = scheduler.register( connection );
+
+        scheduler.wakeup( registration );
+        for ( long now = 0; now <= 5 * MS; now += TICK ) {
+            scheduler.runOnce( now );
+        }
+        assertEquals( 3, connection.sendTimes.size() );
+        assertEquals( 0, scheduler.getWaitingCount() );
+
+        // an acknowledgement opens the window
+        controller.bytesInFlight = 0;
+        scheduler.wakeup( registration );
+        scheduler.wakeup( registration );
+        assertEquals( 3, scheduler.runOnce( 6 * MS ) );
+        scheduler.runOnce( 7 * MS );
+
+        assertEquals( 6, connection.sendTimes.size() );
+    }
+
+    @Test
+    public void unregister_waitingConnection_stopsSending() {
+        PacedSendScheduler scheduler = createScheduler( 0 );
+        FixedRateController controller = new FixedRateController( 1_200_000, Long.MAX_VALUE );
+        TestConnection connection = new TestConnection( scheduler.createPacer( controller, 0 ), controller, 20 );
+        PacedSendScheduler.Registration registration = scheduler.register( connection );
+        scheduler.wakeup( registration );
+        scheduler.runOnce( 0 );
+        assertEquals( 1, scheduler.getWaitingCount() );
+
+        scheduler.unregister( registration );
+        for ( long now = 0; now <= 30 * MS; now += TICK ) {
+            scheduler.runOnce( now );
+        }
+
+        assertTrue( registration.isClosed() );
+        assertEquals( 2, connection.sendTimes.size() );
+        assertEquals( 0, scheduler.getWaitingCount() );
+    }
+
+    @Test( timeout = 10_000 )
+    public void run_thousandsOfConnections_pacedByOneThread() throws InterruptedException {
+        long start = System.nanoTime();
+        PacedSendScheduler scheduler = createScheduler( start );
+        int connectionCount = 5000;
+        int packetsPerConnection = 10;
+        List<PacedSendScheduler.Registration> registrations = new ArrayList<>( connectionCount );
+        for ( int i = 0; i < connectionCount; i++ ) {
+            // 10 datagrams per 100 ms
+            FixedRateController controller = new FixedRateController( 120_000, Long.MAX_VALUE );
+            registrations.add( scheduler.register(
+                    new TestConnection( scheduler.createPacer( controller, start ), controller,
+                            packetsPerConnection ) ) );
+        }
+        Thread thread = new Thread( scheduler, "PacedSendScheduler" );
+        thread.setDaemon( true );
+        thread.start();
+        try {
+            registrations.forEach( scheduler::wakeup );
+            while ( scheduler.getSentPacketCount() < (long)connectionCount * packetsPerConnection ) {
+                Thread.sleep( 10 );
+            }
+        }
+        finally {
+            thread.interrupt();
+            thread.join();
+        }
+
+        long elapsed = System.nanoTime() - start;
+        // 2 back-to-back datagrams, then 8 more at 10 ms each
+        assertTrue( elapsed >= 80 * MS );
+        for ( PacedSendScheduler.Registration registration : registrations ) {
+            List<Long> sendTimes = ( (TestConnection)registration.getConnection() ).sendTimes;
+            assertEquals( packetsPerConnection, sendTimes.size() );
+            long last = sendTimes.get( packetsPerConnection - 1 );
+            assertTrue( last - sendTimes.get( 0 ) >= 80 * MS );
+        }
+    }
+
+    private static final class TestConnection implements PacedConnection {
+
+        private final Pacer pacer;
+        private final FixedRateController controller;
+        private final List<Long> sendTimes = new ArrayList<>();
+        private int remaining;
+
+        private TestConnection( Pacer pacer, FixedRateController controller, int packets ) {
+            this.pacer = pacer;
+            this.controller = controller;
+            this.remaining = packets;
+        }
+
+        @Override
+        public Pacer getPacer() {
+            return pacer;
+        }
+
+        @Override
+        public int getNextPacketSize() {
+            return remaining > 0 ? DATAGRAM_SIZE : 0;
+        }
+
+        @Override
+        public int sendNextPacket( long now ) {
+            remaining--;
+            sendTimes.add( now );
+            controller.onPacketSent( PacketNumberSpace.APPLICATION_DATA, sendTimes.size(), now, DATAGRAM_SIZE );
+            return DATAGRAM_SIZE;
+        }
+    }
+
+    private static final class FixedRateController implements CongestionController {
+
+        private final long pacingRate;
+        private final long congestionWindow;
+        private long bytesInFlight;
+
+        private FixedRateController( long pacingRate, long congestionWindow ) {
+            this.pacingRate = pacingRate;
+            this.congestionWindow = congestionWindow;
+        }
+
+        @Override
+        public void onPacketSent( PacketNumberSpace space, long packetNumber, long sentTime, int bytes ) {
+            bytesInFlight += bytes;
+        }
+
+        @Override
+        public void onPacketAcked( PacketNumberSpace space, long packetNumber, long sentTime, int bytes, long now ) {
+            bytesInFlight -= bytes;
+        }
+
+        @Override
+        public void onPacketLost( PacketNumberSpace space, long packetNumber, long sentTime, int bytes, long now ) {
+            bytesInFlight -= bytes;
+        }
+
+        @Override
+        public void onEcnCongestionExperienced( long sentTime, long now ) {
+        }
+
+        @Override
+        public void onPersistentCongestion( long now ) {
+        }
+
+        @Override
+        public void onPacketDiscarded( int bytes ) {
+            bytesInFlight -= bytes;
+        }
+
+        @Override
+        public long getCongestionWindow() {
+            return congestionWindow;
+        }
+
+        @Override
+        public long getBytesInFlight() {
+            return bytesInFlight;
+        }
+
+        @Override
+        public long getPacingRate() {
+            return pacingRate;
+        }
+    }
+}
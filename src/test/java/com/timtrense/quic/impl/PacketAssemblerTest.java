@@ -0,0 +1,315 @@
+package com.timtrense.quic.impl;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.timtrense.quic.ConnectionId;
+import com.timtrense.quic.EncryptionLevel;
+import com.timtrense.quic.EndpointRole;
+import com.timtrense.quic.Frame;
+import com.timtrense.quic.FrameType;
+import com.timtrense.quic.Packet;
+import com.timtrense.quic.PacketNumberSpace;
+import com.timtrense.quic.ProtocolVersion;
+import com.timtrense.quic.VariableLengthInteger;
+import com.timtrense.quic.impl.base.AckRangeSet;
+import com.timtrense.quic.impl.base.ConnectionIdImpl;
+import com.timtrense.quic.impl.base.InitialPacketProtectionImpl;
+import com.timtrense.quic.impl.base.PacketNumberImpl;
+import com.timtrense.quic.impl.base.PacketProtectionImpl;
+import com.timtrense.quic.impl.base.StreamIdImpl;
+import com.timtrense.quic.impl.base.TransportParameterCollectionImpl;
+import com.timtrense.quic.impl.frames.CryptoFrameImpl;
+import com.timtrense.quic.impl.frames.MultiPaddingFrameImpl;
+import com.timtrense.quic.impl.frames.PingFrameImpl;
+import com.timtrense.quic.impl.frames.StreamFrameImpl;
+import com.timtrense.quic.impl.packets.InitialPacketImpl;
+import com.timtrense.quic.impl.packets.ShortHeaderPacketImpl;
+import com.timtrense.quic.impl.recovery.LossDetectionListener;
+import com.timtrense.quic.impl.recovery.LossDetector;
+import com.timtrense.quic.tls.CipherSuite;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * @see com.timtrense.quic.impl.PacketAssembler
+ */
+public class PacketAssemblerTest {
+
+    private static final ConnectionId DESTINATION_CONNECTION_ID = new ConnectionIdImpl( new byte[]{
+            (byte)0x83, (byte)0x94, (byte)0xc8, (byte)0xf0,
+            (byte)0x3e, (byte)0x51, (byte)0x57, (byte)0x08
+    }, VariableLengthInteger.ZERO );
+
+    private static PacketAssembler createClientAssembler() throws Exception {
+        InitialPacketProtectionImpl protection = new InitialPacketProtectionImpl( EndpointRole.CLIENT );
+        protection.initialize( DESTINATION_CONNECTION_ID );
+        PacketAssembler assembler = new PacketAssembler( EndpointRole.CLIENT, new ByteBufferPool( 4, 1500, false ) );
+        assembler.setVersion( ProtocolVersion.IETF_DRAFT_32 );
+        assembler.setDestinationConnectionId( DESTINATION_CONNECTION_ID );
+        assembler.setPacketSealer( PacketNumberSpace.INITIAL, protection );
+        return assembler;
+    }
+
+    private static CryptoFrameImpl createCryptoFrame( long offset, int length ) {
+        CryptoFrameImpl frame = new CryptoFrameImpl( FrameType.CRYPTO );
+        byte[] data = new byte[length];
+        for ( int i = 0; i < length; i++ ) {
+            data[i] = (byte)i;
+        }
+        frame.setOffset( offset );
+        frame.setLength( length );
+        frame.setCryptoData( ByteBuffer.wrap( data ) );
+        return frame;
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void constructor_poolSmallerThanMinInitialDatagram_throws() {
+        new PacketAssembler( EndpointRole.CLIENT,
+                new ByteBufferPool( 4, PacketAssembler.MIN_INITIAL_DATAGRAM_SIZE - 1, false ) );
+    }
+
+    @Test
+    public void assemble_nothingQueued_givesNull() throws Exception {
+        PacketAssembler assembler = createClientAssembler();
+
+        assertNull( assembler.assemble( 0 ) );
+        assertEquals( 0, assembler.getNextPacketNumber( PacketNumberSpace.INITIAL ) );
+    }
+
+    @Test
+    public void assemble_clientCryptoFrame_givesPaddedInitialPacketParsedByServer() throws Exception {
+        PacketAssembler assembler = createClientAssembler();
+        List<Long> sentPacketNumbers = new ArrayList<>();
+        assembler.setSentPacketListener( ( space, packetNumber, size, ackEliciting, inFlight, frames, now ) -> {
+            assertEquals( PacketNumberSpace.INITIAL, space );
+            assertEquals( PacketAssembler.MIN_INITIAL_DATAGRAM_SIZE, size );
+            assertTrue( ackEliciting );
+            assertTrue( inFlight );
+            assertEquals( 1, frames.size() );
+            sentPacketNumbers.add( packetNumber );
+        } );
+        assembler.getSendQueue( PacketNumberSpace.INITIAL ).add( createCryptoFrame( 0, 245 ) );
+
+        ByteBuffer datagram = assembler.assemble( 0 );
+
+        assertNotNull( datagram );
+        assertEquals( PacketAssembler.MIN_INITIAL_DATAGRAM_SIZE, datagram.remaining() );
+        assertEquals( 1, sentPacketNumbers.size() );
+        assertEquals( 0L, (long)sentPacketNumbers.get( 0 ) );
+
+        PacketParser packetParser = new PacketParserImpl( new Endpoint( EndpointRole.SERVER ) );
+        Packet packet = packetParser.parsePacket( null, datagram, 0 );
+
+        assertNotNull( packet );
+        assertEquals( InitialPacketImpl.class, packet.getClass() );
+        InitialPacketImpl initialPacket = (InitialPacketImpl)packet;
+        assertEquals( new PacketNumberImpl( 0 ), initialPacket.getPacketNumber() );
+        assertEquals( 2, initialPacket.getPayload().size() );
+        CryptoFrameImpl parsedFrame = (CryptoFrameImpl)initialPacket.getPayload().get( 0 );
+        assertEquals( 245, parsedFrame.getLength() );
+        assertEquals( createCryptoFrame( 0, 245 ).getCryptoData(), parsedFrame.getCryptoData() );
+        assertTrue( initialPacket.getPayload().get( 1 ) instanceof MultiPaddingFrameImpl );
+        assertEquals( PacketAssembler.MIN_INITIAL_DATAGRAM_SIZE, datagram.position() );
+    }
+
+    @Test
+    public void assemble_framesExceedingDatagram_givesOneDatagramPerPacketNumber() throws Exception {
+        PacketAssembler assembler = createClientAssembler();
+        List<Frame> sentFrames = new ArrayList<>();
+        assembler.setSentPacketListener( ( space, packetNumber, size, ackEliciting, inFlight, frames, now ) -> {
+            assertTrue( size <= 1500 );
+            sentFrames.addAll( frames );
+        } );
+        for ( int i = 0; i < 3; i++ ) {
+            assembler.getSendQueue( PacketNumberSpace.INITIAL ).add( createCryptoFrame( i * 1000, 1000 ) );
+        }
+
+        ByteBuffer first = assembler.assemble( 0 );
+        ByteBuffer second = assembler.assemble( 0 );
+        ByteBuffer third = assembler.assemble( 0 );
+
+        assertNotNull( first );
+        assertNotNull( second );
+        assertNotNull( third );
+        assertNull( assembler.assemble( 0 ) );
+        assertEquals( 3, assembler.getNextPacketNumber( PacketNumberSpace.INITIAL ) );
+        assertEquals( 3, sentFrames.size() );
+        PacketParser packetParser = new PacketParserImpl( new Endpoint( EndpointRole.SERVER ) );
+        InitialPacketImpl packet = (InitialPacketImpl)packetParser.parsePacket( null, third, 0 );
+        assertEquals( new PacketNumberImpl( 2 ), packet.getPacketNumber() );
+        assertEquals( 2000, ( (CryptoFrameImpl)packet.getPayload().get( 0 ) ).getOffset() );
+    }
+
+    @Test
+    public void assemble_oneRttPacket_parsedByPeerEndpoint() throws Exception {
+        byte[] secret = new byte[32];
+        Endpoint server = new Endpoint( EndpointRole.SERVER );
+        ConnectionId serverConnectionId = new ConnectionIdImpl( server.createRandomUnusedConnectionId(),
+                VariableLengthInteger.ZERO );
+        PacketProtection receiveProtection = new PacketProtectionImpl( CipherSuite.TLS_AES_128_GCM_SHA256, secret );
+        server.getConnections().put( serverConnectionId, new Connection() {
+            @Override
+            public Set<ConnectionId> getRemoteConnectionIds() {
+                return Collections.emptySet();
+            }
+
+            @Override
+            public PacketProtection getPacketProtection( EncryptionLevel encryptionLevel ) {
+                return encryptionLevel == EncryptionLevel.APPLICATION_DATA ? receiveProtection : null;
+            }
+        } );
+        PacketAssembler assembler = new PacketAssembler( EndpointRole.CLIENT, new ByteBufferPool( 4, 1500, true ) );
+        assembler.setDestinationConnectionId( serverConnectionId );
+        assembler.setPacketSealer( PacketNumberSpace.APPLICATION_DATA,
+                new PacketProtectionImpl( CipherSuite.TLS_AES_128_GCM_SHA256, secret ) );
+        assembler.getSendQueue( PacketNumberSpace.APPLICATION_DATA ).add( new PingFrameImpl( FrameType.PING ) );
+
+        ByteBuffer datagram = assembler.assemble( 0 );
+
+        assertNotNull( datagram );
+        // flags, connection id, 1 byte packet number, PING padded to the 4 bytes sampling offset and the tag
+        assertEquals( 1 + 8 + 1 + 3 + 16, datagram.remaining() );
+        Packet packet = new PacketParserImpl( server ).parsePacket( null, datagram, 0 );
+        assertEquals( ShortHeaderPacketImpl.class, packet.getClass() );
+        ShortHeaderPacketImpl shortHeaderPacket = (ShortHeaderPacketImpl)packet;
+        assertSame( serverConnectionId, shortHeaderPacket.getDestinationConnectionId() );
+        assertEquals( new PacketNumberImpl( 0 ), shortHeaderPacket.getPacketNumber() );
+        assertTrue( shortHeaderPacket.getPayload().get( 0 ) instanceof PingFrameImpl );
+    }
+
+    @Test
+    public void assemble_packetsRecordedByLossDetector_keepTheirOwnFrames() throws Exception {
+        PacketAssembler assembler = createClientAssembler();
+        List<Frame> ackedFrames = new ArrayList<>();
+        LossDetector lossDetector = new LossDetector( EndpointRole.CLIENT, new TransportParameterCollectionImpl(),
+                new LossDetectionListener() {
+                    @Override
+                    public void onPacketAcked( PacketNumberSpace space, long packetNumber, long sentTime, int size,
+                                               boolean inFlight, List<Frame> frames, long now ) {
+                        assertEquals( 1, frames.size() );
+                        ackedFrames.add( frames.get( 0 ) );
+                        assembler.giveBackFrames( frames );
+                    }
+                } );
+        assembler.setSentPacketListener( lossDetector::onPacketSent );
+        List<Frame> queuedFrames = new ArrayList<>();
+        for ( int i = 0; i < 3; i++ ) {
+            queuedFrames.add( createCryptoFrame( i * 1000, 1000 ) );
+        }
+        assembler.getSendQueue( PacketNumberSpace.INITIAL ).addAll( queuedFrames );
+        for ( int i = 0; i < 3; i++ ) {
+            assertNotNull( assembler.assemble( 0 ) );
+        }
+        AckRangeSet ranges = new AckRangeSet();
+        ranges.addRange( 0, 2 );
+
+        lossDetector.onAckReceived( PacketNumberSpace.INITIAL, ranges, 0, 1 );
+
+        // acknowledged from the largest down
+        Collections.reverse( ackedFrames );
+        assertEquals( queuedFrames, ackedFrames );
+    }
+
+    @Test
+    public void assemble_streamFrameWithoutLength_padsInFrontOfItAndEndsThePacket() throws Exception {
+        byte[] secret = new byte[32];
+        Endpoint server = new Endpoint( EndpointRole.SERVER );
+        ConnectionId serverConnectionId = new ConnectionIdImpl( server.createRandomUnusedConnectionId(),
+                VariableLengthInteger.ZERO );
+        PacketProtection receiveProtection = new PacketProtectionImpl( CipherSuite.TLS_AES_128_GCM_SHA256, secret );
+        server.getConnections().put( serverConnectionId, new Connection() {
+            @Override
+            public Set<ConnectionId> getRemoteConnectionIds() {
+                return Collections.emptySet();
+            }
+
+            @Override
+            public PacketProtection getPacketProtection( EncryptionLevel encryptionLevel ) {
+                return encryptionLevel == EncryptionLevel.APPLICATION_DATA ? receiveProtection : null;
+            }
+        } );
+        PacketAssembler assembler = new PacketAssembler( EndpointRole.CLIENT, new ByteBufferPool( 4, 1500, false ) );
+        assembler.setDestinationConnectionId( serverConnectionId );
+        assembler.setPacketSealer( PacketNumberSpace.APPLICATION_DATA,
+                new PacketProtectionImpl( CipherSuite.TLS_AES_128_GCM_SHA256, secret ) );
+        // closes the stream without data, which is shorter than the 3 bytes payload required for sampling
+        StreamFrameImpl streamFrame = new StreamFrameImpl( FrameType.STREAM_FIN );
+        streamFrame.setStreamId( new StreamIdImpl( new VariableLengthInteger( 0 ) ) );
+        streamFrame.setData( ByteBuffer.allocate( 0 ) );
+        assembler.getSendQueue( PacketNumberSpace.APPLICATION_DATA ).add( streamFrame );
+        assembler.getSendQueue( PacketNumberSpace.APPLICATION_DATA ).add( new PingFrameImpl( FrameType.PING ) );
+
+        ByteBuffer datagram = assembler.assemble( 0 );
+
+        assertEquals( 1, assembler.getSendQueue( PacketNumberSpace.APPLICATION_DATA ).size() );
+        ShortHeaderPacketImpl packet = (ShortHeaderPacketImpl)new PacketParserImpl( server )
+                .parsePacket( null, datagram, 0 );
+        assertEquals( 2, packet.getPayload().size() );
+        assertTrue( packet.getPayload().get( 0 ) instanceof MultiPaddingFrameImpl );
+        StreamFrameImpl parsedFrame = (StreamFrameImpl)packet.getPayload().get( 1 );
+        assertTrue( parsedFrame.isFinBitSet() );
+        assertEquals( 0, parsedFrame.getData().remaining() );
+    }
+
+    @Test
+    public void assemble_sealingFails_requeuesFramesForTheNextPacket() throws Exception {
+        PacketAssembler assembler = createClientAssembler();
+        List<List<Frame>> sentFrames = new ArrayList<>();
+        assembler.setSentPacketListener( ( space, packetNumber, size, ackEliciting, inFlight, frames, now ) ->
+                sentFrames.add( new ArrayList<>( frames ) ) );
+        CryptoFrameImpl first = createCryptoFrame( 0, 100 );
+        CryptoFrameImpl second = createCryptoFrame( 100, 100 );
+        assembler.getSendQueue( PacketNumberSpace.INITIAL ).add( first );
+        assembler.getSendQueue( PacketNumberSpace.INITIAL ).add( second );
+        InitialPacketProtectionImpl protection = new InitialPacketProtectionImpl( EndpointRole.CLIENT );
+        protection.initialize( DESTINATION_CONNECTION_ID );
+        assembler.setPacketSealer( PacketNumberSpace.INITIAL, new PacketSealer() {
+            @Override
+            public int getAeadTagLength() {
+                return protection.getAeadTagLength();
+            }
+
+            @Override
+            public int aeadEncrypt( ByteBuffer data, int headerOffset, int headerLength,
+                    int plaintextLength, long packetNumber ) throws GeneralSecurityException {
+                throw new GeneralSecurityException( "test" );
+            }
+
+            @Override
+            public byte[] deriveSealingHeaderProtectionMask( ByteBuffer data, int sampleOffset ) {
+                return null;
+            }
+        } );
+
+        try {
+            assembler.assemble( 0 );
+            fail( "sealing must fail" );
+        }
+        catch ( GeneralSecurityException expected ) {
+            // the datagram was not sent
+        }
+        assertTrue( sentFrames.isEmpty() );
+        assertEquals( 2, assembler.getSendQueue( PacketNumberSpace.INITIAL ).size() );
+        assertSame( first, assembler.getSendQueue( PacketNumberSpace.INITIAL ).peek() );
+
+        assembler.setPacketSealer( PacketNumberSpace.INITIAL, protection );
+        assertNotNull( assembler.assemble( 0 ) );
+
+        assertEquals( 1, sentFrames.size() );
+        assertEquals( 2, sentFrames.get( 0 ).size() );
+        assertSame( first, sentFrames.get( 0 ).get( 0 ) );
+        assertSame( second, sentFrames.get( 0 ).get( 1 ) );
+    }
+}
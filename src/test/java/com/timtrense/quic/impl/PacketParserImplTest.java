@@ -1,28 +1,47 @@
 package com.timtrense.quic.impl;
 
 import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
 
 import com.timtrense.quic.ConnectionId;
+import com.timtrense.quic.EncryptionLevel;
 import com.timtrense.quic.EndpointRole;
 import com.timtrense.quic.Frame;
+import com.timtrense.quic.FrameType;
 import com.timtrense.quic.HexByteStringConvertHelper;
 import com.timtrense.quic.Packet;
+import com.timtrense.quic.PacketNumberSpace;
 import com.timtrense.quic.ProtocolVersion;
 import com.timtrense.quic.VariableLengthInteger;
 import com.timtrense.quic.impl.base.ConnectionIdImpl;
+import com.timtrense.quic.impl.base.InitialPacketProtectionImpl;
 import com.timtrense.quic.impl.base.PacketNumberImpl;
+import com.timtrense.quic.impl.base.PacketProtectionImpl;
+import com.timtrense.quic.impl.base.TransportParameterCollectionImpl;
+import com.timtrense.quic.impl.exception.MalformedPacketException;
+import com.timtrense.quic.impl.exception.OutOfOrderProtectedPacketException;
 import com.timtrense.quic.impl.exception.QuicParsingException;
 import com.timtrense.quic.impl.frames.CryptoFrameImpl;
 import com.timtrense.quic.impl.frames.MultiPaddingFrameImpl;
+import com.timtrense.quic.impl.frames.PingFrameImpl;
 import com.timtrense.quic.impl.packets.InitialPacketImpl;
+import com.timtrense.quic.impl.packets.ShortHeaderPacketImpl;
+import com.timtrense.quic.impl.recovery.ReceivedPacketTracker;
+import com.timtrense.quic.tls.CipherSuite;
 
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 /**
@@ -30,7 +49,7 @@
  */
 public class PacketParserImplTest {
 
-    private static byte[] protectedInitialPacket;
+    static byte[] protectedInitialPacket;
     static ConnectionId expectedDestinationConnectionId;
 
     @BeforeClass
@@ -90,7 +109,7 @@ public static void prepareProtectedIntialPacket() {
     public void parsePacket_GivenAppendixAContent_givesInitialPacket() {
         Endpoint endpoint = new Endpoint( EndpointRole.SERVER );
         PacketParser packetParser = new PacketParserImpl( endpoint );
-        ByteBuffer packetData = ByteBuffer.wrap( protectedInitialPacket );
+        ByteBuffer packetData = ByteBuffer.wrap( protectedInitialPacket.clone() );
 
         Packet packet = null;
         try {
@@ -126,4 +145,261 @@ public void parsePacket_GivenAppendixAContent_givesInitialPacket() {
         assertTrue( secondFrame instanceof MultiPaddingFrameImpl );
     }
 
+    @Test
+    public void parsePacket_GivenAppendixAContentWithFrameHandler_passesFramesToHandler() throws Exception {
+        Endpoint endpoint = new Endpoint( EndpointRole.SERVER );
+        List<Packet> handledPackets = new ArrayList<>();
+        List<FrameType> handledFrameTypes = new ArrayList<>();
+        FrameHandler frameHandler = new FrameHandler() {
+            @Override
+            public void onPacket( Packet packet ) {
+                handledPackets.add( packet );
+            }
+
+            @Override
+            public void onFrame( FrameType type, int frameIndex ) {
+                handledFrameTypes.add( type );
+            }
+        };
+        endpoint.getConnections().put( expectedDestinationConnectionId, new Connection() {
+            @Override
+            public Set<ConnectionId> getRemoteConnectionIds() {
+                return Collections.emptySet();
+            }
+
+            @Override
+            public PacketProtection getPacketProtection( EncryptionLevel encryptionLevel ) {
+                return null;
+            }
+
+            @Override
+            public FrameHandler getFrameHandler( EncryptionLevel encryptionLevel ) {
+                return encryptionLevel == EncryptionLevel.INITIAL ? frameHandler : null;
+            }
+        } );
+        PacketParser packetParser = new PacketParserImpl( endpoint );
+
+        Packet packet = packetParser.parsePacket( null, ByteBuffer.wrap( protectedInitialPacket.clone() ), 0 );
+
+        assertTrue( packet instanceof InitialPacketImpl );
+        assertNull( ( (InitialPacketImpl)packet ).getPayload() );
+        assertEquals( Collections.singletonList( packet ), handledPackets );
+        assertEquals( Arrays.asList( FrameType.CRYPTO, FrameType.PADDING ), handledFrameTypes );
+    }
+
+    @Test
+    public void parsePacket_GivenAppendixAContentInDirectBuffer_decryptsInPlace() throws Exception {
+        Endpoint endpoint = new Endpoint( EndpointRole.SERVER );
+        PacketParser packetParser = new PacketParserImpl( endpoint );
+        ByteBuffer packetData = ByteBuffer.allocateDirect( protectedInitialPacket.length );
+        packetData.put( protectedInitialPacket );
+        packetData.flip();
+
+        Packet packet = packetParser.parsePacket( null, packetData, 0 );
+
+        assertNotNull( packet );
+        assertEquals( InitialPacketImpl.class, packet.getClass() );
+        InitialPacketImpl initialPacket = (InitialPacketImpl)packet;
+        assertEquals( new PacketNumberImpl( 2 ), initialPacket.getPacketNumber() );
+        assertEquals( 2, initialPacket.getPayload().size() );
+        assertTrue( initialPacket.getPayload().get( 0 ) instanceof CryptoFrameImpl );
+        assertEquals( protectedInitialPacket.length, packetData.position() );
+        // the header protection was removed in place: unprotected flags and packet number 2 in 4 bytes
+        assertEquals( (byte)0xc3, packetData.get( 0 ) );
+        assertEquals( (byte)0x02, packetData.get( (int)initialPacket.getHeaderLength() - 1 ) );
+    }
+
+    @Test
+    public void parsePacket_GivenRfc9001AppendixA5ShortHeader_givesPingPacket() throws Exception {
+        byte[] secret = HexByteStringConvertHelper.hexStringToByteArray(
+                "9ac312a7f877468ebe69422748ad00a15443f18203a07d6060f688f30f21632b" );
+        PacketProtection protection = new PacketProtectionImpl( CipherSuite.TLS_CHACHA20_POLY1305_SHA256, secret );
+        ReceivedPacketTracker tracker = new ReceivedPacketTracker( PacketNumberSpace.APPLICATION_DATA,
+                new TransportParameterCollectionImpl() );
+        tracker.onPacketReceived( 654360563L, true, 0 );
+        ConnectionIdTable connections = new ConnectionIdTable();
+        connections.put( new ConnectionIdImpl( new byte[0], VariableLengthInteger.ZERO ), new Connection() {
+            @Override
+            public Set<ConnectionId> getRemoteConnectionIds() {
+                return Collections.emptySet();
+            }
+
+            @Override
+            public PacketProtection getPacketProtection( EncryptionLevel encryptionLevel ) {
+                return encryptionLevel == EncryptionLevel.APPLICATION_DATA ? protection : null;
+            }
+
+            @Override
+            public ReceivedPacketTracker getReceivedPacketTracker( PacketNumberSpace space ) {
+                return space == PacketNumberSpace.APPLICATION_DATA ? tracker : null;
+            }
+        } );
+        ParsingContext context = new ParsingContext() {
+            @Override
+            public EndpointRole getRole() {
+                return EndpointRole.CLIENT;
+            }
+
+            @Override
+            public PacketProtection getPacketProtection( ConnectionId connectionId, EncryptionLevel level ) {
+                return null;
+            }
+
+            @Override
+            public int getConnectionIdLength( ByteBuffer data, int offset ) {
+                return 0;
+            }
+
+            @Override
+            public ConnectionIdTable.Entry getLocalConnection( ByteBuffer data, int offset, int length ) {
+                return connections.getEntry( data, offset, length );
+            }
+        };
+        PacketParser packetParser = new PacketParserImpl( context );
+        ByteBuffer packetData = ByteBuffer.wrap(
+                HexByteStringConvertHelper.hexStringToByteArray( "4cfe4189655e5cd55c41f69080575d7999c25a5bfb" ) );
+
+        Packet packet = packetParser.parsePacket( null, packetData, 0 );
+
+        assertNotNull( packet );
+        assertEquals( ShortHeaderPacketImpl.class, packet.getClass() );
+        ShortHeaderPacketImpl shortHeaderPacket = (ShortHeaderPacketImpl)packet;
+        assertEquals( (byte)0x42, shortHeaderPacket.getFlags() );
+        assertEquals( 3, shortHeaderPacket.getPacketNumberLength() );
+        assertFalse( shortHeaderPacket.isKeyPhase() );
+        assertEquals( new PacketNumberImpl( 654360564L ), shortHeaderPacket.getPacketNumber() );
+        assertEquals( 0, shortHeaderPacket.getDestinationConnectionId().getValue().length );
+        assertEquals( 1, shortHeaderPacket.getPayload().size() );
+        assertTrue( shortHeaderPacket.getPayload().get( 0 ) instanceof PingFrameImpl );
+        assertTrue( shortHeaderPacket.isPacketValid() );
+        assertEquals( packetData.limit(), packetData.position() );
+    }
+
+    @Test
+    public void parsePacket_GivenShortHeaderAfterPacketNumber256_decodesAgainstLargestReceived() throws Exception {
+        Endpoint endpoint = new Endpoint( EndpointRole.SERVER );
+        ConnectionId connectionId = new ConnectionIdImpl( endpoint.createRandomUnusedConnectionId(),
+                VariableLengthInteger.ZERO );
+        byte[] secret = new byte[32];
+        PacketProtection protection = new PacketProtectionImpl( CipherSuite.TLS_AES_128_GCM_SHA256, secret );
+        ReceivedPacketTracker tracker = new ReceivedPacketTracker( PacketNumberSpace.APPLICATION_DATA,
+                new TransportParameterCollectionImpl() );
+        endpoint.getConnections().put( connectionId, new Connection() {
+            @Override
+            public Set<ConnectionId> getRemoteConnectionIds() {
+                return Collections.emptySet();
+            }
+
+            @Override
+            public PacketProtection getPacketProtection( EncryptionLevel encryptionLevel ) {
+                return encryptionLevel == EncryptionLevel.APPLICATION_DATA ? protection : null;
+            }
+
+            @Override
+            public ReceivedPacketTracker getReceivedPacketTracker( PacketNumberSpace space ) {
+                return space == PacketNumberSpace.APPLICATION_DATA ? tracker : null;
+            }
+        } );
+        PacketAssembler assembler = new PacketAssembler( EndpointRole.CLIENT, new ByteBufferPool( 1, 1200, false ) );
+        assembler.setDestinationConnectionId( connectionId );
+        assembler.setPacketSealer( PacketNumberSpace.APPLICATION_DATA,
+                new PacketProtectionImpl( CipherSuite.TLS_AES_128_GCM_SHA256, secret ) );
+        ByteBuffer packetData = null;
+        for ( long packetNumber = 0; packetNumber <= 300; packetNumber++ ) {
+            assembler.getSendQueue( PacketNumberSpace.APPLICATION_DATA ).add( new PingFrameImpl( FrameType.PING ) );
+            packetData = assembler.assemble( 0 );
+            // acknowledge all but the last packet, so that it is sent with a 1 byte packet number
+            assembler.onAckReceived( PacketNumberSpace.APPLICATION_DATA, packetNumber );
+        }
+        tracker.onPacketReceived( 299, true, 0 );
+        PacketParser packetParser = new PacketParserImpl( endpoint );
+
+        ShortHeaderPacketImpl packet = (ShortHeaderPacketImpl)packetParser.parsePacket( null, packetData, 0 );
+
+        assertEquals( 1, packet.getPacketNumberLength() );
+        assertEquals( new PacketNumberImpl( 300 ), packet.getPacketNumber() );
+    }
+
+    @Test
+    public void parsePacket_GivenShortHeaderWithFrameHandler_passesFramesToHandler() throws Exception {
+        Endpoint endpoint = new Endpoint( EndpointRole.SERVER );
+        ConnectionId connectionId = new ConnectionIdImpl( endpoint.createRandomUnusedConnectionId(),
+                VariableLengthInteger.ZERO );
+        byte[] secret = new byte[32];
+        PacketProtection protection = new PacketProtectionImpl( CipherSuite.TLS_AES_128_GCM_SHA256, secret );
+        List<FrameType> handledFrameTypes = new ArrayList<>();
+        FrameHandler frameHandler = new FrameHandler() {
+            @Override
+            public void onFrame( FrameType type, int frameIndex ) {
+                handledFrameTypes.add( type );
+            }
+        };
+        endpoint.getConnections().put( connectionId, new Connection() {
+            @Override
+            public Set<ConnectionId> getRemoteConnectionIds() {
+                return Collections.emptySet();
+            }
+
+            @Override
+            public PacketProtection getPacketProtection( EncryptionLevel encryptionLevel ) {
+                return encryptionLevel == EncryptionLevel.APPLICATION_DATA ? protection : null;
+            }
+
+            @Override
+            public FrameHandler getFrameHandler( EncryptionLevel encryptionLevel ) {
+                return encryptionLevel == EncryptionLevel.APPLICATION_DATA ? frameHandler : null;
+            }
+        } );
+        PacketAssembler assembler = new PacketAssembler( EndpointRole.CLIENT, new ByteBufferPool( 1, 1200, false ) );
+        assembler.setDestinationConnectionId( connectionId );
+        assembler.setPacketSealer( PacketNumberSpace.APPLICATION_DATA,
+                new PacketProtectionImpl( CipherSuite.TLS_AES_128_GCM_SHA256, secret ) );
+        assembler.getSendQueue( PacketNumberSpace.APPLICATION_DATA ).add( new PingFrameImpl( FrameType.PING ) );
+        PacketParser packetParser = new PacketParserImpl( endpoint );
+
+        ShortHeaderPacketImpl packet = (ShortHeaderPacketImpl)packetParser.parsePacket(
+                null, assembler.assemble( 0 ), 0 );
+
+        assertEquals( connectionId, packet.getDestinationConnectionId() );
+        assertEquals( new PacketNumberImpl( 0 ), packet.getPacketNumber() );
+        assertTrue( packet.getPayload().isEmpty() );
+        assertEquals( FrameType.PING, handledFrameTypes.get( 0 ) );
+    }
+
+    @Test( expected = MalformedPacketException.class )
+    public void parsePacket_GivenInitialWithoutDerivableKeys_throwsMalformed() throws Exception {
+        Endpoint endpoint = new Endpoint( EndpointRole.SERVER ) {
+            @Override
+            public InitialPacketProtectionImpl getInitialPacketProtection( ConnectionId clientDestinationConnectionId )
+                    throws GeneralSecurityException {
+                throw new GeneralSecurityException( "cipher not available" );
+            }
+        };
+        PacketParser packetParser = new PacketParserImpl( endpoint );
+
+        packetParser.parsePacket( null, ByteBuffer.wrap( protectedInitialPacket.clone() ), 0 );
+    }
+
+    @Test( expected = OutOfOrderProtectedPacketException.class )
+    public void parsePacket_GivenShortHeaderWithoutKeys_throwsOutOfOrder() throws Exception {
+        Endpoint endpoint = new Endpoint( EndpointRole.SERVER );
+        PacketParser packetParser = new PacketParserImpl( endpoint );
+        ConnectionId connectionId = new ConnectionIdImpl( endpoint.createRandomUnusedConnectionId(),
+                VariableLengthInteger.ZERO );
+        endpoint.getConnections().put( connectionId, new Connection() {
+            @Override
+            public Set<ConnectionId> getRemoteConnectionIds() {
+                return Collections.emptySet();
+            }
+
+            @Override
+            public PacketProtection getPacketProtection( EncryptionLevel encryptionLevel ) {
+                return null;
+            }
+        } );
+        ByteBuffer packetData = ByteBuffer.allocate( 1 + 8 + 24 );
+        packetData.put( (byte)0x40 ).put( connectionId.getValue() ).position( 0 );
+
+        packetParser.parsePacket( null, packetData, 0 );
+    }
 }
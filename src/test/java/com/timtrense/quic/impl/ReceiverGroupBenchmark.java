@@ -0,0 +1,120 @@
+package com.timtrense.quic.impl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Measures the receive rate of a {@link ReceiverGroup} with 1, 2 and 4 receivers over loopback.
+ * This is no unit test, run it manually via its {@link #main(String[]) main method}.
+ * <p>
+ * {@link #SENDER_COUNT} sockets send as fast as they can, so datagrams are lost once the receivers fall behind.
+ * The rate is measured from the first send to the last receive.
+ *
+ * @author Tim Trense
+ */
+public class ReceiverGroupBenchmark {
+
+    private static final int SENDER_COUNT = 8;
+    private static final int DATAGRAMS_PER_SENDER = 100_000;
+    private static final int RUNS = 5;
+
+    public static void main( String[] args ) throws Exception {
+        if ( !ReceiverGroup.isReusePortSupported() ) {
+            System.out.println( "SO_REUSEPORT is not supported on this platform" );
+            return;
+        }
+        for ( int run = 0; run < RUNS; run++ ) {
+            System.out.println( "run " + run + ( run == 0 ? " (warmup)" : "" ) );
+            for ( int receiverCount = 1; receiverCount <= 4; receiverCount *= 2 ) {
+                measure( receiverCount );
+            }
+        }
+    }
+
+    private static void measure( int receiverCount ) throws Exception {
+        EndpointConfiguration configuration = new EndpointConfiguration();
+        configuration.setReceiverCount( receiverCount );
+        configuration.setReceiveDatagramQueueSizeLimit( 256 );
+
+        List<BlockingQueue<ReceivedDatagram>> queues = new ArrayList<>();
+        for ( int i = 0; i < receiverCount; i++ ) {
+            queues.add( new LinkedBlockingQueue<>() );
+        }
+        ReceiverGroup group = new ReceiverGroup(
+                new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ),
+                queues,
+                configuration
+        );
+
+        AtomicLong received = new AtomicLong();
+        AtomicLong lastReceiveTime = new AtomicLong();
+        List<Thread> consumers = new ArrayList<>();
+        for ( int i = 0; i < receiverCount; i++ ) {
+            BlockingQueue<ReceivedDatagram> queue = queues.get( i );
+            ByteBufferPool pool = group.getReceivers().get( i ).getBufferPool();
+            Thread consumer = new Thread( () -> {
+                try {
+                    while ( !Thread.currentThread().isInterrupted() ) {
+                        ReceivedDatagram datagram = queue.take();
+                        received.incrementAndGet();
+                        lastReceiveTime.set( System.nanoTime() );
+                        pool.giveBack( datagram );
+                    }
+                }
+                catch ( InterruptedException ignored ) {
+                    // benchmark finished
+                }
+            } );
+            consumer.setDaemon( true );
+            consumer.start();
+            consumers.add( consumer );
+        }
+        group.start();
+
+        long start = System.nanoTime();
+        List<Thread> senders = new ArrayList<>();
+        for ( int i = 0; i < SENDER_COUNT; i++ ) {
+            Thread sender = new Thread( () -> {
+                try ( DatagramChannel channel = DatagramChannel.open() ) {
+                    channel.connect( group.getLocalAddress() );
+                    ByteBuffer payload = ByteBuffer.allocateDirect( 1200 );
+                    for ( int n = 0; n < DATAGRAMS_PER_SENDER; n++ ) {
+                        payload.clear();
+                        channel.write( payload );
+                    }
+                }
+                catch ( IOException ignored ) {
+                    // counted as loss
+                }
+            } );
+            sender.start();
+            senders.add( sender );
+        }
+        for ( Thread sender : senders ) {
+            sender.join();
+        }
+
+        // wait until the receivers drained the socket buffers
+        long last = -1;
+        while ( received.get() != last ) {
+            last = received.get();
+            TimeUnit.MILLISECONDS.sleep( 100 );
+        }
+
+        group.close();
+        consumers.forEach( Thread::interrupt );
+
+        System.out.printf( "  %d receivers: %,10d of %,10d datagrams, %,10.0f datagrams/s%n",
+                receiverCount, last, (long)SENDER_COUNT * DATAGRAMS_PER_SENDER,
+                last * 1e9 / ( lastReceiveTime.get() - start ) );
+    }
+}
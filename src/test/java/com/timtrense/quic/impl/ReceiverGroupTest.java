@@ -0,0 +1,124 @@
+package com.timtrense.quic.impl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.junit.Assume;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @see ReceiverGroup
+ * @see ReceiverGroupBenchmark
+ */
+public class ReceiverGroupTest {
+
+    private static final int RECEIVER_COUNT = 4;
+    /**
+     * enough peers that the chance of the operating system hashing none of them to one of the receivers
+     * (4 * (3/4)^64) is negligible
+     */
+    private static final int SENDER_COUNT = 64;
+    /**
+     * sent in a burst per peer, small enough to fit into the receive buffer of the socket
+     */
+    private static final int DATAGRAMS_PER_SENDER = 8;
+
+    @Test( expected = IllegalArgumentException.class )
+    public void constructor_multipleReceiversWithoutReusePort_throws() throws IOException {
+        EndpointConfiguration configuration = new EndpointConfiguration();
+        configuration.setReceiverCount( 2 );
+        configuration.setReusePort( false );
+        new ReceiverGroup(
+                new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ),
+                Collections.singletonList( new LinkedBlockingQueue<>() ),
+                configuration
+        );
+    }
+
+    @Test( timeout = 60000 )
+    public void receive_pacedDatagramsFromManyPeers_spreadsOverAllReceiversWithoutLoss() throws Exception {
+        Assume.assumeTrue( ReceiverGroup.isReusePortSupported() );
+        EndpointConfiguration configuration = new EndpointConfiguration();
+        configuration.setReceiverCount( RECEIVER_COUNT );
+        List<BlockingQueue<ReceivedDatagram>> queues = new ArrayList<>();
+        for ( int i = 0; i < RECEIVER_COUNT; i++ ) {
+            queues.add( new LinkedBlockingQueue<>() );
+        }
+        ReceiverGroup group = new ReceiverGroup(
+                new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ),
+                queues,
+                configuration
+        );
+        assertEquals( RECEIVER_COUNT, group.getReceivers().size() );
+        AtomicLongArray received = new AtomicLongArray( RECEIVER_COUNT );
+        List<Thread> consumers = new ArrayList<>();
+        for ( int i = 0; i < RECEIVER_COUNT; i++ ) {
+            int receiverIndex = i;
+            BlockingQueue<ReceivedDatagram> queue = queues.get( i );
+            ByteBufferPool pool = group.getReceivers().get( i ).getBufferPool();
+            Thread consumer = new Thread( () -> {
+                try {
+                    while ( !Thread.currentThread().isInterrupted() ) {
+                        pool.giveBack( queue.take() );
+                        received.incrementAndGet( receiverIndex );
+                    }
+                }
+                catch ( InterruptedException ignored ) {
+                    // test finished
+                }
+            } );
+            consumer.setDaemon( true );
+            consumer.start();
+            consumers.add( consumer );
+        }
+        group.start();
+
+        try {
+            ByteBuffer payload = ByteBuffer.allocateDirect( 1200 );
+            for ( int i = 0; i < SENDER_COUNT; i++ ) {
+                // every peer gets its own port, so its datagrams are hashed independently of the other peers
+                try ( DatagramChannel channel = DatagramChannel.open() ) {
+                    channel.connect( group.getLocalAddress() );
+                    for ( int n = 0; n < DATAGRAMS_PER_SENDER; n++ ) {
+                        payload.clear();
+                        channel.write( payload );
+                    }
+                }
+                // pace the peers by waiting for the burst to arrive
+                long expected = (long)( i + 1 ) * DATAGRAMS_PER_SENDER;
+                while ( sum( received ) < expected ) {
+                    TimeUnit.MILLISECONDS.sleep( 1 );
+                }
+            }
+        }
+        finally {
+            group.close();
+            consumers.forEach( Thread::interrupt );
+        }
+
+        assertEquals( (long)SENDER_COUNT * DATAGRAMS_PER_SENDER, sum( received ) );
+        for ( int i = 0; i < RECEIVER_COUNT; i++ ) {
+            assertTrue( "no datagram received by receiver " + i, received.get( i ) > 0 );
+        }
+    }
+
+    private static long sum( AtomicLongArray values ) {
+        long sum = 0;
+        for ( int i = 0; i < values.length(); i++ ) {
+            sum += values.get( i );
+        }
+        return sum;
+    }
+}
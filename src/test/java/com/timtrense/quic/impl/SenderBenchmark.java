@@ -0,0 +1,104 @@
+package com.timtrense.quic.impl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+import java.util.concurrent.BlockingQueue;
+
+import com.timtrense.quic.impl.queue.HandoffQueueType;
+import com.timtrense.quic.impl.queue.WaitStrategy;
+
+/**
+ * Measures the throughput and the enqueue-to-wire latency of the {@link Sender} over loopback.
+ * This is no unit test, run it manually via its {@link #main(String[]) main method}.
+ * <p>
+ * One producer hands over pooled datagrams of {@link #DATAGRAM_SIZE} bytes as fast as the sender accepts them,
+ * while a receiving thread drains the target socket. The latency is measured from
+ * {@link Sender#send(OutgoingDatagram)} to the return of the write to the channel.
+ *
+ * @author Tim Trense
+ */
+public class SenderBenchmark {
+
+    private static final int DATAGRAM_SIZE = 1200;
+    private static final int DATAGRAMS = 1_000_000;
+    private static final int RUNS = 5;
+    private static final int[] BATCH_SIZES = { 1, 32 };
+
+    public static void main( String[] args ) throws Exception {
+        for ( int run = 0; run < RUNS; run++ ) {
+            System.out.println( "run " + run + ( run == 0 ? " (warmup)" : "" ) );
+            for ( HandoffQueueType type : HandoffQueueType.values() ) {
+                for ( int batchSize : BATCH_SIZES ) {
+                    measure( type, batchSize );
+                }
+            }
+        }
+    }
+
+    private static void measure( HandoffQueueType type, int batchSize ) throws Exception {
+        EndpointConfiguration configuration = new EndpointConfiguration();
+        configuration.setSenderBatchSize( batchSize );
+        long[] latencies = new long[DATAGRAMS];
+        try ( DatagramChannel receiveChannel = DatagramChannel.open();
+              DatagramChannel sendChannel = DatagramChannel.open() ) {
+            receiveChannel.bind( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ) );
+            SocketAddress target = receiveChannel.getLocalAddress();
+            sendChannel.configureBlocking( false );
+            BlockingQueue<OutgoingDatagram> queue = type.create(
+                    configuration.getSendDatagramQueueSizeLimit(), WaitStrategy.PARK, true );
+            ByteBufferPool pool = new ByteBufferPool( configuration.getSendDatagramQueueSizeLimit() + batchSize,
+                    DATAGRAM_SIZE, true );
+            Sender sender = new Sender( sendChannel, queue, configuration ) {
+                private int sent;
+
+                @Override
+                protected void onSent( OutgoingDatagram datagram, long now ) {
+                    latencies[sent++] = now - datagram.getEnqueueTime();
+                    super.onSent( datagram, now );
+                }
+            };
+            Thread receiver = new Thread( () -> {
+                ByteBuffer buffer = ByteBuffer.allocateDirect( DATAGRAM_SIZE );
+                try {
+                    while ( !Thread.currentThread().isInterrupted() ) {
+                        buffer.clear();
+                        receiveChannel.receive( buffer );
+                    }
+                }
+                catch ( IOException ignored ) {
+                    // closed after the benchmark
+                }
+            } );
+            receiver.setDaemon( true );
+            receiver.start();
+            sender.start();
+
+            long start = System.nanoTime();
+            for ( int i = 0; i < DATAGRAMS; i++ ) {
+                ByteBuffer buffer = pool.take();
+                buffer.limit( DATAGRAM_SIZE );
+                OutgoingDatagram datagram = new OutgoingDatagram( buffer, target, pool );
+                while ( !sender.send( datagram ) ) {
+                    Thread.yield();
+                }
+            }
+            while ( sender.getSentCount() < DATAGRAMS ) {
+                Thread.yield();
+            }
+            long elapsed = System.nanoTime() - start;
+            sender.interrupt();
+            sender.join();
+            receiver.interrupt();
+
+            Arrays.sort( latencies );
+            System.out.printf( "  %-16s batch %-3d %,12.0f datagrams/s  p50 %,9d ns  p99 %,9d ns  blocked %,d%n",
+                    type, batchSize, DATAGRAMS * 1e9 / elapsed, latencies[DATAGRAMS / 2],
+                    latencies[(int)( DATAGRAMS * 0.99 )], sender.getBlockedCount() );
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package com.timtrense.quic.impl;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @see com.timtrense.quic.impl.Sender
+ */
+public class SenderTest {
+
+    /**
+     * Loopback sockets never would block, as the kernel releases the send buffer as soon as the datagram is
+     * queued at the receiving socket. Thus the sender pretends that the socket would block while the flag is set.
+     */
+    private static Sender createWouldBlockSender(
+            DatagramChannel channel,
+            int sendQueueSize,
+            EndpointConfiguration configuration,
+            AtomicBoolean wouldBlock
+    ) throws IOException {
+        return new Sender( channel, new ArrayBlockingQueue<>( sendQueueSize ), configuration ) {
+            @Override
+            protected int sendOnce( OutgoingDatagram datagram, ByteBuffer buffer ) throws IOException {
+                return wouldBlock.get() ? 0 : super.sendOnce( datagram, buffer );
+            }
+        };
+    }
+
+    private static OutgoingDatagram createDatagram( ByteBufferPool pool, int number, SocketAddress target ) {
+        ByteBuffer buffer = pool.take();
+        buffer.putInt( number ).position( 100 ).flip();
+        return new OutgoingDatagram( buffer, target, pool );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void constructor_blockingChannel_throws() throws IOException {
+        try ( DatagramChannel channel = DatagramChannel.open() ) {
+            new Sender( channel, new ArrayBlockingQueue<>( 1 ), new EndpointConfiguration() );
+        }
+    }
+
+    @Test( timeout = 10000 )
+    public void send_fullSendQueue_givesFalseAfterTimeout() throws Exception {
+        EndpointConfiguration configuration = new EndpointConfiguration();
+        configuration.setAssemblerSendQueueBlockTimeout( 10 );
+        try ( DatagramChannel channel = DatagramChannel.open() ) {
+            channel.configureBlocking( false );
+            Sender sender = new Sender( channel, new ArrayBlockingQueue<>( 1 ), configuration );
+
+            // the sender is not started, thus the queue is never drained
+            assertTrue( sender.send( new OutgoingDatagram( ByteBuffer.allocate( 1 ), null, null ) ) );
+            assertFalse( sender.send( new OutgoingDatagram( ByteBuffer.allocate( 1 ), null, null ) ) );
+            assertEquals( SenderState.NEW, sender.getSenderState() );
+        }
+    }
+
+    @Test( timeout = 30000 )
+    public void run_loopback_sendsAllDatagramsAndRecyclesBuffers() throws Exception {
+        final int datagramCount = 2000;
+        EndpointConfiguration configuration = new EndpointConfiguration();
+        try ( DatagramChannel receiveChannel = DatagramChannel.open();
+              DatagramChannel sendChannel = DatagramChannel.open() ) {
+            receiveChannel.bind( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ) );
+            SocketAddress target = receiveChannel.getLocalAddress();
+            sendChannel.configureBlocking( false );
+            ByteBufferPool pool = new ByteBufferPool( 64, 1200, true );
+            Sender sender = new Sender( sendChannel,
+                    new ArrayBlockingQueue<>( configuration.getSendDatagramQueueSizeLimit() ), configuration );
+            List<SenderState> states = new CopyOnWriteArrayList<>();
+            sender.addListener( ( s, newState ) -> states.add( newState ) );
+
+            AtomicInteger received = new AtomicInteger();
+            // failures of the receiving thread are asserted on the test thread
+            AtomicReference<String> receiveFailure = new AtomicReference<>();
+            Thread receiver = new Thread( () -> {
+                ByteBuffer buffer = ByteBuffer.allocate( 1200 );
+                try {
+                    while ( received.get() < datagramCount ) {
+                        buffer.clear();
+                        receiveChannel.receive( buffer );
+                        if ( buffer.position() != 100 ) {
+                            receiveFailure.set( "received " + buffer.position() + " bytes instead of 100" );
+                            return;
+                        }
+                        received.incrementAndGet();
+                    }
+                }
+                catch ( IOException e ) {
+                    receiveFailure.set( e.toString() );
+                }
+            } );
+            receiver.start();
+            sender.start();
+
+            for ( int i = 0; i < datagramCount; i++ ) {
+                ByteBuffer buffer = pool.take();
+                buffer.putInt( i ).position( 100 ).flip();
+                OutgoingDatagram datagram = new OutgoingDatagram( buffer, target, pool );
+                while ( !sender.send( datagram ) ) {
+                    Thread.yield();
+                }
+                // a slow receiver would otherwise overflow the receive buffer of the socket
+                while ( i - received.get() > 100 && receiveFailure.get() == null ) {
+                    Thread.yield();
+                }
+            }
+            receiver.join();
+            sender.interrupt();
+            sender.join();
+
+            assertNull( receiveFailure.get() );
+            assertEquals( datagramCount, received.get() );
+            assertEquals( datagramCount, sender.getSentCount() );
+            assertTrue( pool.getAllocationCount() < datagramCount );
+            assertEquals( SenderState.ACTIVE, states.get( 0 ) );
+            assertEquals( SenderState.STOP, states.get( states.size() - 1 ) );
+            assertEquals( SenderState.STOP, sender.getSenderState() );
+        }
+    }
+
+    @Test( timeout = 10000 )
+    public void run_socketWouldBlock_blocksAndAppliesBackpressureWithoutDropping() throws Exception {
+        EndpointConfiguration configuration = new EndpointConfiguration();
+        configuration.setAssemblerSendQueueBlockTimeout( 10 );
+        try ( DatagramChannel receiveChannel = DatagramChannel.open();
+              DatagramChannel sendChannel = DatagramChannel.open() ) {
+            receiveChannel.bind( new InetSocketAddress( InetAddress.getLoopbackAddress(), 0 ) );
+            SocketAddress target = receiveChannel.getLocalAddress();
+            sendChannel.configureBlocking( false );
+            ByteBufferPool pool = new ByteBufferPool( 64, 1200, true );
+            AtomicBoolean wouldBlock = new AtomicBoolean( true );
+            Sender sender = createWouldBlockSender( sendChannel, 4, configuration, wouldBlock );
+            AtomicBoolean resumed = new AtomicBoolean();
+            sender.addListener( ( s, newState ) -> {
+                if ( s.getSenderState() == SenderState.BLOCKED && newState == SenderState.ACTIVE ) {
+                    resumed.set( true );
+                }
+            } );
+            sender.start();
+
+            assertTrue( sender.send( createDatagram( pool, 0, target ) ) );
+            while ( sender.getBlockedCount() == 0 ) {
+                Thread.yield();
+            }
+            // the sender holds the first datagram, all further ones fill up the send queue
+            int accepted = 1;
+            OutgoingDatagram datagram = createDatagram( pool, accepted, target );
+            while ( sender.send( datagram ) ) {
+                accepted++;
+                datagram = createDatagram( pool, accepted, target );
+            }
+            assertEquals( 5, accepted );
+            assertEquals( 0, sender.getSentCount() );
+
+            wouldBlock.set( false );
+            ByteBuffer buffer = ByteBuffer.allocate( 1200 );
+            for ( int i = 0; i < accepted; i++ ) {
+                buffer.clear();
+                receiveChannel.receive( buffer );
+                assertEquals( 100, buffer.position() );
+                assertEquals( i, buffer.getInt( 0 ) );
+            }
+            while ( sender.getSentCount() < accepted ) {
+                Thread.yield();
+            }
+            assertTrue( sender.send( datagram ) );
+            buffer.clear();
+            receiveChannel.receive( buffer );
+            assertEquals( accepted, buffer.getInt( 0 ) );
+            sender.interrupt();
+            sender.join();
+
+            assertTrue( resumed.get() );
+            assertTrue( sender.getBlockedCount() > 0 );
+            assertEquals( accepted + 1, sender.getSentCount() );
+            assertEquals( SenderState.STOP, sender.getSenderState() );
+        }
+    }
+
+    @Test( timeout = 10000 )
+    public void interrupt_whileBlocked_givesBackAllQueuedBuffers() throws Exception {
+        EndpointConfiguration configuration = new EndpointConfiguration();
+        configuration.setAssemblerSendQueueBlockTimeout( 10 );
+        configuration.setSenderBatchSize( 1 );
+        try ( DatagramChannel sendChannel = DatagramChannel.open() ) {
+            sendChannel.configureBlocking( false );
+            SocketAddress target = new InetSocketAddress( InetAddress.getLoopbackAddress(), 9 );
+            ByteBufferPool pool = new ByteBufferPool( 64, 1200, true );
+            Sender sender = createWouldBlockSender( sendChannel, 4, configuration, new AtomicBoolean( true ) );
+            sender.start();
+            assertTrue( sender.send( createDatagram( pool, 0, target ) ) );
+            while ( sender.getBlockedCount() == 0 ) {
+                Thread.yield();
+            }
+            int accepted = 1;
+            OutgoingDatagram datagram = createDatagram( pool, accepted, target );
+            while ( sender.send( datagram ) ) {
+                accepted++;
+                datagram = createDatagram( pool, accepted, target );
+            }
+            pool.giveBack( datagram.getBuffer() );
+
+            sender.interrupt();
+            sender.join();
+
+            assertEquals( SenderState.STOP, sender.getSenderState() );
+            assertEquals( 0, sender.getSentCount() );
+            assertEquals( 0, sender.getSendQueue().size() );
+            assertEquals( accepted + 1, pool.getRecycleCount() );
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.timtrense.quic.impl;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.Set;
+
+import com.timtrense.quic.ConnectionId;
+import com.timtrense.quic.EncryptionLevel;
+import com.timtrense.quic.EndpointRole;
+import com.timtrense.quic.FrameType;
+import com.timtrense.quic.PacketNumberSpace;
+import com.timtrense.quic.VariableLengthInteger;
+import com.timtrense.quic.impl.base.ConnectionIdImpl;
+import com.timtrense.quic.impl.base.PacketProtectionImpl;
+import com.timtrense.quic.impl.frames.CryptoFrameImpl;
+import com.timtrense.quic.tls.CipherSuite;
+
+/**
+ * Measures parsing protected 1-RTT packets of 1200 bytes, including the lookup of the destination connection id,
+ * the removal of the header protection and the decryption of the payload. The packets are parsed by an
+ * {@link Endpoint} that only knows connection ids of the configured length, once collecting the frames into the
+ * payload and once passing them to the {@link FrameHandler} of the connection. They are parsed a third time with
+ * a frame handler by an endpoint that additionally knows a connection id of another length, thus must probe the
+ * registered lengths.
+ * This is no unit test, run it manually via its {@link #main(String[]) main method}.
+ *
+ * @author Tim Trense
+ */
+public class ShortHeaderPacketParserBenchmark {
+
+    private static final int PACKETS = 200_000;
+    private static final int RUNS = 5;
+    private static final byte[] SECRET = new byte[32];
+
+    public static void main( String[] args ) throws Exception {
+        Endpoint collectingEndpoint = new Endpoint( EndpointRole.SERVER );
+        ConnectionId connectionId = new ConnectionIdImpl( collectingEndpoint.createRandomUnusedConnectionId(),
+                VariableLengthInteger.ZERO );
+        collectingEndpoint.getConnections().put( connectionId, createConnection( null ) );
+        FrameHandler frameHandler = new FrameHandler() {};
+        Endpoint fixedLengthEndpoint = new Endpoint( EndpointRole.SERVER );
+        fixedLengthEndpoint.getConnections().put( connectionId, createConnection( frameHandler ) );
+        Endpoint mixedLengthEndpoint = new Endpoint( EndpointRole.SERVER );
+        mixedLengthEndpoint.getConnections().put( connectionId, createConnection( frameHandler ) );
+        mixedLengthEndpoint.getConnections().put( new ConnectionIdImpl( new byte[]{ 1, 2, 3, 4 },
+                VariableLengthInteger.ZERO ), createConnection( frameHandler ) );
+        byte[] packet = createPacket( connectionId );
+        PacketParser collectingParser = new PacketParserImpl( collectingEndpoint );
+        PacketParser fixedLengthParser = new PacketParserImpl( fixedLengthEndpoint );
+        PacketParser mixedLengthParser = new PacketParserImpl( mixedLengthEndpoint );
+
+        for ( int run = 0; run < RUNS; run++ ) {
+            System.out.println( "run " + run + ( run == 0 ? " (warmup)" : "" ) );
+            report( "fixed length ids, collected frames", collectingParser, packet );
+            report( "fixed length ids, handled frames  ", fixedLengthParser, packet );
+            report( "mixed length ids, handled frames  ", mixedLengthParser, packet );
+        }
+    }
+
+    private static void report( String name, PacketParser parser, byte[] packet ) throws Exception {
+        double nanos = measureParsing( parser, packet );
+        System.out.printf( "  %s: %,8.0f ns/packet, %,8.0f MB/s, %,6.0f bytes allocated/packet%n",
+                name, nanos, packet.length * 1000d / nanos,
+                measureAllocation( () -> measureParsing( parser, packet ) ) );
+    }
+
+    /**
+     * @param frameHandler the handler of the frames of 1-RTT packets, null to collect them
+     * @return a connection with 1-RTT keys derived from {@link #SECRET}
+     */
+    private static Connection createConnection( FrameHandler frameHandler ) throws Exception {
+        PacketProtection protection = new PacketProtectionImpl( CipherSuite.TLS_AES_128_GCM_SHA256, SECRET );
+        return new Connection() {
+            @Override
+            public Set<ConnectionId> getRemoteConnectionIds() {
+                return Collections.emptySet();
+            }
+
+            @Override
+            public PacketProtection getPacketProtection( EncryptionLevel encryptionLevel ) {
+                return encryptionLevel == EncryptionLevel.APPLICATION_DATA ? protection : null;
+            }
+
+            @Override
+            public FrameHandler getFrameHandler( EncryptionLevel encryptionLevel ) {
+                return encryptionLevel == EncryptionLevel.APPLICATION_DATA ? frameHandler : null;
+            }
+        };
+    }
+
+    /**
+     * @param destinationConnectionId the connection id of the receiving endpoint
+     * @return a protected 1-RTT packet of 1200 bytes with a single CRYPTO frame
+     */
+    private static byte[] createPacket( ConnectionId destinationConnectionId ) throws Exception {
+        PacketAssembler assembler = new PacketAssembler( EndpointRole.CLIENT, new ByteBufferPool( 1, 1200, false ) );
+        assembler.setDestinationConnectionId( destinationConnectionId );
+        assembler.setPacketSealer( PacketNumberSpace.APPLICATION_DATA,
+                new PacketProtectionImpl( CipherSuite.TLS_AES_128_GCM_SHA256, SECRET ) );
+        CryptoFrameImpl frame = new CryptoFrameImpl( FrameType.CRYPTO );
+        frame.setLength( 1150 );
+        frame.setCryptoData( ByteBuffer.wrap( new byte[1150] ) );
+        assembler.getSendQueue( PacketNumberSpace.APPLICATION_DATA ).add( frame );
+        ByteBuffer datagram = assembler.assemble( 0 );
+        byte[] packet = new byte[datagram.remaining()];
+        datagram.get( packet );
+        return packet;
+    }
+
+    private static double measureParsing( PacketParser parser, byte[] packet ) throws Exception {
+        // decryption happens in place, so every iteration parses a fresh copy of the packet
+        byte[] copy = new byte[packet.length];
+        ByteBuffer data = ByteBuffer.wrap( copy );
+        long start = System.nanoTime();
+        for ( int i = 0; i < PACKETS; i++ ) {
+            System.arraycopy( packet, 0, copy, 0, packet.length );
+            data.clear();
+            if ( parser.parsePacket( null, data, 0 ) == null ) {
+                throw new IllegalStateException( "parsing failed" );
+            }
+        }
+        return (double)( System.nanoTime() - start ) / PACKETS;
+    }
+
+    /**
+     * @param measurement a measurement over {@link #PACKETS} packets
+     * @return the number of bytes allocated by the current thread per packet
+     */
+    private static double measureAllocation( Measurement measurement ) throws Exception {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = threads.getThreadAllocatedBytes( threadId );
+        measurement.run();
+        return (double)( threads.getThreadAllocatedBytes( threadId ) - allocatedBefore ) / PACKETS;
+    }
+
+    private interface Measurement {
+        double run() throws Exception;
+    }
+}
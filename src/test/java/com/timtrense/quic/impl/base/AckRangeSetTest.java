@@ -0,0 +1,126 @@
+package com.timtrense.quic.impl.base;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @see AckRangeSet
+ */
+public class AckRangeSetTest {
+
+    @Test
+    public void add_inOrder_keepsOneRange() {
+        AckRangeSet set = new AckRangeSet();
+
+        for ( long pn = 0; pn < 1000; pn++ ) {
+            assertTrue( set.add( pn ) );
+        }
+
+        assertEquals( 1, set.size() );
+        assertEquals( 999L, set.getLargestAcknowledged() );
+        assertEquals( 999L, set.getFirstAckRange() );
+        assertFalse( set.add( 500 ) );
+    }
+
+    @Test
+    public void add_reorderedPackets_mergesRangesWhenGapsAreFilled() {
+        AckRangeSet set = new AckRangeSet();
+        set.add( 1 );
+        set.add( 5 );
+        set.add( 3 );
+        assertEquals( "AckRangeSet[5..5, 3..3, 1..1]", set.toString() );
+
+        set.add( 4 );
+        set.add( 2 );
+
+        assertEquals( "AckRangeSet[1..5]", set.toString() );
+        assertTrue( set.contains( 3 ) );
+        assertFalse( set.contains( 0 ) );
+    }
+
+    @Test
+    public void addRange_overlappingSeveralRanges_mergesThem() {
+        AckRangeSet set = new AckRangeSet();
+        set.addRange( 0, 1 );
+        set.addRange( 4, 5 );
+        set.addRange( 8, 9 );
+        set.addRange( 20, 21 );
+
+        set.addRange( 3, 10 );
+
+        assertEquals( "AckRangeSet[20..21, 3..10, 0..1]", set.toString() );
+        assertEquals( 8L, set.getGap( 1 ) ); // 9 unacknowledged packets 11..19, minus 1
+    }
+
+    @Test
+    public void getEncodedLength_randomOperations_matchesEncoding() {
+        AckRangeSet set = new AckRangeSet();
+        TreeSet<Long> expected = new TreeSet<>();
+        Random random = new Random( 18 );
+        ByteBuffer buffer = ByteBuffer.allocate( 64 * 1024 );
+        for ( int i = 0; i < 20_000; i++ ) {
+            long pn = random.nextInt( 1 << 16 );
+            if ( random.nextInt( 100 ) == 0 ) {
+                long below = random.nextInt( 1 << 16 );
+                set.removeBelow( below );
+                expected.headSet( below ).clear();
+            }
+            else {
+                assertEquals( expected.add( pn ), set.add( pn ) );
+            }
+            if ( set.isEmpty() ) {
+                continue;
+            }
+            buffer.clear();
+            int written = set.encode( buffer, 0 );
+            assertEquals( written - 1, set.getEncodedLength() ); // delay 0 takes 1 byte
+        }
+        for ( long pn = 0; pn < 1 << 16; pn++ ) {
+            assertEquals( expected.contains( pn ), set.contains( pn ) );
+        }
+    }
+
+    @Test
+    public void decode_encodedRanges_givesEqualSet() {
+        AckRangeSet set = new AckRangeSet();
+        for ( long pn = 0; pn < 3000; pn += 1 + ( pn % 7 ) ) {
+            set.add( pn );
+        }
+        ByteBuffer buffer = ByteBuffer.allocate( 8 * 1024 );
+        set.encode( buffer, 1234 );
+        buffer.flip();
+
+        AckRangeSet decoded = new AckRangeSet();
+        long delay = decoded.decode( buffer );
+
+        assertEquals( 1234L, delay );
+        assertEquals( set, decoded );
+        assertEquals( 0, buffer.remaining() );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void appendDecoded_negativePacketNumbers_throws() {
+        AckRangeSet set = new AckRangeSet();
+        set.startDecoding( 10, 2 );
+
+        set.appendDecoded( 5, 5 ); // would acknowledge 1 down to -4
+    }
+
+    @Test
+    public void removeBelow_withinRange_cutsIt() {
+        AckRangeSet set = new AckRangeSet();
+        set.addRange( 0, 10 );
+        set.addRange( 20, 30 );
+
+        set.removeBelow( 25 );
+
+        assertEquals( "AckRangeSet[25..30]", set.toString() );
+    }
+}
@@ -0,0 +1,109 @@
+package com.timtrense.quic.impl.base;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import com.timtrense.quic.CreditBasedFlowControl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @see FlowControlImpl
+ * @see AutoTuningFlowControl
+ */
+public class FlowControlImplTest {
+
+    @Test
+    public void tryAcquire_concurrentSenders_neverExceedLimit() throws Exception {
+        // used through the interface, that dispatches to the atomic implementation
+        CreditBasedFlowControl flowControl = new FlowControlImpl( 100_000 );
+        AtomicLong acquired = new AtomicLong();
+        Thread[] senders = new Thread[4];
+        for ( int i = 0; i < senders.length; i++ ) {
+            senders[i] = new Thread( () -> {
+                while ( flowControl.getCredit() > 0 ) {
+                    if ( flowControl.tryAcquire( 7 ) ) {
+                        acquired.addAndGet( 7 );
+                    }
+                    else if ( flowControl.getCredit() < 7 ) {
+                        break;
+                    }
+                }
+            } );
+            senders[i].start();
+        }
+        for ( Thread sender : senders ) {
+            sender.join();
+        }
+
+        assertEquals( acquired.get(), flowControl.getTransferred() );
+        assertEquals( 100_000 / 7 * 7, flowControl.getTransferred() );
+        assertFalse( flowControl.tryAcquire( 7 ) );
+    }
+
+    @Test
+    public void acquireUpTo_partialCredit_givesRemainingCredit() {
+        FlowControlImpl flowControl = new FlowControlImpl( 10 );
+        assertEquals( 8, flowControl.acquireUpTo( 8 ) );
+        assertEquals( 2, flowControl.acquireUpTo( 8 ) );
+        assertEquals( 0, flowControl.acquireUpTo( 8 ) );
+    }
+
+    @Test
+    public void incrementLimit_deltaBeyondIntRange_isAcquirable() {
+        CreditBasedFlowControl flowControl = new FlowControlImpl( 0 );
+        long delta = 1L << 40;
+
+        assertEquals( delta, flowControl.incrementLimit( delta ) );
+        assertTrue( flowControl.tryAcquire( delta - 1 ) );
+        assertEquals( 1, flowControl.acquireUpTo( delta ) );
+        assertEquals( delta, flowControl.getTransferred() );
+    }
+
+    @Test
+    public void raiseLimit_lowerLimit_isIgnored() {
+        FlowControlImpl flowControl = new FlowControlImpl( 10 );
+        assertTrue( flowControl.raiseLimit( 20 ) );
+        assertFalse( flowControl.raiseLimit( 15 ) );
+        assertEquals( 20, flowControl.getLimit() );
+    }
+
+    @Test
+    public void onConsumed_consumedFasterThanTwoRoundTrips_growsWindow() {
+        AutoTuningFlowControl flowControl = new AutoTuningFlowControl( 1000, 8000 );
+        flowControl.setSmoothedRttNanos( TimeUnit.MILLISECONDS.toNanos( 10 ) );
+        long now = TimeUnit.SECONDS.toNanos( 1 );
+
+        flowControl.incrementTransferred( 600 );
+        assertEquals( 1600, flowControl.onConsumed( 600, now ) ); // first move keeps the window
+        for ( int i = 0; i < 5; i++ ) {
+            now += TimeUnit.MILLISECONDS.toNanos( 1 );
+            long credit = flowControl.getCredit();
+            flowControl.incrementTransferred( credit );
+            flowControl.onConsumed( credit, now );
+        }
+
+        assertEquals( 8000, flowControl.getWindow() );
+        assertEquals( flowControl.getConsumed() + 8000, flowControl.getLimit() );
+    }
+
+    @Test
+    public void onConsumed_consumedSlowerThanTwoRoundTrips_keepsWindow() {
+        AutoTuningFlowControl flowControl = new AutoTuningFlowControl( 1000, 8000 );
+        flowControl.setSmoothedRttNanos( TimeUnit.MILLISECONDS.toNanos( 10 ) );
+        long now = TimeUnit.SECONDS.toNanos( 1 );
+
+        for ( int i = 0; i < 5; i++ ) {
+            now += TimeUnit.MILLISECONDS.toNanos( 50 );
+            flowControl.incrementTransferred( 600 );
+            flowControl.onConsumed( 600, now );
+        }
+
+        assertEquals( 1000, flowControl.getWindow() );
+        assertEquals( -1, flowControl.onConsumed( 0, now ) );
+    }
+}
@@ -0,0 +1,128 @@
+package com.timtrense.quic.impl.base;
+
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.timtrense.quic.tls.CipherSuite;
+
+import static com.timtrense.quic.HexByteStringConvertHelper.hexStringToByteArray;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @see PacketProtectionImpl
+ * @see <a href="https://www.rfc-editor.org/rfc/rfc9001.html#appendix-A.5">RFC 9001/Appendix A.5</a>
+ */
+public class PacketProtectionImplTest {
+
+    static final byte[] CHACHA20_SECRET =
+            hexStringToByteArray( "9ac312a7f877468ebe69422748ad00a15443f18203a07d6060f688f30f21632b" );
+    static final long CHACHA20_PACKET_NUMBER = 654360564L;
+
+    private static final byte[] AES_128_SECRET = new byte[32];
+
+    /**
+     * @return the unprotected header 4200bff4 followed by a PING frame and room for the authentication tag
+     */
+    private static ByteBuffer createUnprotectedPacket() {
+        ByteBuffer packet = ByteBuffer.allocate( 4 + 1 + PacketProtectionImpl.AEAD_TAG_LENGTH );
+        packet.put( hexStringToByteArray( "4200bff4" ) ).put( (byte)0x01 );
+        return packet;
+    }
+
+    @Test
+    public void deriveHeaderProtectionMask_givenAppendixA5Sample_matchesSpecExample() throws Exception {
+        PacketProtectionImpl protection =
+                new PacketProtectionImpl( CipherSuite.TLS_CHACHA20_POLY1305_SHA256, CHACHA20_SECRET );
+
+        byte[] mask = protection.deriveHeaderProtectionMask(
+                hexStringToByteArray( "5e5cd55c41f69080575d7999c25a5bfb" ) );
+
+        assertArrayEquals( hexStringToByteArray( "aefefe7d03" ), Arrays.copyOf( mask, 5 ) );
+    }
+
+    @Test
+    public void deriveNextSecret_givenAppendixA5Secret_matchesSpecExample() throws Exception {
+        PacketProtectionImpl protection =
+                new PacketProtectionImpl( CipherSuite.TLS_CHACHA20_POLY1305_SHA256, CHACHA20_SECRET );
+
+        assertArrayEquals(
+                hexStringToByteArray( "1223504755036d556342ee9361d253421a826c9ecdf3c7148684b36b714881f9" ),
+                protection.deriveNextSecret( CHACHA20_SECRET ) );
+    }
+
+    @Test
+    public void aeadEncrypt_givenAppendixA5Packet_matchesSpecExample() throws Exception {
+        PacketProtectionImpl protection =
+                new PacketProtectionImpl( CipherSuite.TLS_CHACHA20_POLY1305_SHA256, CHACHA20_SECRET );
+        ByteBuffer packet = createUnprotectedPacket();
+
+        int length = protection.aeadEncrypt( packet, 0, 4, 1, CHACHA20_PACKET_NUMBER );
+
+        assertEquals( 17, length );
+        assertArrayEquals( hexStringToByteArray( "4200bff4655e5cd55c41f69080575d7999c25a5bfb" ), packet.array() );
+    }
+
+    @Test
+    public void aeadDecrypt_samePacketTwice_decryptsBoth() throws Exception {
+        PacketProtectionImpl protection =
+                new PacketProtectionImpl( CipherSuite.TLS_CHACHA20_POLY1305_SHA256, CHACHA20_SECRET );
+        ByteBuffer packet = createUnprotectedPacket();
+        protection.aeadEncrypt( packet, 0, 4, 1, CHACHA20_PACKET_NUMBER + 1 );
+        ByteBuffer duplicate = ByteBuffer.wrap( packet.array().clone() );
+
+        assertNotNull( protection.deriveHeaderProtectionMask( packet, 4 ) );
+        assertNotNull( protection.deriveHeaderProtectionMask( duplicate, 4 ) );
+        assertEquals( 1, protection.aeadDecrypt( packet, 0, 4, 17, CHACHA20_PACKET_NUMBER + 1 ) );
+        assertEquals( 1, protection.aeadDecrypt( duplicate, 0, 4, 17, CHACHA20_PACKET_NUMBER + 1 ) );
+        assertEquals( 0x01, duplicate.get( 4 ) );
+    }
+
+    @Test
+    public void aeadDecrypt_flippedKeyPhase_movesToNextKeyPhase() throws Exception {
+        PacketProtectionImpl sender = new PacketProtectionImpl( CipherSuite.TLS_AES_128_GCM_SHA256, AES_128_SECRET );
+        PacketProtectionImpl receiver = new PacketProtectionImpl( CipherSuite.TLS_AES_128_GCM_SHA256, AES_128_SECRET );
+        ByteBuffer reordered = createUnprotectedPacket();
+        sender.aeadEncrypt( reordered, 0, 4, 1, 5 );
+        sender.updateKeys();
+        assertTrue( sender.isKeyPhase() );
+        ByteBuffer updated = createUnprotectedPacket();
+        sender.aeadEncrypt( updated, 0, 4, 1, 10 );
+
+        assertEquals( 1, receiver.aeadDecrypt( updated, 0, 4, 17, 10, true ) );
+        assertEquals( 0x01, updated.get( 4 ) );
+        assertTrue( receiver.isKeyPhase() );
+        assertEquals( 1, receiver.getKeyGeneration() );
+
+        // the packet sent before the key update is decrypted with the previous keys
+        assertEquals( 1, receiver.aeadDecrypt( reordered, 0, 4, 17, 5, false ) );
+        assertEquals( 0x01, reordered.get( 4 ) );
+        assertTrue( receiver.isKeyPhase() );
+    }
+
+    @Test( expected = GeneralSecurityException.class )
+    public void aeadDecrypt_wrongKeyPhase_throws() throws Exception {
+        PacketProtectionImpl sender = new PacketProtectionImpl( CipherSuite.TLS_AES_256_GCM_SHA384, new byte[48] );
+        PacketProtectionImpl receiver = new PacketProtectionImpl( CipherSuite.TLS_AES_256_GCM_SHA384, new byte[48] );
+        ByteBuffer packet = createUnprotectedPacket();
+        sender.aeadEncrypt( packet, 0, 4, 1, 10 );
+
+        try {
+            receiver.aeadDecrypt( packet, 0, 4, 17, 10, true );
+        }
+        finally {
+            assertFalse( receiver.isKeyPhase() );
+        }
+    }
+
+    @Test( expected = GeneralSecurityException.class )
+    public void constructor_unsupportedCipherSuite_throws() throws Exception {
+        new PacketProtectionImpl( CipherSuite.TLS_AES_128_CCM_SHA256, AES_128_SECRET );
+    }
+}
@@ -0,0 +1,103 @@
+package com.timtrense.quic.impl.base;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import com.timtrense.quic.EndpointRole;
+import com.timtrense.quic.StreamId;
+import com.timtrense.quic.VariableLengthInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @see StreamTable
+ */
+public class StreamTableTest {
+
+    private static StreamImpl newStream( StreamId id ) {
+        return new StreamImpl( id, new FlowControlImpl( 0L ), new FlowControlImpl( 0L ) );
+    }
+
+    private static StreamId streamId( long value ) {
+        return new StreamIdImpl( VariableLengthInteger.valueOf( value ) );
+    }
+
+    @Test
+    public void get_manyStreamsOfAllTypes_findsEachStream() {
+        StreamTable<StreamImpl> table = new StreamTable<>();
+        StreamIdContext client = new StreamIdContextImpl( EndpointRole.CLIENT );
+        StreamIdContext server = new StreamIdContextImpl( EndpointRole.SERVER );
+        for ( int i = 0; i < 10_000; i++ ) {
+            table.put( newStream( client.createNewBidirectionalId() ) );
+            table.put( newStream( client.createNewUnidirectionalId() ) );
+            table.put( newStream( server.createNewBidirectionalId() ) );
+            table.put( newStream( server.createNewUnidirectionalId() ) );
+        }
+
+        assertEquals( 40_000, table.size() );
+        for ( long id = 0; id < 40_000; id++ ) {
+            assertEquals( id, table.get( id ).getId().getLongValue() );
+        }
+        assertNull( table.get( 40_000 ) );
+    }
+
+    @Test
+    public void remove_randomOperations_behavesLikeHashMap() {
+        StreamTable<StreamImpl> table = new StreamTable<>( 1 );
+        Map<Long, StreamImpl> expected = new HashMap<>();
+        Random random = new Random( 42 );
+        for ( int i = 0; i < 200_000; i++ ) {
+            long id = random.nextInt( 4096 );
+            if ( random.nextBoolean() ) {
+                StreamImpl stream = newStream( streamId( id ) );
+                assertSame( expected.put( id, stream ), table.put( stream ) );
+            }
+            else {
+                assertSame( expected.remove( id ), table.remove( id ) );
+            }
+        }
+
+        assertEquals( expected.size(), table.size() );
+        for ( long id = 0; id < 4096; id++ ) {
+            assertSame( expected.get( id ), table.get( id ) );
+        }
+    }
+
+    @Test
+    public void computeIfAbsent_knownAndUnknownId_createsOnlyOnce() {
+        StreamTable<StreamImpl> table = new StreamTable<>();
+        StreamImpl created = table.computeIfAbsent( 4, id -> newStream( streamId( id ) ) );
+
+        StreamImpl found = table.computeIfAbsent( 4, id -> {
+            throw new AssertionError( "must not create a mapped stream" );
+        } );
+
+        assertSame( created, found );
+        assertTrue( table.contains( 4 ) );
+        assertFalse( table.contains( 8 ) );
+    }
+
+    @Test
+    public void forEach_afterClear_visitsNothing() {
+        StreamTable<StreamImpl> table = new StreamTable<>();
+        StreamIdContext context = new StreamIdContextImpl( EndpointRole.CLIENT );
+        table.put( newStream( context.createNewBidirectionalId() ) );
+        table.put( newStream( context.createNewBidirectionalId() ) );
+        long[] sum = new long[1];
+        table.forEach( ( stream, id ) -> sum[0] += id + 1 );
+        assertEquals( 1 + 5, sum[0] );
+
+        table.clear();
+        table.forEach( ( stream, id ) -> {
+            throw new AssertionError( "must not visit a cleared table" );
+        } );
+        assertTrue( table.isEmpty() );
+    }
+}
@@ -0,0 +1,111 @@
+package com.timtrense.quic.impl.base;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @see TimerWheel
+ */
+public class TimerWheelTest {
+
+    @Test
+    public void advance_beforeAndAfterDeadline_firesOnceNeverEarly() {
+        TimerWheel wheel = new TimerWheel( 10, 8, 0 );
+        List<Long> fired = new ArrayList<>();
+        TimerWheel.Timeout timeout = new TimerWheel.Timeout( ( t, now ) -> fired.add( now ) );
+
+        wheel.schedule( timeout, 25 );
+
+        assertEquals( 0, wheel.advance( 29 ) );
+        assertTrue( timeout.isScheduled() );
+        assertEquals( 1, wheel.advance( 30 ) );
+        assertFalse( timeout.isScheduled() );
+        assertEquals( 0, wheel.advance( 100 ) );
+        assertEquals( 1, fired.size() );
+        assertEquals( 0, wheel.size() );
+    }
+
+    @Test
+    public void advance_deadlineBeyondOneRotation_waitsForRemainingRounds() {
+        TimerWheel wheel = new TimerWheel( 10, 4, 0 );
+        List<Long> fired = new ArrayList<>();
+        TimerWheel.Timeout near = new TimerWheel.Timeout( ( t, now ) -> fired.add( 1L ) );
+        TimerWheel.Timeout far = new TimerWheel.Timeout( ( t, now ) -> fired.add( 2L ) );
+
+        // both in the same bucket, 2 rotations apart
+        wheel.schedule( near, 10 );
+        wheel.schedule( far, 90 );
+
+        wheel.advance( 10 );
+        assertEquals( 1, fired.size() );
+        wheel.advance( 89 );
+        assertEquals( 1, fired.size() );
+        wheel.advance( 90 );
+        assertEquals( 2, fired.size() );
+        assertEquals( 2L, (long)fired.get( 1 ) );
+    }
+
+    @Test
+    public void cancel_scheduledTimeout_neverFires() {
+        TimerWheel wheel = new TimerWheel( 10, 8, 0 );
+        List<Long> fired = new ArrayList<>();
+        TimerWheel.Timeout first = new TimerWheel.Timeout( ( t, now ) -> fired.add( 1L ) );
+        TimerWheel.Timeout second = new TimerWheel.Timeout( ( t, now ) -> fired.add( 2L ) );
+        wheel.schedule( first, 20 );
+        wheel.schedule( second, 20 );
+
+        assertTrue( wheel.cancel( first ) );
+        assertFalse( wheel.cancel( first ) );
+        wheel.advance( 20 );
+
+        assertEquals( 1, fired.size() );
+        assertEquals( 2L, (long)fired.get( 0 ) );
+    }
+
+    @Test
+    public void advance_taskCancelsAndReschedules_appliesChangesWithoutLooping() {
+        TimerWheel wheel = new TimerWheel( 10, 8, 0 );
+        List<Long> fired = new ArrayList<>();
+        TimerWheel.Timeout victim = new TimerWheel.Timeout( ( t, now ) -> fired.add( -1L ) );
+        TimerWheel.Timeout periodic = new TimerWheel.Timeout( ( t, now ) -> {
+            fired.add( now );
+            wheel.cancel( victim );
+            // a deadline in the past must not fire within the same advance
+            wheel.schedule( t, now - 5 );
+        } );
+        wheel.schedule( periodic, 10 );
+        wheel.schedule( victim, 10 );
+
+        assertEquals( 1, wheel.advance( 10 ) );
+        assertEquals( 1, wheel.size() );
+        assertEquals( 1, wheel.advance( 20 ) );
+        assertEquals( 2, fired.size() );
+        assertFalse( fired.contains( -1L ) );
+    }
+
+    @Test
+    public void schedule_manyTimeouts_firesEachInItsTick() {
+        TimerWheel wheel = new TimerWheel( 1, 64, 0 );
+        int count = 10_000;
+        long[] firedAt = new long[count];
+        for ( int i = 0; i < count; i++ ) {
+            int index = i;
+            wheel.schedule( new TimerWheel.Timeout( ( t, now ) -> firedAt[index] = now ), i * 7 % 1000 );
+        }
+
+        for ( long now = 0; now < 1000; now++ ) {
+            wheel.advance( now );
+        }
+
+        assertEquals( 0, wheel.size() );
+        for ( int i = 0; i < count; i++ ) {
+            assertEquals( i * 7 % 1000, firedAt[i] );
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.timtrense.quic.impl.base;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import com.timtrense.quic.VariableLengthInteger;
+
+/**
+ * Compares decoding a buffer full of var-ints value by value via {@link VariableLengthInteger#decode(ByteBuffer)},
+ * via {@link VariableLengthIntegerEncoder#decode(ByteBuffer)} and in bulk via
+ * {@link VariableLengthIntegerEncoder#decodeAll(ByteBuffer, long[], int, int)}, on heap and direct buffers.
+ * It also reports the bytes allocated per decoded {@link VariableLengthInteger} with and without the
+ * {@link VariableLengthInteger#valueOf(long) cache}. Pass -D{@value VariableLengthInteger#CACHE_HIGH_PROPERTY}=...
+ * to compare different cache sizes.
+ * This is no unit test, run it manually via its {@link #main(String[]) main method}.
+ *
+ * @author Tim Trense
+ */
+public class VariableLengthIntegerBenchmark {
+
+    private static final int VALUES = 4096;
+    private static final int ROUNDS = 2_000;
+    private static final int RUNS = 5;
+
+    public static void main( String[] args ) {
+        ByteBuffer heap = createEncodedValues();
+        ByteBuffer direct = ByteBuffer.allocateDirect( heap.remaining() );
+        direct.put( heap.duplicate() ).flip();
+        long[] values = new long[VALUES];
+
+        for ( int run = 0; run < RUNS; run++ ) {
+            System.out.println( "run " + run + ( run == 0 ? " (warmup)" : "" ) );
+            System.out.printf( "  allocated without cache:          %6.2f bytes/value%n", measureAllocation( heap, false ) );
+            System.out.printf( "  allocated with cache:             %6.2f bytes/value%n", measureAllocation( heap, true ) );
+            for ( ByteBuffer buffer : new ByteBuffer[]{heap, direct} ) {
+                String kind = buffer.isDirect() ? "direct" : "heap  ";
+                System.out.printf( "  %s VariableLengthInteger.decode: %6.2f ns/value%n",
+                        kind, measureBoxed( buffer ) );
+                System.out.printf( "  %s Encoder.decode:               %6.2f ns/value%n",
+                        kind, measurePrimitive( buffer ) );
+                System.out.printf( "  %s Encoder.decodeAll:            %6.2f ns/value%n",
+                        kind, measureBulk( buffer, values ) );
+            }
+        }
+    }
+
+    /**
+     * @return a buffer of var-ints with mixed lengths, mostly short ones like in frames
+     */
+    private static ByteBuffer createEncodedValues() {
+        Random random = new Random( 42 );
+        ByteBuffer buffer = ByteBuffer.allocate( VALUES * 8 );
+        for ( int i = 0; i < VALUES; i++ ) {
+            int kind = random.nextInt( 10 );
+            long value = kind < 5 ? random.nextInt( 64 )
+                    : kind < 8 ? random.nextInt( 16384 )
+                    : kind < 9 ? random.nextInt( 1 << 30 )
+                    : random.nextLong() & VariableLengthIntegerEncoder.MAX_VALUE;
+            VariableLengthIntegerEncoder.encode( value, buffer );
+        }
+        buffer.flip();
+        return buffer;
+    }
+
+    private static double measureBoxed( ByteBuffer encoded ) {
+        long sum = 0;
+        long start = System.nanoTime();
+        for ( int r = 0; r < ROUNDS; r++ ) {
+            ByteBuffer buffer = encoded.duplicate();
+            for ( int i = 0; i < VALUES; i++ ) {
+                sum += VariableLengthInteger.decode( buffer ).longValue();
+            }
+        }
+        return report( sum, start );
+    }
+
+    private static double measurePrimitive( ByteBuffer encoded ) {
+        long sum = 0;
+        long start = System.nanoTime();
+        for ( int r = 0; r < ROUNDS; r++ ) {
+            ByteBuffer buffer = encoded.duplicate();
+            for ( int i = 0; i < VALUES; i++ ) {
+                sum += VariableLengthIntegerEncoder.decode( buffer );
+            }
+        }
+        return report( sum, start );
+    }
+
+    private static double measureBulk( ByteBuffer encoded, long[] values ) {
+        long sum = 0;
+        long start = System.nanoTime();
+        for ( int r = 0; r < ROUNDS; r++ ) {
+            ByteBuffer buffer = encoded.duplicate();
+            sum += VariableLengthIntegerEncoder.decodeAll( buffer, values, 0, VALUES );
+            sum += values[r & ( VALUES - 1 )];
+        }
+        return report( sum, start );
+    }
+
+    private static double measureAllocation( ByteBuffer encoded, boolean cached ) {
+        com.sun.management.ThreadMXBean threads =
+                (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+        long threadId = Thread.currentThread().getId();
+        long sum = 0;
+        long allocatedBefore = threads.getThreadAllocatedBytes( threadId );
+        for ( int r = 0; r < ROUNDS; r++ ) {
+            ByteBuffer buffer = encoded.duplicate();
+            for ( int i = 0; i < VALUES; i++ ) {
+                VariableLengthInteger value = cached
+                        ? VariableLengthInteger.decode( buffer )
+                        : new VariableLengthInteger( VariableLengthIntegerEncoder.decode( buffer ) );
+                sum += value.longValue();
+            }
+        }
+        long allocated = threads.getThreadAllocatedBytes( threadId ) - allocatedBefore;
+        if ( sum == 42 ) {
+            System.out.println( "unlikely" );
+        }
+        // includes the duplicated buffers, which are the same for both variants
+        return (double)allocated / ROUNDS / VALUES;
+    }
+
+    private static double report( long sum, long start ) {
+        long elapsed = System.nanoTime() - start;
+        if ( sum == 42 ) {
+            System.out.println( "unlikely" ); // keeps the decoding from being eliminated
+        }
+        return (double)elapsed / ROUNDS / VALUES;
+    }
+}
@@ -0,0 +1,33 @@
+package com.timtrense.quic.impl.congestion;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.timtrense.quic.PacketNumberSpace;
+import com.timtrense.quic.impl.recovery.RttEstimator;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * @see BbrCongestionController
+ */
+public class BbrCongestionControllerTest {
+
+    private static final int DATAGRAM_SIZE = 1200;
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos( 1 );
+
+    @Test
+    public void onPacketAcked_samePacketNumberInTwoSpaces_samplesBothPackets() {
+        BbrCongestionController controller = new BbrCongestionController( DATAGRAM_SIZE, new RttEstimator() );
+        controller.onPacketSent( PacketNumberSpace.INITIAL, 0, 0, DATAGRAM_SIZE );
+        controller.onPacketSent( PacketNumberSpace.APPLICATION_DATA, 0, 10 * MS, DATAGRAM_SIZE );
+
+        controller.onPacketAcked( PacketNumberSpace.APPLICATION_DATA, 0, 10 * MS, DATAGRAM_SIZE, 100 * MS );
+        assertEquals( DATAGRAM_SIZE * 10L, controller.getMaxBandwidth() );
+        // the delivery state of the Initial packet was not overwritten by the 1-RTT packet of the same number
+        controller.onPacketAcked( PacketNumberSpace.INITIAL, 0, 0, DATAGRAM_SIZE, 110 * MS );
+
+        assertEquals( (long)( 2 * DATAGRAM_SIZE * 1e9 / ( 110 * MS ) ), controller.getMaxBandwidth() );
+    }
+}
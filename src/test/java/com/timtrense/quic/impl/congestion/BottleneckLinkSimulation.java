@@ -0,0 +1,201 @@
+package com.timtrense.quic.impl.congestion;
+
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.timtrense.quic.EndpointRole;
+import com.timtrense.quic.Frame;
+import com.timtrense.quic.PacketNumberSpace;
+import com.timtrense.quic.impl.base.AckRangeSet;
+import com.timtrense.quic.impl.base.TransportParameterCollectionImpl;
+import com.timtrense.quic.impl.recovery.LossDetectionListener;
+import com.timtrense.quic.impl.recovery.LossDetector;
+import com.timtrense.quic.impl.recovery.RttEstimator;
+import com.timtrense.quic.impl.recovery.SentPacketLedger;
+
+/**
+ * A sender pacing packets into a drop-tail bottleneck queue of a link with fixed bandwidth and delay.
+ * The receiver acknowledges every packet immediately.
+ *
+ * @see CongestionControllerSimulationTest
+ * @see CongestionControllerSimulationBenchmark
+ */
+final class BottleneckLinkSimulation implements LossDetectionListener {
+
+    static final int DATAGRAM_SIZE = 1200;
+    static final long MS = TimeUnit.MILLISECONDS.toNanos( 1 );
+    /**
+     * 10 MBit/s
+     */
+    static final long BANDWIDTH = 1_250_000;
+    static final long ONE_WAY_DELAY = 20 * MS;
+    /**
+     * the bandwidth-delay product in bytes
+     */
+    static final long BDP = BANDWIDTH * 2 * ONE_WAY_DELAY / TimeUnit.SECONDS.toNanos( 1 );
+    static final long DURATION = TimeUnit.SECONDS.toNanos( 10 );
+
+    private static final int SEND = 0;
+    private static final int ARRIVAL = 1;
+    private static final int ACK = 2;
+    private static final int TIMER = 3;
+
+    private final long queueLimit;
+    private final double lossRate;
+    private final Random random = new Random( 4711 );
+    private final CongestionController controller;
+    private final LossDetector detector;
+    private final PriorityQueue<Event> events = new PriorityQueue<>();
+    private final AckRangeSet received = new AckRangeSet();
+
+    private long now;
+    private long sequence;
+    private long nextPacketNumber;
+    private long nextSendTime;
+    private long sendScheduledAt = -1;
+    private long timerScheduledAt = SentPacketLedger.NO_TIME;
+    private long linkFreeAt;
+    private int probesPending;
+
+    private long ackedBytes;
+    private long transmitted;
+    private long queueingDelaySum;
+
+    BottleneckLinkSimulation( CongestionControllerType type, long queueLimit, double lossRate ) {
+        this.queueLimit = queueLimit;
+        this.lossRate = lossRate;
+        RttEstimator rttEstimator = new RttEstimator();
+        this.controller = type.create( DATAGRAM_SIZE, rttEstimator );
+        this.detector = new LossDetector( EndpointRole.SERVER, new TransportParameterCollectionImpl(),
+                rttEstimator, new CongestionControlListener( controller, this ) );
+        detector.setHandshakeConfirmed( true );
+    }
+
+    void run() {
+        schedule( 0, SEND, 0, null );
+        while ( !events.isEmpty() && events.peek().time < DURATION ) {
+            Event event = events.poll();
+            now = event.time;
+            switch( event.type ) {
+                case SEND:
+                    sendScheduledAt = -1;
+                    break;
+                case ARRIVAL:
+                    received.add( event.packetNumber );
+                    schedule( now + ONE_WAY_DELAY, ACK, 0, copyOfReceived() );
+                    break;
+                case ACK:
+                    detector.onAckReceived( PacketNumberSpace.APPLICATION_DATA, event.ranges, 0, now );
+                    break;
+                case TIMER:
+                    timerScheduledAt = SentPacketLedger.NO_TIME;
+                    if ( detector.getLossDetectionTimer() <= now ) {
+                        detector.onLossDetectionTimeout( now );
+                    }
+                    break;
+            }
+            trySend();
+            long timer = detector.getLossDetectionTimer();
+            if ( timer != SentPacketLedger.NO_TIME && timer != timerScheduledAt ) {
+                timerScheduledAt = timer;
+                schedule( Math.max( timer, now ), TIMER, 0, null );
+            }
+        }
+    }
+
+    private AckRangeSet copyOfReceived() {
+        AckRangeSet copy = new AckRangeSet();
+        for ( int i = Math.min( received.size(), 32 ) - 1; i >= 0; i-- ) {
+            copy.addRange( received.getSmallest( i ), received.getLargest( i ) );
+        }
+        return copy;
+    }
+
+    private void trySend() {
+        while ( probesPending > 0 || controller.canSend( DATAGRAM_SIZE ) ) {
+            if ( now < nextSendTime ) {
+                if ( sendScheduledAt != nextSendTime ) {
+                    sendScheduledAt = nextSendTime;
+                    schedule( nextSendTime, SEND, 0, null );
+                }
+                return;
+            }
+            if ( probesPending > 0 ) {
+                probesPending--;
+            }
+            long packetNumber = nextPacketNumber++;
+            controller.onPacketSent( PacketNumberSpace.APPLICATION_DATA, packetNumber, now, DATAGRAM_SIZE );
+            detector.onPacketSent( PacketNumberSpace.APPLICATION_DATA, packetNumber, DATAGRAM_SIZE,
+                    true, true, null, now );
+            transmit( packetNumber );
+            nextSendTime = now + DATAGRAM_SIZE * TimeUnit.SECONDS.toNanos( 1 )
+                    / Math.max( 1, controller.getPacingRate() );
+        }
+    }
+
+    private void transmit( long packetNumber ) {
+        long queueStart = Math.max( now, linkFreeAt );
+        long backlog = ( queueStart - now ) * BANDWIDTH / TimeUnit.SECONDS.toNanos( 1 );
+        if ( backlog + DATAGRAM_SIZE > queueLimit || random.nextDouble() < lossRate ) {
+            return;
+        }
+        transmitted++;
+        queueingDelaySum += queueStart - now;
+        linkFreeAt = queueStart + DATAGRAM_SIZE * TimeUnit.SECONDS.toNanos( 1 ) / BANDWIDTH;
+        schedule( linkFreeAt + ONE_WAY_DELAY, ARRIVAL, packetNumber, null );
+    }
+
+    private void schedule( long time, int type, long packetNumber, AckRangeSet ranges ) {
+        events.add( new Event( time, sequence++, type, packetNumber, ranges ) );
+    }
+
+    @Override
+    public void onPacketAcked( PacketNumberSpace space, long packetNumber, long sentTime, int size,
+                               boolean inFlight, List<Frame> frames, long now ) {
+        ackedBytes += size;
+    }
+
+    @Override
+    public void onProbeTimeout( PacketNumberSpace space, int ptoCount ) {
+        probesPending++;
+    }
+
+    /**
+     * @return the share of the bandwidth that was acknowledged
+     */
+    double getGoodput() {
+        return ackedBytes / ( BANDWIDTH * (double)DURATION / TimeUnit.SECONDS.toNanos( 1 ) );
+    }
+
+    /**
+     * @return the average time in nanoseconds that packets waited in the bottleneck queue
+     */
+    double getAverageQueueingDelay() {
+        return transmitted == 0 ? 0 : queueingDelaySum / (double)transmitted;
+    }
+
+    private static final class Event implements Comparable<Event> {
+
+        private final long time;
+        private final long sequence;
+        private final int type;
+        private final long packetNumber;
+        private final AckRangeSet ranges;
+
+        private Event( long time, long sequence, int type, long packetNumber, AckRangeSet ranges ) {
+            this.time = time;
+            this.sequence = sequence;
+            this.type = type;
+            this.packetNumber = packetNumber;
+            this.ranges = ranges;
+        }
+
+        @Override
+        public int compareTo( Event o ) {
+            int byTime = Long.compare( time, o.time );
+            return byTime != 0 ? byTime : Long.compare( sequence, o.sequence );
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package com.timtrense.quic.impl.congestion;
+
+import java.util.Map;
+
+import static com.timtrense.quic.impl.congestion.BottleneckLinkSimulation.BDP;
+
+/**
+ * Prints the goodput and the queueing delay of every {@link CongestionControllerType} on the
+ * {@link BottleneckLinkSimulation simulated bottleneck link} of the {@link CongestionControllerSimulationTest}.
+ * This is no unit test, run it manually via its {@link #main(String[]) main method}.
+ *
+ * @author Tim Trense
+ */
+public class CongestionControllerSimulationBenchmark {
+
+    public static void main( String[] args ) {
+        print( 8 * BDP, 0 );
+        print( BDP, 0 );
+        print( BDP, 0.01 );
+    }
+
+    private static void print( long queueLimit, double lossRate ) {
+        Map<CongestionControllerType, BottleneckLinkSimulation> results =
+                CongestionControllerSimulationTest.runAll( queueLimit, lossRate );
+        results.forEach( ( type, simulation ) -> System.out.printf(
+                "%s over %d byte queue with %.1f%% loss: goodput %.1f%%, queueing delay %.1f ms%n",
+                type, queueLimit, lossRate * 100, simulation.getGoodput() * 100,
+                simulation.getAverageQueueingDelay() / 1e6 ) );
+    }
+}
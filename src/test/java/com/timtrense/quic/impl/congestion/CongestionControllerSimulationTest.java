@@ -0,0 +1,63 @@
+package com.timtrense.quic.impl.congestion;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static com.timtrense.quic.impl.congestion.BottleneckLinkSimulation.BDP;
+import static com.timtrense.quic.impl.congestion.BottleneckLinkSimulation.MS;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Runs every {@link CongestionControllerType} together with a {@link com.timtrense.quic.impl.recovery.LossDetector}
+ * over a simulated bottleneck link and compares goodput and queueing delay.
+ *
+ * @see CongestionController
+ * @see BottleneckLinkSimulation
+ */
+public class CongestionControllerSimulationTest {
+
+    static Map<CongestionControllerType, BottleneckLinkSimulation> runAll( long queueLimit, double lossRate ) {
+        Map<CongestionControllerType, BottleneckLinkSimulation> results =
+                new EnumMap<>( CongestionControllerType.class );
+        for ( CongestionControllerType type : CongestionControllerType.values() ) {
+            BottleneckLinkSimulation simulation = new BottleneckLinkSimulation( type, queueLimit, lossRate );
+            simulation.run();
+            results.put( type, simulation );
+        }
+        return results;
+    }
+
+    @Test
+    public void simulate_cleanLink_allControllersUseTheBandwidth() {
+        Map<CongestionControllerType, BottleneckLinkSimulation> results = runAll( BDP, 0 );
+
+        for ( BottleneckLinkSimulation simulation : results.values() ) {
+            assertTrue( simulation.getGoodput() > 0.9 );
+        }
+        assertTrue( results.get( CongestionControllerType.BBR ).getAverageQueueingDelay() < 5 * MS );
+    }
+
+    @Test
+    public void simulate_randomLoss_bbrKeepsGoodputWhereLossBasedCollapse() {
+        Map<CongestionControllerType, BottleneckLinkSimulation> results = runAll( BDP, 0.01 );
+
+        assertTrue( results.get( CongestionControllerType.BBR ).getGoodput() > 0.9 );
+        assertTrue( results.get( CongestionControllerType.NEW_RENO ).getGoodput() < 0.5 );
+        assertTrue( results.get( CongestionControllerType.CUBIC ).getGoodput() < 0.5 );
+    }
+
+    @Test
+    public void simulate_deepBuffer_bbrKeepsQueueShort() {
+        Map<CongestionControllerType, BottleneckLinkSimulation> results = runAll( 8 * BDP, 0 );
+
+        for ( BottleneckLinkSimulation simulation : results.values() ) {
+            assertTrue( simulation.getGoodput() > 0.9 );
+        }
+        assertTrue( results.get( CongestionControllerType.BBR ).getAverageQueueingDelay() < 5 * MS );
+        // the loss-based controllers grow their window until the buffer overflows
+        assertTrue( results.get( CongestionControllerType.NEW_RENO ).getAverageQueueingDelay() > 100 * MS );
+        assertTrue( results.get( CongestionControllerType.CUBIC ).getAverageQueueingDelay() > 100 * MS );
+    }
+}
@@ -0,0 +1,90 @@
+package com.timtrense.quic.impl.queue;
+
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Compares the handoff queues by throughput and round trip latency.
+ * This is no unit test, run it manually via its {@link #main(String[]) main method}.
+ * <p>
+ * Throughput: one producer puts a fixed number of preallocated elements which one consumer takes.
+ * Latency: two threads bounce a single element back and forth between two queues.
+ *
+ * @author Tim Trense
+ */
+public class HandoffQueueBenchmark {
+
+    private static final int CAPACITY = 1024;
+    private static final int THROUGHPUT_ELEMENTS = 5_000_000;
+    private static final int ROUND_TRIPS = 200_000;
+    private static final int RUNS = 5;
+
+    public static void main( String[] args ) throws InterruptedException {
+        for ( int run = 0; run < RUNS; run++ ) {
+            System.out.println( "run " + run + ( run == 0 ? " (warmup)" : "" ) );
+            for ( HandoffQueueType type : HandoffQueueType.values() ) {
+                for ( WaitStrategy waitStrategy : WaitStrategy.values() ) {
+                    if ( type == HandoffQueueType.LINKED_BLOCKING && waitStrategy != WaitStrategy.PARK ) {
+                        continue; // the wait strategy does not apply
+                    }
+                    for ( boolean singleProducer : new boolean[]{ true, false } ) {
+                        double throughput = measureThroughput( type, waitStrategy, singleProducer );
+                        double latency = measureRoundTripNanos( type, waitStrategy, singleProducer );
+                        System.out.printf( "  %-16s %-9s %-6s %,14.0f elements/s %,10.0f ns/round trip%n",
+                                type, type == HandoffQueueType.LINKED_BLOCKING ? "-" : waitStrategy,
+                                singleProducer ? "SPSC" : "MPMC", throughput, latency );
+                    }
+                }
+            }
+        }
+    }
+
+    private static double measureThroughput( HandoffQueueType type, WaitStrategy waitStrategy,
+            boolean singleProducer ) throws InterruptedException {
+        BlockingQueue<Object> queue = type.create( CAPACITY, waitStrategy, singleProducer );
+        Object element = new Object();
+        Thread producer = new Thread( () -> {
+            try {
+                for ( int i = 0; i < THROUGHPUT_ELEMENTS; i++ ) {
+                    queue.put( element );
+                }
+            }
+            catch ( InterruptedException ignored ) {
+                // benchmark aborted
+            }
+        } );
+        long start = System.nanoTime();
+        producer.start();
+        for ( int i = 0; i < THROUGHPUT_ELEMENTS; i++ ) {
+            queue.take();
+        }
+        long elapsed = System.nanoTime() - start;
+        producer.join();
+        return THROUGHPUT_ELEMENTS * 1e9 / elapsed;
+    }
+
+    private static double measureRoundTripNanos( HandoffQueueType type, WaitStrategy waitStrategy,
+            boolean singleProducer ) throws InterruptedException {
+        BlockingQueue<Object> ping = type.create( CAPACITY, waitStrategy, singleProducer );
+        BlockingQueue<Object> pong = type.create( CAPACITY, waitStrategy, singleProducer );
+        Thread echo = new Thread( () -> {
+            try {
+                for ( int i = 0; i < ROUND_TRIPS; i++ ) {
+                    pong.put( ping.take() );
+                }
+            }
+            catch ( InterruptedException ignored ) {
+                // benchmark aborted
+            }
+        } );
+        echo.start();
+        Object element = new Object();
+        long start = System.nanoTime();
+        for ( int i = 0; i < ROUND_TRIPS; i++ ) {
+            ping.put( element );
+            pong.take();
+        }
+        long elapsed = System.nanoTime() - start;
+        echo.join();
+        return (double)elapsed / ROUND_TRIPS;
+    }
+}
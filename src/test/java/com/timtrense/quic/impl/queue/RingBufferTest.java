@@ -0,0 +1,131 @@
+package com.timtrense.quic.impl.queue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RingBufferTest {
+
+    @Test
+    public void constructor_nonPowerOfTwo_roundsCapacityUp() {
+        assertEquals( 1, new SpscRingBuffer<>( 1, WaitStrategy.PARK ).getCapacity() );
+        assertEquals( 8, new SpscRingBuffer<>( 5, WaitStrategy.PARK ).getCapacity() );
+        assertEquals( 16, new MpmcRingBuffer<>( 16, WaitStrategy.PARK ).getCapacity() );
+    }
+
+    @Test
+    public void offer_full_returnsFalse() {
+        for ( RingBuffer<Integer> buffer : buffers( 4 ) ) {
+            for ( int i = 0; i < 4; i++ ) {
+                assertTrue( buffer.offer( i ) );
+            }
+            assertFalse( buffer.offer( 4 ) );
+            assertEquals( 4, buffer.size() );
+            assertEquals( 0, buffer.remainingCapacity() );
+            assertEquals( Integer.valueOf( 0 ), buffer.peek() );
+            for ( int i = 0; i < 4; i++ ) {
+                assertEquals( Integer.valueOf( i ), buffer.poll() );
+            }
+            assertNull( buffer.poll() );
+            assertTrue( buffer.isEmpty() );
+        }
+    }
+
+    @Test
+    public void poll_emptyWithTimeout_returnsNull() throws InterruptedException {
+        for ( RingBuffer<Integer> buffer : buffers( 2 ) ) {
+            assertNull( buffer.poll( 1, TimeUnit.MILLISECONDS ) );
+        }
+    }
+
+    @Test
+    public void drainTo_filled_drainsInOrder() {
+        for ( RingBuffer<Integer> buffer : buffers( 8 ) ) {
+            for ( int i = 0; i < 5; i++ ) {
+                buffer.offer( i );
+            }
+            List<Integer> drained = new ArrayList<>();
+            assertEquals( 3, buffer.drainTo( drained, 3 ) );
+            assertEquals( 2, buffer.drainTo( drained ) );
+            assertEquals( Arrays.asList( 0, 1, 2, 3, 4 ), drained );
+        }
+    }
+
+    @Test( timeout = 30000 )
+    public void take_spscConcurrent_preservesOrder() throws InterruptedException {
+        // BUSY_SPIN is left out, because it starves the other thread on machines with a single core
+        for ( WaitStrategy waitStrategy : new WaitStrategy[]{ WaitStrategy.YIELD, WaitStrategy.PARK } ) {
+            BlockingQueue<Integer> buffer = new SpscRingBuffer<>( 16, waitStrategy );
+            int count = 50_000;
+            Thread producer = new Thread( () -> {
+                try {
+                    for ( int i = 0; i < count; i++ ) {
+                        buffer.put( i );
+                    }
+                }
+                catch ( InterruptedException ignored ) {
+                    // test failed anyway
+                }
+            } );
+            producer.start();
+            for ( int i = 0; i < count; i++ ) {
+                assertEquals( Integer.valueOf( i ), buffer.take() );
+            }
+            producer.join();
+        }
+    }
+
+    @Test( timeout = 30000 )
+    public void take_mpmcConcurrentProducers_deliversEveryElementOnce() throws InterruptedException {
+        BlockingQueue<Integer> buffer = new MpmcRingBuffer<>( 16, WaitStrategy.YIELD );
+        int producerCount = 4;
+        int countPerProducer = 25_000;
+        Thread[] producers = new Thread[producerCount];
+        for ( int p = 0; p < producerCount; p++ ) {
+            int base = p * countPerProducer;
+            producers[p] = new Thread( () -> {
+                try {
+                    for ( int i = 0; i < countPerProducer; i++ ) {
+                        buffer.put( base + i );
+                    }
+                }
+                catch ( InterruptedException ignored ) {
+                    // test failed anyway
+                }
+            } );
+            producers[p].start();
+        }
+
+        boolean[] seen = new boolean[producerCount * countPerProducer];
+        int[] lastPerProducer = new int[producerCount];
+        Arrays.fill( lastPerProducer, -1 );
+        for ( int i = 0; i < seen.length; i++ ) {
+            int value = buffer.take();
+            assertFalse( seen[value] );
+            seen[value] = true;
+            // elements of a single producer stay in order
+            int producer = value / countPerProducer;
+            assertTrue( value > lastPerProducer[producer] );
+            lastPerProducer[producer] = value;
+        }
+        for ( Thread producer : producers ) {
+            producer.join();
+        }
+        assertTrue( buffer.isEmpty() );
+    }
+
+    private static List<RingBuffer<Integer>> buffers( int capacity ) {
+        List<RingBuffer<Integer>> buffers = new ArrayList<>();
+        buffers.add( new SpscRingBuffer<>( capacity, WaitStrategy.PARK ) );
+        buffers.add( new MpmcRingBuffer<>( capacity, WaitStrategy.PARK ) );
+        return buffers;
+    }
+}
@@ -0,0 +1,151 @@
+package com.timtrense.quic.impl.recovery;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.timtrense.quic.EndpointRole;
+import com.timtrense.quic.Frame;
+import com.timtrense.quic.PacketNumberSpace;
+import com.timtrense.quic.impl.base.AckRangeSet;
+import com.timtrense.quic.impl.base.TransportParameterCollectionImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @see LossDetector
+ */
+public class LossDetectorTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos( 1 );
+
+    private final List<String> events = new ArrayList<>();
+    private final LossDetectionListener listener = new LossDetectionListener() {
+        @Override
+        public void onPacketAcked( PacketNumberSpace space, long packetNumber, long sentTime, int size,
+                                   boolean inFlight, List<Frame> frames, long now ) {
+            events.add( "acked " + packetNumber );
+        }
+
+        @Override
+        public void onPacketLost( PacketNumberSpace space, long packetNumber, long sentTime, int size,
+                                  boolean inFlight, List<Frame> frames, long now ) {
+            events.add( "lost " + packetNumber );
+        }
+
+        @Override
+        public void onPersistentCongestion( PacketNumberSpace space, long now ) {
+            events.add( "persistent congestion" );
+        }
+
+        @Override
+        public void onProbeTimeout( PacketNumberSpace space, int ptoCount ) {
+            events.add( "probe " + space + " " + ptoCount );
+        }
+    };
+
+    private LossDetector detector() {
+        LossDetector detector = new LossDetector(
+                EndpointRole.SERVER, new TransportParameterCollectionImpl(), listener );
+        detector.setHandshakeConfirmed( true );
+        return detector;
+    }
+
+    private static AckRangeSet ack( long smallest, long largest ) {
+        AckRangeSet ranges = new AckRangeSet();
+        ranges.addRange( smallest, largest );
+        return ranges;
+    }
+
+    private static void send( LossDetector detector, long packetNumber, long now ) {
+        detector.onPacketSent( PacketNumberSpace.APPLICATION_DATA, packetNumber, 1200, true, true, null, now );
+    }
+
+    @Test
+    public void onAckReceived_firstSample_initializesRtt() {
+        LossDetector detector = detector();
+        send( detector, 0, 0 );
+
+        assertEquals( 1, detector.onAckReceived( PacketNumberSpace.APPLICATION_DATA, ack( 0, 0 ), 0, 100 * MS ) );
+
+        RttEstimator rtt = detector.getRttEstimator();
+        assertEquals( 100 * MS, rtt.getSmoothedRtt() );
+        assertEquals( 50 * MS, rtt.getRttVariance() );
+        assertEquals( 100 * MS, rtt.getMinRtt() );
+        assertEquals( SentPacketLedger.NO_TIME, detector.getLossDetectionTimer() );
+        assertEquals( 0L, detector.getBytesInFlight() );
+    }
+
+    @Test
+    public void onAckReceived_ackDelay_isSubtractedFromLaterSamples() {
+        LossDetector detector = detector();
+        send( detector, 0, 0 );
+        detector.onAckReceived( PacketNumberSpace.APPLICATION_DATA, ack( 0, 0 ), 0, 100 * MS );
+        send( detector, 1, 100 * MS );
+
+        // 20ms delay encoded with the default exponent 3, limited to the default max_ack_delay of 25ms
+        detector.onAckReceived( PacketNumberSpace.APPLICATION_DATA, ack( 1, 1 ), 20_000 >> 3, 220 * MS );
+
+        RttEstimator rtt = detector.getRttEstimator();
+        assertEquals( 120 * MS, rtt.getLatestRtt() );
+        assertEquals( 100 * MS, rtt.getSmoothedRtt() );
+        assertEquals( 37_500_000L, rtt.getRttVariance() );
+    }
+
+    @Test
+    public void onAckReceived_reorderingAndTimeThreshold_declaresPacketsLost() {
+        LossDetector detector = detector();
+        for ( long pn = 0; pn < 5; pn++ ) {
+            send( detector, pn, pn * MS );
+        }
+
+        detector.onAckReceived( PacketNumberSpace.APPLICATION_DATA, ack( 4, 4 ), 0, 100 * MS );
+
+        assertEquals( "[acked 4, lost 0, lost 1]", events.toString() );
+        // 2 and 3 are lost once 9/8 of the 96ms RTT passed since they were sent
+        assertEquals( 2 * MS + 108 * MS, detector.getLossDetectionTimer() );
+        detector.onLossDetectionTimeout( detector.getLossDetectionTimer() );
+        assertEquals( 3 * MS + 108 * MS, detector.getLossDetectionTimer() );
+        detector.onLossDetectionTimeout( detector.getLossDetectionTimer() );
+        assertEquals( "[acked 4, lost 0, lost 1, lost 2, lost 3]", events.toString() );
+        assertEquals( 0L, detector.getBytesInFlight() );
+    }
+
+    @Test
+    public void onLossDetectionTimeout_noAck_requestsProbesWithBackoff() {
+        LossDetector detector = detector();
+        send( detector, 0, 0 );
+        // initial RTT 333ms, variance 166.5ms, max_ack_delay 25ms
+        long pto = 333 * MS + 4 * 166_500_000L + 25 * MS;
+        assertEquals( pto, detector.getLossDetectionTimer() );
+
+        detector.onLossDetectionTimeout( pto );
+        assertEquals( 2 * pto, detector.getLossDetectionTimer() );
+        detector.onLossDetectionTimeout( 2 * pto );
+
+        assertEquals( "[probe APPLICATION_DATA 1, probe APPLICATION_DATA 2]", events.toString() );
+        assertEquals( 4 * pto, detector.getLossDetectionTimer() );
+    }
+
+    @Test
+    public void onAckReceived_lossesSpanningLongPeriod_reportsPersistentCongestion() {
+        LossDetector detector = detector();
+        send( detector, 0, 0 );
+        detector.onAckReceived( PacketNumberSpace.APPLICATION_DATA, ack( 0, 0 ), 0, 10 * MS );
+        // persistent congestion duration is (10 + 4 * 5 + 25) * 3 = 165ms
+        send( detector, 1, 20 * MS );
+        send( detector, 2, 200 * MS );
+        send( detector, 3, 201 * MS );
+        send( detector, 4, 202 * MS );
+        send( detector, 5, 203 * MS );
+
+        detector.onAckReceived( PacketNumberSpace.APPLICATION_DATA, ack( 5, 5 ), 0, 210 * MS );
+
+        assertTrue( events.contains( "persistent congestion" ) );
+        assertTrue( events.contains( "lost 1" ) );
+        assertTrue( events.contains( "lost 2" ) );
+    }
+}
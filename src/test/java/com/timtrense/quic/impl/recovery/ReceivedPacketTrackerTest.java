@@ -0,0 +1,147 @@
+package com.timtrense.quic.impl.recovery;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import com.timtrense.quic.PacketNumberSpace;
+import com.timtrense.quic.impl.base.AckRangeSet;
+import com.timtrense.quic.impl.base.TransportParameterCollectionImpl;
+import com.timtrense.quic.impl.frames.AckFrameImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @see ReceivedPacketTracker
+ */
+public class ReceivedPacketTrackerTest {
+
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos( 1 );
+
+    private static ReceivedPacketTracker tracker( PacketNumberSpace space ) {
+        return new ReceivedPacketTracker( space, new TransportParameterCollectionImpl() );
+    }
+
+    @Test
+    public void onPacketReceived_duplicate_isRejected() {
+        ReceivedPacketTracker tracker = tracker( PacketNumberSpace.APPLICATION_DATA );
+
+        assertTrue( tracker.onPacketReceived( 0, true, 0 ) );
+        assertTrue( tracker.onPacketReceived( 2, true, 0 ) );
+        assertTrue( tracker.onPacketReceived( 1, true, 0 ) );
+
+        assertFalse( tracker.onPacketReceived( 1, true, 0 ) );
+        assertTrue( tracker.isDuplicate( 2 ) );
+        assertFalse( tracker.isDuplicate( 3 ) );
+        assertEquals( 2L, tracker.getLargestReceived() );
+        assertEquals( 1, tracker.getRangeCount() );
+    }
+
+    @Test
+    public void onPacketReceived_tooManyRanges_evictsOldestAndRaisesFloor() {
+        ReceivedPacketTracker tracker = new ReceivedPacketTracker(
+                PacketNumberSpace.APPLICATION_DATA, new TransportParameterCollectionImpl(), 3, 2 );
+
+        for ( long pn = 0; pn < 10; pn += 2 ) {
+            tracker.onPacketReceived( pn, false, 0 );
+        }
+
+        assertEquals( 3, tracker.getRangeCount() );
+        assertEquals( 4L, tracker.getFloor() );
+        // never received, but below the retained ranges
+        assertTrue( tracker.isDuplicate( 1 ) );
+        assertFalse( tracker.isDuplicate( 5 ) );
+    }
+
+    @Test
+    public void decodePacketNumber_afterReceiving_usesLargestReceived() {
+        ReceivedPacketTracker tracker = tracker( PacketNumberSpace.APPLICATION_DATA );
+        assertEquals( 0x12L, tracker.decodePacketNumber( 0x12, 1 ) );
+
+        tracker.onPacketReceived( 0xa82f30eaL, true, 0 );
+
+        // example of QUIC Spec/Section A.3
+        assertEquals( 0xa82f9b32L, tracker.decodePacketNumber( 0x9b32, 2 ) );
+    }
+
+    @Test
+    public void onPacketReceived_inOrderApplicationData_delaysAckUntilThreshold() {
+        ReceivedPacketTracker tracker = tracker( PacketNumberSpace.APPLICATION_DATA );
+
+        tracker.onPacketReceived( 0, true, 100 * MS );
+        assertEquals( 125 * MS, tracker.getAckDeadline() );
+        assertFalse( tracker.isAckDue( 110 * MS ) );
+        assertTrue( tracker.isAckDue( 125 * MS ) );
+
+        tracker.onPacketReceived( 1, true, 110 * MS );
+        assertTrue( tracker.isAckDue( 110 * MS ) );
+    }
+
+    @Test
+    public void onPacketReceived_nonAckEliciting_setsNoDeadline() {
+        ReceivedPacketTracker tracker = tracker( PacketNumberSpace.APPLICATION_DATA );
+
+        tracker.onPacketReceived( 0, false, 0 );
+        tracker.onPacketReceived( 1, false, 0 );
+
+        assertTrue( tracker.isAckPending() );
+        assertEquals( ReceivedPacketTracker.NO_DEADLINE, tracker.getAckDeadline() );
+        assertFalse( tracker.isAckDue( 100 * MS ) );
+    }
+
+    @Test
+    public void onPacketReceived_gapOrHandshake_acksImmediately() {
+        ReceivedPacketTracker application = tracker( PacketNumberSpace.APPLICATION_DATA );
+        application.onPacketReceived( 0, true, 0 );
+        application.writeAckFrame( ByteBuffer.allocate( 64 ), 0 );
+        application.onPacketReceived( 2, true, 5 * MS );
+        assertTrue( application.isAckDue( 5 * MS ) );
+
+        ReceivedPacketTracker handshake = tracker( PacketNumberSpace.HANDSHAKE );
+        handshake.onPacketReceived( 0, true, 5 * MS );
+        assertTrue( handshake.isAckDue( 5 * MS ) );
+    }
+
+    @Test
+    public void writeAckFrame_rangesAndDelay_encodesDecodableFrameAndResetsTimer() {
+        ReceivedPacketTracker tracker = tracker( PacketNumberSpace.APPLICATION_DATA );
+        tracker.onPacketReceived( 0, true, 0 );
+        tracker.onPacketReceived( 1, true, 0 );
+        tracker.onPacketReceived( 5, true, 0 );
+        ByteBuffer buffer = ByteBuffer.allocate( 64 );
+        long now = 8 * MS; // 8000 microseconds, encoded with the default exponent 3
+
+        int written = tracker.writeAckFrame( buffer, now );
+
+        assertEquals( tracker.getAckFrameLength( now ), written );
+        assertFalse( tracker.isAckPending() );
+        assertEquals( ReceivedPacketTracker.NO_DEADLINE, tracker.getAckDeadline() );
+        buffer.flip();
+        assertEquals( 0x02, buffer.get() );
+        AckRangeSet decoded = new AckRangeSet();
+        assertEquals( 1000L, decoded.decode( buffer ) );
+        assertEquals( "AckRangeSet[5..5, 0..1]", decoded.toString() );
+    }
+
+    @Test
+    public void createAckFrame_afterAckOfAck_omitsAcknowledgedRanges() {
+        ReceivedPacketTracker tracker = tracker( PacketNumberSpace.INITIAL );
+        assertNull( tracker.createAckFrame( 0 ) );
+        tracker.onPacketReceived( 0, true, 0 );
+        tracker.onPacketReceived( 2, true, 0 );
+        AckFrameImpl first = tracker.createAckFrame( 5 * MS );
+        assertEquals( 0L, first.getDelay() );
+        assertEquals( "AckRangeSet[2..2, 0..0]", first.getRanges().toString() );
+
+        tracker.onAckFrameAcknowledged( 2 );
+        tracker.onPacketReceived( 3, true, 0 );
+        AckFrameImpl second = tracker.createAckFrame( 5 * MS );
+
+        assertEquals( "AckRangeSet[2..3]", second.getRanges().toString() );
+        assertTrue( tracker.isDuplicate( 1 ) );
+    }
+}
@@ -0,0 +1,135 @@
+package com.timtrense.quic.impl.recovery;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.timtrense.quic.Frame;
+import com.timtrense.quic.FrameType;
+import com.timtrense.quic.impl.base.AckRangeSet;
+import com.timtrense.quic.impl.frames.PingFrameImpl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * @see SentPacketLedger
+ */
+public class SentPacketLedgerTest {
+
+    private static void send( SentPacketLedger ledger, long from, long to, long sentTime ) {
+        for ( long pn = from; pn <= to; pn++ ) {
+            ledger.onPacketSent( pn, sentTime, 100, true, true, null );
+        }
+    }
+
+    private static AckRangeSet ack( long... smallestLargestPairs ) {
+        AckRangeSet ranges = new AckRangeSet();
+        for ( int i = 0; i < smallestLargestPairs.length; i += 2 ) {
+            ranges.addRange( smallestLargestPairs[i], smallestLargestPairs[i + 1] );
+        }
+        return ranges;
+    }
+
+    @Test
+    public void onPacketSent_moreThanCapacity_growsAndKeepsPackets() {
+        SentPacketLedger ledger = new SentPacketLedger( 4 );
+
+        send( ledger, 0, 9, 0 );
+
+        assertEquals( 16, ledger.getCapacity() );
+        assertEquals( 1000L, ledger.getBytesInFlight() );
+        assertEquals( 10, ledger.getAckElicitingInFlight() );
+        for ( long pn = 0; pn < 10; pn++ ) {
+            assertTrue( ledger.isOutstanding( pn ) );
+        }
+    }
+
+    @Test
+    public void onAckReceived_ranges_reportsOnlyNewlyAckedPackets() {
+        SentPacketLedger ledger = new SentPacketLedger( 16 );
+        send( ledger, 0, 9, 0 );
+        List<Long> acked = new ArrayList<>();
+        SentPacketConsumer collect = ( pn, sentTime, size, ackEliciting, inFlight, f ) -> acked.add( pn );
+
+        assertEquals( 4, ledger.onAckReceived( ack( 0, 1, 7, 8 ), collect ) );
+        assertEquals( 2, ledger.onAckReceived( ack( 0, 1, 5, 8 ), collect ) );
+
+        assertEquals( "[8, 7, 1, 0, 6, 5]", acked.toString() );
+        assertEquals( 8L, ledger.getLargestAcked() );
+        assertFalse( ledger.isRttSampleAvailable() );
+        assertEquals( 400L, ledger.getBytesInFlight() );
+    }
+
+    @Test
+    public void onPacketSent_afterAllAcked_wrapsAroundWithoutGrowing() {
+        SentPacketLedger ledger = new SentPacketLedger( 8 );
+        SentPacketConsumer ignore = ( pn, sentTime, size, ackEliciting, inFlight, f ) -> {};
+
+        for ( long pn = 0; pn < 100; pn += 5 ) {
+            send( ledger, pn, pn + 4, 0 );
+            assertEquals( 5, ledger.onAckReceived( ack( 0, pn + 4 ), ignore ) );
+        }
+
+        assertEquals( 8, ledger.getCapacity() );
+        assertEquals( 0L, ledger.getBytesInFlight() );
+        assertEquals( 99L, ledger.getLargestAcked() );
+    }
+
+    @Test
+    public void onAckReceived_ackedPacket_handsBackItsFrames() {
+        SentPacketLedger ledger = new SentPacketLedger();
+        List<Frame> frames = Collections.singletonList( new PingFrameImpl( FrameType.PING ) );
+        ledger.onPacketSent( 0, 5, 100, true, true, frames );
+        List<List<Frame>> acked = new ArrayList<>();
+
+        ledger.onAckReceived( ack( 0, 0 ), ( pn, sentTime, size, e, i, f ) -> acked.add( f ) );
+
+        assertSame( frames, acked.get( 0 ) );
+        assertTrue( ledger.isRttSampleAvailable() );
+        assertEquals( 5L, ledger.getRttSampleSentTime() );
+        assertEquals( 0L, ledger.getBytesInFlight() );
+    }
+
+    @Test
+    public void detectLostPackets_packetAndTimeThreshold_declaresLostAndSetsLossTime() {
+        SentPacketLedger ledger = new SentPacketLedger();
+        send( ledger, 0, 2, 0 );
+        send( ledger, 3, 5, 50 );
+        ledger.onAckReceived( ack( 5, 5 ), ( pn, s, size, e, i, f ) -> {} );
+        List<Long> lost = new ArrayList<>();
+
+        int count = ledger.detectLostPackets( 100, 120, -1, ( pn, s, size, e, i, f ) -> lost.add( pn ) );
+
+        // 0..2 by packet threshold, 3 and 4 are lost by time threshold only at 150
+        assertEquals( 3, count );
+        assertEquals( "[0, 1, 2]", lost.toString() );
+        assertEquals( 150L, ledger.getLossTime() );
+        assertEquals( 0L, ledger.getLostPeriod() );
+
+        ledger.detectLostPackets( 100, 150, -1, ( pn, s, size, e, i, f ) -> lost.add( pn ) );
+        assertEquals( "[0, 1, 2, 3, 4]", lost.toString() );
+        assertEquals( SentPacketLedger.NO_TIME, ledger.getLossTime() );
+        assertEquals( 0L, ledger.getBytesInFlight() );
+    }
+
+    @Test
+    public void detectLostPackets_ackedPacketInBetween_splitsLostPeriod() {
+        SentPacketLedger ledger = new SentPacketLedger();
+        for ( long pn = 0; pn < 10; pn++ ) {
+            ledger.onPacketSent( pn, pn * 10, 100, true, true, null );
+        }
+        ledger.onAckReceived( ack( 4, 4, 9, 9 ), ( pn, s, size, e, i, f ) -> {} );
+
+        ledger.detectLostPackets( 1000, 100, -1, ( pn, s, size, e, i, f ) -> {} );
+
+        // lost are 0..3 (period 30) and 5..6 (period 10), 7 and 8 are within the packet threshold
+        assertEquals( 30L, ledger.getLostPeriod() );
+        assertTrue( ledger.isOutstanding( 7 ) );
+        assertFalse( ledger.isOutstanding( 6 ) );
+    }
+}